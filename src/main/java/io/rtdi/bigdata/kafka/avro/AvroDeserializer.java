@@ -1,8 +1,9 @@
 package io.rtdi.bigdata.kafka.avro;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericDatumReader;
@@ -17,19 +18,67 @@ import io.rtdi.bigdata.kafka.avro.datatypes.LogicalDataTypesRegistry;
  * This is class does deserialize Avro records. It uses the same format as Kafka itself, hence
  * even if data is serialized by others, e.g. Kafka Connect, it can be consumed.
  *
+ * An instance caches the DatumReader per schema and reuses the decoder, hence it is not thread safe.
+ * Multi-threaded consumers should share a {@link SharedAvroDeserializer} instead.
+ *
  */
 public class AvroDeserializer {
 
+	/**
+	 * The default number of cached readers for the combinations of writer schema id and reader schema
+	 */
+	public static final int DEFAULT_RESOLUTION_CACHE_SIZE = 1000;
 	private static final DecoderFactory decoderFactory = DecoderFactory.get();
+	private static final int FRAME_HEADER_SIZE = 1 + Integer.BYTES;
 	/**
 	 * The decoder to be reused.
 	 */
 	protected BinaryDecoder decoder;
+	private BinaryDecoder directdecoder;
+	private final ByteArrayDecoder arraydecoder = new ByteArrayDecoder();
+	private final ByteBufferInputStream bufferin = new ByteBufferInputStream();
+	private final Map<ReaderKey, DatumReader<GenericRecord>> readers;
+	private final BoundedCache<ResolutionKey, DatumReader<GenericRecord>> resolutions;
+	/**
+	 * The key used for lookups in the resolution cache, reused as a deserializer is used by a single thread at a time.
+	 */
+	private final ResolutionKey probe = new ResolutionKey(0, null);
+	private boolean compiled = false;
 
 	static {
 		LogicalDataTypesRegistry.registerAll();
 	}
 
+	/**
+	 * Create a new deserializer with its own reader cache.
+	 */
+	public AvroDeserializer() {
+		this(DEFAULT_RESOLUTION_CACHE_SIZE);
+	}
+
+	/**
+	 * Create a new deserializer with its own reader cache.
+	 *
+	 * @param resolutioncachesize the maximum number of cached readers for the messages read via a {@link SchemaResolver}
+	 */
+	public AvroDeserializer(int resolutioncachesize) {
+		this.readers = new ConcurrentHashMap<>();
+		this.resolutions = new BoundedCache<>(resolutioncachesize);
+	}
+
+	/**
+	 * Create a deserializer using reader caches shared with other instances.
+	 *
+	 * @param readers the shared reader cache
+	 * @param resolutions the shared reader cache for schema ids
+	 * @param compiled true to use compiled readers
+	 */
+	AvroDeserializer(Map<ReaderKey, DatumReader<GenericRecord>> readers, BoundedCache<ResolutionKey, DatumReader<GenericRecord>> resolutions, boolean compiled) {
+		this.readers = readers;
+		this.resolutions = resolutions;
+		this.compiled = compiled;
+	}
+
 	/**
 	 * Takes the Kafka message payload and extract the schemaid from it. Based on that the schema can be read from the schema registry.
 	 *
@@ -39,17 +88,71 @@ public class AvroDeserializer {
 	 */
 	public static int getSchemaId(byte[] data) throws IOException {
 		if (data != null) {
-			if (data[0] != AvroUtils.MAGIC_BYTE) {
+			return getSchemaId(data, 0, data.length);
+		} else {
+			return -1;
+		}
+	}
+
+	/**
+	 * Extract the schema id from a Kafka message payload stored in a section of a larger array.
+	 *
+	 * @param data array containing the Kafka message payload
+	 * @param offset start of the message within the array
+	 * @param length length of the message
+	 * @return schemaid associated with that message
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 */
+	public static int getSchemaId(byte[] data, int offset, int length) throws IOException {
+		if (length < FRAME_HEADER_SIZE || data[offset] != AvroUtils.MAGIC_BYTE) {
+			throw new IOException("Not a valid Kafka Avro message frame");
+		} else {
+			return ((data[offset + 1] & 0xFF) << 24) | ((data[offset + 2] & 0xFF) << 16) | ((data[offset + 3] & 0xFF) << 8) | (data[offset + 4] & 0xFF);
+		}
+	}
+
+	/**
+	 * Extract the schema id from a Kafka message payload, starting at the buffer's position.
+	 * The position of the buffer is not changed.
+	 *
+	 * @param data heap or direct buffer containing the Kafka message payload between position and limit
+	 * @return schemaid associated with that message or -1 if data is null
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 */
+	public static int getSchemaId(ByteBuffer data) throws IOException {
+		if (data != null) {
+			int p = data.position();
+			if (data.remaining() < FRAME_HEADER_SIZE || data.get(p) != AvroUtils.MAGIC_BYTE) {
 				throw new IOException("Not a valid Kafka Avro message frame");
 			} else {
-				ByteBuffer bb = ByteBuffer.wrap(data, 1, Integer.BYTES);
-				return bb.getInt();
+				return ((data.get(p + 1) & 0xFF) << 24) | ((data.get(p + 2) & 0xFF) << 16) | ((data.get(p + 3) & 0xFF) << 8) | (data.get(p + 4) & 0xFF);
 			}
 		} else {
 			return -1;
 		}
 	}
 
+	/**
+	 * Use a {@link CompiledDatumReader} per schema instead of the GenericDatumReader. The resulting records are identical, but
+	 * the schema is interpreted once and not for every message, which matters for wide schemas.
+	 *
+	 * @param compiled true to use the compiled readers
+	 */
+	public void setCompiled(boolean compiled) {
+		if (this.compiled != compiled) {
+			this.compiled = compiled;
+			readers.clear();
+			resolutions.clear();
+		}
+	}
+
+	/**
+	 * @return true if compiled readers are used
+	 */
+	public boolean isCompiled() {
+		return compiled;
+	}
+
 	/**
 	 * Converts a byte[] into an Avro GenericRecord using the supplied schema.
 	 * The schema must be read from the schema registry using the message's schema id, see {@link #getSchemaId(byte[])}
@@ -62,20 +165,371 @@ public class AvroDeserializer {
 	 * @throws IOException in case this is not a valid Avro Kafka message
 	 */
 	public GenericRecord deserialize(byte[] data, Schema schema) throws IOException {
+		return deserialize(data, schema, schema);
+	}
+
+	/**
+	 * Converts a byte[] written with the writer schema into an Avro GenericRecord of the reader schema.
+	 *
+	 * @param data with the binary Avro representation
+	 * @param writerschema the schema the data was written with, the one of the message's schema id
+	 * @param readerschema the schema of the returned record
+	 * @return AvroRecord of the reader schema
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 */
+	public GenericRecord deserialize(byte[] data, Schema writerschema, Schema readerschema) throws IOException {
 		if (data != null) {
-			try (ByteArrayInputStream in = new ByteArrayInputStream(data); ) {
-				int b = in.read();
-				if (b != AvroUtils.MAGIC_BYTE) {
-					throw new IOException("Not a valid Kafka Avro message frame");
-				} else {
-					in.skip(Integer.BYTES);
-					decoder = decoderFactory.directBinaryDecoder(in, decoder);
-					DatumReader<GenericRecord> reader = new GenericDatumReader<>(schema);
-					return reader.read(null, decoder);
-				}
-			}
+			return deserialize(data, 0, data.length, writerschema, readerschema);
 		} else {
 			return null;
 		}
 	}
+
+	/**
+	 * Converts a Kafka message payload stored in a section of a larger array into an Avro GenericRecord.
+	 * The data is decoded straight from the array without any copy.
+	 *
+	 * @param data array containing the Kafka message payload
+	 * @param offset start of the message within the array
+	 * @param length length of the message
+	 * @param schema used for the deserialization
+	 * @return AvroRecord
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 */
+	public GenericRecord deserialize(byte[] data, int offset, int length, Schema schema) throws IOException {
+		return deserialize(data, offset, length, schema, schema);
+	}
+
+	/**
+	 * Converts a Kafka message payload stored in a section of a larger array into an Avro GenericRecord of the reader schema.
+	 * The data is decoded straight from the array without any copy.
+	 *
+	 * @param data array containing the Kafka message payload
+	 * @param offset start of the message within the array
+	 * @param length length of the message
+	 * @param writerschema the schema the data was written with, the one of the message's schema id
+	 * @param readerschema the schema of the returned record
+	 * @return AvroRecord of the reader schema
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 */
+	public GenericRecord deserialize(byte[] data, int offset, int length, Schema writerschema, Schema readerschema) throws IOException {
+		return deserialize(null, data, offset, length, writerschema, readerschema);
+	}
+
+	/**
+	 * Converts a Kafka message payload into the reuse record instead of allocating a new record graph.
+	 * Nested records, arrays, maps, Utf8 strings and ByteBuffers of the reuse record are refilled in place,
+	 * hence the caller must not hold on to any value of the previous message.
+	 *
+	 * @param reuse a record returned by a previous call for the same reader schema or null
+	 * @param data with the binary Avro representation
+	 * @param schema used for the deserialization
+	 * @return the reuse record filled with the new values, or a new record if reuse was null or of a different schema
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 */
+	public GenericRecord deserialize(GenericRecord reuse, byte[] data, Schema schema) throws IOException {
+		if (data != null) {
+			return deserialize(reuse, data, 0, data.length, schema, schema);
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Converts a Kafka message payload stored in a section of a larger array into the reuse record.
+	 *
+	 * @param reuse a record returned by a previous call for the same reader schema or null
+	 * @param data array containing the Kafka message payload
+	 * @param offset start of the message within the array
+	 * @param length length of the message
+	 * @param writerschema the schema the data was written with, the one of the message's schema id
+	 * @param readerschema the schema of the returned record
+	 * @return the reuse record filled with the new values, or a new record if reuse was null or of a different schema
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 * @see #deserialize(GenericRecord, byte[], Schema)
+	 */
+	public GenericRecord deserialize(GenericRecord reuse, byte[] data, int offset, int length, Schema writerschema, Schema readerschema) throws IOException {
+		return deserialize(reuse, data, offset, length, getReader(writerschema, readerschema));
+	}
+
+	/**
+	 * Converts a byte[] into an Avro GenericRecord of the reader schema, no matter which version of the schema the producer did use.
+	 * The writer schema is looked up via the schema id of the message. The reader doing the schema resolution is created once per
+	 * schema id and reader schema and kept in a cache with a limited size, see {@link #AvroDeserializer(int)}.
+	 * As the cache is keyed by the schema id, a deserializer must always be used with the same schema registry.
+	 *
+	 * @param data with the binary Avro representation
+	 * @param resolver returns the writer schema for the message's schema id, e.g. from the schema registry
+	 * @param readerschema the schema of the returned record
+	 * @return AvroRecord of the reader schema or null if data is null
+	 * @throws IOException in case this is not a valid Avro Kafka message or the schema cannot be resolved
+	 */
+	public GenericRecord deserialize(byte[] data, SchemaResolver resolver, Schema readerschema) throws IOException {
+		if (data != null) {
+			return deserialize(null, data, 0, data.length, resolver, readerschema);
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Converts a Kafka message payload stored in a section of a larger array into the reuse record of the reader schema,
+	 * the writer schema is looked up via the schema id of the message.
+	 *
+	 * @param reuse a record returned by a previous call for the same reader schema or null
+	 * @param data array containing the Kafka message payload
+	 * @param offset start of the message within the array
+	 * @param length length of the message
+	 * @param resolver returns the writer schema for the message's schema id, e.g. from the schema registry
+	 * @param readerschema the schema of the returned record
+	 * @return the reuse record filled with the new values, or a new record if reuse was null or of a different schema
+	 * @throws IOException in case this is not a valid Avro Kafka message or the schema cannot be resolved
+	 * @see #deserialize(byte[], SchemaResolver, Schema)
+	 */
+	public GenericRecord deserialize(GenericRecord reuse, byte[] data, int offset, int length, SchemaResolver resolver, Schema readerschema) throws IOException {
+		int schemaid = getSchemaId(data, offset, length);
+		return deserialize(reuse, data, offset, length, getReader(schemaid, resolver, readerschema));
+	}
+
+	/**
+	 * Converts a byte[] into an Avro GenericRecord using a specific reader, e.g. a {@link ProjectionReader}.
+	 *
+	 * @param data with the binary Avro representation
+	 * @param reader the reader to decode the Avro payload of the message
+	 * @return AvroRecord as returned by the reader or null if data is null
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 */
+	public GenericRecord deserialize(byte[] data, DatumReader<GenericRecord> reader) throws IOException {
+		if (data != null) {
+			return deserialize(null, data, 0, data.length, reader);
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Converts a Kafka message payload stored in a section of a larger array using a specific reader, e.g. a {@link ProjectionReader}.
+	 *
+	 * @param reuse a record returned by a previous call for the same reader or null
+	 * @param data array containing the Kafka message payload
+	 * @param offset start of the message within the array
+	 * @param length length of the message
+	 * @param reader the reader to decode the Avro payload of the message
+	 * @return AvroRecord as returned by the reader
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 */
+	public GenericRecord deserialize(GenericRecord reuse, byte[] data, int offset, int length, DatumReader<GenericRecord> reader) throws IOException {
+		if (length < FRAME_HEADER_SIZE || data[offset] != AvroUtils.MAGIC_BYTE) {
+			throw new IOException("Not a valid Kafka Avro message frame");
+		} else if (reader instanceof CompiledDatumReader) {
+			// compiled readers read strings of ASCII data types straight from the array
+			return reader.read(reuse, arraydecoder.configure(data, offset + FRAME_HEADER_SIZE, length - FRAME_HEADER_SIZE));
+		} else {
+			decoder = decoderFactory.binaryDecoder(data, offset + FRAME_HEADER_SIZE, length - FRAME_HEADER_SIZE, decoder);
+			return reader.read(reuse, decoder);
+		}
+	}
+
+	/**
+	 * Converts the Kafka message payload between the buffer's position and limit into an Avro GenericRecord.
+	 * Heap buffers are decoded from the backing array, direct buffers are read in place, both without any copy.
+	 * The position of the buffer is not changed.
+	 *
+	 * @param data heap or direct buffer, e.g. a slice of a larger fetch buffer
+	 * @param schema used for the deserialization
+	 * @return AvroRecord or null if data is null
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 */
+	public GenericRecord deserialize(ByteBuffer data, Schema schema) throws IOException {
+		return deserialize(data, schema, schema);
+	}
+
+	/**
+	 * Converts the Kafka message payload between the buffer's position and limit into an Avro GenericRecord of the reader schema.
+	 * The position of the buffer is not changed.
+	 *
+	 * @param data heap or direct buffer, e.g. a slice of a larger fetch buffer
+	 * @param writerschema the schema the data was written with, the one of the message's schema id
+	 * @param readerschema the schema of the returned record
+	 * @return AvroRecord of the reader schema or null if data is null
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 * @see #deserialize(ByteBuffer, Schema)
+	 */
+	public GenericRecord deserialize(ByteBuffer data, Schema writerschema, Schema readerschema) throws IOException {
+		return deserialize(null, data, writerschema, readerschema);
+	}
+
+	/**
+	 * Converts the Kafka message payload between the buffer's position and limit into the reuse record.
+	 * The position of the buffer is not changed.
+	 *
+	 * @param reuse a record returned by a previous call for the same reader schema or null
+	 * @param data heap or direct buffer, e.g. a slice of a larger fetch buffer
+	 * @param schema used for the deserialization
+	 * @return the reuse record filled with the new values, or a new record if reuse was null or of a different schema
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 * @see #deserialize(GenericRecord, byte[], Schema)
+	 */
+	public GenericRecord deserialize(GenericRecord reuse, ByteBuffer data, Schema schema) throws IOException {
+		return deserialize(reuse, data, schema, schema);
+	}
+
+	/**
+	 * Converts the Kafka message payload between the buffer's position and limit into the reuse record of the reader schema.
+	 * The position of the buffer is not changed.
+	 *
+	 * @param reuse a record returned by a previous call for the same reader schema or null
+	 * @param data heap or direct buffer, e.g. a slice of a larger fetch buffer
+	 * @param writerschema the schema the data was written with, the one of the message's schema id
+	 * @param readerschema the schema of the returned record
+	 * @return the reuse record filled with the new values, or a new record if reuse was null or of a different schema
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 * @see #deserialize(GenericRecord, byte[], Schema)
+	 */
+	public GenericRecord deserialize(GenericRecord reuse, ByteBuffer data, Schema writerschema, Schema readerschema) throws IOException {
+		if (data == null) {
+			return null;
+		} else {
+			return deserialize(reuse, data, getReader(writerschema, readerschema));
+		}
+	}
+
+	/**
+	 * Converts the Kafka message payload between the buffer's position and limit into the reuse record of the reader schema,
+	 * the writer schema is looked up via the schema id of the message. The position of the buffer is not changed.
+	 *
+	 * @param reuse a record returned by a previous call for the same reader schema or null
+	 * @param data heap or direct buffer, e.g. a slice of a larger fetch buffer
+	 * @param resolver returns the writer schema for the message's schema id, e.g. from the schema registry
+	 * @param readerschema the schema of the returned record
+	 * @return the reuse record filled with the new values, or a new record if reuse was null or of a different schema
+	 * @throws IOException in case this is not a valid Avro Kafka message or the schema cannot be resolved
+	 * @see #deserialize(byte[], SchemaResolver, Schema)
+	 */
+	public GenericRecord deserialize(GenericRecord reuse, ByteBuffer data, SchemaResolver resolver, Schema readerschema) throws IOException {
+		if (data == null) {
+			return null;
+		} else {
+			int schemaid = getSchemaId(data);
+			return deserialize(reuse, data, getReader(schemaid, resolver, readerschema));
+		}
+	}
+
+	/**
+	 * Converts the Kafka message payload between the buffer's position and limit using a specific reader, e.g. a {@link ProjectionReader}.
+	 * The position of the buffer is not changed.
+	 *
+	 * @param reuse a record returned by a previous call for the same reader or null
+	 * @param data heap or direct buffer, e.g. a slice of a larger fetch buffer
+	 * @param reader the reader to decode the Avro payload of the message
+	 * @return AvroRecord as returned by the reader or null if data is null
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 */
+	public GenericRecord deserialize(GenericRecord reuse, ByteBuffer data, DatumReader<GenericRecord> reader) throws IOException {
+		if (data == null) {
+			return null;
+		} else if (data.hasArray()) {
+			return deserialize(reuse, data.array(), data.arrayOffset() + data.position(), data.remaining(), reader);
+		} else {
+			int p = data.position();
+			if (data.remaining() < FRAME_HEADER_SIZE || data.get(p) != AvroUtils.MAGIC_BYTE) {
+				throw new IOException("Not a valid Kafka Avro message frame");
+			}
+			try {
+				bufferin.reset(data, p + FRAME_HEADER_SIZE, data.limit());
+				directdecoder = decoderFactory.directBinaryDecoder(bufferin, directdecoder);
+				return reader.read(reuse, directdecoder);
+			} finally {
+				bufferin.reset(null, 0, 0);
+			}
+		}
+	}
+
+	/**
+	 * @param writerschema the schema the data was written with
+	 * @param readerschema the schema of the returned record
+	 * @return the cached reader for this combination
+	 */
+	protected DatumReader<GenericRecord> getReader(Schema writerschema, Schema readerschema) {
+		ReaderKey key = new ReaderKey(writerschema, readerschema);
+		DatumReader<GenericRecord> reader = readers.get(key);
+		if (reader == null) {
+			reader = readers.computeIfAbsent(key, k -> createReader(writerschema, readerschema));
+		}
+		return reader;
+	}
+
+	/**
+	 * @param schemaid the schema id of the message
+	 * @param resolver returns the writer schema for the schema id
+	 * @param readerschema the schema of the returned record
+	 * @return the cached reader for this combination
+	 * @throws IOException in case the schema cannot be resolved
+	 */
+	protected DatumReader<GenericRecord> getReader(int schemaid, SchemaResolver resolver, Schema readerschema) throws IOException {
+		DatumReader<GenericRecord> reader = resolutions.get(probe.set(schemaid, readerschema));
+		if (reader == null) {
+			Schema writerschema = resolver.getSchema(schemaid);
+			if (writerschema == null) {
+				throw new IOException("No schema found for the schema id " + schemaid);
+			}
+			reader = resolutions.putIfAbsent(new ResolutionKey(schemaid, readerschema), createReader(writerschema, readerschema));
+		}
+		return reader;
+	}
+
+	/**
+	 * @return the number of cached readers for schema id and reader schema combinations
+	 */
+	public int getResolutionCacheCount() {
+		return resolutions.size();
+	}
+
+	private DatumReader<GenericRecord> createReader(Schema writerschema, Schema readerschema) {
+		if (compiled && writerschema.equals(readerschema)) {
+			return CompiledDatumReader.get(readerschema);
+		} else {
+			/*
+			 * The GenericDatumReader computes the resolution of the two schemas once and keeps it
+			 */
+			return new GenericDatumReader<>(writerschema, readerschema);
+		}
+	}
+
+	/**
+	 * The key of the resolution cache, the combination of writer schema id and reader schema.
+	 * Keys stored in the cache are never changed, only the lookup key of a deserializer is set for every message.
+	 */
+	static final class ResolutionKey {
+		private int schemaid;
+		private Schema readerschema;
+
+		ResolutionKey(int schemaid, Schema readerschema) {
+			this.schemaid = schemaid;
+			this.readerschema = readerschema;
+		}
+
+		ResolutionKey set(int schemaid, Schema readerschema) {
+			this.schemaid = schemaid;
+			this.readerschema = readerschema;
+			return this;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * schemaid + readerschema.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			} else if (obj instanceof ResolutionKey) {
+				ResolutionKey other = (ResolutionKey) obj;
+				return schemaid == other.schemaid && readerschema.equals(other.readerschema);
+			} else {
+				return false;
+			}
+		}
+	}
 }
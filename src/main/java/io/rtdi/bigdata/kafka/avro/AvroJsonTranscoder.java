@@ -0,0 +1,332 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.AvroTypeException;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.json.UTF8JsonGenerator;
+
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroDecimal;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroType;
+import io.rtdi.bigdata.kafka.avro.datatypes.IAvroDatatype;
+
+/**
+ * Converts Kafka Avro messages into JSON without deserializing them into a GenericRecord first.
+ * The schema is compiled once into a plan which reads the binary Avro payload and writes the JSON tokens directly,
+ * no GenericRecord, Utf8 or boxed values are created.
+ *
+ * The output is the same as {@link CompiledJsonWriter} writes for the deserialized record, e.g. decimals as strings and
+ * timestamps as ISO instants. Strings and binary values are passed from the payload to the JsonGenerator as is, for
+ * generators writing into an OutputStream even without creating a String.
+ *
+ * Transcoders are immutable and thread safe, use {@link #get(Schema, boolean)} to get the cached transcoder for a schema.
+ *
+ */
+public class AvroJsonTranscoder {
+	private static final int FRAME_HEADER_SIZE = 1 + Integer.BYTES;
+	private static final BoundedCache<Schema, AvroJsonTranscoder> cache = new BoundedCache<>(BoundedCache.SCHEMA_CACHE_SIZE);
+	private static final BoundedCache<Schema, AvroJsonTranscoder> decodedcache = new BoundedCache<>(BoundedCache.SCHEMA_CACHE_SIZE);
+	private final Schema schema;
+	private final boolean decodenames;
+	private final ValueTranscoder root;
+
+	/**
+	 * Compile a new transcoder for the schema, usually {@link #get(Schema, boolean)} should be used instead.
+	 *
+	 * @param schema the writer schema of the messages
+	 * @param decodenames true to write the original field names as decoded by {@link AvroNameEncoder#decodeName(String)}
+	 */
+	public AvroJsonTranscoder(Schema schema, boolean decodenames) {
+		this.schema = schema;
+		this.decodenames = decodenames;
+		this.root = compile(schema, decodenames, new HashMap<>());
+	}
+
+	/**
+	 * @param schema the writer schema of the messages
+	 * @return the cached transcoder writing the Avro field names
+	 */
+	public static AvroJsonTranscoder get(Schema schema) {
+		return get(schema, false);
+	}
+
+	/**
+	 * @param schema the writer schema of the messages
+	 * @param decodenames true to write the original field names as decoded by {@link AvroNameEncoder#decodeName(String)}
+	 * @return the cached transcoder for this schema
+	 */
+	public static AvroJsonTranscoder get(Schema schema, boolean decodenames) {
+		BoundedCache<Schema, AvroJsonTranscoder> c = decodenames ? decodedcache : cache;
+		AvroJsonTranscoder transcoder = c.get(schema);
+		if (transcoder == null) {
+			transcoder = c.putIfAbsent(schema, new AvroJsonTranscoder(schema, decodenames));
+		}
+		return transcoder;
+	}
+
+	/**
+	 * @return the writer schema this transcoder was compiled for
+	 */
+	public Schema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * @return true if the original field names are written
+	 */
+	public boolean isDecodeNames() {
+		return decodenames;
+	}
+
+	/**
+	 * Converts a Kafka message payload into JSON, the writer schema is looked up via the schema id of the message.
+	 *
+	 * @param data array containing the Kafka message payload
+	 * @param offset start of the message within the array
+	 * @param length length of the message
+	 * @param resolver returns the writer schema for the message's schema id, e.g. from the schema registry
+	 * @param decodenames true to write the original field names as decoded by {@link AvroNameEncoder#decodeName(String)}
+	 * @param generator the JSON output
+	 * @throws IOException in case this is not a valid Avro Kafka message or the schema cannot be resolved
+	 */
+	public static void transcode(byte[] data, int offset, int length, SchemaResolver resolver, boolean decodenames, JsonGenerator generator) throws IOException {
+		int schemaid = AvroDeserializer.getSchemaId(data, offset, length);
+		get(resolver.getSchema(schemaid), decodenames).transcode(data, offset, length, generator);
+	}
+
+	/**
+	 * Converts a Kafka message payload written with this transcoder's schema into JSON.
+	 *
+	 * @param data with the binary Avro representation
+	 * @param generator the JSON output
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 */
+	public void transcode(byte[] data, JsonGenerator generator) throws IOException {
+		transcode(data, 0, data.length, generator);
+	}
+
+	/**
+	 * Converts a Kafka message payload stored in a section of a larger array into JSON.
+	 *
+	 * @param data array containing the Kafka message payload
+	 * @param offset start of the message within the array
+	 * @param length length of the message
+	 * @param generator the JSON output
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 */
+	public void transcode(byte[] data, int offset, int length, JsonGenerator generator) throws IOException {
+		if (length < FRAME_HEADER_SIZE || data[offset] != AvroUtils.MAGIC_BYTE) {
+			throw new IOException("Not a valid Kafka Avro message frame");
+		}
+		root.transcode(new ByteArrayDecoder(data, offset + FRAME_HEADER_SIZE, length - FRAME_HEADER_SIZE), generator);
+	}
+
+	private static ValueTranscoder compile(Schema schema, boolean decodenames, Map<String, RecordTranscoder> records) {
+		switch (schema.getType()) {
+		case ARRAY: {
+			ValueTranscoder itemtranscoder = compile(schema.getElementType(), decodenames, records);
+			return (in, out) -> {
+				out.writeStartArray();
+				for (long n = in.readArrayStart(); n != 0; n = in.arrayNext()) {
+					for (long i = 0; i < n; i++) {
+						itemtranscoder.transcode(in, out);
+					}
+				}
+				out.writeEndArray();
+			};
+		}
+		case MAP: {
+			ValueTranscoder valuetranscoder = compile(schema.getValueType(), decodenames, records);
+			return (in, out) -> {
+				out.writeStartObject();
+				for (long n = in.readMapStart(); n != 0; n = in.mapNext()) {
+					for (long i = 0; i < n; i++) {
+						out.writeFieldName(in.readString());
+						valuetranscoder.transcode(in, out);
+					}
+				}
+				out.writeEndObject();
+			};
+		}
+		case UNION: {
+			List<Schema> types = schema.getTypes();
+			ValueTranscoder[] branches = new ValueTranscoder[types.size()];
+			for (int i = 0; i < branches.length; i++) {
+				branches[i] = compile(types.get(i), decodenames, records);
+			}
+			return (in, out) -> {
+				int index = in.readIndex();
+				if (index < 0 || index >= branches.length) {
+					throw new AvroTypeException("Union index " + index + " is out of bounds for the schema " + schema);
+				}
+				branches[index].transcode(in, out);
+			};
+		}
+		case RECORD: {
+			RecordTranscoder transcoder = records.get(schema.getFullName());
+			if (transcoder == null) {
+				transcoder = new RecordTranscoder();
+				// registered before the fields are compiled to support recursive schemas
+				records.put(schema.getFullName(), transcoder);
+				List<Field> fields = schema.getFields();
+				SerializedString[] names = new SerializedString[fields.size()];
+				ValueTranscoder[] fieldtranscoders = new ValueTranscoder[fields.size()];
+				for (int i = 0; i < fieldtranscoders.length; i++) {
+					String name = fields.get(i).name();
+					names[i] = new SerializedString(decodenames ? AvroNameEncoder.decodeName(name) : name);
+					fieldtranscoders[i] = compile(fields.get(i).schema(), decodenames, records);
+				}
+				transcoder.names = names;
+				transcoder.fieldtranscoders = fieldtranscoders;
+			}
+			return transcoder;
+		}
+		default:
+			return compilePrimitive(schema);
+		}
+	}
+
+	private static ValueTranscoder compilePrimitive(Schema schema) {
+		IAvroDatatype datatype = AvroType.getAvroDataType(schema);
+		if (datatype == null) {
+			throw new AvroTypeException("Unknown schema type \"" + schema.getType() + "\"");
+		}
+		switch (datatype.getAvroType()) {
+		case AVRODATE:
+			return (in, out) -> out.writeString(LocalDate.ofEpochDay(in.readInt()).toString());
+		case AVROTIMEMILLIS:
+			return (in, out) -> out.writeString(LocalTime.ofNanoOfDay(in.readInt() * 1000000L).toString());
+		case AVROTIMEMICROS:
+			return (in, out) -> out.writeString(LocalTime.ofNanoOfDay(in.readLong() * 1000L).toString());
+		case AVROTIMESTAMPMILLIS:
+			return (in, out) -> out.writeString(Instant.ofEpochMilli(in.readLong()).toString());
+		case AVROTIMESTAMPMICROS:
+			return (in, out) -> {
+				long l = in.readLong();
+				out.writeString(Instant.ofEpochSecond(l / 1000000L, (l % 1000000) * 1000L).toString());
+			};
+		case AVROLOCALTIMESTAMPMILLIS:
+			return (in, out) -> {
+				long l = in.readLong();
+				out.writeString(LocalDateTime.ofEpochSecond(l / 1000L, ((int) (l % 1000L)) * 1_000_000, ZoneOffset.UTC).toString());
+			};
+		case AVROLOCALTIMESTAMPMICROS:
+			return (in, out) -> {
+				long l = in.readLong();
+				out.writeString(LocalDateTime.ofEpochSecond(l / 1000000L, (int) ((l % 1000000) * 1000L), ZoneOffset.UTC).toString());
+			};
+		case AVRODECIMAL: {
+			AvroDecimal decimal = (AvroDecimal) datatype;
+			if (schema.getType() == Schema.Type.FIXED) {
+				int size = schema.getFixedSize();
+				return (in, out) -> {
+					int pos = in.position();
+					in.skipFixed(size);
+					out.writeString(decimal.convertToJava(in.array(), pos, size).toString());
+				};
+			} else {
+				return (in, out) -> {
+					int length = in.readLength();
+					int pos = in.position();
+					in.position(pos + length);
+					out.writeString(decimal.convertToJava(in.array(), pos, length).toString());
+				};
+			}
+		}
+		default:
+			break;
+		}
+		switch (schema.getType()) {
+		case NULL:
+			return (in, out) -> out.writeNull();
+		case BOOLEAN:
+			return (in, out) -> out.writeBoolean(in.readBoolean());
+		case INT:
+			return (in, out) -> out.writeNumber(in.readInt());
+		case LONG:
+			return (in, out) -> out.writeNumber(in.readLong());
+		case FLOAT:
+			return (in, out) -> out.writeNumber(in.readFloat());
+		case DOUBLE:
+			return (in, out) -> out.writeNumber(in.readDouble());
+		case STRING:
+			return (in, out) -> {
+				int length = in.readLength();
+				int pos = in.position();
+				in.position(pos + length);
+				if (out instanceof UTF8JsonGenerator) {
+					out.writeUTF8String(in.array(), pos, length);
+				} else {
+					out.writeString(new String(in.array(), pos, length, StandardCharsets.UTF_8));
+				}
+			};
+		case BYTES:
+			return (in, out) -> {
+				int length = in.readLength();
+				int pos = in.position();
+				in.position(pos + length);
+				out.writeBinary(in.array(), pos, length);
+			};
+		case FIXED: {
+			int size = schema.getFixedSize();
+			return (in, out) -> {
+				int pos = in.position();
+				in.skipFixed(size);
+				out.writeBinary(in.array(), pos, size);
+			};
+		}
+		case ENUM: {
+			List<String> symbols = schema.getEnumSymbols();
+			SerializedString[] values = new SerializedString[symbols.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = new SerializedString(symbols.get(i));
+			}
+			return (in, out) -> {
+				int index = in.readEnum();
+				if (index < 0 || index >= values.length) {
+					throw new AvroTypeException("Enum index " + index + " is out of bounds for the schema " + schema.getFullName());
+				}
+				out.writeString(values[index]);
+			};
+		}
+		default:
+			throw new AvroTypeException("Unknown schema type \"" + schema.getType() + "\"");
+		}
+	}
+
+	@FunctionalInterface
+	private interface ValueTranscoder {
+		void transcode(ByteArrayDecoder in, JsonGenerator out) throws IOException;
+	}
+
+	private static class RecordTranscoder implements ValueTranscoder {
+		private SerializedString[] names;
+		private ValueTranscoder[] fieldtranscoders;
+
+		@Override
+		public void transcode(ByteArrayDecoder in, JsonGenerator out) throws IOException {
+			SerializedString[] n = names;
+			ValueTranscoder[] transcoders = fieldtranscoders;
+			out.writeStartObject();
+			for (int i = 0; i < transcoders.length; i++) {
+				out.writeFieldName(n[i]);
+				transcoders[i].transcode(in, out);
+			}
+			out.writeEndObject();
+		}
+	}
+
+}
@@ -1,9 +1,12 @@
 package io.rtdi.bigdata.kafka.avro;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.io.BinaryEncoder;
@@ -14,41 +17,367 @@ import io.rtdi.bigdata.kafka.avro.datatypes.LogicalDataTypesRegistry;
 
 /**
  * Creates a a binary representation of an Avro GenericRecord in the Kafka format.
- * Hence all data put into Kafka can be read by other tools like Kafka Connect.  
+ * Hence all data put into Kafka can be read by other tools like Kafka Connect.
+ *
+ * An instance caches one DatumWriter per schema and reuses a per-thread output buffer and encoder,
+ * so it should be created once and shared. All methods are thread safe.
  *
  */
 public class AvroSerializer {
-	
+
 	private static EncoderFactory encoderFactory = EncoderFactory.get();
+	/**
+	 * Buffers that grew beyond this size because of a single large record are not kept for the next call
+	 */
+	private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+	private static final int INITIAL_BUFFER_SIZE = 4096;
+	private static final int MAX_ARENA_PRESIZE = 64 * 1024 * 1024;
+	private static final AvroSerializer instance = new AvroSerializer();
 	static {
 		LogicalDataTypesRegistry.registerAll();
 	}
 
+	private final Map<Schema, DatumWriter<GenericRecord>> writers = new ConcurrentHashMap<>();
+	private final Map<Schema, DatumWriter<GenericRecord>> compiledwriters = new ConcurrentHashMap<>();
+	private final ThreadLocal<Context> contexts = ThreadLocal.withInitial(Context::new);
+	private volatile int maxmessagesize = 0;
+	private volatile boolean compiled = false;
+
+	/**
+	 * Create a new serializer with its own writer cache.
+	 */
+	public AvroSerializer() {
+	}
+
+	/**
+	 * Create a new serializer rejecting all records that would result in a Kafka message larger than the given size.
+	 *
+	 * @param maxmessagesize the max.message.bytes setting of the topic, 0 for no limit
+	 * @see #setMaxMessageSize(int)
+	 */
+	public AvroSerializer(int maxmessagesize) {
+		this.maxmessagesize = maxmessagesize;
+	}
+
+	/**
+	 * Records that would result in a larger Kafka message are rejected with a {@link MessageTooLargeException} before they are encoded.
+	 * For schemas with a known upper size limit below this value the check costs nothing, for all others
+	 * the exact size of the record is computed from its values first, which is much cheaper than encoding it.
+	 *
+	 * @param maxmessagesize the max.message.bytes setting of the topic, 0 for no limit
+	 */
+	public void setMaxMessageSize(int maxmessagesize) {
+		this.maxmessagesize = maxmessagesize;
+	}
+
+	/**
+	 * @return the max message size in bytes or 0 if there is no limit
+	 */
+	public int getMaxMessageSize() {
+		return maxmessagesize;
+	}
+
+	/**
+	 * Use a {@link CompiledDatumWriter} per schema instead of the GenericDatumWriter. The output is identical, but
+	 * the schema is interpreted once and not for every record, which matters for wide schemas.
+	 * Both kinds of writers are cached separately, hence the setting can be changed while other threads serialize.
+	 *
+	 * @param compiled true to use the compiled writers
+	 */
+	public void setCompiled(boolean compiled) {
+		this.compiled = compiled;
+	}
+
+	/**
+	 * @return true if compiled writers are used
+	 */
+	public boolean isCompiled() {
+		return compiled;
+	}
 
 	/**
 	 * Convert an AvroRecord into a Kafka payload to be sent as binary payload, still compatible with all other Kafka Avro serdes.
-	 * 
+	 *
 	 * @param schemaid the id of the Kafka schema
 	 * @param data AvroRecord
 	 * @return binary representation of the AvroRecord
 	 * @throws IOException in case the AvroRecord cannot be serialized
 	 */
 	public static byte[] serialize(int schemaid, GenericRecord data) throws IOException {
-		try ( ByteArrayOutputStream out = new ByteArrayOutputStream(); ) {
-			out.write(AvroUtils.MAGIC_BYTE);
-			out.write(ByteBuffer.allocate(Integer.BYTES).putInt(schemaid).array());
-			BinaryEncoder encoder = encoderFactory.directBinaryEncoder(out, null);
-			DatumWriter<GenericRecord> writer = new GenericDatumWriter<>(data.getSchema());
-			writer.write(data, encoder);
-			encoder.flush();
-			byte[] bytes = out.toByteArray();
-			return bytes;
+		return instance.encode(schemaid, data);
+	}
+
+	/**
+	 * Convert an AvroRecord into a Kafka payload to be sent as binary payload, still compatible with all other Kafka Avro serdes.
+	 * The only allocation is the returned byte[] itself.
+	 *
+	 * @param schemaid the id of the Kafka schema
+	 * @param data AvroRecord
+	 * @return binary representation of the AvroRecord
+	 * @throws IOException in case the AvroRecord cannot be serialized
+	 */
+	public byte[] encode(int schemaid, GenericRecord data) throws IOException {
+		Context context = contexts.get();
+		FrameOutputStream out = context.out;
+		try {
+			checkSize(data);
+			BinaryEncoder encoder = context.getEncoder(out);
+			out.reset();
+			out.writeHeader(schemaid);
+			write(data, encoder);
+			return out.toByteArray();
+		} catch (Exception e) {
+			if (e instanceof IOException) {
+				throw e;
+			} else {
+				throw new IOException(e);
+			}
+		} finally {
+			context.release();
+		}
+	}
+
+	/**
+	 * Writes the Kafka frame of the record into the target buffer at its current position, without any intermediate copy.
+	 * Works with heap and direct buffers.
+	 *
+	 * @param schemaid the id of the Kafka schema
+	 * @param data AvroRecord
+	 * @param target the buffer to write into
+	 * @return the number of bytes written, the buffer's position is advanced by that amount.
+	 *   If the remaining space was not sufficient, the negative number of bytes required is returned instead and the buffer's
+	 *   position is left unchanged, so the caller can retry with a buffer of at least that size. The buffer content beyond
+	 *   the position is undefined in that case.
+	 * @throws IOException in case the AvroRecord cannot be serialized
+	 * @see #serialize(int, GenericRecord, ByteBuffer)
+	 */
+	public int encode(int schemaid, GenericRecord data, ByteBuffer target) throws IOException {
+		Context context = contexts.get();
+		ByteBufferOutputStream out = context.bufferout;
+		try {
+			checkSize(data);
+			if (target.remaining() < AvroSizeEstimate.FRAME_HEADER_SIZE + AvroSizeEstimate.getEstimate(data.getSchema()).getMinimum()) {
+				// does not fit for sure, no need to encode the record to find out the required size
+				return (int) -AvroSizeEstimate.getFrameSize(data);
+			}
+			out.reset(target);
+			out.writeHeader(schemaid);
+			write(data, context.getDirectEncoder(out));
+			if (out.isOverflow()) {
+				out.rewind();
+				return -out.size();
+			} else {
+				return out.size();
+			}
 		} catch (Exception e) {
+			out.rewind();
 			if (e instanceof IOException) {
 				throw e;
 			} else {
 				throw new IOException(e);
 			}
+		} finally {
+			out.detach();
+		}
+	}
+
+	/**
+	 * Writes the Kafka frame of the record into the target buffer at its current position, see {@link #encode(int, GenericRecord, ByteBuffer)}.
+	 *
+	 * @param schemaid the id of the Kafka schema
+	 * @param data AvroRecord
+	 * @param target the buffer to write into
+	 * @return the number of bytes written or the negative number of bytes required in case the buffer is too small
+	 * @throws IOException in case the AvroRecord cannot be serialized
+	 */
+	public static int serialize(int schemaid, GenericRecord data, ByteBuffer target) throws IOException {
+		return instance.encode(schemaid, data, target);
+	}
+
+	/**
+	 * Serialize a batch of records, all using the same schema id, into one contiguous arena.
+	 *
+	 * @param schemaid the id of the Kafka schema used for all records
+	 * @param records the records to serialize
+	 * @return the arena with the offset and length of each message
+	 * @throws IOException in case a record cannot be serialized
+	 */
+	public SerializedBatch encode(int schemaid, List<? extends GenericRecord> records) throws IOException {
+		return encode(schemaid, null, records);
+	}
+
+	/**
+	 * Serialize a batch of records with mixed schema ids into one contiguous arena.
+	 *
+	 * @param schemaids the id of the Kafka schema for each record, same size as the records list
+	 * @param records the records to serialize
+	 * @return the arena with the offset and length of each message
+	 * @throws IOException in case a record cannot be serialized
+	 */
+	public SerializedBatch encode(int[] schemaids, List<? extends GenericRecord> records) throws IOException {
+		if (schemaids.length != records.size()) {
+			throw new IOException("The number of schema ids (" + schemaids.length + ") does not match the number of records (" + records.size() + ")");
+		}
+		return encode(0, schemaids, records);
+	}
+
+	/**
+	 * @param schemaid the id of the Kafka schema used for all records
+	 * @param records the records to serialize
+	 * @return the arena with the offset and length of each message
+	 * @throws IOException in case a record cannot be serialized
+	 * @see #encode(int, List)
+	 */
+	public static SerializedBatch serialize(int schemaid, List<? extends GenericRecord> records) throws IOException {
+		return instance.encode(schemaid, records);
+	}
+
+	/**
+	 * @param schemaids the id of the Kafka schema for each record
+	 * @param records the records to serialize
+	 * @return the arena with the offset and length of each message
+	 * @throws IOException in case a record cannot be serialized
+	 * @see #encode(int[], List)
+	 */
+	public static SerializedBatch serialize(int[] schemaids, List<? extends GenericRecord> records) throws IOException {
+		return instance.encode(schemaids, records);
+	}
+
+	private SerializedBatch encode(int schemaid, int[] schemaids, List<? extends GenericRecord> records) throws IOException {
+		Context context = contexts.get();
+		int count = records.size();
+		int[] offsets = new int[count];
+		int[] lengths = new int[count];
+		/*
+		 * The arena is presized based on the average record size of the previous batches of this thread,
+		 * or the typical size of the schema for the first batch
+		 */
+		long averagesize = context.averagesize;
+		if (averagesize == 0 && count > 0) {
+			averagesize = AvroSizeEstimate.FRAME_HEADER_SIZE + AvroSizeEstimate.getEstimate(records.get(0).getSchema()).getTypical();
+		}
+		FrameOutputStream arena = new FrameOutputStream((int) Math.max(Math.min(count * averagesize, MAX_ARENA_PRESIZE), 16));
+		BinaryEncoder encoder = context.getBatchEncoder(arena);
+		Schema currentschema = null;
+		DatumWriter<GenericRecord> writer = null;
+		try {
+			int i = 0;
+			for (GenericRecord data : records) {
+				Schema schema = data.getSchema();
+				if (schema != currentschema) {
+					writer = getWriter(schema);
+					currentschema = schema;
+				}
+				checkSize(data);
+				int start = arena.size();
+				arena.writeHeader(schemaids == null ? schemaid : schemaids[i]);
+				writer.write(data, encoder);
+				encoder.flush();
+				offsets[i] = start;
+				lengths[i] = arena.size() - start;
+				i++;
+			}
+		} catch (Exception e) {
+			if (e instanceof IOException) {
+				throw (IOException) e;
+			} else {
+				throw new IOException(e);
+			}
+		}
+		if (count > 0) {
+			context.averagesize = Math.max(arena.size() / count, 16);
+		}
+		return new SerializedBatch(arena.buffer(), arena.size(), offsets, lengths);
+	}
+
+	/**
+	 * @param data the record to be written
+	 * @throws MessageTooLargeException in case the resulting Kafka message would exceed the max message size
+	 */
+	private void checkSize(GenericRecord data) throws MessageTooLargeException {
+		if (maxmessagesize > 0) {
+			long limit = maxmessagesize - AvroSizeEstimate.FRAME_HEADER_SIZE;
+			if (!AvroSizeEstimate.getEstimate(data.getSchema()).fitsInto(limit)) {
+				long size = AvroSizeEstimate.getSize(data);
+				if (size > limit) {
+					throw new MessageTooLargeException(size + AvroSizeEstimate.FRAME_HEADER_SIZE, maxmessagesize);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param schema of the records to be written
+	 * @return the cached writer for this schema
+	 */
+	protected DatumWriter<GenericRecord> getWriter(Schema schema) {
+		if (compiled) {
+			DatumWriter<GenericRecord> writer = compiledwriters.get(schema);
+			if (writer == null) {
+				writer = compiledwriters.computeIfAbsent(schema, CompiledDatumWriter::get);
+			}
+			return writer;
+		} else {
+			DatumWriter<GenericRecord> writer = writers.get(schema);
+			if (writer == null) {
+				writer = writers.computeIfAbsent(schema, GenericDatumWriter::new);
+			}
+			return writer;
+		}
+	}
+
+	/**
+	 * Writes the Avro body of the record and flushes the encoder.
+	 *
+	 * @param data the record to write
+	 * @param encoder the encoder to write to
+	 * @throws IOException in case the record cannot be serialized
+	 */
+	void write(GenericRecord data, BinaryEncoder encoder) throws IOException {
+		getWriter(data.getSchema()).write(data, encoder);
+		encoder.flush();
+	}
+
+	/**
+	 * The per thread state, reused for every record serialized by this thread.
+	 */
+	private static class Context {
+		private FrameOutputStream out = new FrameOutputStream(INITIAL_BUFFER_SIZE);
+		private BinaryEncoder encoder;
+		private final ByteBufferOutputStream bufferout = new ByteBufferOutputStream();
+		private BinaryEncoder directencoder;
+		private BinaryEncoder batchencoder;
+		private int averagesize = 0;
+
+		/*
+		 * Reconfiguring the encoder flushes leftovers of a failed previous call into the stream,
+		 * hence it must be called before the stream is reset.
+		 */
+		private BinaryEncoder getEncoder(FrameOutputStream target) {
+			encoder = encoderFactory.binaryEncoder(target, encoder);
+			return encoder;
+		}
+
+		/*
+		 * The unbuffered encoder writes straight into the caller's ByteBuffer, hence has no leftovers to take care of.
+		 */
+		private BinaryEncoder getDirectEncoder(ByteBufferOutputStream target) {
+			directencoder = encoderFactory.directBinaryEncoder(target, directencoder);
+			return directencoder;
+		}
+
+		/*
+		 * Every batch gets a new arena, leftovers of a failed batch go into the previous arena which was discarded.
+		 */
+		private BinaryEncoder getBatchEncoder(FrameOutputStream arena) {
+			batchencoder = encoderFactory.binaryEncoder(arena, batchencoder);
+			return batchencoder;
+		}
+
+		private void release() {
+			if (out.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+				out = new FrameOutputStream(INITIAL_BUFFER_SIZE);
+			}
 		}
 	}
 
@@ -0,0 +1,407 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.LogicalType;
+import org.apache.avro.LogicalTypes.Decimal;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericFixed;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.util.Utf8;
+
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroNVarchar;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroSTGeometry;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroSTPoint;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroUri;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroVarchar;
+import io.rtdi.bigdata.kafka.avro.datatypes.LogicalTypeWithLength;
+
+/**
+ * The size in bytes the Avro binary encoding of a schema requires, derived from the schema alone.
+ * Thanks to the logical types many fields have an upper bound, e.g. a VARCHAR(10) cannot be larger than 11 bytes.
+ * The estimate is computed once per schema and cached.
+ *
+ * The minimum assumes all nullable fields are null, all strings and arrays are empty.
+ * The typical size assumes all fields have a value, bounded strings are half filled, unbounded strings and binaries hold 16 bytes
+ * and arrays and maps are empty.
+ * The maximum is {@link #UNBOUNDED} in case the schema contains a string, bytes, array or map without an upper limit.
+ * It assumes the values adhere to the logical types, e.g. were set via {@link io.rtdi.bigdata.kafka.avro.datatypes.AvroType#putRecordValue(GenericRecord, String, Object)}
+ * which truncates strings to their length.
+ *
+ * For a specific record {@link #getSize(GenericRecord)} returns the exact size without actually encoding the record.
+ *
+ */
+public class AvroSizeEstimate {
+	/**
+	 * The maximum size in case there is no upper limit
+	 */
+	public static final long UNBOUNDED = -1L;
+	/**
+	 * The size of the Kafka frame header, the magic byte plus the schema id
+	 */
+	public static final int FRAME_HEADER_SIZE = 1 + Integer.BYTES;
+	private static final int TYPICAL_UNBOUNDED_SIZE = 16;
+	private static final BoundedCache<Schema, AvroSizeEstimate> cache = new BoundedCache<>(BoundedCache.SCHEMA_CACHE_SIZE);
+
+	private final long minimum;
+	private final long typical;
+	private final long maximum;
+
+	private AvroSizeEstimate(long minimum, long typical, long maximum) {
+		this.minimum = minimum;
+		this.typical = typical;
+		this.maximum = maximum;
+	}
+
+	/**
+	 * @param schema the Avro schema
+	 * @return the cached size estimate for this schema
+	 */
+	public static AvroSizeEstimate getEstimate(Schema schema) {
+		AvroSizeEstimate estimate = cache.get(schema);
+		if (estimate == null) {
+			estimate = cache.putIfAbsent(schema, estimate(schema, new HashSet<>()));
+		}
+		return estimate;
+	}
+
+	/**
+	 * @return the smallest possible encoded size in bytes
+	 */
+	public long getMinimum() {
+		return minimum;
+	}
+
+	/**
+	 * @return the encoded size in bytes of a typical record
+	 */
+	public long getTypical() {
+		return typical;
+	}
+
+	/**
+	 * @return the largest possible encoded size in bytes or {@link #UNBOUNDED}
+	 */
+	public long getMaximum() {
+		return maximum;
+	}
+
+	/**
+	 * @return true if the schema has an upper size limit
+	 */
+	public boolean isBounded() {
+		return maximum != UNBOUNDED;
+	}
+
+	/**
+	 * @param limit a size in bytes, e.g. Kafka's max.message.bytes minus the frame header
+	 * @return true if no record of this schema can ever be larger than the limit
+	 */
+	public boolean fitsInto(long limit) {
+		return maximum != UNBOUNDED && maximum <= limit;
+	}
+
+	@Override
+	public String toString() {
+		return "AvroSizeEstimate: min=" + minimum + ", typical=" + typical + ", max=" + (maximum == UNBOUNDED ? "unbounded" : maximum);
+	}
+
+	/**
+	 * The exact number of bytes the Avro binary encoding of this record requires, without the Kafka frame header.
+	 *
+	 * @param record the record to measure
+	 * @return the number of bytes the DatumWriter will produce
+	 * @throws AvroRuntimeException in case the record content does not match the schema
+	 */
+	public static long getSize(GenericRecord record) {
+		return sizeOf(record.getSchema(), record);
+	}
+
+	/**
+	 * The exact size of the Kafka message for this record, to be compared with Kafka's max.message.bytes
+	 * before the record is serialized.
+	 *
+	 * @param record the record to measure
+	 * @return the number of bytes the serializer will produce including the frame header
+	 * @throws AvroRuntimeException in case the record content does not match the schema
+	 */
+	public static long getFrameSize(GenericRecord record) {
+		return FRAME_HEADER_SIZE + sizeOf(record.getSchema(), record);
+	}
+
+	/**
+	 * The exact number of bytes the Avro binary encoding of this value requires.
+	 *
+	 * @param schema of the value
+	 * @param datum the value as stored in a GenericRecord
+	 * @return the number of bytes the DatumWriter will produce
+	 * @throws AvroRuntimeException in case the value does not match the schema
+	 */
+	public static long sizeOf(Schema schema, Object datum) {
+		switch (schema.getType()) {
+		case NULL:
+			return 0;
+		case BOOLEAN:
+			return 1;
+		case INT:
+			return intSize(((Number) datum).intValue());
+		case LONG:
+			return longSize(((Number) datum).longValue());
+		case FLOAT:
+			return 4;
+		case DOUBLE:
+			return 8;
+		case STRING:
+			if (datum instanceof Utf8) {
+				int l = ((Utf8) datum).getByteLength();
+				return intSize(l) + l;
+			} else {
+				int l = utf8Length(datum.toString());
+				return intSize(l) + l;
+			}
+		case BYTES:
+			if (datum instanceof ByteBuffer) {
+				int l = ((ByteBuffer) datum).remaining();
+				return intSize(l) + l;
+			} else {
+				int l = ((byte[]) datum).length;
+				return intSize(l) + l;
+			}
+		case FIXED:
+			return schema.getFixedSize();
+		case ENUM:
+			return intSize(schema.getEnumOrdinal(datum.toString()));
+		case ARRAY: {
+			Collection<?> c = (Collection<?>) datum;
+			if (c.isEmpty()) {
+				return 1;
+			} else {
+				long size = longSize(c.size()) + 1;
+				Schema itemschema = schema.getElementType();
+				for (Object item : c) {
+					size += sizeOf(itemschema, item);
+				}
+				return size;
+			}
+		}
+		case MAP: {
+			Map<?, ?> m = (Map<?, ?>) datum;
+			if (m.isEmpty()) {
+				return 1;
+			} else {
+				long size = longSize(m.size()) + 1;
+				Schema valueschema = schema.getValueType();
+				for (Entry<?, ?> e : m.entrySet()) {
+					Object key = e.getKey();
+					if (key instanceof Utf8) {
+						int l = ((Utf8) key).getByteLength();
+						size += intSize(l) + l;
+					} else {
+						int l = utf8Length(key.toString());
+						size += intSize(l) + l;
+					}
+					size += sizeOf(valueschema, e.getValue());
+				}
+				return size;
+			}
+		}
+		case UNION: {
+			int index = GenericData.get().resolveUnion(schema, datum);
+			return intSize(index) + sizeOf(schema.getTypes().get(index), datum);
+		}
+		case RECORD: {
+			IndexedRecord r = (IndexedRecord) datum;
+			long size = 0;
+			for (Field f : schema.getFields()) {
+				Object v = r.get(f.pos());
+				try {
+					size += sizeOf(f.schema(), v);
+				} catch (NullPointerException | ClassCastException e) {
+					throw new AvroRuntimeException("The value of field \"" + f.name() + "\" does not match the schema \"" + f.schema() + "\"");
+				}
+			}
+			return size;
+		}
+		default:
+			throw new AvroRuntimeException("Unknown schema type \"" + schema.getType() + "\"");
+		}
+	}
+
+	/**
+	 * @param value an int value
+	 * @return the number of bytes of the zig-zag varint encoding
+	 */
+	static int intSize(int value) {
+		int n = (value << 1) ^ (value >> 31);
+		return varintSize(n & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * @param value a long value
+	 * @return the number of bytes of the zig-zag varint encoding
+	 */
+	static int longSize(long value) {
+		return varintSize((value << 1) ^ (value >> 63));
+	}
+
+	private static int varintSize(long unsigned) {
+		int bits = 64 - Long.numberOfLeadingZeros(unsigned | 1L);
+		return (bits + 6) / 7;
+	}
+
+	/**
+	 * Same result as text.getBytes(UTF_8).length but without the allocation.
+	 *
+	 * @param text any string
+	 * @return the length in bytes of the UTF-8 representation
+	 */
+	static int utf8Length(String text) {
+		int length = text.length();
+		int bytes = length;
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c >= 0x80) {
+				if (c < 0x800) {
+					bytes++;
+				} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+					// surrogate pair: 2 chars become 4 bytes
+					bytes += 2;
+					i++;
+				} else if (Character.isSurrogate(c)) {
+					// an unpaired surrogate is replaced by a single '?'
+				} else {
+					bytes += 2;
+				}
+			}
+		}
+		return bytes;
+	}
+
+	private static AvroSizeEstimate estimate(Schema schema, Set<String> visiting) {
+		AvroSizeEstimate cached = cache.get(schema);
+		if (cached != null) {
+			return cached;
+		}
+		LogicalType l = schema.getLogicalType();
+		switch (schema.getType()) {
+		case NULL:
+			return new AvroSizeEstimate(0, 0, 0);
+		case BOOLEAN:
+			return new AvroSizeEstimate(1, 1, 1);
+		case INT:
+			if (l != null && "date".equals(l.getName())) {
+				return new AvroSizeEstimate(1, 3, 5);
+			} else if (l != null && "time-millis".equals(l.getName())) {
+				return new AvroSizeEstimate(1, 4, 5);
+			} else {
+				return new AvroSizeEstimate(1, 2, 5);
+			}
+		case LONG:
+			if (l != null && (l.getName().endsWith("-millis"))) {
+				return new AvroSizeEstimate(1, 6, 10);
+			} else if (l != null && (l.getName().endsWith("-micros"))) {
+				return new AvroSizeEstimate(1, 8, 10);
+			} else {
+				return new AvroSizeEstimate(1, 4, 10);
+			}
+		case FLOAT:
+			return new AvroSizeEstimate(4, 4, 4);
+		case DOUBLE:
+			return new AvroSizeEstimate(8, 8, 8);
+		case STRING:
+			if (l instanceof AvroVarchar) {
+				int length = ((LogicalTypeWithLength) l).getLength();
+				return new AvroSizeEstimate(1, intSize(length / 2) + length / 2, intSize(length) + length);
+			} else if (l instanceof AvroNVarchar) {
+				// the length is in code points, each one is at most 4 bytes in UTF-8
+				int length = ((LogicalTypeWithLength) l).getLength();
+				return new AvroSizeEstimate(1, intSize(length / 2) + length / 2, intSize(length * 4) + length * 4L);
+			} else if (l != null && "uuid".equals(l.getName())) {
+				return new AvroSizeEstimate(1, 37, UNBOUNDED);
+			} else if (l instanceof AvroUri || l instanceof AvroSTPoint || l instanceof AvroSTGeometry) {
+				return new AvroSizeEstimate(1, 1 + 2 * TYPICAL_UNBOUNDED_SIZE, UNBOUNDED);
+			} else {
+				return new AvroSizeEstimate(1, 1 + TYPICAL_UNBOUNDED_SIZE, UNBOUNDED);
+			}
+		case BYTES:
+			if (l instanceof Decimal) {
+				int precision = ((Decimal) l).getPrecision();
+				int maxbytes = BigInteger.TEN.pow(precision).bitLength() / 8 + 1;
+				return new AvroSizeEstimate(2, 1 + (maxbytes + 1) / 2, intSize(maxbytes) + maxbytes);
+			} else {
+				return new AvroSizeEstimate(1, 1 + TYPICAL_UNBOUNDED_SIZE, UNBOUNDED);
+			}
+		case FIXED:
+			return new AvroSizeEstimate(schema.getFixedSize(), schema.getFixedSize(), schema.getFixedSize());
+		case ENUM:
+			return new AvroSizeEstimate(1, 1, intSize(Math.max(schema.getEnumSymbols().size() - 1, 0)));
+		case ARRAY:
+			estimate(schema.getElementType(), visiting);
+			return new AvroSizeEstimate(1, 1, UNBOUNDED);
+		case MAP:
+			estimate(schema.getValueType(), visiting);
+			return new AvroSizeEstimate(1, 1, UNBOUNDED);
+		case UNION: {
+			long min = Long.MAX_VALUE;
+			long typical = 0;
+			long max = 0;
+			int index = 0;
+			for (Schema branch : schema.getTypes()) {
+				AvroSizeEstimate e = estimate(branch, visiting);
+				int indexsize = intSize(index);
+				min = Math.min(min, indexsize + e.minimum);
+				typical = Math.max(typical, indexsize + e.typical);
+				// only one branch is encoded, hence the largest branch is the maximum
+				if (max != UNBOUNDED) {
+					max = e.maximum == UNBOUNDED ? UNBOUNDED : Math.max(max, indexsize + e.maximum);
+				}
+				index++;
+			}
+			return new AvroSizeEstimate(min, typical, max);
+		}
+		case RECORD: {
+			String name = schema.getFullName();
+			if (!visiting.add(name)) {
+				// a recursive schema, the record can be nested any number of times
+				return new AvroSizeEstimate(0, 0, UNBOUNDED);
+			}
+			long min = 0;
+			long typical = 0;
+			long max = 0;
+			for (Field f : schema.getFields()) {
+				AvroSizeEstimate e = estimate(f.schema(), visiting);
+				min += e.minimum;
+				typical += e.typical;
+				max = add(max, e.maximum);
+			}
+			visiting.remove(name);
+			AvroSizeEstimate e = new AvroSizeEstimate(min, typical, max);
+			if (visiting.isEmpty()) {
+				cache.putIfAbsent(schema, e);
+			}
+			return e;
+		}
+		default:
+			throw new AvroRuntimeException("Unknown schema type \"" + schema.getType() + "\"");
+		}
+	}
+
+	private static long add(long a, long b) {
+		if (a == UNBOUNDED || b == UNBOUNDED) {
+			return UNBOUNDED;
+		} else {
+			return a + b;
+		}
+	}
+
+}
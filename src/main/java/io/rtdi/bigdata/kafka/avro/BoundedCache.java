@@ -0,0 +1,184 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread safe cache with a maximum number of entries, lookups do not take any lock.
+ *
+ * When full, an entry not used recently is evicted, an approximation of least recently used (second chance): every lookup marks its entry
+ * as used and the eviction walks the entries from a changing start, clearing the marks, and removes the first entry not marked.
+ * New entries are not marked, hence entries read once only are evicted before the ones in use.
+ * The mark is written only if it is not set already, so entries read by many threads concurrently stay in all their caches.
+ * Values are computed outside of the cache, hence concurrent misses for the same key might compute the value twice,
+ * the first one put wins.
+ *
+ * @param <K> key
+ * @param <V> value
+ */
+public final class BoundedCache<K, V> {
+	/**
+	 * The size of the static caches holding a compiled plan per schema
+	 */
+	public static final int SCHEMA_CACHE_SIZE = 1000;
+	private static final int EVICTION_OFFSETS = 64;
+	private final int maxsize;
+	private final ConcurrentHashMap<K, Node<V>> map;
+	private final LongAdder evictions = new LongAdder();
+	private int hand = 0;
+
+	/**
+	 * @param maxsize the maximum number of entries, at least 1
+	 */
+	public BoundedCache(int maxsize) {
+		if (maxsize < 1) {
+			throw new IllegalArgumentException("The cache size must be at least 1");
+		}
+		this.maxsize = maxsize;
+		this.map = new ConcurrentHashMap<>(Math.min(maxsize, 1024) * 4 / 3 + 1);
+	}
+
+	/**
+	 * @param key the key
+	 * @return the cached value or null
+	 */
+	public V get(K key) {
+		Node<V> node = map.get(key);
+		if (node == null) {
+			return null;
+		} else {
+			if (!node.used) {
+				node.used = true;
+			}
+			return node.value;
+		}
+	}
+
+	/**
+	 * @param key the key
+	 * @param value the value to add unless another thread did add one already
+	 * @return the cached value
+	 */
+	public V putIfAbsent(K key, V value) {
+		Node<V> existing = map.putIfAbsent(key, new Node<>(value));
+		if (existing != null) {
+			return existing.value;
+		} else {
+			evict(key);
+			return value;
+		}
+	}
+
+	/**
+	 * @param key the key
+	 * @param value the value to add or to replace the current value with
+	 */
+	public void put(K key, V value) {
+		if (map.put(key, new Node<>(value)) == null) {
+			evict(key);
+		}
+	}
+
+	/**
+	 * @param key the key
+	 * @param value the value expected to be cached for the key
+	 * @return true if the entry was removed, false if the key has a different value meanwhile
+	 */
+	public boolean remove(K key, V value) {
+		Node<V> node = map.get(key);
+		return node != null && node.value == value && map.remove(key, node);
+	}
+
+	/**
+	 * Remove all entries.
+	 */
+	public void clear() {
+		map.clear();
+	}
+
+	/**
+	 * @return the number of entries
+	 */
+	public int size() {
+		return map.size();
+	}
+
+	/**
+	 * @return the maximum number of entries
+	 */
+	public int getMaxSize() {
+		return maxsize;
+	}
+
+	/**
+	 * @return the number of entries removed because the cache was full
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Called after adding an entry, evictions are rare and serialized, lookups are not affected by the lock.
+	 *
+	 * @param added the key just added, which is never evicted
+	 */
+	private void evict(K added) {
+		if (map.size() > maxsize) {
+			synchronized (this) {
+				while (map.size() > maxsize) {
+					Iterator<Map.Entry<K, Node<V>>> iter = map.entrySet().iterator();
+					// start at a different place every time, else the same few entries would be sampled
+					for (int skip = hand++ & (EVICTION_OFFSETS - 1); skip > 0 && iter.hasNext(); skip--) {
+						iter.next();
+					}
+					if (!iter.hasNext()) {
+						iter = map.entrySet().iterator();
+					}
+					Map.Entry<K, Node<V>> victim = null;
+					Map.Entry<K, Node<V>> fallback = null;
+					boolean wrapped = false;
+					while (victim == null) {
+						if (!iter.hasNext()) {
+							if (wrapped) {
+								break;
+							}
+							wrapped = true;
+							iter = map.entrySet().iterator();
+						} else {
+							Map.Entry<K, Node<V>> entry = iter.next();
+							if (entry.getKey().equals(added)) {
+								// never evict the entry just added
+							} else if (entry.getValue().used) {
+								entry.getValue().used = false;
+								fallback = entry;
+							} else {
+								victim = entry;
+							}
+						}
+					}
+					if (victim == null) {
+						victim = fallback;
+					}
+					if (victim != null && map.remove(victim.getKey(), victim.getValue())) {
+						evictions.increment();
+					}
+				}
+			}
+		}
+	}
+
+	private static final class Node<V> {
+		private final V value;
+		/*
+		 * Not volatile, a lost update only makes the eviction less accurate
+		 */
+		private boolean used = false;
+
+		private Node(V value) {
+			this.value = value;
+		}
+	}
+
+}
@@ -0,0 +1,294 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.util.Utf8;
+
+import io.rtdi.bigdata.kafka.avro.datatypes.AsciiScanner;
+
+/**
+ * An unbuffered Avro binary decoder over a section of a byte[] which exposes its current position.
+ * That allows to remember where a value starts and to jump back to it later, e.g. to decode fields on demand
+ * or to copy the raw bytes of a value.
+ *
+ */
+class ByteArrayDecoder extends Decoder {
+	private byte[] data;
+	private int pos;
+	private int limit;
+
+	ByteArrayDecoder() {
+	}
+
+	ByteArrayDecoder(byte[] data, int offset, int length) {
+		configure(data, offset, length);
+	}
+
+	/**
+	 * @param data the array to read from
+	 * @param offset the first byte to read
+	 * @param length the number of bytes available
+	 * @return this decoder
+	 */
+	ByteArrayDecoder configure(byte[] data, int offset, int length) {
+		this.data = data;
+		this.pos = offset;
+		this.limit = offset + length;
+		return this;
+	}
+
+	/**
+	 * @return the index of the next byte to be read
+	 */
+	int position() {
+		return pos;
+	}
+
+	/**
+	 * @param position the index of the next byte to be read, between the offset and the limit
+	 */
+	void position(int position) {
+		this.pos = position;
+	}
+
+	/**
+	 * @return the index after the last byte
+	 */
+	int limit() {
+		return limit;
+	}
+
+	/**
+	 * @return the underlying array
+	 */
+	byte[] array() {
+		return data;
+	}
+
+	/**
+	 * @return true if all bytes have been read
+	 */
+	boolean isEnd() {
+		return pos >= limit;
+	}
+
+	private void ensure(long n) throws EOFException {
+		if (n < 0 || n > limit - pos) {
+			throw new EOFException("The Avro data ends before all values have been read");
+		}
+	}
+
+	@Override
+	public void readNull() {
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		ensure(1);
+		return data[pos++] == 1;
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		int n = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			ensure(1);
+			int b = data[pos++] & 0xFF;
+			n |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return (n >>> 1) ^ -(n & 1);
+			}
+		}
+		throw new AvroRuntimeException("Invalid int encoding");
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		long n = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			ensure(1);
+			long b = data[pos++] & 0xFF;
+			n |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return (n >>> 1) ^ -(n & 1);
+			}
+		}
+		throw new AvroRuntimeException("Invalid long encoding");
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		ensure(4);
+		int bits = (data[pos] & 0xFF) | ((data[pos + 1] & 0xFF) << 8) | ((data[pos + 2] & 0xFF) << 16) | ((data[pos + 3] & 0xFF) << 24);
+		pos += 4;
+		return Float.intBitsToFloat(bits);
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		ensure(8);
+		long bits = 0;
+		for (int i = 7; i >= 0; i--) {
+			bits = (bits << 8) | (data[pos + i] & 0xFF);
+		}
+		pos += 8;
+		return Double.longBitsToDouble(bits);
+	}
+
+	/**
+	 * Reads the length prefix of a string or bytes value and checks it against the remaining data.
+	 *
+	 * @return the length in bytes
+	 * @throws IOException if the value is longer than the remaining data
+	 */
+	int readLength() throws IOException {
+		long length = readLong();
+		ensure(length);
+		return (int) length;
+	}
+
+	@Override
+	public Utf8 readString(Utf8 old) throws IOException {
+		int length = readLength();
+		Utf8 result = old != null ? old : new Utf8();
+		result.setByteLength(length);
+		System.arraycopy(data, pos, result.getBytes(), 0, length);
+		pos += length;
+		return result;
+	}
+
+	@Override
+	public String readString() throws IOException {
+		int length = readLength();
+		String result = new String(data, pos, length, StandardCharsets.UTF_8);
+		pos += length;
+		return result;
+	}
+
+	/**
+	 * Reads a string of an ASCII data type, e.g. VARCHAR, by copying the bytes into the String directly.
+	 *
+	 * @return the String
+	 * @throws IOException if the data ends before the string
+	 * @see AsciiScanner#decode(byte[], int, int)
+	 */
+	String readAsciiString() throws IOException {
+		int length = readLength();
+		String result = AsciiScanner.decode(data, pos, length);
+		pos += length;
+		return result;
+	}
+
+	@Override
+	public void skipString() throws IOException {
+		int length = readLength();
+		pos += length;
+	}
+
+	@Override
+	public ByteBuffer readBytes(ByteBuffer old) throws IOException {
+		int length = readLength();
+		ByteBuffer result;
+		if (old != null && length <= old.capacity()) {
+			result = old;
+			result.clear();
+		} else {
+			result = ByteBuffer.allocate(length);
+		}
+		result.put(data, pos, length);
+		result.flip();
+		pos += length;
+		return result;
+	}
+
+	@Override
+	public void skipBytes() throws IOException {
+		int length = readLength();
+		pos += length;
+	}
+
+	@Override
+	public void readFixed(byte[] bytes, int start, int length) throws IOException {
+		ensure(length);
+		System.arraycopy(data, pos, bytes, start, length);
+		pos += length;
+	}
+
+	@Override
+	public void skipFixed(int length) throws IOException {
+		ensure(length);
+		pos += length;
+	}
+
+	@Override
+	public int readEnum() throws IOException {
+		return readInt();
+	}
+
+	@Override
+	public long readArrayStart() throws IOException {
+		return readItemCount();
+	}
+
+	@Override
+	public long arrayNext() throws IOException {
+		return readItemCount();
+	}
+
+	@Override
+	public long skipArray() throws IOException {
+		return skipItems();
+	}
+
+	@Override
+	public long readMapStart() throws IOException {
+		return readItemCount();
+	}
+
+	@Override
+	public long mapNext() throws IOException {
+		return readItemCount();
+	}
+
+	@Override
+	public long skipMap() throws IOException {
+		return skipItems();
+	}
+
+	@Override
+	public int readIndex() throws IOException {
+		return readInt();
+	}
+
+	/**
+	 * A negative block count is followed by the block size in bytes, which is not needed when reading the items.
+	 */
+	private long readItemCount() throws IOException {
+		long count = readLong();
+		if (count < 0) {
+			readLong();
+			count = -count;
+		}
+		return count;
+	}
+
+	/**
+	 * Blocks with a byte size are skipped as a whole, for all others the count of items to be skipped one by one is returned.
+	 */
+	private long skipItems() throws IOException {
+		long count = readLong();
+		while (count < 0) {
+			long bytes = readLong();
+			ensure(bytes);
+			pos += (int) bytes;
+			count = readLong();
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,64 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An input stream reading a section of a heap or direct ByteBuffer using absolute gets,
+ * hence the position of the buffer is never changed. The stream is reused for every message.
+ *
+ */
+class ByteBufferInputStream extends InputStream {
+	private ByteBuffer source;
+	private int index;
+	private int end;
+
+	/**
+	 * Bind the stream to a new section of a buffer.
+	 *
+	 * @param source the buffer to read from or null to release the previous buffer
+	 * @param start the absolute index of the first byte to read
+	 * @param end the absolute index after the last byte
+	 */
+	void reset(ByteBuffer source, int start, int end) {
+		this.source = source;
+		this.index = start;
+		this.end = end;
+	}
+
+	@Override
+	public int read() {
+		if (index < end) {
+			return source.get(index++) & 0xFF;
+		} else {
+			return -1;
+		}
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0) {
+			return 0;
+		} else if (index >= end) {
+			return -1;
+		} else {
+			int n = Math.min(len, end - index);
+			source.get(index, b, off, n);
+			index += n;
+			return n;
+		}
+	}
+
+	@Override
+	public long skip(long n) {
+		long k = Math.max(Math.min(n, end - index), 0);
+		index += (int) k;
+		return k;
+	}
+
+	@Override
+	public int available() {
+		return end - index;
+	}
+
+}
@@ -0,0 +1,108 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An output stream writing into a caller supplied heap or direct ByteBuffer, starting at its current position.
+ * When the buffer runs out of space the stream does not fail but continues to count the bytes, so the caller
+ * learns how much space would have been needed.
+ *
+ */
+class ByteBufferOutputStream extends OutputStream {
+	private ByteBuffer target;
+	private int start;
+	private int count;
+	private boolean overflow;
+
+	/**
+	 * Bind the stream to a new target buffer.
+	 *
+	 * @param target the buffer to write into or null to discard all data
+	 */
+	void reset(ByteBuffer target) {
+		this.target = target;
+		this.count = 0;
+		if (target != null) {
+			this.start = target.position();
+			this.overflow = false;
+		} else {
+			this.start = 0;
+			this.overflow = true;
+		}
+	}
+
+	@Override
+	public void write(int b) {
+		if (!overflow) {
+			if (target.hasRemaining()) {
+				target.put((byte) b);
+			} else {
+				overflow = true;
+			}
+		}
+		count++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		if (!overflow) {
+			if (target.remaining() >= len) {
+				target.put(b, off, len);
+			} else {
+				overflow = true;
+			}
+		}
+		count += len;
+	}
+
+	/**
+	 * Writes the magic byte and the schema id in big endian order, regardless of the buffer's byte order setting.
+	 *
+	 * @param schemaid the id of the Kafka schema
+	 */
+	void writeHeader(int schemaid) {
+		if (!overflow && target.remaining() >= 1 + Integer.BYTES) {
+			target.put(AvroUtils.MAGIC_BYTE);
+			target.put((byte) (schemaid >>> 24));
+			target.put((byte) (schemaid >>> 16));
+			target.put((byte) (schemaid >>> 8));
+			target.put((byte) schemaid);
+		} else {
+			overflow = true;
+		}
+		count += 1 + Integer.BYTES;
+	}
+
+	/**
+	 * @return true if the target buffer was too small
+	 */
+	boolean isOverflow() {
+		return overflow;
+	}
+
+	/**
+	 * @return the number of bytes written, or that would have been written in case of an overflow
+	 */
+	int size() {
+		return count;
+	}
+
+	/**
+	 * Undo all writes by setting the position of the target buffer back to where it was at {@link #reset(ByteBuffer)}.
+	 */
+	void rewind() {
+		if (target != null) {
+			target.position(start);
+		}
+	}
+
+	/**
+	 * Release the reference to the caller's buffer.
+	 */
+	void detach() {
+		target = null;
+		overflow = true;
+	}
+
+}
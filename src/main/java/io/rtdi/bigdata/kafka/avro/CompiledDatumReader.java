@@ -0,0 +1,299 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.avro.AvroTypeException;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.Schema.Type;
+import org.apache.avro.generic.GenericArray;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericFixed;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.util.Utf8;
+
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroDatatypeClass;
+import io.rtdi.bigdata.kafka.avro.datatypes.IAvroDatatype;
+
+/**
+ * A DatumReader producing the same GenericRecord as a GenericDatumReader with identical writer and reader schema.
+ * Instead of walking the schema tree and switching on the type for every field of every record,
+ * the schema is compiled once into a tree of readers, each specialized for one field.
+ *
+ * Strings are returned as Utf8 unless the schema has the avro.java.string=String property, records as GenericData.Record,
+ * arrays as GenericData.Array, maps as HashMap, enums as GenericData.EnumSymbol and fixed as GenericData.Fixed.
+ *
+ * Readers are immutable and thread safe, use {@link #get(Schema)} to get the cached reader for a schema.
+ *
+ */
+public class CompiledDatumReader implements DatumReader<GenericRecord> {
+	/**
+	 * The string class depends on schema properties, which are not part of the fingerprint, hence the cache is keyed by the schema
+	 */
+	private static final Map<Schema, CompiledDatumReader> cache = new ConcurrentHashMap<>();
+	private final Schema schema;
+	private final ValueReader root;
+
+	/**
+	 * Compile a new reader for the schema, usually {@link #get(Schema)} should be used instead.
+	 *
+	 * @param schema the record schema used to write and read the data
+	 */
+	public CompiledDatumReader(Schema schema) {
+		this.schema = schema;
+		this.root = compile(schema, new HashMap<>());
+	}
+
+	/**
+	 * @param schema the record schema used to write and read the data
+	 * @return the cached reader for this schema
+	 */
+	public static CompiledDatumReader get(Schema schema) {
+		CompiledDatumReader reader = cache.get(schema);
+		if (reader == null) {
+			reader = cache.computeIfAbsent(schema, CompiledDatumReader::new);
+		}
+		return reader;
+	}
+
+	/**
+	 * @return the schema this reader was compiled for
+	 */
+	public Schema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * A compiled reader is bound to its schema.
+	 *
+	 * @throws UnsupportedOperationException if the schema is a different one
+	 */
+	@Override
+	public void setSchema(Schema schema) {
+		if (!this.schema.equals(schema)) {
+			throw new UnsupportedOperationException("A CompiledDatumReader cannot change its schema, use CompiledDatumReader.get(schema) instead");
+		}
+	}
+
+	/**
+	 * @param reuse a record of the same schema to be filled with the new values or null
+	 */
+	@Override
+	public GenericRecord read(GenericRecord reuse, Decoder in) throws IOException {
+		return (GenericRecord) root.read(reuse, in);
+	}
+
+	/**
+	 * @param schema any schema
+	 * @return a reader for values of this schema
+	 */
+	static ValueReader compile(Schema schema) {
+		return compile(schema, new HashMap<>());
+	}
+
+	private static ValueReader compile(Schema schema, Map<String, RecordReader> records) {
+		switch (schema.getType()) {
+		case NULL:
+			return (old, in) -> {
+				in.readNull();
+				return null;
+			};
+		case BOOLEAN:
+			return (old, in) -> in.readBoolean();
+		case INT:
+			return (old, in) -> in.readInt();
+		case LONG:
+			return (old, in) -> in.readLong();
+		case FLOAT:
+			return (old, in) -> in.readFloat();
+		case DOUBLE:
+			return (old, in) -> in.readDouble();
+		case STRING:
+			return compileString(schema);
+		case BYTES:
+			return (old, in) -> in.readBytes(old instanceof ByteBuffer ? (ByteBuffer) old : null);
+		case FIXED: {
+			int size = schema.getFixedSize();
+			return (old, in) -> {
+				GenericFixed fixed;
+				if (old instanceof GenericFixed && ((GenericFixed) old).bytes().length == size) {
+					fixed = (GenericFixed) old;
+				} else {
+					fixed = new GenericData.Fixed(schema);
+				}
+				in.readFixed(fixed.bytes(), 0, size);
+				return fixed;
+			};
+		}
+		case ENUM: {
+			// the symbols are immutable, hence can be shared by all records
+			List<String> symbols = schema.getEnumSymbols();
+			GenericData.EnumSymbol[] values = new GenericData.EnumSymbol[symbols.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = new GenericData.EnumSymbol(schema, symbols.get(i));
+			}
+			return (old, in) -> values[in.readEnum()];
+		}
+		case ARRAY:
+			return arrayReader(schema, compile(schema.getElementType(), records));
+		case MAP:
+			return mapReader(schema, compile(schema.getValueType(), records));
+		case UNION: {
+			List<Schema> types = schema.getTypes();
+			ValueReader[] branches = new ValueReader[types.size()];
+			for (int i = 0; i < branches.length; i++) {
+				branches[i] = compile(types.get(i), records);
+			}
+			return (old, in) -> branches[in.readIndex()].read(old, in);
+		}
+		case RECORD: {
+			RecordReader reader = records.get(schema.getFullName());
+			if (reader == null) {
+				reader = new RecordReader(schema);
+				// registered before the fields are compiled to support recursive schemas
+				records.put(schema.getFullName(), reader);
+				List<Field> fields = schema.getFields();
+				ValueReader[] fieldreaders = new ValueReader[fields.size()];
+				for (int i = 0; i < fieldreaders.length; i++) {
+					fieldreaders[i] = compile(fields.get(i).schema(), records);
+				}
+				reader.fieldreaders = fieldreaders;
+			}
+			return reader;
+		}
+		default:
+			throw new AvroTypeException("Unknown schema type \"" + schema.getType() + "\"");
+		}
+	}
+
+	/**
+	 * @param schema the array schema
+	 * @param itemreader the reader for the elements
+	 * @return a reader returning a GenericData.Array, reusing the old array and its elements
+	 */
+	@SuppressWarnings("unchecked")
+	static ValueReader arrayReader(Schema schema, ValueReader itemreader) {
+		return (old, in) -> {
+			long l = in.readArrayStart();
+			Collection<Object> array = newArray(old, l, schema);
+			GenericArray<Object> reusable = array instanceof GenericArray ? (GenericArray<Object>) array : null;
+			while (l > 0) {
+				for (long i = 0; i < l; i++) {
+					array.add(itemreader.read(reusable != null ? reusable.peek() : null, in));
+				}
+				l = in.arrayNext();
+			}
+			return array;
+		};
+	}
+
+	/**
+	 * @param schema the map schema
+	 * @param valuereader the reader for the values
+	 * @return a reader returning a HashMap, reusing the old map
+	 */
+	@SuppressWarnings("unchecked")
+	static ValueReader mapReader(Schema schema, ValueReader valuereader) {
+		ValueReader keyreader = compileString(schema);
+		return (old, in) -> {
+			long l = in.readMapStart();
+			Map<Object, Object> map;
+			if (old instanceof Map) {
+				map = (Map<Object, Object>) old;
+				map.clear();
+			} else {
+				map = new HashMap<>((int) l);
+			}
+			while (l > 0) {
+				for (long i = 0; i < l; i++) {
+					Object key = keyreader.read(null, in);
+					map.put(key, valuereader.read(null, in));
+				}
+				l = in.mapNext();
+			}
+			return map;
+		};
+	}
+
+	/**
+	 * @param schema a string schema or a map schema for its keys
+	 * @return a reader returning String or Utf8 depending on the avro.java.string property
+	 */
+	private static ValueReader compileString(Schema schema) {
+		if (GenericData.StringType.String.name().equals(schema.getProp(GenericData.STRING_PROP))) {
+			if (schema.getType() == Type.STRING && schema.getLogicalType() instanceof IAvroDatatype
+					&& ((IAvroDatatype) schema.getLogicalType()).getAvroType().getGroup() == AvroDatatypeClass.TEXTASCII) {
+				// the data type guarantees ASCII, hence the bytes can be copied into the String without decoding
+				return (old, in) -> in instanceof ByteArrayDecoder ? ((ByteArrayDecoder) in).readAsciiString() : in.readString();
+			}
+			return (old, in) -> in.readString();
+		} else {
+			return (old, in) -> in.readString(old instanceof Utf8 ? (Utf8) old : null);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Collection<Object> newArray(Object old, long size, Schema schema) {
+		if (old instanceof GenericArray) {
+			((GenericArray<Object>) old).reset();
+			return (Collection<Object>) old;
+		} else if (old instanceof Collection) {
+			((Collection<Object>) old).clear();
+			return (Collection<Object>) old;
+		} else {
+			return new GenericData.Array<>((int) size, schema);
+		}
+	}
+
+	/**
+	 * Reads one value of a specific schema from the decoder.
+	 */
+	@FunctionalInterface
+	interface ValueReader {
+		/**
+		 * @param old the previous value to be reused or null
+		 * @param in the decoder
+		 * @return the value read
+		 * @throws IOException in case the data cannot be decoded
+		 */
+		Object read(Object old, Decoder in) throws IOException;
+	}
+
+	private static class RecordReader implements ValueReader {
+		private final Schema schema;
+		private ValueReader[] fieldreaders;
+
+		private RecordReader(Schema schema) {
+			this.schema = schema;
+		}
+
+		@Override
+		public Object read(Object old, Decoder in) throws IOException {
+			IndexedRecord record;
+			if (old instanceof IndexedRecord && ((IndexedRecord) old).getSchema() == schema) {
+				record = (IndexedRecord) old;
+				ValueReader[] readers = fieldreaders;
+				for (int i = 0; i < readers.length; i++) {
+					record.put(i, readers[i].read(record.get(i), in));
+				}
+			} else {
+				record = new GenericData.Record(schema);
+				ValueReader[] readers = fieldreaders;
+				for (int i = 0; i < readers.length; i++) {
+					record.put(i, readers[i].read(null, in));
+				}
+			}
+			return record;
+		}
+	}
+
+}
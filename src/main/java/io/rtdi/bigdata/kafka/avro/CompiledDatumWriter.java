@@ -0,0 +1,281 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.avro.AvroTypeException;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericEnumSymbol;
+import org.apache.avro.generic.GenericFixed;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.Encoder;
+
+/**
+ * A DatumWriter producing exactly the same binary output as the GenericDatumWriter.
+ * Instead of walking the schema tree and switching on the type for every field of every record,
+ * the schema is compiled once into a tree of writers, each specialized for one field.
+ *
+ * Writers are immutable and thread safe, use {@link #get(Schema)} to get the cached writer for a schema.
+ *
+ */
+public class CompiledDatumWriter implements DatumWriter<GenericRecord> {
+	private static final Map<Schema, CompiledDatumWriter> cache = new ConcurrentHashMap<>();
+	/**
+	 * The binary format depends on the parsing canonical form only, hence all schemas with the same fingerprint share a writer
+	 */
+	private static final Map<Long, CompiledDatumWriter> fingerprints = new ConcurrentHashMap<>();
+	private final Schema schema;
+	private final ValueWriter root;
+
+	/**
+	 * Compile a new writer for the schema, usually {@link #get(Schema)} should be used instead.
+	 *
+	 * @param schema the record schema
+	 */
+	public CompiledDatumWriter(Schema schema) {
+		this.schema = schema;
+		this.root = compile(schema, new HashMap<>());
+	}
+
+	/**
+	 * @param schema the record schema
+	 * @return the cached writer for this schema
+	 */
+	public static CompiledDatumWriter get(Schema schema) {
+		CompiledDatumWriter writer = cache.get(schema);
+		if (writer == null) {
+			long fingerprint = SchemaNormalization.parsingFingerprint64(schema);
+			writer = fingerprints.computeIfAbsent(fingerprint, k -> new CompiledDatumWriter(schema));
+			cache.putIfAbsent(schema, writer);
+		}
+		return writer;
+	}
+
+	/**
+	 * @return the schema this writer was compiled for
+	 */
+	public Schema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * A compiled writer is bound to its schema.
+	 *
+	 * @throws UnsupportedOperationException if the schema is a different one
+	 */
+	@Override
+	public void setSchema(Schema schema) {
+		if (!this.schema.equals(schema)) {
+			throw new UnsupportedOperationException("A CompiledDatumWriter cannot change its schema, use CompiledDatumWriter.get(schema) instead");
+		}
+	}
+
+	@Override
+	public void write(GenericRecord datum, Encoder out) throws IOException {
+		if (datum == null) {
+			throw new NullPointerException("Cannot serialize a null record");
+		}
+		root.write(datum, out);
+	}
+
+	private static ValueWriter compile(Schema schema, Map<String, RecordWriter> records) {
+		switch (schema.getType()) {
+		case NULL:
+			return (datum, out) -> out.writeNull();
+		case BOOLEAN:
+			return (datum, out) -> out.writeBoolean((Boolean) datum);
+		case INT:
+			return (datum, out) -> out.writeInt(((Number) datum).intValue());
+		case LONG:
+			return (datum, out) -> out.writeLong(((Number) datum).longValue());
+		case FLOAT:
+			return (datum, out) -> out.writeFloat(((Number) datum).floatValue());
+		case DOUBLE:
+			return (datum, out) -> out.writeDouble(((Number) datum).doubleValue());
+		case STRING:
+			return (datum, out) -> out.writeString((CharSequence) datum);
+		case BYTES:
+			return (datum, out) -> out.writeBytes((ByteBuffer) datum);
+		case FIXED: {
+			int size = schema.getFixedSize();
+			return (datum, out) -> out.writeFixed(((GenericFixed) datum).bytes(), 0, size);
+		}
+		case ENUM:
+			return (datum, out) -> {
+				if (datum instanceof GenericEnumSymbol) {
+					out.writeEnum(schema.getEnumOrdinal(datum.toString()));
+				} else {
+					throw new AvroTypeException("value " + datum + " is not an enum of schema " + schema.getFullName());
+				}
+			};
+		case ARRAY: {
+			ValueWriter itemwriter = compile(schema.getElementType(), records);
+			return (datum, out) -> {
+				Collection<?> items = (Collection<?>) datum;
+				out.writeArrayStart();
+				out.setItemCount(items.size());
+				for (Object item : items) {
+					out.startItem();
+					itemwriter.write(item, out);
+				}
+				out.writeArrayEnd();
+			};
+		}
+		case MAP: {
+			ValueWriter valuewriter = compile(schema.getValueType(), records);
+			return (datum, out) -> {
+				Map<?, ?> map = (Map<?, ?>) datum;
+				out.writeMapStart();
+				out.setItemCount(map.size());
+				for (Entry<?, ?> entry : map.entrySet()) {
+					out.startItem();
+					Object key = entry.getKey();
+					out.writeString(key instanceof CharSequence ? (CharSequence) key : key.toString());
+					valuewriter.write(entry.getValue(), out);
+				}
+				out.writeMapEnd();
+			};
+		}
+		case UNION:
+			return compileUnion(schema, records);
+		case RECORD: {
+			RecordWriter writer = records.get(schema.getFullName());
+			if (writer == null) {
+				writer = new RecordWriter(schema);
+				// registered before the fields are compiled to support recursive schemas
+				records.put(schema.getFullName(), writer);
+				List<Field> fields = schema.getFields();
+				ValueWriter[] fieldwriters = new ValueWriter[fields.size()];
+				for (int i = 0; i < fieldwriters.length; i++) {
+					fieldwriters[i] = compile(fields.get(i).schema(), records);
+				}
+				writer.fieldwriters = fieldwriters;
+			}
+			return writer;
+		}
+		default:
+			throw new AvroTypeException("Unknown schema type \"" + schema.getType() + "\"");
+		}
+	}
+
+	private static ValueWriter compileUnion(Schema schema, Map<String, RecordWriter> records) {
+		List<Schema> types = schema.getTypes();
+		ValueWriter[] branches = new ValueWriter[types.size()];
+		for (int i = 0; i < branches.length; i++) {
+			branches[i] = compile(types.get(i), records);
+		}
+		Integer nullindex = schema.getIndexNamed(Schema.Type.NULL.getName());
+		if (types.size() == 2 && nullindex != null) {
+			/*
+			 * The nullable column is by far the most common union, here the index is known without resolving the union.
+			 * Values not matching the non-null branch are resolved the regular way to get the same exception as Avro.
+			 */
+			int nullpos = nullindex;
+			int valuepos = 1 - nullpos;
+			Schema valueschema = types.get(valuepos);
+			ValueWriter valuewriter = branches[valuepos];
+			return (datum, out) -> {
+				if (datum == null) {
+					out.writeIndex(nullpos);
+				} else if (matches(valueschema, datum)) {
+					out.writeIndex(valuepos);
+					valuewriter.write(datum, out);
+				} else {
+					int index = GenericData.get().resolveUnion(schema, datum);
+					out.writeIndex(index);
+					branches[index].write(datum, out);
+				}
+			};
+		} else {
+			return (datum, out) -> {
+				int index = GenericData.get().resolveUnion(schema, datum);
+				out.writeIndex(index);
+				branches[index].write(datum, out);
+			};
+		}
+	}
+
+	/**
+	 * Same rules as GenericData.resolveUnion() for a single branch.
+	 */
+	private static boolean matches(Schema schema, Object datum) {
+		switch (schema.getType()) {
+		case RECORD:
+			return datum instanceof IndexedRecord && ((IndexedRecord) datum).getSchema().getFullName().equals(schema.getFullName());
+		case ENUM:
+			return datum instanceof GenericEnumSymbol && ((GenericEnumSymbol<?>) datum).getSchema().getFullName().equals(schema.getFullName());
+		case FIXED:
+			return datum instanceof GenericFixed && ((GenericFixed) datum).getSchema().getFullName().equals(schema.getFullName());
+		case ARRAY:
+			return datum instanceof Collection;
+		case MAP:
+			return datum instanceof Map;
+		case STRING:
+			return datum instanceof CharSequence;
+		case BYTES:
+			return datum instanceof ByteBuffer;
+		case INT:
+			return datum instanceof Integer;
+		case LONG:
+			return datum instanceof Long;
+		case FLOAT:
+			return datum instanceof Float;
+		case DOUBLE:
+			return datum instanceof Double;
+		case BOOLEAN:
+			return datum instanceof Boolean;
+		default:
+			return false;
+		}
+	}
+
+	@FunctionalInterface
+	private interface ValueWriter {
+		void write(Object datum, Encoder out) throws IOException;
+	}
+
+	private static class RecordWriter implements ValueWriter {
+		private final Schema schema;
+		private ValueWriter[] fieldwriters;
+
+		private RecordWriter(Schema schema) {
+			this.schema = schema;
+		}
+
+		@Override
+		public void write(Object datum, Encoder out) throws IOException {
+			IndexedRecord record = (IndexedRecord) datum;
+			ValueWriter[] writers = fieldwriters;
+			int i = 0;
+			try {
+				for (; i < writers.length; i++) {
+					writers[i].write(record.get(i), out);
+				}
+			} catch (NullPointerException e) {
+				NullPointerException n = new NullPointerException("null value for (non-nullable) field " + fieldName(i));
+				n.initCause(e);
+				throw n;
+			} catch (ClassCastException e) {
+				ClassCastException c = new ClassCastException(e.getMessage() + " in field " + fieldName(i));
+				c.initCause(e);
+				throw c;
+			}
+		}
+
+		private String fieldName(int i) {
+			return schema.getFullName() + "." + schema.getFields().get(i).name();
+		}
+	}
+
+}
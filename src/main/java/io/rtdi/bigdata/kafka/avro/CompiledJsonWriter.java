@@ -0,0 +1,229 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.avro.AvroTypeException;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.IndexedRecord;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroAnyPrimitive;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroType;
+import io.rtdi.bigdata.kafka.avro.datatypes.IAvroDatatype;
+
+/**
+ * Writes records as JSON into a Jackson JsonGenerator, e.g. for REST exports or JSON sinks.
+ * The output is the same as {@link io.rtdi.bigdata.kafka.avro.datatypes.AvroRecord#convertToJson(Object)}, but instead of building Strings for every
+ * nested value and looking up the data type of every field of every record, the schema is compiled once into
+ * a plan of field writers with the field names pre-encoded. Values are written via {@link IAvroDatatype#writeJson(JsonGenerator, Object)}.
+ *
+ * Writers are immutable and thread safe, use {@link #get(Schema)} to get the cached writer for a schema.
+ *
+ */
+public class CompiledJsonWriter {
+	private static final BoundedCache<Schema, CompiledJsonWriter> cache = new BoundedCache<>(BoundedCache.SCHEMA_CACHE_SIZE);
+	private static final JsonFactory factory = JsonFactory.builder().disable(StreamWriteFeature.AUTO_CLOSE_TARGET).build();
+	private final Schema schema;
+	private final ValueWriter root;
+
+	/**
+	 * Compile a new writer for the schema, usually {@link #get(Schema)} should be used instead.
+	 *
+	 * @param schema the record schema
+	 */
+	public CompiledJsonWriter(Schema schema) {
+		this.schema = schema;
+		this.root = compile(schema, new HashMap<>());
+	}
+
+	/**
+	 * @param schema the record schema
+	 * @return the cached writer for this schema
+	 */
+	public static CompiledJsonWriter get(Schema schema) {
+		CompiledJsonWriter writer = cache.get(schema);
+		if (writer == null) {
+			writer = cache.putIfAbsent(schema, new CompiledJsonWriter(schema));
+		}
+		return writer;
+	}
+
+	/**
+	 * @return the schema this writer was compiled for
+	 */
+	public Schema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * Write the record as JSON object, multiple records can be written into the same generator.
+	 *
+	 * @param record the record of this writer's schema
+	 * @param generator the JSON output
+	 * @throws IOException if writing fails
+	 * @throws AvroDataTypeException if a value cannot be converted
+	 */
+	public void write(GenericRecord record, JsonGenerator generator) throws IOException {
+		root.write(record, generator);
+	}
+
+	/**
+	 * Write the record as JSON object into the stream. The stream is flushed but not closed.
+	 *
+	 * @param record the record of this writer's schema
+	 * @param out the stream to write the UTF-8 encoded JSON into
+	 * @throws IOException if writing fails
+	 * @throws AvroDataTypeException if a value cannot be converted
+	 */
+	public void write(GenericRecord record, OutputStream out) throws IOException {
+		try (JsonGenerator generator = factory.createGenerator(out)) {
+			root.write(record, generator);
+		}
+	}
+
+	/**
+	 * @param record the record of this writer's schema
+	 * @return the record as JSON text
+	 * @throws IOException if writing fails
+	 * @throws AvroDataTypeException if a value cannot be converted
+	 */
+	public String toJson(GenericRecord record) throws IOException {
+		StringWriter w = new StringWriter();
+		try (JsonGenerator generator = factory.createGenerator(w)) {
+			root.write(record, generator);
+		}
+		return w.toString();
+	}
+
+	private static ValueWriter compile(Schema schema, Map<String, RecordWriter> records) {
+		switch (schema.getType()) {
+		case ARRAY: {
+			ValueWriter itemwriter = compile(schema.getElementType(), records);
+			return (datum, out) -> {
+				if (datum == null) {
+					out.writeNull();
+				} else {
+					out.writeStartArray();
+					for (Object item : (Collection<?>) datum) {
+						itemwriter.write(item, out);
+					}
+					out.writeEndArray();
+				}
+			};
+		}
+		case MAP: {
+			ValueWriter valuewriter = compile(schema.getValueType(), records);
+			return (datum, out) -> {
+				if (datum == null) {
+					out.writeNull();
+				} else {
+					out.writeStartObject();
+					for (Entry<?, ?> entry : ((Map<?, ?>) datum).entrySet()) {
+						out.writeFieldName(entry.getKey().toString());
+						valuewriter.write(entry.getValue(), out);
+					}
+					out.writeEndObject();
+				}
+			};
+		}
+		case UNION:
+			if (schema.equals(AvroAnyPrimitive.getSchema())) {
+				return compileDatatype(schema);
+			} else {
+				return compileUnion(schema, records);
+			}
+		case RECORD: {
+			RecordWriter writer = records.get(schema.getFullName());
+			if (writer == null) {
+				writer = new RecordWriter();
+				// registered before the fields are compiled to support recursive schemas
+				records.put(schema.getFullName(), writer);
+				List<Field> fields = schema.getFields();
+				SerializedString[] names = new SerializedString[fields.size()];
+				ValueWriter[] fieldwriters = new ValueWriter[fields.size()];
+				for (int i = 0; i < fieldwriters.length; i++) {
+					names[i] = new SerializedString(fields.get(i).name());
+					fieldwriters[i] = compile(fields.get(i).schema(), records);
+				}
+				writer.names = names;
+				writer.fieldwriters = fieldwriters;
+			}
+			return writer;
+		}
+		default:
+			return compileDatatype(schema);
+		}
+	}
+
+	private static ValueWriter compileDatatype(Schema schema) {
+		IAvroDatatype datatype = AvroType.getAvroDataType(schema);
+		if (datatype == null) {
+			throw new AvroTypeException("Unknown schema type \"" + schema.getType() + "\"");
+		}
+		return (datum, out) -> datatype.writeJson(out, datum);
+	}
+
+	private static ValueWriter compileUnion(Schema schema, Map<String, RecordWriter> records) {
+		List<Schema> types = schema.getTypes();
+		ValueWriter[] branches = new ValueWriter[types.size()];
+		for (int i = 0; i < branches.length; i++) {
+			branches[i] = compile(types.get(i), records);
+		}
+		Integer nullindex = schema.getIndexNamed(Schema.Type.NULL.getName());
+		if (types.size() == 2 && nullindex != null) {
+			// the nullable column, the value is written with the data type of the non-null branch
+			ValueWriter valuewriter = branches[1 - nullindex];
+			return (datum, out) -> {
+				if (datum == null) {
+					out.writeNull();
+				} else {
+					valuewriter.write(datum, out);
+				}
+			};
+		} else {
+			return (datum, out) -> branches[GenericData.get().resolveUnion(schema, datum)].write(datum, out);
+		}
+	}
+
+	@FunctionalInterface
+	private interface ValueWriter {
+		void write(Object datum, JsonGenerator out) throws IOException;
+	}
+
+	private static class RecordWriter implements ValueWriter {
+		private SerializedString[] names;
+		private ValueWriter[] fieldwriters;
+
+		@Override
+		public void write(Object datum, JsonGenerator out) throws IOException {
+			if (datum == null) {
+				out.writeNull();
+			} else {
+				IndexedRecord record = (IndexedRecord) datum;
+				SerializedString[] n = names;
+				ValueWriter[] writers = fieldwriters;
+				out.writeStartObject();
+				for (int i = 0; i < writers.length; i++) {
+					out.writeFieldName(n[i]);
+					writers[i].write(record.get(i), out);
+				}
+				out.writeEndObject();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A growable, unsynchronized in-memory output stream used to assemble Kafka Avro frames.
+ * Unlike the ByteArrayOutputStream the buffer is exposed, so the serializer can reuse it
+ * for many records without copying and write the frame header directly.
+ *
+ */
+class FrameOutputStream extends OutputStream {
+	private byte[] buf;
+	private int count;
+
+	/**
+	 * @param initialsize the initial capacity of the buffer in bytes
+	 */
+	FrameOutputStream(int initialsize) {
+		buf = new byte[Math.max(initialsize, 16)];
+	}
+
+	@Override
+	public void write(int b) {
+		ensureCapacity(count + 1);
+		buf[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		ensureCapacity(count + len);
+		System.arraycopy(b, off, buf, count, len);
+		count += len;
+	}
+
+	/**
+	 * Writes the magic byte and the schema id in big endian order, as expected by all Kafka Avro serdes.
+	 *
+	 * @param schemaid the id of the Kafka schema
+	 */
+	void writeHeader(int schemaid) {
+		ensureCapacity(count + 1 + Integer.BYTES);
+		buf[count] = AvroUtils.MAGIC_BYTE;
+		buf[count + 1] = (byte) (schemaid >>> 24);
+		buf[count + 2] = (byte) (schemaid >>> 16);
+		buf[count + 3] = (byte) (schemaid >>> 8);
+		buf[count + 4] = (byte) schemaid;
+		count += 1 + Integer.BYTES;
+	}
+
+	/**
+	 * Make sure the buffer can hold at least that many bytes in total.
+	 *
+	 * @param capacity the minimum capacity required
+	 */
+	void ensureCapacity(int capacity) {
+		if (capacity > buf.length) {
+			if (capacity < 0) {
+				throw new OutOfMemoryError("Frame size exceeds the maximum array size");
+			}
+			buf = Arrays.copyOf(buf, Math.max(capacity, buf.length << 1));
+		}
+	}
+
+	/**
+	 * Start over, the already allocated buffer is kept.
+	 */
+	void reset() {
+		count = 0;
+	}
+
+	/**
+	 * @return the number of bytes written so far
+	 */
+	int size() {
+		return count;
+	}
+
+	/**
+	 * @return the current capacity of the buffer
+	 */
+	int capacity() {
+		return buf.length;
+	}
+
+	/**
+	 * @return the internal buffer, valid from 0 to {@link #size()}
+	 */
+	byte[] buffer() {
+		return buf;
+	}
+
+	/**
+	 * @return a copy of the written bytes
+	 */
+	byte[] toByteArray() {
+		return Arrays.copyOf(buf, count);
+	}
+
+}
@@ -0,0 +1,175 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.Schema.Type;
+
+/**
+ * Routes Kafka Avro messages by schema id and RowType without decoding them.
+ *
+ * A {@link io.rtdi.bigdata.kafka.avro.recordbuilders.ValueSchema} always has the {@link SchemaConstants#SCHEMA_COLUMN_CHANGE_TYPE} as first field,
+ * hence its value is located right after the 5 byte frame header: the length of the string followed by the RowType identifier char.
+ * The router peeks at these bytes only and partitions a batch into per sink index lists, e.g. deletes to one sink and upserts to another.
+ * No objects are created per message, when the same {@link RoutedBatch} is reused not even per batch.
+ *
+ * Use {@link #isRoutable(Schema)} to check if messages of a schema carry the change type at that place.
+ *
+ */
+public class FrameRouter {
+	private static final int FRAME_HEADER_SIZE = 1 + Integer.BYTES;
+	private static final RowType[] rowtypes = new RowType[128];
+	private final int sinks;
+	private final Route route;
+
+	static {
+		for (RowType rowtype : RowType.values()) {
+			rowtypes[rowtype.getIdentifer().charAt(0)] = rowtype;
+		}
+	}
+
+	/**
+	 * Decides the sink of a message.
+	 */
+	@FunctionalInterface
+	public interface Route {
+		/**
+		 * @param schemaid the schema id of the message
+		 * @param rowtype the RowType of the message, null if the change type is not a known RowType
+		 * @return the sink number from 0 to sinks-1, a negative number to drop the message
+		 */
+		int getSink(int schemaid, RowType rowtype);
+	}
+
+	/**
+	 * @param sinks number of sinks
+	 * @param route function returning the sink of a message
+	 */
+	public FrameRouter(int sinks, Route route) {
+		this.sinks = sinks;
+		this.route = route;
+	}
+
+	/**
+	 * @return number of sinks
+	 */
+	public int getSinkCount() {
+		return sinks;
+	}
+
+	/**
+	 * @param schema the schema of the messages
+	 * @return true if the first field of the schema is the change type column as created by the ValueSchema
+	 */
+	public static boolean isRoutable(Schema schema) {
+		if (schema.getType() != Type.RECORD || schema.getFields().size() == 0) {
+			return false;
+		} else {
+			Field field = schema.getFields().get(0);
+			return field.name().equals(SchemaConstants.SCHEMA_COLUMN_CHANGE_TYPE) && field.schema().getType() == Type.STRING;
+		}
+	}
+
+	/**
+	 * Reads the RowType of a message written with a {@link #isRoutable(Schema)} schema.
+	 *
+	 * @param data array containing the Kafka message payload
+	 * @param offset start of the message within the array
+	 * @param length length of the message
+	 * @return the RowType of the message, null if the change type is empty or not a known RowType
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 */
+	public static RowType getRowType(byte[] data, int offset, int length) throws IOException {
+		if (length < FRAME_HEADER_SIZE + 1 || data[offset] != AvroUtils.MAGIC_BYTE) {
+			throw new IOException("Not a valid Kafka Avro message frame");
+		}
+		int end = offset + length;
+		int pos = offset + FRAME_HEADER_SIZE;
+		// the zig-zag encoded varint length of the string
+		int n = 0;
+		int shift = 0;
+		int b;
+		do {
+			if (pos == end || shift > 28) {
+				throw new IOException("Not a valid change type in the Kafka Avro message");
+			}
+			b = data[pos++];
+			n |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		int stringlength = (n >>> 1) ^ -(n & 1);
+		if (stringlength <= 0) {
+			return null;
+		} else if (pos == end) {
+			throw new IOException("Not a valid change type in the Kafka Avro message");
+		} else {
+			// a negative byte is a non-ASCII char, which no RowType uses
+			b = data[pos];
+			return b >= 0 ? rowtypes[b] : null;
+		}
+	}
+
+	/**
+	 * @param data array containing the Kafka message payload
+	 * @param offset start of the message within the array
+	 * @param length length of the message
+	 * @return the sink of the message, negative if it should be dropped
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 */
+	public int route(byte[] data, int offset, int length) throws IOException {
+		return route.getSink(AvroDeserializer.getSchemaId(data, offset, length), getRowType(data, offset, length));
+	}
+
+	/**
+	 * Route all messages of a serialized batch.
+	 *
+	 * @param batch the messages
+	 * @param reuse the result of a previous call to be filled again or null
+	 * @return the routing of the messages
+	 * @throws IOException in case a message is not a valid Avro Kafka message
+	 */
+	public RoutedBatch route(SerializedBatch batch, RoutedBatch reuse) throws IOException {
+		RoutedBatch result = prepare(batch.size(), reuse);
+		byte[] arena = batch.getArena();
+		for (int i = 0; i < batch.size(); i++) {
+			routeMessage(i, arena, batch.getOffset(i), batch.getLength(i), result);
+		}
+		return result;
+	}
+
+	/**
+	 * Route a list of messages, e.g. the payloads of the records returned by a Kafka poll.
+	 *
+	 * @param payloads the messages
+	 * @param reuse the result of a previous call to be filled again or null
+	 * @return the routing of the messages
+	 * @throws IOException in case a message is not a valid Avro Kafka message
+	 */
+	public RoutedBatch route(List<byte[]> payloads, RoutedBatch reuse) throws IOException {
+		RoutedBatch result = prepare(payloads.size(), reuse);
+		for (int i = 0; i < payloads.size(); i++) {
+			byte[] data = payloads.get(i);
+			routeMessage(i, data, 0, data.length, result);
+		}
+		return result;
+	}
+
+	private RoutedBatch prepare(int messages, RoutedBatch reuse) {
+		RoutedBatch result = reuse != null ? reuse : new RoutedBatch();
+		result.reset(messages, sinks);
+		return result;
+	}
+
+	private void routeMessage(int index, byte[] data, int offset, int length, RoutedBatch result) throws IOException {
+		int schemaid = AvroDeserializer.getSchemaId(data, offset, length);
+		RowType rowtype = getRowType(data, offset, length);
+		int sink = route.getSink(schemaid, rowtype);
+		if (sink >= sinks) {
+			throw new IllegalArgumentException("The message " + index + " was routed to sink " + sink + " but there are " + sinks + " sinks only");
+		}
+		result.set(index, schemaid, rowtype, sink);
+	}
+
+}
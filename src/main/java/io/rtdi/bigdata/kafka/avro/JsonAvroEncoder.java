@@ -0,0 +1,692 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.AvroTypeException;
+import org.apache.avro.Conversions.DecimalConversion;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.Schema.Type;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroDatatypeClass;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroFloat;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroInt;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroLong;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroType;
+import io.rtdi.bigdata.kafka.avro.datatypes.IAvroDatatype;
+import io.rtdi.bigdata.kafka.avro.datatypes.IAvroDoublePrimitive;
+import io.rtdi.bigdata.kafka.avro.datatypes.IAvroFloatPrimitive;
+import io.rtdi.bigdata.kafka.avro.datatypes.IAvroIntPrimitive;
+import io.rtdi.bigdata.kafka.avro.datatypes.IAvroLongPrimitive;
+import io.rtdi.bigdata.kafka.avro.datatypes.LogicalDataTypesRegistry;
+
+/**
+ * Converts JSON documents into Kafka Avro messages without building Maps or GenericRecords first.
+ * The target schema is compiled once into a plan which reads the JSON tokens with a Jackson JsonParser and writes
+ * the values directly into a BinaryEncoder.
+ *
+ * Values are converted with the same lenient rules as the {@link IAvroDatatype} classes, e.g. "TRUE" or 1 for a boolean,
+ * strings for decimals and numbers, and ISO strings for the date and time types as written by {@link CompiledJsonWriter}.
+ * Field names are matched with the Avro name and the original name as decoded by {@link AvroNameEncoder#decodeName(String)},
+ * unknown JSON keys are ignored and missing fields get their default value, or null if the field is nullable.
+ *
+ * The Avro fields must be written in schema order. As long as the JSON keys arrive in the same order, the values are
+ * written straight through; keys arriving early are encoded into a scratch buffer and copied once their turn comes.
+ * Arrays and maps are buffered as well, as Avro needs the number of items before the items.
+ *
+ * Encoders are immutable and thread safe, the buffers are kept per thread. Use {@link #get(Schema)} to get the cached encoder for a schema.
+ *
+ */
+public class JsonAvroEncoder {
+	private static final EncoderFactory encoderFactory = EncoderFactory.get();
+	private static final JsonFactory jsonFactory = new JsonFactory();
+	private static final int INITIAL_BUFFER_SIZE = 4096;
+	private static final DecimalConversion DECIMAL_CONVERTER = new DecimalConversion();
+	private static final BoundedCache<Schema, JsonAvroEncoder> cache = new BoundedCache<>(BoundedCache.SCHEMA_CACHE_SIZE);
+	private static final ThreadLocal<Context> contexts = ThreadLocal.withInitial(Context::new);
+	private final Schema schema;
+	private final ValueEncoder root;
+
+	static {
+		LogicalDataTypesRegistry.registerAll();
+	}
+
+	/**
+	 * Compile a new encoder for the schema, usually {@link #get(Schema)} should be used instead.
+	 *
+	 * @param schema the record schema of the Avro messages
+	 * @throws IOException in case the default value of a field cannot be encoded
+	 */
+	public JsonAvroEncoder(Schema schema) throws IOException {
+		this.schema = schema;
+		this.root = compile(schema, new HashMap<>());
+	}
+
+	/**
+	 * @param schema the record schema of the Avro messages
+	 * @return the cached encoder for this schema
+	 * @throws IOException in case the default value of a field cannot be encoded
+	 */
+	public static JsonAvroEncoder get(Schema schema) throws IOException {
+		JsonAvroEncoder encoder = cache.get(schema);
+		if (encoder == null) {
+			encoder = cache.putIfAbsent(schema, new JsonAvroEncoder(schema));
+		}
+		return encoder;
+	}
+
+	/**
+	 * @return the schema this encoder was compiled for
+	 */
+	public Schema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * Convert a JSON object into a Kafka payload, compatible with all other Kafka Avro serdes.
+	 *
+	 * @param schemaid the id of the Kafka schema
+	 * @param json the UTF-8 encoded JSON object
+	 * @return binary representation of the JSON object
+	 * @throws IOException in case the JSON is not valid or a value cannot be converted
+	 */
+	public byte[] encode(int schemaid, byte[] json) throws IOException {
+		try (JsonParser parser = jsonFactory.createParser(json)) {
+			return encode(schemaid, parser);
+		}
+	}
+
+	/**
+	 * Convert a JSON object into a Kafka payload, compatible with all other Kafka Avro serdes.
+	 *
+	 * @param schemaid the id of the Kafka schema
+	 * @param json the JSON object
+	 * @return binary representation of the JSON object
+	 * @throws IOException in case the JSON is not valid or a value cannot be converted
+	 */
+	public byte[] encode(int schemaid, String json) throws IOException {
+		try (JsonParser parser = jsonFactory.createParser(json)) {
+			return encode(schemaid, parser);
+		}
+	}
+
+	/**
+	 * Convert the next JSON object of the parser into a Kafka payload, e.g. to read many objects from one stream.
+	 *
+	 * @param schemaid the id of the Kafka schema
+	 * @param parser positioned before or at the start of the JSON object
+	 * @return binary representation of the JSON object
+	 * @throws IOException in case the JSON is not valid or a value cannot be converted
+	 */
+	public byte[] encode(int schemaid, JsonParser parser) throws IOException {
+		Context context = contexts.get();
+		FrameOutputStream out = context.out;
+		try {
+			context.encoder = encoderFactory.binaryEncoder(out, context.encoder);
+			out.reset();
+			out.writeHeader(schemaid);
+			encode(parser, context.encoder, context);
+			context.encoder.flush();
+			return out.toByteArray();
+		} catch (Exception e) {
+			if (e instanceof IOException) {
+				throw e;
+			} else {
+				throw new IOException(e);
+			}
+		} finally {
+			context.release();
+		}
+	}
+
+	/**
+	 * Writes the Avro body of the next JSON object of the parser, without the Kafka frame header.
+	 *
+	 * @param parser positioned before or at the start of the JSON object
+	 * @param out the encoder to write to, it is not flushed
+	 * @throws IOException in case the JSON is not valid or a value cannot be converted
+	 */
+	public void encode(JsonParser parser, BinaryEncoder out) throws IOException {
+		encode(parser, out, contexts.get());
+	}
+
+	private void encode(JsonParser parser, BinaryEncoder out, Context context) throws IOException {
+		if (parser.currentToken() == null || parser.currentToken() == JsonToken.END_OBJECT) {
+			parser.nextToken();
+		}
+		if (parser.currentToken() != JsonToken.START_OBJECT) {
+			throw new AvroDataTypeException("Expected a JSON object but got " + parser.currentToken());
+		}
+		context.depth = 0;
+		root.encode(parser, out, context);
+	}
+
+	private static ValueEncoder compile(Schema schema, Map<String, RecordEncoder> records) throws IOException {
+		switch (schema.getType()) {
+		case RECORD: {
+			RecordEncoder encoder = records.get(schema.getFullName());
+			if (encoder == null) {
+				encoder = new RecordEncoder(schema);
+				// registered before the fields are compiled to support recursive schemas
+				records.put(schema.getFullName(), encoder);
+				encoder.compileFields(records);
+			}
+			return encoder;
+		}
+		case ARRAY: {
+			ValueEncoder itemencoder = compile(schema.getElementType(), records);
+			return (parser, out, context) -> {
+				expect(parser, JsonToken.START_ARRAY);
+				Scratch scratch = context.push();
+				try {
+					long count = 0;
+					while (parser.nextToken() != JsonToken.END_ARRAY) {
+						itemencoder.encode(parser, scratch.encoder, context);
+						count++;
+					}
+					out.writeArrayStart();
+					out.setItemCount(count);
+					scratch.copyTo(out);
+					out.writeArrayEnd();
+				} finally {
+					context.pop();
+				}
+			};
+		}
+		case MAP: {
+			ValueEncoder valueencoder = compile(schema.getValueType(), records);
+			return (parser, out, context) -> {
+				expect(parser, JsonToken.START_OBJECT);
+				Scratch scratch = context.push();
+				try {
+					long count = 0;
+					while (parser.nextToken() == JsonToken.FIELD_NAME) {
+						scratch.encoder.writeString(parser.currentName());
+						parser.nextToken();
+						valueencoder.encode(parser, scratch.encoder, context);
+						count++;
+					}
+					out.writeMapStart();
+					out.setItemCount(count);
+					scratch.copyTo(out);
+					out.writeMapEnd();
+				} finally {
+					context.pop();
+				}
+			};
+		}
+		case UNION:
+			return compileUnion(schema, records);
+		default:
+			return compilePrimitive(schema);
+		}
+	}
+
+	private static ValueEncoder compileUnion(Schema schema, Map<String, RecordEncoder> records) throws IOException {
+		List<Schema> types = schema.getTypes();
+		ValueEncoder[] branches = new ValueEncoder[types.size()];
+		for (int i = 0; i < branches.length; i++) {
+			branches[i] = compile(types.get(i), records);
+		}
+		Integer nullindex = schema.getIndexNamed(Type.NULL.getName());
+		int nullpos = nullindex != null ? nullindex : -1;
+		JsonToken[] tokens = JsonToken.values();
+		int[] branchpertoken = new int[tokens.length];
+		for (JsonToken token : tokens) {
+			branchpertoken[token.ordinal()] = findBranch(types, token);
+		}
+		return (parser, out, context) -> {
+			JsonToken token = parser.currentToken();
+			if (token == JsonToken.VALUE_NULL) {
+				if (nullpos == -1) {
+					throw new AvroDataTypeException("Cannot write null into the union " + schema);
+				}
+				out.writeIndex(nullpos);
+			} else {
+				int index = branchpertoken[token.ordinal()];
+				if (index == -1) {
+					throw new AvroDataTypeException("No branch of the union " + schema + " accepts a JSON " + token);
+				}
+				out.writeIndex(index);
+				branches[index].encode(parser, out, context);
+			}
+		};
+	}
+
+	/**
+	 * A nullable union has a single non-null branch, which is used for all values. Otherwise the first branch
+	 * of a type matching the JSON token, numbers prefer the exact type and strings the text types.
+	 */
+	private static int findBranch(List<Schema> types, JsonToken token) {
+		Type[] preferred;
+		switch (token) {
+		case START_OBJECT:
+			preferred = new Type[] {Type.RECORD, Type.MAP};
+			break;
+		case START_ARRAY:
+			preferred = new Type[] {Type.ARRAY};
+			break;
+		case VALUE_STRING:
+			preferred = new Type[] {Type.STRING, Type.ENUM, Type.BYTES, Type.FIXED, Type.LONG, Type.INT, Type.DOUBLE, Type.FLOAT, Type.BOOLEAN};
+			break;
+		case VALUE_NUMBER_INT:
+			preferred = new Type[] {Type.INT, Type.LONG, Type.DOUBLE, Type.FLOAT, Type.BYTES, Type.STRING};
+			break;
+		case VALUE_NUMBER_FLOAT:
+			preferred = new Type[] {Type.DOUBLE, Type.FLOAT, Type.BYTES, Type.STRING};
+			break;
+		case VALUE_TRUE:
+		case VALUE_FALSE:
+			preferred = new Type[] {Type.BOOLEAN, Type.STRING};
+			break;
+		default:
+			return -1;
+		}
+		int nonnull = -1;
+		for (int i = 0; i < types.size(); i++) {
+			if (types.get(i).getType() != Type.NULL) {
+				if (nonnull == -1) {
+					nonnull = i;
+				} else {
+					nonnull = -2;
+				}
+			}
+		}
+		if (nonnull >= 0) {
+			return nonnull;
+		}
+		for (Type type : preferred) {
+			for (int i = 0; i < types.size(); i++) {
+				if (types.get(i).getType() == type) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private static ValueEncoder compilePrimitive(Schema schema) {
+		IAvroDatatype datatype = AvroType.getAvroDataType(schema);
+		if (datatype == null) {
+			throw new AvroTypeException("Unknown schema type \"" + schema.getType() + "\"");
+		}
+		AvroType avrotype = datatype.getAvroType();
+		switch (schema.getType()) {
+		case NULL:
+			return (parser, out, context) -> {
+				expect(parser, JsonToken.VALUE_NULL);
+				out.writeNull();
+			};
+		case BOOLEAN:
+			return (parser, out, context) -> {
+				JsonToken token = parser.currentToken();
+				if (token == JsonToken.VALUE_TRUE) {
+					out.writeBoolean(true);
+				} else if (token == JsonToken.VALUE_FALSE) {
+					out.writeBoolean(false);
+				} else {
+					out.writeBoolean((Boolean) toInternal(datatype, getScalar(parser, avrotype)));
+				}
+			};
+		case INT: {
+			IAvroIntPrimitive primitive = datatype instanceof IAvroIntPrimitive ? (IAvroIntPrimitive) datatype : AvroInt.create();
+			return (parser, out, context) -> {
+				if (parser.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+					out.writeInt(primitive.toInternalInt(parser.getIntValue()));
+				} else {
+					out.writeInt(primitive.toInternalInt(getScalar(parser, avrotype)));
+				}
+			};
+		}
+		case LONG: {
+			IAvroLongPrimitive primitive = datatype instanceof IAvroLongPrimitive ? (IAvroLongPrimitive) datatype : AvroLong.create();
+			return (parser, out, context) -> {
+				if (parser.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+					out.writeLong(primitive.toInternalLong(parser.getLongValue()));
+				} else {
+					out.writeLong(primitive.toInternalLong(getScalar(parser, avrotype)));
+				}
+			};
+		}
+		case FLOAT: {
+			IAvroFloatPrimitive primitive = datatype instanceof IAvroFloatPrimitive ? (IAvroFloatPrimitive) datatype : AvroFloat.create();
+			return (parser, out, context) -> {
+				if (parser.currentToken().isNumeric()) {
+					out.writeFloat(primitive.toInternalFloat(parser.getFloatValue()));
+				} else {
+					out.writeFloat(primitive.toInternalFloat(getScalar(parser, avrotype)));
+				}
+			};
+		}
+		case DOUBLE: {
+			IAvroDoublePrimitive primitive = (IAvroDoublePrimitive) datatype;
+			return (parser, out, context) -> {
+				if (parser.currentToken().isNumeric()) {
+					out.writeDouble(primitive.toInternalDouble(parser.getDoubleValue()));
+				} else {
+					out.writeDouble(primitive.toInternalDouble(getScalar(parser, avrotype)));
+				}
+			};
+		}
+		case STRING:
+			return (parser, out, context) -> {
+				out.writeString((CharSequence) toInternal(datatype, getScalar(parser, avrotype)));
+			};
+		case BYTES:
+			if (avrotype == AvroType.AVRODECIMAL) {
+				return (parser, out, context) -> {
+					Object value = toInternal(datatype, getDecimal(parser));
+					if (value instanceof ByteBuffer) {
+						out.writeBytes((ByteBuffer) value);
+					} else {
+						out.writeBytes((byte[]) value);
+					}
+				};
+			} else {
+				return (parser, out, context) -> out.writeBytes(getBinary(parser));
+			}
+		case FIXED: {
+			int size = schema.getFixedSize();
+			if (avrotype == AvroType.AVRODECIMAL) {
+				LogicalTypes.Decimal decimal = (LogicalTypes.Decimal) schema.getLogicalType();
+				return (parser, out, context) -> {
+					BigDecimal value = getDecimal(parser).setScale(decimal.getScale(), RoundingMode.HALF_UP);
+					out.writeFixed(DECIMAL_CONVERTER.toFixed(value, schema, decimal).bytes());
+				};
+			} else {
+				return (parser, out, context) -> {
+					byte[] value = getBinary(parser);
+					if (value.length != size) {
+						throw new AvroDataTypeException("The fixed " + schema.getFullName() + " requires " + size + " bytes but got " + value.length);
+					}
+					out.writeFixed(value);
+				};
+			}
+		}
+		case ENUM:
+			return (parser, out, context) -> {
+				expect(parser, JsonToken.VALUE_STRING);
+				out.writeEnum(schema.getEnumOrdinal(parser.getText()));
+			};
+		default:
+			throw new AvroTypeException("Unknown schema type \"" + schema.getType() + "\"");
+		}
+	}
+
+	private static Object toInternal(IAvroDatatype datatype, Object value) {
+		Object v = datatype.convertToInternal(value);
+		if (v == null) {
+			throw new AvroDataTypeException("Cannot write null into a non-nullable field of type " + datatype);
+		}
+		return v;
+	}
+
+	/**
+	 * @return the current scalar token as value for the data type's convertToInternal(), ISO strings of the date and time types are parsed
+	 */
+	private static Object getScalar(JsonParser parser, AvroType avrotype) throws IOException {
+		JsonToken token = parser.currentToken();
+		switch (token) {
+		case VALUE_STRING:
+			if (avrotype.getGroup() == AvroDatatypeClass.DATETIME) {
+				String text = parser.getText();
+				try {
+					switch (avrotype) {
+					case AVRODATE:
+						return LocalDate.parse(text);
+					case AVROTIMEMILLIS:
+					case AVROTIMEMICROS:
+						return LocalTime.parse(text);
+					case AVROLOCALTIMESTAMPMILLIS:
+					case AVROLOCALTIMESTAMPMICROS:
+						return LocalDateTime.parse(text);
+					default:
+						return Instant.parse(text);
+					}
+				} catch (DateTimeParseException e) {
+					throw new AvroDataTypeException("Cannot convert the string \"" + text + "\" into a " + avrotype);
+				}
+			}
+			return parser.getText();
+		case VALUE_NUMBER_INT:
+		case VALUE_NUMBER_FLOAT:
+			return parser.getNumberValue();
+		case VALUE_TRUE:
+			return Boolean.TRUE;
+		case VALUE_FALSE:
+			return Boolean.FALSE;
+		case VALUE_NULL:
+			throw new AvroDataTypeException("Cannot write null into a non-nullable field of type " + avrotype);
+		default:
+			throw new AvroDataTypeException("Expected a JSON value for the type " + avrotype + " but got " + token);
+		}
+	}
+
+	private static BigDecimal getDecimal(JsonParser parser) throws IOException {
+		JsonToken token = parser.currentToken();
+		if (token.isNumeric()) {
+			return parser.getDecimalValue();
+		} else if (token == JsonToken.VALUE_STRING) {
+			try {
+				return new BigDecimal(parser.getText());
+			} catch (NumberFormatException e) {
+				throw new AvroDataTypeException("Cannot convert the string \"" + parser.getText() + "\" into a Decimal");
+			}
+		} else {
+			throw new AvroDataTypeException("Expected a number or string for a decimal but got " + token);
+		}
+	}
+
+	/**
+	 * Binary values are Base64 encoded strings in JSON, same as written by {@link CompiledJsonWriter}.
+	 */
+	private static byte[] getBinary(JsonParser parser) throws IOException {
+		JsonToken token = parser.currentToken();
+		if (token == JsonToken.VALUE_STRING || token == JsonToken.VALUE_EMBEDDED_OBJECT) {
+			return parser.getBinaryValue();
+		} else {
+			throw new AvroDataTypeException("Expected a Base64 string for a binary value but got " + token);
+		}
+	}
+
+	private static void expect(JsonParser parser, JsonToken expected) {
+		if (parser.currentToken() != expected) {
+			throw new AvroDataTypeException("Expected a JSON " + expected + " but got " + parser.currentToken());
+		}
+	}
+
+	/**
+	 * @param field the record field
+	 * @return the binary encoded default value of the field, a nullable field defaults to null, null if the field has no default at all
+	 * @throws IOException in case the default value cannot be encoded
+	 */
+	static byte[] getDefault(Field field) throws IOException {
+		Schema fieldschema = field.schema();
+		Object value;
+		if (field.hasDefaultValue()) {
+			value = GenericData.get().getDefaultValue(field);
+		} else if (fieldschema.getType() == Type.UNION && fieldschema.getIndexNamed(Type.NULL.getName()) != null) {
+			value = null;
+		} else {
+			return null;
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryEncoder encoder = encoderFactory.directBinaryEncoder(out, null);
+		new GenericDatumWriter<Object>(fieldschema).write(value, encoder);
+		return out.toByteArray();
+	}
+
+	@FunctionalInterface
+	private interface ValueEncoder {
+		void encode(JsonParser parser, BinaryEncoder out, Context context) throws IOException;
+	}
+
+	private static class RecordEncoder implements ValueEncoder {
+		private final Schema schema;
+		private final Map<String, Integer> positions = new HashMap<>();
+		private ValueEncoder[] fieldencoders;
+		/**
+		 * The Avro encoded value written for missing fields, null if the field is required
+		 */
+		private byte[][] defaults;
+
+		private RecordEncoder(Schema schema) {
+			this.schema = schema;
+		}
+
+		private void compileFields(Map<String, RecordEncoder> records) throws IOException {
+			List<Field> fields = schema.getFields();
+			ValueEncoder[] encoders = new ValueEncoder[fields.size()];
+			byte[][] d = new byte[fields.size()][];
+			for (Field field : fields) {
+				positions.put(field.name(), field.pos());
+				positions.putIfAbsent(AvroNameEncoder.decodeName(field.name()), field.pos());
+				encoders[field.pos()] = compile(field.schema(), records);
+				d[field.pos()] = getDefault(field);
+			}
+			this.fieldencoders = encoders;
+			this.defaults = d;
+		}
+
+		@Override
+		public void encode(JsonParser parser, BinaryEncoder out, Context context) throws IOException {
+			expect(parser, JsonToken.START_OBJECT);
+			ValueEncoder[] encoders = fieldencoders;
+			int next = 0;
+			Scratch scratch = null;
+			/*
+			 * Start and end offset within the scratch buffer of every field that arrived before its turn
+			 */
+			int[] ranges = null;
+			try {
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					Integer pos = positions.get(parser.currentName());
+					parser.nextToken();
+					if (pos == null) {
+						parser.skipChildren();
+					} else if (pos == next) {
+						encoders[next].encode(parser, out, context);
+						next++;
+						if (ranges != null) {
+							next = copyBuffered(next, ranges, scratch, out);
+						}
+					} else if (pos < next || (ranges != null && ranges[pos << 1] != -1)) {
+						throw new AvroDataTypeException("The field \"" + parser.currentName() + "\" is present more than once");
+					} else {
+						if (scratch == null) {
+							scratch = context.push();
+							ranges = new int[encoders.length << 1];
+							Arrays.fill(ranges, -1);
+						}
+						scratch.encoder.flush();
+						int start = scratch.out.size();
+						encoders[pos].encode(parser, scratch.encoder, context);
+						scratch.encoder.flush();
+						ranges[pos << 1] = start;
+						ranges[(pos << 1) + 1] = scratch.out.size();
+					}
+				}
+				expect(parser, JsonToken.END_OBJECT);
+				while (next < encoders.length) {
+					if (ranges != null && ranges[next << 1] != -1) {
+						next = copyBuffered(next, ranges, scratch, out);
+					} else {
+						byte[] d = defaults[next];
+						if (d == null) {
+							throw new AvroDataTypeException("The field \"" + schema.getFields().get(next).name() + "\" of " + schema.getFullName() + " has no value and no default");
+						}
+						out.writeFixed(d);
+						next++;
+					}
+				}
+			} finally {
+				if (scratch != null) {
+					context.pop();
+				}
+			}
+		}
+
+		private static int copyBuffered(int next, int[] ranges, Scratch scratch, BinaryEncoder out) throws IOException {
+			while (next < (ranges.length >> 1) && ranges[next << 1] != -1) {
+				int start = ranges[next << 1];
+				out.writeFixed(scratch.out.buffer(), start, ranges[(next << 1) + 1] - start);
+				next++;
+			}
+			return next;
+		}
+	}
+
+	/**
+	 * A buffer with its encoder to write values that cannot be written into the target yet.
+	 */
+	private static class Scratch {
+		private final FrameOutputStream out = new FrameOutputStream(INITIAL_BUFFER_SIZE);
+		private BinaryEncoder encoder;
+
+		private Scratch reset() {
+			// reconfiguring flushes leftovers of a failed previous call, hence before the buffer is reset
+			encoder = encoderFactory.binaryEncoder(out, encoder);
+			out.reset();
+			return this;
+		}
+
+		private void copyTo(BinaryEncoder target) throws IOException {
+			encoder.flush();
+			if (out.size() > 0) {
+				target.writeFixed(out.buffer(), 0, out.size());
+			}
+		}
+	}
+
+	/**
+	 * The per thread state, one scratch buffer per nesting level, reused for every JSON document encoded by this thread.
+	 */
+	private static class Context {
+		private FrameOutputStream out = new FrameOutputStream(INITIAL_BUFFER_SIZE);
+		private BinaryEncoder encoder;
+		private final List<Scratch> scratches = new ArrayList<>();
+		private int depth = 0;
+
+		private Scratch push() {
+			if (depth == scratches.size()) {
+				scratches.add(new Scratch());
+			}
+			return scratches.get(depth++).reset();
+		}
+
+		private void pop() {
+			depth--;
+		}
+
+		private void release() {
+			if (out.capacity() > 1024 * 1024) {
+				out = new FrameOutputStream(INITIAL_BUFFER_SIZE);
+			}
+			depth = 0;
+		}
+	}
+
+}
@@ -0,0 +1,285 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.Schema.Type;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.IndexedRecord;
+
+import io.rtdi.bigdata.kafka.avro.CompiledDatumReader.ValueReader;
+
+/**
+ * A GenericRecord view on a Kafka message payload, decoding the field values only when they are accessed the first time.
+ * To find a field, all fields in front of it are skipped in the binary data and their start offsets are remembered,
+ * so each field is located once and each value decoded once.
+ *
+ * This is useful for routing and filtering, where only a few fields of a wide record are read and the
+ * original bytes are forwarded, see {@link #getData()}.
+ *
+ * Values are returned in the same form as the {@link AvroDeserializer} returns them, e.g. strings as Utf8.
+ * The record is not thread safe.
+ *
+ */
+public class LazyGenericRecord implements GenericRecord, Comparable<IndexedRecord> {
+	private static final Map<Schema, Plan> plans = new ConcurrentHashMap<>();
+	private static final Object NOT_DECODED = new Object();
+	private static final int FRAME_HEADER_SIZE = 1 + Integer.BYTES;
+
+	private final Schema schema;
+	private final Plan plan;
+	private final byte[] data;
+	private final int offset;
+	private final int length;
+	/**
+	 * The start offset of each field, the offsets up to index {@link #located} are known
+	 */
+	private final int[] fieldoffsets;
+	private int located;
+	private final Object[] values;
+	private final ByteArrayDecoder decoder = new ByteArrayDecoder();
+	private boolean modified = false;
+
+	/**
+	 * Wrap a Kafka message payload.
+	 *
+	 * @param schema the schema the data was written with, the one of the message's schema id
+	 * @param data array containing the Kafka message payload
+	 * @param offset start of the message within the array
+	 * @param length length of the message
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 */
+	public LazyGenericRecord(Schema schema, byte[] data, int offset, int length) throws IOException {
+		if (schema.getType() != Type.RECORD) {
+			throw new AvroRuntimeException("The schema \"" + schema.getName() + "\" is not a record");
+		} else if (length < FRAME_HEADER_SIZE || data[offset] != AvroUtils.MAGIC_BYTE) {
+			throw new IOException("Not a valid Kafka Avro message frame");
+		}
+		this.schema = schema;
+		this.plan = getPlan(schema);
+		this.data = data;
+		this.offset = offset;
+		this.length = length;
+		int fieldcount = schema.getFields().size();
+		this.fieldoffsets = new int[fieldcount + 1];
+		this.fieldoffsets[0] = offset + FRAME_HEADER_SIZE;
+		this.located = 0;
+		this.values = new Object[fieldcount];
+		for (int i = 0; i < fieldcount; i++) {
+			values[i] = NOT_DECODED;
+		}
+	}
+
+	/**
+	 * Wrap a Kafka message payload.
+	 *
+	 * @param schema the schema the data was written with, the one of the message's schema id
+	 * @param data Kafka message payload
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 */
+	public LazyGenericRecord(Schema schema, byte[] data) throws IOException {
+		this(schema, data, 0, data.length);
+	}
+
+	private static Plan getPlan(Schema schema) {
+		Plan plan = plans.get(schema);
+		if (plan == null) {
+			plan = plans.computeIfAbsent(schema, Plan::new);
+		}
+		return plan;
+	}
+
+	@Override
+	public Schema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * Overwrites the value of a field. The record is flagged as modified as the original payload does not match any longer.
+	 */
+	@Override
+	public void put(int i, Object v) {
+		values[i] = v;
+		modified = true;
+	}
+
+	@Override
+	public void put(String key, Object v) {
+		put(getField(key).pos(), v);
+	}
+
+	/**
+	 * @throws UncheckedIOException in case the payload cannot be decoded
+	 */
+	@Override
+	public Object get(int i) {
+		Object value = values[i];
+		if (value == NOT_DECODED) {
+			try {
+				locate(i);
+				decoder.configure(data, fieldoffsets[i], offset + length - fieldoffsets[i]);
+				value = plan.readers[i].read(null, decoder);
+				values[i] = value;
+				if (located == i) {
+					fieldoffsets[i + 1] = decoder.position();
+					located = i + 1;
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Cannot decode the field \"" + schema.getFields().get(i).name() + "\"", e);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * @throws AvroRuntimeException in case the field does not exist
+	 */
+	@Override
+	public Object get(String key) {
+		return get(getField(key).pos());
+	}
+
+	@Override
+	public boolean hasField(String key) {
+		return schema.getField(key) != null;
+	}
+
+	private Field getField(String key) {
+		Field field = schema.getField(key);
+		if (field == null) {
+			throw new AvroRuntimeException("Not a valid schema field: " + key);
+		}
+		return field;
+	}
+
+	/**
+	 * Skips all fields from the last located one up to the requested one.
+	 */
+	private void locate(int i) throws IOException {
+		if (located < i) {
+			ByteArrayDecoder d = decoder.configure(data, fieldoffsets[located], offset + length - fieldoffsets[located]);
+			ValueSkipper[] skippers = plan.skippers;
+			while (located < i) {
+				skippers[located].skip(d);
+				located++;
+				fieldoffsets[located] = d.position();
+			}
+		}
+	}
+
+	/**
+	 * @return true if a value was changed via put() after creation
+	 */
+	public boolean isModified() {
+		return modified;
+	}
+
+	/**
+	 * @return the array containing the original Kafka message payload
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	/**
+	 * @return the start of the message within {@link #getData()}
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return the length of the message within {@link #getData()}
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return a ByteBuffer view of the original Kafka message payload
+	 */
+	public ByteBuffer getPayload() {
+		return ByteBuffer.wrap(data, offset, length).slice();
+	}
+
+	/**
+	 * @return the schema id stored in the payload
+	 */
+	public int getSchemaId() {
+		return ((data[offset + 1] & 0xFF) << 24) | ((data[offset + 2] & 0xFF) << 16) | ((data[offset + 3] & 0xFF) << 8) | (data[offset + 4] & 0xFF);
+	}
+
+	/**
+	 * @return a regular GenericData.Record with all values decoded
+	 */
+	public GenericData.Record toRecord() {
+		GenericData.Record r = new GenericData.Record(schema);
+		for (int i = 0; i < values.length; i++) {
+			r.put(i, get(i));
+		}
+		return r;
+	}
+
+	/**
+	 * Compares all values with another lazy record or a GenericData.Record. Note that GenericData.Record.equals()
+	 * in turn does not accept a lazy record, use {@link #toRecord()} in that case.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		} else if (o instanceof LazyGenericRecord) {
+			return toRecord().equals(((LazyGenericRecord) o).toRecord());
+		} else if (o instanceof GenericData.Record) {
+			return toRecord().equals(o);
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return GenericData.get().hashCode(this, schema);
+	}
+
+	/**
+	 * @throws AvroRuntimeException in case the schema contains maps, which cannot be compared
+	 */
+	@Override
+	public int compareTo(IndexedRecord that) {
+		return GenericData.get().compare(this, that, schema);
+	}
+
+	@Override
+	public String toString() {
+		return GenericData.get().toString(this);
+	}
+
+	/**
+	 * The per schema skippers and readers of all fields.
+	 */
+	private static class Plan {
+		private final ValueSkipper[] skippers;
+		private final ValueReader[] readers;
+
+		private Plan(Schema schema) {
+			List<Field> fields = schema.getFields();
+			skippers = new ValueSkipper[fields.size()];
+			readers = new ValueReader[fields.size()];
+			for (int i = 0; i < skippers.length; i++) {
+				Schema s = fields.get(i).schema();
+				skippers[i] = ValueSkipper.compile(s);
+				readers[i] = CompiledDatumReader.compile(s);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,39 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.io.IOException;
+
+/**
+ * A record would result in a Kafka message larger than the configured max message size.
+ * Thrown before the record is encoded, so the caller can split the record or route it elsewhere.
+ */
+public class MessageTooLargeException extends IOException {
+
+	private static final long serialVersionUID = 4926305218339164307L;
+	private final long size;
+	private final int maxsize;
+
+	/**
+	 * @param size the size of the Kafka message in bytes
+	 * @param maxsize the max message size in bytes
+	 */
+	public MessageTooLargeException(long size, int maxsize) {
+		super("The record requires " + size + " bytes, more than the max message size of " + maxsize + " bytes");
+		this.size = size;
+		this.maxsize = maxsize;
+	}
+
+	/**
+	 * @return the size of the Kafka message in bytes
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the max message size in bytes
+	 */
+	public int getMaxSize() {
+		return maxsize;
+	}
+
+}
@@ -0,0 +1,404 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.avro.JsonProperties;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.Schema.Type;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.Decoder;
+
+import io.rtdi.bigdata.kafka.avro.CompiledDatumReader.ValueReader;
+import io.rtdi.bigdata.kafka.avro.recordbuilders.AvroField;
+
+/**
+ * A DatumReader decoding only a subset of the fields, all other fields are skipped in the binary stream
+ * without materializing them. The result is a slim record of the {@link #getProjectedSchema()}, which
+ * contains the projected fields in the order of the writer schema.
+ *
+ * The fields are specified as dot separated paths, each element either the Avro name or the original name
+ * of the field, e.g. <code>CUSTOMER_ID</code> or <code>__audit.__transformresult</code>.
+ * A path into a nullable record, an array of records or a map of records projects the nested records.
+ * A path ending at a field returns its complete value.
+ *
+ * A projected record with fewer fields than the original gets a unique name, e.g. <code>__audit_projection</code>, as the same record
+ * might be used by other fields in full or with different projected fields. Records with the same projected fields share one schema.
+ *
+ * The reader stops decoding after the last projected field of the top level record, hence it must be used
+ * for decoders holding a single record only, like the payload of a Kafka message, see {@link AvroDeserializer#deserialize(byte[], DatumReader)}.
+ *
+ * Readers are immutable and thread safe, use {@link #get(Schema, Collection)} to get a cached reader.
+ *
+ */
+public class ProjectionReader implements DatumReader<GenericRecord> {
+	private static final Map<List<Object>, ProjectionReader> cache = new ConcurrentHashMap<>();
+	private final Schema schema;
+	private final Schema projectedschema;
+	private final ProjectedRecordReader root;
+
+	/**
+	 * Compile a new reader, usually {@link #get(Schema, Collection)} should be used instead.
+	 *
+	 * @param schema the schema the data was written with
+	 * @param paths the fields to read
+	 * @throws AvroDataTypeException in case a path does not exist in the schema
+	 */
+	public ProjectionReader(Schema schema, Collection<String> paths) {
+		this.schema = schema;
+		PathNode tree = new PathNode();
+		for (String path : paths) {
+			PathNode node = tree;
+			for (String element : path.split("\\.")) {
+				if (node.children == null) {
+					// the parent was already requested as a whole
+					break;
+				}
+				node = node.children.computeIfAbsent(element, k -> new PathNode());
+			}
+			node.children = null;
+		}
+		if (tree.children == null || tree.children.isEmpty()) {
+			throw new AvroDataTypeException("The projection needs at least one field path");
+		}
+		this.root = compileRecord(schema, tree, true, new Compilation(schema));
+		this.projectedschema = root.schema;
+	}
+
+	/**
+	 * @param schema the schema the data was written with
+	 * @param paths the fields to read
+	 * @return the cached reader for this projection
+	 * @throws AvroDataTypeException in case a path does not exist in the schema
+	 */
+	public static ProjectionReader get(Schema schema, Collection<String> paths) {
+		List<Object> key = List.of(schema, Set.copyOf(paths));
+		ProjectionReader reader = cache.get(key);
+		if (reader == null) {
+			reader = cache.computeIfAbsent(key, k -> new ProjectionReader(schema, paths));
+		}
+		return reader;
+	}
+
+	/**
+	 * @return the schema the data was written with
+	 */
+	public Schema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * @return the schema of the returned slim records
+	 */
+	public Schema getProjectedSchema() {
+		return projectedschema;
+	}
+
+	/**
+	 * A projection reader is bound to its schema.
+	 *
+	 * @throws UnsupportedOperationException if the schema is a different one
+	 */
+	@Override
+	public void setSchema(Schema schema) {
+		if (!this.schema.equals(schema)) {
+			throw new UnsupportedOperationException("A ProjectionReader cannot change its schema, use ProjectionReader.get(schema, paths) instead");
+		}
+	}
+
+	/**
+	 * @param reuse a record of the projected schema to be filled with the new values or null
+	 */
+	@Override
+	public GenericRecord read(GenericRecord reuse, Decoder in) throws IOException {
+		return (GenericRecord) root.read(reuse, in);
+	}
+
+	/**
+	 * @param schema the writer schema of a record
+	 * @param node the requested fields of this record
+	 * @param toplevel true for the root record, which does not need to skip the trailing fields
+	 * @param compilation the names and slim records created so far
+	 * @return the reader creating the slim record
+	 */
+	private static ProjectedRecordReader compileRecord(Schema schema, PathNode node, boolean toplevel, Compilation compilation) {
+		List<Field> fields = schema.getFields();
+		int[] targets = new int[fields.size()];
+		ValueReader[] readers = new ValueReader[fields.size()];
+		ValueSkipper[] skippers = new ValueSkipper[fields.size()];
+		Map<Field, PathNode> selected = new LinkedHashMap<>();
+		for (Entry<String, PathNode> e : node.children.entrySet()) {
+			Field f = findField(schema, e.getKey());
+			PathNode previous = selected.put(f, e.getValue());
+			if (previous != null && (previous.children == null || e.getValue().children == null)) {
+				// the same field by Avro and original name, one of them as a whole
+				selected.put(f, new PathNode(null));
+			} else if (previous != null) {
+				PathNode merged = new PathNode();
+				merged.children.putAll(previous.children);
+				merged.children.putAll(e.getValue().children);
+				selected.put(f, merged);
+			}
+		}
+		List<Field> slimfields = new ArrayList<>();
+		int last = -1;
+		boolean complete = selected.size() == fields.size();
+		for (Field f : fields) {
+			int pos = f.pos();
+			PathNode child = selected.get(f);
+			if (child == null) {
+				targets[pos] = -1;
+				skippers[pos] = ValueSkipper.compile(f.schema());
+			} else {
+				targets[pos] = slimfields.size();
+				last = pos;
+				if (child.children == null) {
+					readers[pos] = CompiledDatumReader.compile(f.schema());
+					slimfields.add(new Field(f, f.schema()));
+				} else {
+					complete = false;
+					Projection p = compile(f.schema(), child, f.name(), compilation);
+					readers[pos] = p.reader;
+					boolean nullfirst = p.schema.getType() == Type.UNION && p.schema.getTypes().get(0).getType() == Type.NULL;
+					Object defaultvalue = f.hasDefaultValue() && f.defaultVal() == JsonProperties.NULL_VALUE && nullfirst ? JsonProperties.NULL_VALUE : null;
+					Field slim = new Field(f.name(), p.schema, f.doc(), defaultvalue);
+					f.getObjectProps().forEach(slim::addProp);
+					slimfields.add(slim);
+				}
+			}
+		}
+		List<Object> key = List.of(schema.getFullName(), slimfields, toplevel);
+		ProjectedRecordReader existing = compilation.records.get(key);
+		if (existing != null) {
+			return existing;
+		}
+		String name = complete ? schema.getName() : compilation.uniqueName(schema);
+		Schema slimschema = Schema.createRecord(name, schema.getDoc(), schema.getNamespace(), false, slimfields);
+		schema.getObjectProps().forEach(slimschema::addProp);
+		ProjectedRecordReader reader = new ProjectedRecordReader(slimschema, targets, readers, skippers, toplevel ? last + 1 : fields.size());
+		compilation.records.put(key, reader);
+		return reader;
+	}
+
+	private static Projection compile(Schema schema, PathNode node, String fieldname, Compilation compilation) {
+		switch (schema.getType()) {
+		case RECORD: {
+			ProjectedRecordReader reader = compileRecord(schema, node, false, compilation);
+			return new Projection(reader.schema, reader);
+		}
+		case ARRAY: {
+			Projection items = compile(schema.getElementType(), node, fieldname, compilation);
+			Schema s = Schema.createArray(items.schema);
+			schema.getObjectProps().forEach(s::addProp);
+			return new Projection(s, CompiledDatumReader.arrayReader(s, items.reader));
+		}
+		case MAP: {
+			Projection values = compile(schema.getValueType(), node, fieldname, compilation);
+			Schema s = Schema.createMap(values.schema);
+			schema.getObjectProps().forEach(s::addProp);
+			return new Projection(s, CompiledDatumReader.mapReader(s, values.reader));
+		}
+		case UNION: {
+			List<Schema> types = schema.getTypes();
+			List<Schema> slimtypes = new ArrayList<>();
+			ValueReader[] branches = new ValueReader[types.size()];
+			boolean found = false;
+			for (int i = 0; i < branches.length; i++) {
+				Schema t = types.get(i);
+				if (isNavigable(t)) {
+					Projection p = compile(t, node, fieldname, compilation);
+					slimtypes.add(p.schema);
+					branches[i] = p.reader;
+					found = true;
+				} else {
+					slimtypes.add(t);
+					branches[i] = CompiledDatumReader.compile(t);
+				}
+			}
+			if (!found) {
+				throw new AvroDataTypeException("The field \"" + fieldname + "\" is not a record, hence has no nested fields");
+			}
+			return new Projection(Schema.createUnion(slimtypes), (old, in) -> branches[in.readIndex()].read(old, in));
+		}
+		default:
+			throw new AvroDataTypeException("The field \"" + fieldname + "\" is of type \"" + schema.getName() + "\" and not a record, hence has no nested fields");
+		}
+	}
+
+	private static boolean isNavigable(Schema schema) {
+		switch (schema.getType()) {
+		case RECORD:
+			return true;
+		case ARRAY:
+			return isNavigable(schema.getElementType());
+		case MAP:
+			return isNavigable(schema.getValueType());
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @param schema the record schema
+	 * @param name the Avro name, the original name or the not yet encoded name of the field
+	 * @return the field
+	 * @throws AvroDataTypeException if the field does not exist
+	 */
+	private static Field findField(Schema schema, String name) {
+		Field f = schema.getField(name);
+		if (f == null) {
+			for (Field c : schema.getFields()) {
+				if (name.equals(c.getObjectProp(AvroField.COLUMN_PROP_ORIGINALNAME))) {
+					return c;
+				}
+			}
+			f = schema.getField(AvroNameEncoder.encodeName(name));
+			if (f == null) {
+				throw new AvroDataTypeException("The field \"" + name + "\" does not exist in the record \"" + schema.getName() + "\"");
+			}
+		}
+		return f;
+	}
+
+	/**
+	 * The state of compiling one projection: the names in use and the slim records created so far.
+	 */
+	private static class Compilation {
+		/**
+		 * The full names of all named types of the writer schema and the names given to the slim records
+		 */
+		private final Set<String> names = new HashSet<>();
+		/**
+		 * The slim record readers by original full name and projected fields
+		 */
+		private final Map<List<Object>, ProjectedRecordReader> records = new HashMap<>();
+
+		private Compilation(Schema schema) {
+			addNames(schema);
+		}
+
+		private void addNames(Schema schema) {
+			switch (schema.getType()) {
+			case RECORD:
+				if (names.add(schema.getFullName())) {
+					for (Field f : schema.getFields()) {
+						addNames(f.schema());
+					}
+				}
+				break;
+			case ENUM:
+			case FIXED:
+				names.add(schema.getFullName());
+				break;
+			case ARRAY:
+				addNames(schema.getElementType());
+				break;
+			case MAP:
+				addNames(schema.getValueType());
+				break;
+			case UNION:
+				for (Schema t : schema.getTypes()) {
+					addNames(t);
+				}
+				break;
+			default:
+				break;
+			}
+		}
+
+		/**
+		 * @param schema the original record
+		 * @return a name within the namespace of the record not used by any other named type
+		 */
+		private String uniqueName(Schema schema) {
+			String prefix = schema.getNamespace() == null ? "" : schema.getNamespace() + ".";
+			String name = schema.getName() + "_projection";
+			for (int i = 2; !names.add(prefix + name); i++) {
+				name = schema.getName() + "_projection" + i;
+			}
+			return name;
+		}
+	}
+
+	private static class PathNode {
+		/**
+		 * The requested nested fields, null if the entire field is requested
+		 */
+		private Map<String, PathNode> children;
+
+		private PathNode() {
+			this.children = new LinkedHashMap<>();
+		}
+
+		private PathNode(Map<String, PathNode> children) {
+			this.children = children;
+		}
+	}
+
+	private static class Projection {
+		private final Schema schema;
+		private final ValueReader reader;
+
+		private Projection(Schema schema, ValueReader reader) {
+			this.schema = schema;
+			this.reader = reader;
+		}
+	}
+
+	private static class ProjectedRecordReader implements ValueReader {
+		private final Schema schema;
+		private final int[] targets;
+		private final ValueReader[] readers;
+		private final ValueSkipper[] skippers;
+		private final int end;
+
+		/**
+		 * @param schema the slim schema
+		 * @param targets the position in the slim record for each writer field, -1 if the field is skipped
+		 * @param readers the readers of the projected fields
+		 * @param skippers the skippers of all other fields
+		 * @param end the number of writer fields to process, the remaining fields are neither read nor skipped
+		 */
+		private ProjectedRecordReader(Schema schema, int[] targets, ValueReader[] readers, ValueSkipper[] skippers, int end) {
+			this.schema = schema;
+			this.targets = targets;
+			this.readers = readers;
+			this.skippers = skippers;
+			this.end = end;
+		}
+
+		@Override
+		public Object read(Object old, Decoder in) throws IOException {
+			IndexedRecord record;
+			boolean reuse = old instanceof IndexedRecord && ((IndexedRecord) old).getSchema() == schema;
+			if (reuse) {
+				record = (IndexedRecord) old;
+			} else {
+				record = new GenericData.Record(schema);
+			}
+			for (int i = 0; i < end; i++) {
+				int target = targets[i];
+				if (target < 0) {
+					skippers[i].skip(in);
+				} else {
+					record.put(target, readers[i].read(reuse ? record.get(target) : null, in));
+				}
+			}
+			return record;
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import org.apache.avro.Schema;
+
+/**
+ * The key of the reader caches, the combination of writer and reader schema.
+ * Schemas cache their hash code and usually the very same instances are used, hence lookups are cheap.
+ *
+ */
+final class ReaderKey {
+	private final Schema writerschema;
+	private final Schema readerschema;
+	private final int hash;
+
+	ReaderKey(Schema writerschema, Schema readerschema) {
+		this.writerschema = writerschema;
+		this.readerschema = readerschema;
+		this.hash = 31 * writerschema.hashCode() + readerschema.hashCode();
+	}
+
+	Schema getWriterSchema() {
+		return writerschema;
+	}
+
+	Schema getReaderSchema() {
+		return readerschema;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		} else if (obj instanceof ReaderKey) {
+			ReaderKey other = (ReaderKey) obj;
+			return hash == other.hash && writerschema.equals(other.writerschema) && readerschema.equals(other.readerschema);
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ReaderKey: " + writerschema.getFullName() + " -> " + readerschema.getFullName();
+	}
+
+}
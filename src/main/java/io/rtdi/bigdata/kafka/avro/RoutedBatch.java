@@ -0,0 +1,100 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.util.Arrays;
+
+/**
+ * The result of {@link FrameRouter}: the schema id and RowType of every message of a batch plus, per sink, the indexes of the messages routed to it.
+ * The arrays only grow, so routing batches of similar size into the same instance does not create any objects.
+ *
+ */
+public class RoutedBatch {
+	private int size;
+	private int[] schemaids = new int[0];
+	private RowType[] rowtypes = new RowType[0];
+	private int[] counts = new int[0];
+	private int[][] indexes = new int[0][];
+
+	/**
+	 * Create an empty result, to be passed to the route methods of the {@link FrameRouter}.
+	 */
+	public RoutedBatch() {
+	}
+
+	void reset(int messages, int sinks) {
+		this.size = messages;
+		if (schemaids.length < messages) {
+			schemaids = new int[messages];
+			rowtypes = new RowType[messages];
+		}
+		if (indexes.length != sinks) {
+			counts = new int[sinks];
+			indexes = new int[sinks][];
+		} else {
+			Arrays.fill(counts, 0);
+		}
+		for (int i = 0; i < sinks; i++) {
+			if (indexes[i] == null || indexes[i].length < messages) {
+				indexes[i] = new int[messages];
+			}
+		}
+	}
+
+	void set(int index, int schemaid, RowType rowtype, int sink) {
+		schemaids[index] = schemaid;
+		rowtypes[index] = rowtype;
+		if (sink >= 0) {
+			indexes[sink][counts[sink]++] = index;
+		}
+	}
+
+	/**
+	 * @return number of messages of the routed batch
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return number of sinks
+	 */
+	public int getSinkCount() {
+		return indexes.length;
+	}
+
+	/**
+	 * @param index of the message within the batch
+	 * @return the schema id of the message
+	 */
+	public int getSchemaId(int index) {
+		return schemaids[index];
+	}
+
+	/**
+	 * @param index of the message within the batch
+	 * @return the RowType of the message, null if the change type is not a known RowType
+	 */
+	public RowType getRowType(int index) {
+		return rowtypes[index];
+	}
+
+	/**
+	 * @param sink the sink number
+	 * @return number of messages routed to this sink
+	 */
+	public int getCount(int sink) {
+		return counts[sink];
+	}
+
+	/**
+	 * @param sink the sink number
+	 * @return the indexes of the messages routed to this sink in batch order, only the first {@link #getCount(int)} elements are valid
+	 */
+	public int[] getIndexes(int sink) {
+		return indexes[sink];
+	}
+
+	@Override
+	public String toString() {
+		return "RoutedBatch: " + size + " messages into " + indexes.length + " sinks " + Arrays.toString(counts);
+	}
+}
@@ -113,6 +113,7 @@ public enum RowType {
 		case 'T': return TRUNCATE;
 		case 'R': return REPLACE;
 		case 'B': return BEFORE;
+		case 'P': return ARCHIVE;
 		default: throw new AvroRuntimeException("Unknow change type \"" + identifier + "\"");
 		}
 	}
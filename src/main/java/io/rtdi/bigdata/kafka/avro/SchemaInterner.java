@@ -0,0 +1,333 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.avro.LogicalType;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.SchemaNormalization;
+
+/**
+ * Returns one shared instance for equal schemas, similar to String.intern().
+ *
+ * Every ValueSchema contains the same __audit and __extension structures and a schema registry returns a new parsed schema per
+ * schema id, even if the content is identical. With thousands of tables that are thousands of identical Schema objects.
+ * The interner looks up schemas by their parsing canonical form fingerprint (64-bit Rabin) and verifies with equals() plus a comparison
+ * of all docs, which equals() ignores, hence schemas differing only in properties, docs or logical types are not mixed up.
+ *
+ * A schema which is not known yet is rebuilt with the interned instances of its nested schemas, so all ValueSchemas share the
+ * same __audit record instance. Recursive schemas are interned as a whole only.
+ *
+ * The interned schemas must not be modified, e.g. by adding properties. The interner is thread safe, lookups of interned schemas
+ * do not take any lock, only adding a schema locks the candidates of its fingerprint.
+ *
+ */
+public class SchemaInterner {
+	private static final SchemaInterner instance = new SchemaInterner();
+	private final ConcurrentHashMap<Long, Candidates> schemas = new ConcurrentHashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder savedbytes = new LongAdder();
+	private final AtomicInteger count = new AtomicInteger();
+
+	/**
+	 * @return the interner shared by the entire application
+	 */
+	public static SchemaInterner get() {
+		return instance;
+	}
+
+	/**
+	 * @param schema any schema
+	 * @return the shared instance equal to this schema, either a previously interned one or the schema itself or a copy sharing the nested schemas
+	 */
+	public Schema intern(Schema schema) {
+		if (schema == null) {
+			return null;
+		}
+		return intern(schema, new HashMap<>());
+	}
+
+	/**
+	 * @param schema the schema to intern
+	 * @param recursive cache of the recursion check per record name
+	 * @return the interned instance
+	 */
+	private Schema intern(Schema schema, Map<String, Boolean> recursive) {
+		long fingerprint = SchemaNormalization.parsingFingerprint64(schema);
+		Candidates candidates = schemas.computeIfAbsent(fingerprint, k -> new Candidates());
+		Schema found = find(candidates.interned, schema);
+		if (found != null) {
+			return found;
+		}
+		// the nested schemas are interned outside of the lock, they might add to the same map
+		Schema shared = isRecursive(schema, recursive) ? schema : rebuild(schema, recursive);
+		synchronized (candidates) {
+			Interned[] current = candidates.interned;
+			found = find(current, schema);
+			if (found != null) {
+				return found;
+			}
+			Interned[] added = new Interned[current.length + 1];
+			System.arraycopy(current, 0, added, 0, current.length);
+			added[current.length] = new Interned(shared);
+			candidates.interned = added;
+		}
+		misses.increment();
+		count.incrementAndGet();
+		return shared;
+	}
+
+	/**
+	 * @return the interned instance equal to the schema or null
+	 */
+	private Schema find(Interned[] interned, Schema schema) {
+		for (Interned c : interned) {
+			if (c.schema == schema) {
+				hits.increment();
+				return c.schema;
+			} else if (c.schema.equals(schema) && sameDocs(c.schema, schema, new HashSet<>())) {
+				hits.increment();
+				savedbytes.add(c.getSize());
+				return c.schema;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return a schema equal to the input using the interned nested schemas, the input itself if all nested schemas are interned instances already
+	 */
+	private Schema rebuild(Schema schema, Map<String, Boolean> recursive) {
+		switch (schema.getType()) {
+		case RECORD: {
+			List<Field> fields = schema.getFields();
+			Schema[] types = new Schema[fields.size()];
+			boolean changed = false;
+			for (int i = 0; i < types.length; i++) {
+				types[i] = intern(fields.get(i).schema(), recursive);
+				changed |= types[i] != fields.get(i).schema();
+			}
+			if (!changed) {
+				return schema;
+			}
+			List<Field> newfields = new ArrayList<>(types.length);
+			for (int i = 0; i < types.length; i++) {
+				newfields.add(new Field(fields.get(i), types[i]));
+			}
+			Schema s = Schema.createRecord(schema.getName(), schema.getDoc(), schema.getNamespace(), schema.isError(), newfields);
+			schema.getAliases().forEach(s::addAlias);
+			return copyProps(schema, s);
+		}
+		case ARRAY: {
+			Schema items = intern(schema.getElementType(), recursive);
+			return items == schema.getElementType() ? schema : copyProps(schema, Schema.createArray(items));
+		}
+		case MAP: {
+			Schema values = intern(schema.getValueType(), recursive);
+			return values == schema.getValueType() ? schema : copyProps(schema, Schema.createMap(values));
+		}
+		case UNION: {
+			List<Schema> types = new ArrayList<>(schema.getTypes().size());
+			boolean changed = false;
+			for (Schema t : schema.getTypes()) {
+				Schema i = intern(t, recursive);
+				changed |= i != t;
+				types.add(i);
+			}
+			return changed ? Schema.createUnion(types) : schema;
+		}
+		default:
+			return schema;
+		}
+	}
+
+	/**
+	 * Schema.equals() and Field.equals() ignore the docs, e.g. the column descriptions of a table, hence they are compared separately.
+	 *
+	 * @param a a schema
+	 * @param b a schema equal to the first one
+	 * @param visited the names of the records compared already, to stop at recursive schemas
+	 * @return true if the docs of all named schemas and fields are the same
+	 */
+	private static boolean sameDocs(Schema a, Schema b, Set<String> visited) {
+		if (a == b) {
+			return true;
+		}
+		switch (a.getType()) {
+		case RECORD: {
+			if (!visited.add(a.getFullName())) {
+				return true;
+			} else if (!Objects.equals(a.getDoc(), b.getDoc())) {
+				return false;
+			}
+			List<Field> fa = a.getFields();
+			List<Field> fb = b.getFields();
+			for (int i = 0; i < fa.size(); i++) {
+				if (!Objects.equals(fa.get(i).doc(), fb.get(i).doc()) || !sameDocs(fa.get(i).schema(), fb.get(i).schema(), visited)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		case ENUM:
+		case FIXED:
+			return Objects.equals(a.getDoc(), b.getDoc());
+		case ARRAY:
+			return sameDocs(a.getElementType(), b.getElementType(), visited);
+		case MAP:
+			return sameDocs(a.getValueType(), b.getValueType(), visited);
+		case UNION: {
+			List<Schema> ta = a.getTypes();
+			List<Schema> tb = b.getTypes();
+			for (int i = 0; i < ta.size(); i++) {
+				if (!sameDocs(ta.get(i), tb.get(i), visited)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		default:
+			return true;
+		}
+	}
+
+	private static Schema copyProps(Schema source, Schema target) {
+		LogicalType logicaltype = source.getLogicalType();
+		if (logicaltype != null) {
+			logicaltype.addToSchema(target);
+		}
+		source.getObjectProps().forEach(target::addProp);
+		return target;
+	}
+
+	/**
+	 * @return true if the schema contains a record referencing itself or a parent record
+	 */
+	private static boolean isRecursive(Schema schema, Map<String, Boolean> recursive) {
+		return isRecursive(schema, new HashSet<>(), recursive);
+	}
+
+	private static boolean isRecursive(Schema schema, Set<String> path, Map<String, Boolean> recursive) {
+		switch (schema.getType()) {
+		case RECORD: {
+			String name = schema.getFullName();
+			if (path.contains(name)) {
+				return true;
+			}
+			Boolean known = recursive.get(name);
+			if (known != null) {
+				return known;
+			}
+			path.add(name);
+			boolean result = false;
+			for (Field f : schema.getFields()) {
+				if (isRecursive(f.schema(), path, recursive)) {
+					result = true;
+					break;
+				}
+			}
+			path.remove(name);
+			if (path.isEmpty() || !result) {
+				/*
+				 * A recursion to a parent record is not a property of this record alone, hence only the definite results are cached
+				 */
+				recursive.put(name, result);
+			}
+			return result;
+		}
+		case ARRAY:
+			return isRecursive(schema.getElementType(), path, recursive);
+		case MAP:
+			return isRecursive(schema.getValueType(), path, recursive);
+		case UNION:
+			for (Schema t : schema.getTypes()) {
+				if (isRecursive(t, path, recursive)) {
+					return true;
+				}
+			}
+			return false;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @return the number of intern() calls, including the nested schemas, that returned an existing instance
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of intern() calls, including the nested schemas, that added a new instance
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the estimated number of bytes not held in memory because of shared schemas, based on the JSON size of the deduplicated schemas
+	 */
+	public long getEstimatedBytesSaved() {
+		return savedbytes.sum();
+	}
+
+	/**
+	 * @return the number of distinct schemas and nested schemas held
+	 */
+	public int size() {
+		return count.get();
+	}
+
+	/**
+	 * Forget all interned schemas and reset the statistics.
+	 */
+	public void clear() {
+		schemas.clear();
+		hits.reset();
+		misses.reset();
+		savedbytes.reset();
+		count.set(0);
+	}
+
+	/**
+	 * The interned schemas with the same fingerprint, usually one. The array is replaced when adding, so it can be read without lock.
+	 */
+	private static final class Candidates {
+		private volatile Interned[] interned = new Interned[0];
+	}
+
+	private static final class Interned {
+		private final Schema schema;
+		/*
+		 * Not volatile, computing the size twice is harmless
+		 */
+		private int size = -1;
+
+		private Interned(Schema schema) {
+			this.schema = schema;
+		}
+
+		/**
+		 * A rough estimate of the memory of a schema object tree, based on the size of its JSON representation.
+		 * Computed on the first hit only, as the serialization is expensive.
+		 */
+		private int getSize() {
+			if (size < 0) {
+				size = schema.toString().length();
+			}
+			return size;
+		}
+	}
+
+}
@@ -0,0 +1,344 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaParseException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A {@link SchemaResolver} reading the schemas from a Confluent compatible schema registry via <code>GET /schemas/ids/{id}</code>.
+ *
+ * The schemas are kept in a cache with a limited size. Concurrent lookups of the same schema id, e.g. from multiple consumer threads
+ * at startup, are combined into a single request. Schema ids the registry does not know are remembered for a while, so a
+ * message with a bad schema id does not cause a request per message. To avoid the latency of cache misses for the first messages,
+ * the schema ids of e.g. the first poll can be loaded in parallel via {@link #prefetch(Collection)}.
+ *
+ * The resolver is thread safe.
+ *
+ */
+public class SchemaRegistryResolver implements SchemaResolver {
+	/**
+	 * The default number of cached schemas
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 1000;
+	/**
+	 * The default time a not found schema id is remembered
+	 */
+	public static final Duration DEFAULT_NEGATIVE_TTL = Duration.ofSeconds(30);
+	private static final ObjectMapper om = new ObjectMapper();
+
+	private final URI baseurl;
+	private final HttpClient client;
+	private final BoundedCache<Integer, Schema> schemas;
+	private final BoundedCache<Integer, Long> notfound;
+	private final Map<Integer, CompletableFuture<Schema>> inflight = new ConcurrentHashMap<>();
+	private final AtomicLong requests = new AtomicLong();
+	private Duration negativettl = DEFAULT_NEGATIVE_TTL;
+	private Duration timeout = Duration.ofSeconds(30);
+	private String authorization;
+	private SchemaInterner interner;
+
+	/**
+	 * @param baseurl the URL of the schema registry, e.g. http://localhost:8081
+	 */
+	public SchemaRegistryResolver(URI baseurl) {
+		this(baseurl, DEFAULT_CACHE_SIZE, HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build());
+	}
+
+	/**
+	 * @param baseurl the URL of the schema registry, e.g. http://localhost:8081
+	 * @param cachesize the maximum number of cached schemas
+	 * @param client the HttpClient to use, e.g. with a proxy or SSL configuration
+	 */
+	public SchemaRegistryResolver(URI baseurl, int cachesize, HttpClient client) {
+		String url = baseurl.toString();
+		this.baseurl = URI.create(url.endsWith("/") ? url : url + "/");
+		this.client = client;
+		this.schemas = new BoundedCache<>(cachesize);
+		this.notfound = new BoundedCache<>(cachesize);
+	}
+
+	/**
+	 * @param negativettl how long a schema id the registry does not know is remembered, zero to not remember it at all
+	 */
+	public void setNegativeTTL(Duration negativettl) {
+		this.negativettl = negativettl;
+	}
+
+	/**
+	 * @return how long a schema id the registry does not know is remembered
+	 */
+	public Duration getNegativeTTL() {
+		return negativettl;
+	}
+
+	/**
+	 * @param timeout the timeout of a single request
+	 */
+	public void setTimeout(Duration timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @return the timeout of a single request
+	 */
+	public Duration getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Use HTTP basic authentication, e.g. with the API key and secret of the registry.
+	 *
+	 * @param user the user or API key
+	 * @param password the password or API secret
+	 */
+	public void setBasicAuthentication(String user, String password) {
+		this.authorization = "Basic " + Base64.getEncoder().encodeToString((user + ":" + password).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param interner the interner to share the schema instances with other schemas, e.g. {@link SchemaInterner#get()}, or null to not intern them
+	 */
+	public void setSchemaInterner(SchemaInterner interner) {
+		this.interner = interner;
+	}
+
+	/**
+	 * @return the interner used for all schemas read from the registry or null
+	 */
+	public SchemaInterner getSchemaInterner() {
+		return interner;
+	}
+
+	/**
+	 * Returns the cached schema or reads it from the registry. Concurrent calls for the same schema id wait for the same request.
+	 *
+	 * @throws IOException in case the schema id is not known by the registry or the registry cannot be reached
+	 */
+	@Override
+	public Schema getSchema(int schemaid) throws IOException {
+		Schema schema = schemas.get(schemaid);
+		if (schema != null) {
+			return schema;
+		}
+		checkNotFound(schemaid);
+		try {
+			return lookup(schemaid).get();
+		} catch (ExecutionException e) {
+			throw toIOException(schemaid, e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading the schema id " + schemaid + " from the schema registry", e);
+		}
+	}
+
+	/**
+	 * Load all not yet cached schemas in parallel and wait for all requests to complete.
+	 * Schema ids that cannot be read are ignored here, {@link #getSchema(int)} will report them.
+	 *
+	 * @param schemaids the schema ids to load, e.g. of all messages of the first poll
+	 * @return the number of schema ids now in the cache
+	 */
+	public int prefetch(Collection<Integer> schemaids) {
+		List<CompletableFuture<Schema>> futures = new ArrayList<>();
+		int cached = 0;
+		for (Integer schemaid : schemaids) {
+			if (schemas.get(schemaid) != null) {
+				cached++;
+			} else if (!isNotFound(schemaid)) {
+				futures.add(lookup(schemaid));
+			}
+		}
+		for (CompletableFuture<Schema> f : futures) {
+			try {
+				f.join();
+				cached++;
+			} catch (CompletionException e) {
+				// reported when the schema is actually requested
+			}
+		}
+		return cached;
+	}
+
+	/**
+	 * @return the number of requests sent to the schema registry
+	 */
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	/**
+	 * @return the number of cached schemas
+	 */
+	public int getCacheCount() {
+		return schemas.size();
+	}
+
+	/**
+	 * Remove all cached schemas and not found schema ids.
+	 */
+	public void clear() {
+		schemas.clear();
+		notfound.clear();
+	}
+
+	/**
+	 * @param schemaid the schema id
+	 * @return the pending request for this schema id, a new one if none is running
+	 */
+	private CompletableFuture<Schema> lookup(int schemaid) {
+		CompletableFuture<Schema> future = inflight.get(schemaid);
+		if (future == null) {
+			CompletableFuture<Schema> created = new CompletableFuture<>();
+			future = inflight.putIfAbsent(schemaid, created);
+			if (future == null) {
+				future = created;
+				/*
+				 * The cache is checked again as the previous request might have completed in between
+				 */
+				Schema schema = schemas.get(schemaid);
+				if (schema != null) {
+					inflight.remove(schemaid);
+					created.complete(schema);
+				} else {
+					fetch(schemaid, created);
+				}
+			}
+		}
+		return future;
+	}
+
+	private void fetch(int schemaid, CompletableFuture<Schema> result) {
+		try {
+			HttpRequest.Builder builder = HttpRequest.newBuilder(baseurl.resolve("schemas/ids/" + schemaid))
+					.timeout(timeout)
+					.header("Accept", "application/vnd.schemaregistry.v1+json, application/json")
+					.GET();
+			if (authorization != null) {
+				builder.header("Authorization", authorization);
+			}
+			requests.incrementAndGet();
+			client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofString()).whenComplete((response, t) -> {
+				try {
+					if (t != null) {
+						throw new IOException("Cannot reach the schema registry at " + baseurl, t);
+					}
+					Schema schema = parseResponse(schemaid, response);
+					schemas.putIfAbsent(schemaid, schema);
+					inflight.remove(schemaid);
+					result.complete(schema);
+				} catch (Exception e) {
+					inflight.remove(schemaid);
+					result.completeExceptionally(e);
+				}
+			});
+		} catch (RuntimeException e) {
+			/*
+			 * Creating or sending the request failed right away, e.g. an invalid header or a client shut down.
+			 * All waiting callers must get the error and the next call must try again.
+			 */
+			inflight.remove(schemaid);
+			result.completeExceptionally(e);
+		}
+	}
+
+	private Schema parseResponse(int schemaid, HttpResponse<String> response) throws IOException {
+		if (response.statusCode() == 404) {
+			if (!negativettl.isZero()) {
+				notfound.put(schemaid, System.nanoTime() + negativettl.toNanos());
+			}
+			throw new SchemaNotFoundException(schemaid);
+		} else if (response.statusCode() != 200) {
+			throw new IOException("The schema registry returned the http status " + response.statusCode() + " for the schema id " + schemaid + ": " + response.body());
+		}
+		JsonNode root = om.readTree(response.body());
+		JsonNode type = root.get("schemaType");
+		if (type != null && !type.asText().equals("AVRO")) {
+			throw new IOException("The schema id " + schemaid + " is not an Avro schema but of type " + type.asText());
+		}
+		JsonNode text = root.get("schema");
+		if (text == null) {
+			throw new IOException("The schema registry response for the schema id " + schemaid + " does not contain a schema");
+		}
+		try {
+			Schema schema = new Schema.Parser().parse(text.asText());
+			SchemaInterner i = interner;
+			return i != null ? i.intern(schema) : schema;
+		} catch (SchemaParseException e) {
+			throw new IOException("The schema of the schema id " + schemaid + " is not a valid Avro schema", e);
+		}
+	}
+
+	private boolean isNotFound(int schemaid) {
+		Long expiry = notfound.get(schemaid);
+		if (expiry == null) {
+			return false;
+		} else if (expiry - System.nanoTime() > 0) {
+			return true;
+		} else {
+			// expired, unless a new 404 did replace the entry meanwhile
+			notfound.remove(schemaid, expiry);
+			return false;
+		}
+	}
+
+	private void checkNotFound(int schemaid) throws SchemaNotFoundException {
+		if (isNotFound(schemaid)) {
+			throw new SchemaNotFoundException(schemaid);
+		}
+	}
+
+	private static IOException toIOException(int schemaid, Throwable t) {
+		if (t instanceof SchemaNotFoundException) {
+			// a new instance to have the stack trace of the caller
+			return new SchemaNotFoundException(schemaid);
+		} else if (t instanceof IOException) {
+			return (IOException) t;
+		} else {
+			return new IOException("Cannot read the schema id " + schemaid + " from the schema registry", t);
+		}
+	}
+
+	/**
+	 * The schema registry does not know the schema id.
+	 */
+	public static class SchemaNotFoundException extends IOException {
+		private static final long serialVersionUID = 1L;
+		private final int schemaid;
+
+		/**
+		 * @param schemaid the unknown schema id
+		 */
+		public SchemaNotFoundException(int schemaid) {
+			super("The schema id " + schemaid + " is not known by the schema registry");
+			this.schemaid = schemaid;
+		}
+
+		/**
+		 * @return the unknown schema id
+		 */
+		public int getSchemaId() {
+			return schemaid;
+		}
+	}
+
+}
@@ -0,0 +1,22 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.io.IOException;
+
+import org.apache.avro.Schema;
+
+/**
+ * Returns the schema for a schema id as found in the Kafka message payload, usually by asking the schema registry.
+ *
+ * @see AvroDeserializer#deserialize(byte[], SchemaResolver, Schema)
+ */
+@FunctionalInterface
+public interface SchemaResolver {
+
+	/**
+	 * @param schemaid the id of the schema, see {@link AvroDeserializer#getSchemaId(byte[])}
+	 * @return the schema the message was written with
+	 * @throws IOException in case the schema cannot be found
+	 */
+	Schema getSchema(int schemaid) throws IOException;
+
+}
@@ -0,0 +1,614 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.AvroTypeException;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.Schema.Type;
+import org.apache.avro.SchemaCompatibility;
+import org.apache.avro.SchemaCompatibility.SchemaCompatibilityType;
+import org.apache.avro.SchemaCompatibility.SchemaPairCompatibility;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+
+/**
+ * Re-encodes Kafka Avro messages written with one schema into the binary format of a newer, compatible schema,
+ * e.g. to upgrade all messages of a topic to the latest schema version, without deserializing them into a GenericRecord.
+ *
+ * The pair of writer and reader schema is compiled once into a copy plan following the Avro schema resolution rules.
+ * Values whose schemas have the same binary encoding are copied as byte ranges, consecutive unchanged fields as one range.
+ * Fields removed in the reader schema are skipped, added fields get their encoded default value, numbers are promoted,
+ * enum symbols and union branches are mapped by name and fields in a different order are copied in the reader's order.
+ *
+ * Transcoders are immutable and thread safe, use {@link #get(Schema, Schema)} to get the cached transcoder for a schema pair.
+ *
+ */
+public class SchemaUpgradeTranscoder {
+	private static final EncoderFactory encoderFactory = EncoderFactory.get();
+	private static final int FRAME_HEADER_SIZE = 1 + Integer.BYTES;
+	private static final int INITIAL_BUFFER_SIZE = 4096;
+	private static final BoundedCache<ReaderKey, SchemaUpgradeTranscoder> cache = new BoundedCache<>(BoundedCache.SCHEMA_CACHE_SIZE);
+	private static final ThreadLocal<Context> contexts = ThreadLocal.withInitial(Context::new);
+	private final Schema writerschema;
+	private final Schema readerschema;
+	private final boolean unchanged;
+	private final ValueTranscoder root;
+
+	/**
+	 * Compile a new transcoder for the schema pair, usually {@link #get(Schema, Schema)} should be used instead.
+	 *
+	 * @param writerschema the schema the messages were written with
+	 * @param readerschema the schema the messages should be converted to
+	 * @throws AvroTypeException in case the reader schema cannot read data of the writer schema
+	 * @throws IOException in case the default value of an added field cannot be encoded
+	 */
+	public SchemaUpgradeTranscoder(Schema writerschema, Schema readerschema) throws IOException {
+		SchemaPairCompatibility compatibility = SchemaCompatibility.checkReaderWriterCompatibility(readerschema, writerschema);
+		if (compatibility.getType() != SchemaCompatibilityType.COMPATIBLE) {
+			throw new AvroTypeException("The schema \"" + readerschema.getFullName() + "\" cannot read data written with the schema \""
+					+ writerschema.getFullName() + "\": " + compatibility.getDescription());
+		}
+		this.writerschema = writerschema;
+		this.readerschema = readerschema;
+		this.unchanged = sameEncoding(writerschema, readerschema);
+		this.root = compile(writerschema, readerschema, new HashMap<>());
+	}
+
+	/**
+	 * @param writerschema the schema the messages were written with
+	 * @param readerschema the schema the messages should be converted to
+	 * @return the cached transcoder for this schema pair
+	 * @throws AvroTypeException in case the reader schema cannot read data of the writer schema
+	 * @throws IOException in case the default value of an added field cannot be encoded
+	 */
+	public static SchemaUpgradeTranscoder get(Schema writerschema, Schema readerschema) throws IOException {
+		ReaderKey key = new ReaderKey(writerschema, readerschema);
+		SchemaUpgradeTranscoder transcoder = cache.get(key);
+		if (transcoder == null) {
+			transcoder = cache.putIfAbsent(key, new SchemaUpgradeTranscoder(writerschema, readerschema));
+		}
+		return transcoder;
+	}
+
+	/**
+	 * @return the schema the messages were written with
+	 */
+	public Schema getWriterSchema() {
+		return writerschema;
+	}
+
+	/**
+	 * @return the schema the messages are converted to
+	 */
+	public Schema getReaderSchema() {
+		return readerschema;
+	}
+
+	/**
+	 * Converts a Kafka message payload into the reader schema, the writer schema is looked up via the schema id of the message.
+	 *
+	 * @param data array containing the Kafka message payload
+	 * @param offset start of the message within the array
+	 * @param length length of the message
+	 * @param resolver returns the writer schema for the message's schema id, e.g. from the schema registry
+	 * @param readerschema the schema the message should be converted to
+	 * @param readerschemaid the schema id of the reader schema
+	 * @return the Kafka message payload in the reader schema
+	 * @throws IOException in case this is not a valid Avro Kafka message or the schema cannot be resolved
+	 */
+	public static byte[] transcode(byte[] data, int offset, int length, SchemaResolver resolver, Schema readerschema, int readerschemaid) throws IOException {
+		int schemaid = AvroDeserializer.getSchemaId(data, offset, length);
+		return get(resolver.getSchema(schemaid), readerschema).transcode(data, offset, length, readerschemaid);
+	}
+
+	/**
+	 * Converts a Kafka message payload written with the writer schema into the reader schema.
+	 *
+	 * @param data with the binary Avro representation
+	 * @param schemaid the schema id of the reader schema written into the frame header
+	 * @return the Kafka message payload in the reader schema
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 */
+	public byte[] transcode(byte[] data, int schemaid) throws IOException {
+		return transcode(data, 0, data.length, schemaid);
+	}
+
+	/**
+	 * Converts a Kafka message payload stored in a section of a larger array into the reader schema.
+	 *
+	 * @param data array containing the Kafka message payload
+	 * @param offset start of the message within the array
+	 * @param length length of the message
+	 * @param schemaid the schema id of the reader schema written into the frame header
+	 * @return the Kafka message payload in the reader schema
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 */
+	public byte[] transcode(byte[] data, int offset, int length, int schemaid) throws IOException {
+		if (length < FRAME_HEADER_SIZE || data[offset] != AvroUtils.MAGIC_BYTE) {
+			throw new IOException("Not a valid Kafka Avro message frame");
+		}
+		if (unchanged) {
+			// the body is valid for the reader schema as is, only the schema id of the header changes
+			byte[] result = Arrays.copyOfRange(data, offset, offset + length);
+			result[1] = (byte) (schemaid >>> 24);
+			result[2] = (byte) (schemaid >>> 16);
+			result[3] = (byte) (schemaid >>> 8);
+			result[4] = (byte) schemaid;
+			return result;
+		}
+		Context context = contexts.get();
+		FrameOutputStream out = context.out;
+		try {
+			context.encoder = encoderFactory.binaryEncoder(out, context.encoder);
+			out.reset();
+			out.writeHeader(schemaid);
+			root.transcode(context.decoder.configure(data, offset + FRAME_HEADER_SIZE, length - FRAME_HEADER_SIZE), context.encoder);
+			context.encoder.flush();
+			return out.toByteArray();
+		} catch (Exception e) {
+			if (e instanceof IOException) {
+				throw e;
+			} else {
+				throw new IOException(e);
+			}
+		} finally {
+			context.release();
+		}
+	}
+
+	/**
+	 * Converts the Avro body of a message, without the Kafka frame header, into the reader schema.
+	 *
+	 * @param data array containing the Avro body written with the writer schema
+	 * @param offset start of the body within the array
+	 * @param length length of the body
+	 * @param out the encoder to write the body in the reader schema to, it is not flushed
+	 * @throws IOException in case the data cannot be read
+	 */
+	public void transcode(byte[] data, int offset, int length, BinaryEncoder out) throws IOException {
+		root.transcode(new ByteArrayDecoder(data, offset, length), out);
+	}
+
+	/**
+	 * The parsing canonical form contains everything which defines the binary encoding, names, field order, enum symbols and fixed sizes.
+	 */
+	private static boolean sameEncoding(Schema writer, Schema reader) {
+		return writer == reader || SchemaNormalization.parsingFingerprint64(writer) == SchemaNormalization.parsingFingerprint64(reader);
+	}
+
+	private static boolean isCompatible(Schema writer, Schema reader) {
+		return SchemaCompatibility.checkReaderWriterCompatibility(reader, writer).getType() == SchemaCompatibilityType.COMPATIBLE;
+	}
+
+	private static ValueTranscoder compile(Schema writer, Schema reader, Map<String, RecordTranscoder> records) throws IOException {
+		if (sameEncoding(writer, reader)) {
+			return copy(ValueSkipper.compile(writer));
+		} else if (writer.getType() == Type.UNION || reader.getType() == Type.UNION) {
+			return compileUnion(writer, reader, records);
+		}
+		switch (reader.getType()) {
+		case RECORD:
+			return compileRecord(writer, reader, records);
+		case ARRAY: {
+			ValueTranscoder itemtranscoder = compile(writer.getElementType(), reader.getElementType(), records);
+			return (in, out) -> {
+				out.writeArrayStart();
+				for (long n = in.readArrayStart(); n != 0; n = in.arrayNext()) {
+					out.setItemCount(n);
+					for (long i = 0; i < n; i++) {
+						out.startItem();
+						itemtranscoder.transcode(in, out);
+					}
+				}
+				out.writeArrayEnd();
+			};
+		}
+		case MAP: {
+			ValueTranscoder keytranscoder = copy(ValueSkipper.compile(Schema.create(Type.STRING)));
+			ValueTranscoder valuetranscoder = compile(writer.getValueType(), reader.getValueType(), records);
+			return (in, out) -> {
+				out.writeMapStart();
+				for (long n = in.readMapStart(); n != 0; n = in.mapNext()) {
+					out.setItemCount(n);
+					for (long i = 0; i < n; i++) {
+						out.startItem();
+						keytranscoder.transcode(in, out);
+						valuetranscoder.transcode(in, out);
+					}
+				}
+				out.writeMapEnd();
+			};
+		}
+		case ENUM:
+			return compileEnum(writer, reader);
+		case LONG:
+			if (writer.getType() == Type.INT) {
+				return (in, out) -> out.writeLong(in.readInt());
+			}
+			break;
+		case FLOAT:
+			if (writer.getType() == Type.INT) {
+				return (in, out) -> out.writeFloat(in.readInt());
+			} else if (writer.getType() == Type.LONG) {
+				return (in, out) -> out.writeFloat(in.readLong());
+			}
+			break;
+		case DOUBLE:
+			if (writer.getType() == Type.INT) {
+				return (in, out) -> out.writeDouble(in.readInt());
+			} else if (writer.getType() == Type.LONG) {
+				return (in, out) -> out.writeDouble(in.readLong());
+			} else if (writer.getType() == Type.FLOAT) {
+				return (in, out) -> out.writeDouble(in.readFloat());
+			}
+			break;
+		case STRING:
+		case BYTES:
+			if (writer.getType() == Type.STRING || writer.getType() == Type.BYTES) {
+				// both are encoded as length plus bytes
+				return copy(ValueSkipper.compile(writer));
+			}
+			break;
+		case FIXED:
+			if (writer.getType() == Type.FIXED && writer.getFixedSize() == reader.getFixedSize()) {
+				return copy(ValueSkipper.compile(writer));
+			}
+			break;
+		default:
+			break;
+		}
+		throw new AvroTypeException("The schema \"" + reader + "\" cannot read data written with the schema \"" + writer + "\"");
+	}
+
+	/**
+	 * Copies the raw bytes of the values read by the skipper.
+	 */
+	private static ValueTranscoder copy(ValueSkipper skipper) {
+		return (in, out) -> {
+			int start = in.position();
+			skipper.skip(in);
+			out.writeFixed(in.array(), start, in.position() - start);
+		};
+	}
+
+	private static ValueTranscoder compileEnum(Schema writer, Schema reader) {
+		List<String> symbols = writer.getEnumSymbols();
+		String enumdefault = reader.getEnumDefault();
+		int[] ordinals = new int[symbols.size()];
+		for (int i = 0; i < ordinals.length; i++) {
+			if (reader.hasEnumSymbol(symbols.get(i))) {
+				ordinals[i] = reader.getEnumOrdinal(symbols.get(i));
+			} else if (enumdefault != null) {
+				ordinals[i] = reader.getEnumOrdinal(enumdefault);
+			} else {
+				ordinals[i] = -1;
+			}
+		}
+		return (in, out) -> {
+			int index = in.readEnum();
+			if (index < 0 || index >= ordinals.length) {
+				throw new AvroTypeException("Enum index " + index + " is out of bounds for the schema " + writer.getFullName());
+			} else if (ordinals[index] < 0) {
+				throw new AvroTypeException("The enum symbol \"" + symbols.get(index) + "\" does not exist in the schema " + reader.getFullName());
+			}
+			out.writeEnum(ordinals[index]);
+		};
+	}
+
+	private static ValueTranscoder compileUnion(Schema writer, Schema reader, Map<String, RecordTranscoder> records) throws IOException {
+		if (writer.getType() == Type.UNION) {
+			List<Schema> types = writer.getTypes();
+			ValueTranscoder[] branches = new ValueTranscoder[types.size()];
+			for (int i = 0; i < branches.length; i++) {
+				branches[i] = compileBranch(types.get(i), reader, records);
+			}
+			return (in, out) -> {
+				int index = in.readIndex();
+				if (index < 0 || index >= branches.length) {
+					throw new AvroTypeException("Union index " + index + " is out of bounds for the schema " + writer);
+				}
+				branches[index].transcode(in, out);
+			};
+		} else {
+			return compileBranch(writer, reader, records);
+		}
+	}
+
+	/**
+	 * A single writer type, which is written as the matching branch in case the reader is a union.
+	 * The compatibility check allows union branches the reader cannot read, these fail when such a value is found only.
+	 */
+	private static ValueTranscoder compileBranch(Schema writer, Schema reader, Map<String, RecordTranscoder> records) throws IOException {
+		if (reader.getType() == Type.UNION) {
+			int index = findBranch(writer, reader.getTypes());
+			if (index >= 0) {
+				ValueTranscoder transcoder = compile(writer, reader.getTypes().get(index), records);
+				return (in, out) -> {
+					out.writeIndex(index);
+					transcoder.transcode(in, out);
+				};
+			}
+		} else if (isCompatible(writer, reader)) {
+			return compile(writer, reader, records);
+		}
+		String message = "The schema \"" + reader + "\" cannot read data written with the union branch \"" + writer + "\"";
+		return (in, out) -> {
+			throw new AvroTypeException(message);
+		};
+	}
+
+	/**
+	 * Same as Avro, the first branch of the same type and name wins, else the first branch the writer type can be promoted to.
+	 */
+	private static int findBranch(Schema writer, List<Schema> branches) {
+		for (int i = 0; i < branches.size(); i++) {
+			Schema branch = branches.get(i);
+			if (branch.getType() == writer.getType()) {
+				switch (writer.getType()) {
+				case RECORD:
+				case ENUM:
+				case FIXED:
+					if (branch.getFullName().equals(writer.getFullName())) {
+						return i;
+					}
+					break;
+				default:
+					return i;
+				}
+			}
+		}
+		for (int i = 0; i < branches.size(); i++) {
+			if (isCompatible(writer, branches.get(i))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static ValueTranscoder compileRecord(Schema writer, Schema reader, Map<String, RecordTranscoder> records) throws IOException {
+		String key = writer.getFullName() + "->" + reader.getFullName();
+		RecordTranscoder transcoder = records.get(key);
+		if (transcoder == null) {
+			transcoder = new RecordTranscoder();
+			// registered before the fields are compiled to support recursive schemas
+			records.put(key, transcoder);
+			List<Field> writerfields = writer.getFields();
+			List<Field> readerfields = reader.getFields();
+			int[] sources = new int[readerfields.size()];
+			boolean inorder = true;
+			int last = -1;
+			for (Field readerfield : readerfields) {
+				Field writerfield = findField(writer, readerfield);
+				int source = writerfield == null ? -1 : writerfield.pos();
+				sources[readerfield.pos()] = source;
+				if (source >= 0) {
+					inorder &= source > last;
+					last = source;
+				}
+			}
+			if (inorder) {
+				transcoder.plan = compileSequential(writerfields, readerfields, sources, records);
+			} else {
+				transcoder.plan = compileReordered(writerfields, readerfields, sources, records);
+			}
+		}
+		return transcoder;
+	}
+
+	private static Field findField(Schema writer, Field readerfield) {
+		Field writerfield = writer.getField(readerfield.name());
+		if (writerfield == null) {
+			for (String alias : readerfield.aliases()) {
+				writerfield = writer.getField(alias);
+				if (writerfield != null) {
+					break;
+				}
+			}
+		}
+		return writerfield;
+	}
+
+	/**
+	 * The fields are in the same order, the writer fields are processed one after the other with the defaults of added fields in between.
+	 */
+	private static ValueTranscoder compileSequential(List<Field> writerfields, List<Field> readerfields, int[] sources, Map<String, RecordTranscoder> records) throws IOException {
+		StepBuilder steps = new StepBuilder();
+		int next = 0;
+		for (Field readerfield : readerfields) {
+			int source = sources[readerfield.pos()];
+			if (source < 0) {
+				steps.addDefault(getDefault(readerfield));
+			} else {
+				for (; next < source; next++) {
+					steps.addSkip(ValueSkipper.compile(writerfields.get(next).schema()));
+				}
+				Schema writerfieldschema = writerfields.get(source).schema();
+				if (sameEncoding(writerfieldschema, readerfield.schema())) {
+					steps.addCopy(ValueSkipper.compile(writerfieldschema));
+				} else {
+					steps.add(compile(writerfieldschema, readerfield.schema(), records));
+				}
+				next = source + 1;
+			}
+		}
+		for (; next < writerfields.size(); next++) {
+			steps.addSkip(ValueSkipper.compile(writerfields.get(next).schema()));
+		}
+		ValueTranscoder[] plan = steps.build();
+		if (plan.length == 1) {
+			return plan[0];
+		} else {
+			return (in, out) -> {
+				for (ValueTranscoder step : plan) {
+					step.transcode(in, out);
+				}
+			};
+		}
+	}
+
+	/**
+	 * The fields are in a different order, the start of every writer field is located first and then the fields are copied in the reader's order.
+	 */
+	private static ValueTranscoder compileReordered(List<Field> writerfields, List<Field> readerfields, int[] sources, Map<String, RecordTranscoder> records) throws IOException {
+		ValueSkipper[] skippers = new ValueSkipper[writerfields.size()];
+		for (int i = 0; i < skippers.length; i++) {
+			skippers[i] = ValueSkipper.compile(writerfields.get(i).schema());
+		}
+		ValueTranscoder[] transcoders = new ValueTranscoder[readerfields.size()];
+		byte[][] defaults = new byte[readerfields.size()][];
+		for (Field readerfield : readerfields) {
+			int source = sources[readerfield.pos()];
+			if (source < 0) {
+				defaults[readerfield.pos()] = getDefault(readerfield);
+			} else if (!sameEncoding(writerfields.get(source).schema(), readerfield.schema())) {
+				transcoders[readerfield.pos()] = compile(writerfields.get(source).schema(), readerfield.schema(), records);
+			}
+		}
+		return (in, out) -> {
+			int[] offsets = new int[skippers.length + 1];
+			offsets[0] = in.position();
+			for (int i = 0; i < skippers.length; i++) {
+				skippers[i].skip(in);
+				offsets[i + 1] = in.position();
+			}
+			int end = in.position();
+			for (int i = 0; i < sources.length; i++) {
+				int source = sources[i];
+				if (source < 0) {
+					out.writeFixed(defaults[i]);
+				} else if (transcoders[i] == null) {
+					out.writeFixed(in.array(), offsets[source], offsets[source + 1] - offsets[source]);
+				} else {
+					in.position(offsets[source]);
+					transcoders[i].transcode(in, out);
+				}
+			}
+			in.position(end);
+		};
+	}
+
+	private static byte[] getDefault(Field field) throws IOException {
+		byte[] value = JsonAvroEncoder.getDefault(field);
+		if (value == null) {
+			throw new AvroTypeException("The field \"" + field.name() + "\" does not exist in the writer schema and has no default value");
+		}
+		return value;
+	}
+
+	@FunctionalInterface
+	private interface ValueTranscoder {
+		void transcode(ByteArrayDecoder in, BinaryEncoder out) throws IOException;
+	}
+
+	private static class RecordTranscoder implements ValueTranscoder {
+		private ValueTranscoder plan;
+
+		@Override
+		public void transcode(ByteArrayDecoder in, BinaryEncoder out) throws IOException {
+			plan.transcode(in, out);
+		}
+	}
+
+	/**
+	 * Collects the steps of a record, merging consecutive unchanged fields into one byte range copy, consecutive removed fields into one skip
+	 * and consecutive defaults into one byte array.
+	 */
+	private static class StepBuilder {
+		private final List<ValueTranscoder> steps = new ArrayList<>();
+		private final List<ValueSkipper> copies = new ArrayList<>();
+		private final List<ValueSkipper> skips = new ArrayList<>();
+		private final ByteArrayOutputStream defaults = new ByteArrayOutputStream();
+
+		private void addCopy(ValueSkipper skipper) {
+			flushSkips();
+			flushDefaults();
+			copies.add(skipper);
+		}
+
+		private void addSkip(ValueSkipper skipper) {
+			flushCopies();
+			flushDefaults();
+			skips.add(skipper);
+		}
+
+		private void addDefault(byte[] value) {
+			flushCopies();
+			flushSkips();
+			defaults.writeBytes(value);
+		}
+
+		private void add(ValueTranscoder step) {
+			flushCopies();
+			flushSkips();
+			flushDefaults();
+			steps.add(step);
+		}
+
+		private ValueTranscoder[] build() {
+			flushCopies();
+			flushSkips();
+			flushDefaults();
+			return steps.toArray(new ValueTranscoder[steps.size()]);
+		}
+
+		private void flushCopies() {
+			if (copies.size() == 1) {
+				steps.add(copy(copies.get(0)));
+			} else if (copies.size() > 1) {
+				ValueSkipper[] s = copies.toArray(new ValueSkipper[copies.size()]);
+				steps.add((in, out) -> {
+					int start = in.position();
+					for (ValueSkipper skipper : s) {
+						skipper.skip(in);
+					}
+					out.writeFixed(in.array(), start, in.position() - start);
+				});
+			}
+			copies.clear();
+		}
+
+		private void flushSkips() {
+			if (skips.size() > 0) {
+				ValueSkipper[] s = skips.toArray(new ValueSkipper[skips.size()]);
+				steps.add((in, out) -> {
+					for (ValueSkipper skipper : s) {
+						skipper.skip(in);
+					}
+				});
+			}
+			skips.clear();
+		}
+
+		private void flushDefaults() {
+			if (defaults.size() > 0) {
+				byte[] value = defaults.toByteArray();
+				steps.add((in, out) -> out.writeFixed(value));
+			}
+			defaults.reset();
+		}
+	}
+
+	/**
+	 * The per thread state, reused for every message converted by this thread.
+	 */
+	private static class Context {
+		private final ByteArrayDecoder decoder = new ByteArrayDecoder();
+		private FrameOutputStream out = new FrameOutputStream(INITIAL_BUFFER_SIZE);
+		private BinaryEncoder encoder;
+
+		private void release() {
+			if (out.capacity() > 1024 * 1024) {
+				out = new FrameOutputStream(INITIAL_BUFFER_SIZE);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The result of a batch serialization: all Kafka frames are stored back to back in a single byte arena
+ * and an offset/length table points to the individual messages.
+ *
+ * @see AvroSerializer#encode(int, java.util.List)
+ */
+public class SerializedBatch {
+	private final byte[] arena;
+	private final int arenalength;
+	private final int[] offsets;
+	private final int[] lengths;
+
+	SerializedBatch(byte[] arena, int arenalength, int[] offsets, int[] lengths) {
+		this.arena = arena;
+		this.arenalength = arenalength;
+		this.offsets = offsets;
+		this.lengths = lengths;
+	}
+
+	/**
+	 * @return number of messages in this batch
+	 */
+	public int size() {
+		return offsets.length;
+	}
+
+	/**
+	 * The arena might be larger than needed, only the bytes from 0 to {@link #getArenaLength()} are valid.
+	 *
+	 * @return the byte array holding all messages
+	 */
+	public byte[] getArena() {
+		return arena;
+	}
+
+	/**
+	 * @return number of bytes used in the arena
+	 */
+	public int getArenaLength() {
+		return arenalength;
+	}
+
+	/**
+	 * @param index of the message within the batch
+	 * @return the start of the message in the arena
+	 */
+	public int getOffset(int index) {
+		return offsets[index];
+	}
+
+	/**
+	 * @param index of the message within the batch
+	 * @return the length of the message in bytes
+	 */
+	public int getLength(int index) {
+		return lengths[index];
+	}
+
+	/**
+	 * @return the offset table, not a copy
+	 */
+	public int[] getOffsets() {
+		return offsets;
+	}
+
+	/**
+	 * @return the length table, not a copy
+	 */
+	public int[] getLengths() {
+		return lengths;
+	}
+
+	/**
+	 * @param index of the message within the batch
+	 * @return a ByteBuffer view of the message, sharing the arena
+	 */
+	public ByteBuffer getMessage(int index) {
+		return ByteBuffer.wrap(arena, offsets[index], lengths[index]).slice();
+	}
+
+	/**
+	 * @param index of the message within the batch
+	 * @return a copy of the message as required by APIs accepting byte[] only
+	 */
+	public byte[] toByteArray(int index) {
+		return Arrays.copyOfRange(arena, offsets[index], offsets[index] + lengths[index]);
+	}
+
+	@Override
+	public String toString() {
+		return "SerializedBatch: " + size() + " messages, " + arenalength + " bytes";
+	}
+
+}
@@ -0,0 +1,304 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DatumReader;
+
+/**
+ * A thread safe deserializer to be shared by all consumer threads.
+ * The DatumReaders are cached per writer and reader schema combination and shared by all threads,
+ * the decoders are kept per thread.
+ *
+ * @see AvroDeserializer
+ */
+public class SharedAvroDeserializer {
+	private final Map<ReaderKey, DatumReader<GenericRecord>> readers = new ConcurrentHashMap<>();
+	private final BoundedCache<AvroDeserializer.ResolutionKey, DatumReader<GenericRecord>> resolutions;
+	private final ThreadLocal<AvroDeserializer> deserializers;
+	private final boolean compiled;
+
+	/**
+	 * Create a new deserializer using the generic readers.
+	 */
+	public SharedAvroDeserializer() {
+		this(false);
+	}
+
+	/**
+	 * @param compiled true to use a {@link CompiledDatumReader} for all messages read with the writer schema
+	 */
+	public SharedAvroDeserializer(boolean compiled) {
+		this(compiled, AvroDeserializer.DEFAULT_RESOLUTION_CACHE_SIZE);
+	}
+
+	/**
+	 * @param compiled true to use a {@link CompiledDatumReader} for all messages read with the writer schema
+	 * @param resolutioncachesize the maximum number of cached readers for the messages read via a {@link SchemaResolver}
+	 */
+	public SharedAvroDeserializer(boolean compiled, int resolutioncachesize) {
+		this.compiled = compiled;
+		this.resolutions = new BoundedCache<>(resolutioncachesize);
+		this.deserializers = ThreadLocal.withInitial(() -> new AvroDeserializer(readers, resolutions, compiled));
+	}
+
+	/**
+	 * @return true if compiled readers are used
+	 */
+	public boolean isCompiled() {
+		return compiled;
+	}
+
+	/**
+	 * @param data Kafka message payload in binary form
+	 * @return schemaid associated with that message
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 * @see AvroDeserializer#getSchemaId(byte[])
+	 */
+	public static int getSchemaId(byte[] data) throws IOException {
+		return AvroDeserializer.getSchemaId(data);
+	}
+
+	/**
+	 * @param data array containing the Kafka message payload
+	 * @param offset start of the message within the array
+	 * @param length length of the message
+	 * @return schemaid associated with that message
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 * @see AvroDeserializer#getSchemaId(byte[], int, int)
+	 */
+	public static int getSchemaId(byte[] data, int offset, int length) throws IOException {
+		return AvroDeserializer.getSchemaId(data, offset, length);
+	}
+
+	/**
+	 * @param data heap or direct buffer containing the Kafka message payload between position and limit
+	 * @return schemaid associated with that message
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 * @see AvroDeserializer#getSchemaId(ByteBuffer)
+	 */
+	public static int getSchemaId(ByteBuffer data) throws IOException {
+		return AvroDeserializer.getSchemaId(data);
+	}
+
+	/**
+	 * @param data with the binary Avro representation
+	 * @param schema used for the deserialization
+	 * @return AvroRecord
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 * @see AvroDeserializer#deserialize(byte[], Schema)
+	 */
+	public GenericRecord deserialize(byte[] data, Schema schema) throws IOException {
+		return deserializers.get().deserialize(data, schema, schema);
+	}
+
+	/**
+	 * @param data with the binary Avro representation
+	 * @param writerschema the schema the data was written with, the one of the message's schema id
+	 * @param readerschema the schema of the returned record
+	 * @return AvroRecord of the reader schema
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 * @see AvroDeserializer#deserialize(byte[], Schema, Schema)
+	 */
+	public GenericRecord deserialize(byte[] data, Schema writerschema, Schema readerschema) throws IOException {
+		return deserializers.get().deserialize(data, writerschema, readerschema);
+	}
+
+	/**
+	 * @param data array containing the Kafka message payload
+	 * @param offset start of the message within the array
+	 * @param length length of the message
+	 * @param schema used for the deserialization
+	 * @return AvroRecord
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 * @see AvroDeserializer#deserialize(byte[], int, int, Schema)
+	 */
+	public GenericRecord deserialize(byte[] data, int offset, int length, Schema schema) throws IOException {
+		return deserializers.get().deserialize(data, offset, length, schema, schema);
+	}
+
+	/**
+	 * @param data array containing the Kafka message payload
+	 * @param offset start of the message within the array
+	 * @param length length of the message
+	 * @param writerschema the schema the data was written with, the one of the message's schema id
+	 * @param readerschema the schema of the returned record
+	 * @return AvroRecord of the reader schema
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 * @see AvroDeserializer#deserialize(byte[], int, int, Schema, Schema)
+	 */
+	public GenericRecord deserialize(byte[] data, int offset, int length, Schema writerschema, Schema readerschema) throws IOException {
+		return deserializers.get().deserialize(data, offset, length, writerschema, readerschema);
+	}
+
+	/**
+	 * @param data heap or direct buffer, the position is not changed
+	 * @param schema used for the deserialization
+	 * @return AvroRecord
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 * @see AvroDeserializer#deserialize(ByteBuffer, Schema)
+	 */
+	public GenericRecord deserialize(ByteBuffer data, Schema schema) throws IOException {
+		return deserializers.get().deserialize(data, schema, schema);
+	}
+
+	/**
+	 * @param data heap or direct buffer, the position is not changed
+	 * @param writerschema the schema the data was written with, the one of the message's schema id
+	 * @param readerschema the schema of the returned record
+	 * @return AvroRecord of the reader schema
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 * @see AvroDeserializer#deserialize(ByteBuffer, Schema, Schema)
+	 */
+	public GenericRecord deserialize(ByteBuffer data, Schema writerschema, Schema readerschema) throws IOException {
+		return deserializers.get().deserialize(data, writerschema, readerschema);
+	}
+
+	/**
+	 * @param reuse a record returned by a previous call of the same thread for the same reader schema or null
+	 * @param data with the binary Avro representation
+	 * @param schema used for the deserialization
+	 * @return the reuse record filled with the new values or a new record
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 * @see AvroDeserializer#deserialize(GenericRecord, byte[], Schema)
+	 */
+	public GenericRecord deserialize(GenericRecord reuse, byte[] data, Schema schema) throws IOException {
+		return deserializers.get().deserialize(reuse, data, schema);
+	}
+
+	/**
+	 * @param reuse a record returned by a previous call of the same thread for the same reader schema or null
+	 * @param data array containing the Kafka message payload
+	 * @param offset start of the message within the array
+	 * @param length length of the message
+	 * @param writerschema the schema the data was written with, the one of the message's schema id
+	 * @param readerschema the schema of the returned record
+	 * @return the reuse record filled with the new values or a new record
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 * @see AvroDeserializer#deserialize(GenericRecord, byte[], int, int, Schema, Schema)
+	 */
+	public GenericRecord deserialize(GenericRecord reuse, byte[] data, int offset, int length, Schema writerschema, Schema readerschema) throws IOException {
+		return deserializers.get().deserialize(reuse, data, offset, length, writerschema, readerschema);
+	}
+
+	/**
+	 * @param reuse a record returned by a previous call of the same thread for the same reader schema or null
+	 * @param data heap or direct buffer, the position is not changed
+	 * @param schema used for the deserialization
+	 * @return the reuse record filled with the new values or a new record
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 * @see AvroDeserializer#deserialize(GenericRecord, ByteBuffer, Schema)
+	 */
+	public GenericRecord deserialize(GenericRecord reuse, ByteBuffer data, Schema schema) throws IOException {
+		return deserializers.get().deserialize(reuse, data, schema, schema);
+	}
+
+	/**
+	 * @param reuse a record returned by a previous call of the same thread for the same reader schema or null
+	 * @param data heap or direct buffer, the position is not changed
+	 * @param writerschema the schema the data was written with, the one of the message's schema id
+	 * @param readerschema the schema of the returned record
+	 * @return the reuse record filled with the new values or a new record
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 * @see AvroDeserializer#deserialize(GenericRecord, ByteBuffer, Schema, Schema)
+	 */
+	public GenericRecord deserialize(GenericRecord reuse, ByteBuffer data, Schema writerschema, Schema readerschema) throws IOException {
+		return deserializers.get().deserialize(reuse, data, writerschema, readerschema);
+	}
+
+	/**
+	 * @param data with the binary Avro representation
+	 * @param resolver returns the writer schema for the message's schema id, e.g. from the schema registry, must be thread safe
+	 * @param readerschema the schema of the returned record
+	 * @return AvroRecord of the reader schema or null if data is null
+	 * @throws IOException in case this is not a valid Avro Kafka message or the schema cannot be resolved
+	 * @see AvroDeserializer#deserialize(byte[], SchemaResolver, Schema)
+	 */
+	public GenericRecord deserialize(byte[] data, SchemaResolver resolver, Schema readerschema) throws IOException {
+		return deserializers.get().deserialize(data, resolver, readerschema);
+	}
+
+	/**
+	 * @param reuse a record returned by a previous call of the same thread for the same reader schema or null
+	 * @param data array containing the Kafka message payload
+	 * @param offset start of the message within the array
+	 * @param length length of the message
+	 * @param resolver returns the writer schema for the message's schema id, must be thread safe
+	 * @param readerschema the schema of the returned record
+	 * @return the reuse record filled with the new values or a new record
+	 * @throws IOException in case this is not a valid Avro Kafka message or the schema cannot be resolved
+	 * @see AvroDeserializer#deserialize(GenericRecord, byte[], int, int, SchemaResolver, Schema)
+	 */
+	public GenericRecord deserialize(GenericRecord reuse, byte[] data, int offset, int length, SchemaResolver resolver, Schema readerschema) throws IOException {
+		return deserializers.get().deserialize(reuse, data, offset, length, resolver, readerschema);
+	}
+
+	/**
+	 * @param reuse a record returned by a previous call of the same thread for the same reader schema or null
+	 * @param data heap or direct buffer, the position is not changed
+	 * @param resolver returns the writer schema for the message's schema id, must be thread safe
+	 * @param readerschema the schema of the returned record
+	 * @return the reuse record filled with the new values or a new record
+	 * @throws IOException in case this is not a valid Avro Kafka message or the schema cannot be resolved
+	 * @see AvroDeserializer#deserialize(GenericRecord, ByteBuffer, SchemaResolver, Schema)
+	 */
+	public GenericRecord deserialize(GenericRecord reuse, ByteBuffer data, SchemaResolver resolver, Schema readerschema) throws IOException {
+		return deserializers.get().deserialize(reuse, data, resolver, readerschema);
+	}
+
+	/**
+	 * @param data with the binary Avro representation
+	 * @param reader the reader to decode the Avro payload of the message, e.g. a {@link ProjectionReader}
+	 * @return AvroRecord as returned by the reader
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 * @see AvroDeserializer#deserialize(byte[], DatumReader)
+	 */
+	public GenericRecord deserialize(byte[] data, DatumReader<GenericRecord> reader) throws IOException {
+		return deserializers.get().deserialize(data, reader);
+	}
+
+	/**
+	 * @param reuse a record returned by a previous call of the same thread for the same reader or null
+	 * @param data array containing the Kafka message payload
+	 * @param offset start of the message within the array
+	 * @param length length of the message
+	 * @param reader the reader to decode the Avro payload of the message, e.g. a {@link ProjectionReader}
+	 * @return AvroRecord as returned by the reader
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 * @see AvroDeserializer#deserialize(GenericRecord, byte[], int, int, DatumReader)
+	 */
+	public GenericRecord deserialize(GenericRecord reuse, byte[] data, int offset, int length, DatumReader<GenericRecord> reader) throws IOException {
+		return deserializers.get().deserialize(reuse, data, offset, length, reader);
+	}
+
+	/**
+	 * @param reuse a record returned by a previous call of the same thread for the same reader or null
+	 * @param data heap or direct buffer, the position is not changed
+	 * @param reader the reader to decode the Avro payload of the message, e.g. a {@link ProjectionReader}
+	 * @return AvroRecord as returned by the reader
+	 * @throws IOException in case this is not a valid Avro Kafka message
+	 * @see AvroDeserializer#deserialize(GenericRecord, ByteBuffer, DatumReader)
+	 */
+	public GenericRecord deserialize(GenericRecord reuse, ByteBuffer data, DatumReader<GenericRecord> reader) throws IOException {
+		return deserializers.get().deserialize(reuse, data, reader);
+	}
+
+	/**
+	 * @return the number of cached readers
+	 */
+	public int getReaderCount() {
+		return readers.size();
+	}
+
+	/**
+	 * @return the number of cached readers for schema id and reader schema combinations
+	 */
+	public int getResolutionCacheCount() {
+		return resolutions.size();
+	}
+
+}
@@ -0,0 +1,113 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.AvroTypeException;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.io.Decoder;
+
+/**
+ * Skips one value of a specific schema in the binary stream without materializing it.
+ * Strings, bytes and fixed are skipped by length, arrays and maps written in blocks with a byte size are skipped as a whole.
+ *
+ */
+@FunctionalInterface
+interface ValueSkipper {
+
+	/**
+	 * @param in the decoder positioned at the start of the value
+	 * @throws IOException in case the data cannot be decoded
+	 */
+	void skip(Decoder in) throws IOException;
+
+	/**
+	 * @param schema any schema, recursive schemas are supported
+	 * @return the skipper for values of this schema
+	 */
+	static ValueSkipper compile(Schema schema) {
+		return compile(schema, new HashMap<>());
+	}
+
+	private static ValueSkipper compile(Schema schema, Map<String, ValueSkipper[]> records) {
+		switch (schema.getType()) {
+		case NULL:
+			return in -> {};
+		case BOOLEAN:
+			return in -> in.readBoolean();
+		case INT:
+			return in -> in.readInt();
+		case LONG:
+			return in -> in.readLong();
+		case FLOAT:
+			return in -> in.skipFixed(4);
+		case DOUBLE:
+			return in -> in.skipFixed(8);
+		case STRING:
+			return in -> in.skipString();
+		case BYTES:
+			return in -> in.skipBytes();
+		case FIXED: {
+			int size = schema.getFixedSize();
+			return in -> in.skipFixed(size);
+		}
+		case ENUM:
+			return in -> in.readEnum();
+		case ARRAY: {
+			ValueSkipper itemskipper = compile(schema.getElementType(), records);
+			return in -> {
+				for (long l = in.skipArray(); l != 0; l = in.skipArray()) {
+					for (long i = 0; i < l; i++) {
+						itemskipper.skip(in);
+					}
+				}
+			};
+		}
+		case MAP: {
+			ValueSkipper valueskipper = compile(schema.getValueType(), records);
+			return in -> {
+				for (long l = in.skipMap(); l != 0; l = in.skipMap()) {
+					for (long i = 0; i < l; i++) {
+						in.skipString();
+						valueskipper.skip(in);
+					}
+				}
+			};
+		}
+		case UNION: {
+			List<Schema> types = schema.getTypes();
+			ValueSkipper[] branches = new ValueSkipper[types.size()];
+			for (int i = 0; i < branches.length; i++) {
+				branches[i] = compile(types.get(i), records);
+			}
+			return in -> branches[in.readIndex()].skip(in);
+		}
+		case RECORD: {
+			/*
+			 * The field array is registered before it is filled to support recursive schemas
+			 */
+			ValueSkipper[] fields = records.get(schema.getFullName());
+			if (fields == null) {
+				List<Field> f = schema.getFields();
+				fields = new ValueSkipper[f.size()];
+				records.put(schema.getFullName(), fields);
+				for (int i = 0; i < fields.length; i++) {
+					fields[i] = compile(f.get(i).schema(), records);
+				}
+			}
+			ValueSkipper[] skippers = fields;
+			return in -> {
+				for (ValueSkipper s : skippers) {
+					s.skip(in);
+				}
+			};
+		}
+		default:
+			throw new AvroTypeException("Unknown schema type \"" + schema.getType() + "\"");
+		}
+	}
+
+}
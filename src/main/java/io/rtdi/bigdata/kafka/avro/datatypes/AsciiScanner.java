@@ -0,0 +1,146 @@
+package io.rtdi.bigdata.kafka.avro.datatypes;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.avro.util.Utf8;
+
+/**
+ * Checks if text contains ASCII chars only, without creating a CharsetEncoder or any other object per value.
+ *
+ * Byte arrays, e.g. the UTF-8 bytes of an Avro Utf8, are checked eight bytes at a time by testing the high bit of
+ * each byte of a long. Strings are checked in blocks of eight chars.
+ *
+ * Text of the ASCII data types, e.g. VARCHAR, is turned into a String via {@link #decode(byte[], int, int)}, a plain byte copy
+ * into the compact Latin-1 representation of the String instead of a UTF-8 decoding.
+ *
+ */
+public final class AsciiScanner {
+	private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final long HIGH_BITS = 0x8080808080808080L;
+
+	private AsciiScanner() {
+	}
+
+	/**
+	 * @param value a String, Utf8, byte[] or any other CharSequence
+	 * @return true if the value contains ASCII chars only, null is considered ASCII
+	 */
+	public static boolean isAscii(Object value) {
+		return indexOfNonAscii(value) == -1;
+	}
+
+	/**
+	 * @param value a String, Utf8, byte[] or any other CharSequence
+	 * @return the index of the first non-ASCII char or byte, -1 if all are ASCII or the value is null
+	 * @throws IllegalArgumentException in case the value is of a different type
+	 */
+	public static int indexOfNonAscii(Object value) {
+		if (value == null) {
+			return -1;
+		} else if (value instanceof Utf8) {
+			Utf8 u = (Utf8) value;
+			return indexOfNonAscii(u.getBytes(), 0, u.getByteLength());
+		} else if (value instanceof byte[]) {
+			byte[] b = (byte[]) value;
+			return indexOfNonAscii(b, 0, b.length);
+		} else if (value instanceof CharSequence) {
+			return indexOfNonAscii((CharSequence) value);
+		} else {
+			throw new IllegalArgumentException("Cannot check a value of type \"" + value.getClass().getSimpleName() + "\" for ASCII chars");
+		}
+	}
+
+	/**
+	 * @param value the text
+	 * @return the index of the first non-ASCII char, -1 if all chars are ASCII
+	 */
+	public static int indexOfNonAscii(CharSequence value) {
+		int length = value.length();
+		int i = 0;
+		for (; i + 8 <= length; i += 8) {
+			int c = value.charAt(i) | value.charAt(i + 1) | value.charAt(i + 2) | value.charAt(i + 3)
+					| value.charAt(i + 4) | value.charAt(i + 5) | value.charAt(i + 6) | value.charAt(i + 7);
+			if (c >= 0x80) {
+				break;
+			}
+		}
+		for (; i < length; i++) {
+			if (value.charAt(i) >= 0x80) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param bytes the text as UTF-8 or any other ASCII compatible encoding
+	 * @param offset the first byte to check
+	 * @param length the number of bytes to check
+	 * @return the index of the first non-ASCII byte, -1 if all bytes are ASCII
+	 */
+	public static int indexOfNonAscii(byte[] bytes, int offset, int length) {
+		int end = offset + length;
+		int i = offset;
+		for (; i + 8 <= end; i += 8) {
+			if (((long) LONGS.get(bytes, i) & HIGH_BITS) != 0) {
+				break;
+			}
+		}
+		for (; i < end; i++) {
+			if (bytes[i] < 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Create a String from text which is expected to be ASCII, e.g. of a VARCHAR field.
+	 * The bytes are copied as ISO-8859-1, which the JVM stores as compact Latin-1 String without decoding.
+	 * In case the bytes are not ASCII after all, they are decoded as UTF-8, so the result is correct in any case.
+	 *
+	 * @param bytes the UTF-8 encoded text
+	 * @param offset the first byte
+	 * @param length the number of bytes
+	 * @return the String
+	 */
+	public static String decode(byte[] bytes, int offset, int length) {
+		if (indexOfNonAscii(bytes, offset, length) == -1) {
+			return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+		} else {
+			return new String(bytes, offset, length, StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * @param value the text expected to be ASCII
+	 * @return the String
+	 * @see #decode(byte[], int, int)
+	 */
+	public static String decode(Utf8 value) {
+		return decode(value.getBytes(), 0, value.getByteLength());
+	}
+
+	/**
+	 * Checks an entire column of values, e.g. before converting a batch of rows.
+	 *
+	 * @param values the String, Utf8, byte[] or CharSequence values, nulls are allowed
+	 * @param offset the first value to check
+	 * @param length the number of values to check
+	 * @return the index of the first value containing a non-ASCII char, -1 if all are ASCII
+	 * @throws IllegalArgumentException in case a value is of a different type
+	 */
+	public static int indexOfNonAscii(Object[] values, int offset, int length) {
+		int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			if (indexOfNonAscii(values[i]) != -1) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+}
@@ -1,8 +1,12 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
+
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
 
 /**
@@ -108,4 +112,13 @@ public class AvroAnyPrimitive implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		if (value == null) {
+			generator.writeNull();
+		} else {
+			generator.writeString(value.toString());
+		}
+	}
+
 }
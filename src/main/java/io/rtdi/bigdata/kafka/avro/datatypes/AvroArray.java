@@ -1,5 +1,6 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
@@ -9,6 +10,7 @@ import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
 import org.apache.avro.generic.GenericData.Record;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
@@ -198,23 +200,24 @@ public class AvroArray extends LogicalType implements IAvroPrimitive {
 
 	@Override
 	public String convertToJson(Object value) throws AvroDataTypeException, JsonProcessingException {
+		return JsonOutput.toJson(this, value);
+	}
+
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
 		List<?> b = convertToJava(value);
 		if (b == null) {
-			return "null";
+			generator.writeNull();
 		} else {
 			if (schema == null) {
 				throw new AvroDataTypeException("Cannot convert to JSON, the schema is not set for the Array datatype");
 			}
-			StringBuffer sb = new StringBuffer("[");
 			IAvroDatatype datatype = AvroType.getAvroDataType(AvroUtils.getBaseSchema(schema.getElementType()));
+			generator.writeStartArray();
 			for (Object v : b) {
-				if (sb.length() > 1) {
-					sb.append(',');
-				}
-				sb.append(datatype.convertToJson(v));
+				datatype.writeJson(generator, v);
 			}
-			sb.append("]");
-			return sb.toString();
+			generator.writeEndArray();
 		}
 	}
 
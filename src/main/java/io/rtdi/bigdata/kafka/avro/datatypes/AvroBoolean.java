@@ -1,10 +1,14 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
+
 import org.apache.avro.LogicalType;
 import org.apache.avro.LogicalTypes.LogicalTypeFactory;
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
 
 /**
@@ -166,4 +170,14 @@ public class AvroBoolean extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		Boolean b = convertToJava(value);
+		if (b == null) {
+			generator.writeNull();
+		} else {
+			generator.writeBoolean(b);
+		}
+	}
+
 }
@@ -1,5 +1,6 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Base64;
 
@@ -8,6 +9,8 @@ import org.apache.avro.LogicalTypes.LogicalTypeFactory;
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
 
 /**
@@ -163,4 +166,19 @@ public class AvroBytes extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		if (value instanceof ByteBuffer && ((ByteBuffer) value).hasArray()) {
+			ByteBuffer b = (ByteBuffer) value;
+			generator.writeBinary(b.array(), b.arrayOffset() + b.position(), b.remaining());
+		} else {
+			byte[] b = convertToJava(value);
+			if (b == null) {
+				generator.writeNull();
+			} else {
+				generator.writeBinary(b);
+			}
+		}
+	}
+
 }
@@ -1,6 +1,7 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.avro.LogicalType;
 import org.apache.avro.LogicalTypes.LogicalTypeFactory;
@@ -8,6 +9,7 @@ import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
 import org.apache.avro.util.Utf8;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -19,7 +21,7 @@ import io.rtdi.bigdata.kafka.avro.AvroUtils;
  * In other words, the unbounded version of an AvroVarchar().
  *
  */
-public class AvroCLOB extends LogicalType implements IAvroPrimitive {
+public class AvroCLOB extends LogicalType implements IAvroTextPrimitive {
 	/**
 	 * Factory to create instances of this logical type
 	 */
@@ -106,6 +108,8 @@ public class AvroCLOB extends LogicalType implements IAvroPrimitive {
 	public CharSequence convertToInternal(Object value) throws AvroDataTypeException {
 		if (value == null) {
 			return null;
+		} else if (value instanceof Utf8 || value instanceof byte[]) {
+			return convertToUtf8(value);
 		} else if (value instanceof CharSequence) {
 			return validate((CharSequence) value);
 		} else {
@@ -113,6 +117,22 @@ public class AvroCLOB extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public Utf8 convertToUtf8(Object value) throws AvroDataTypeException {
+		if (value == null) {
+			return null;
+		} else if (value instanceof Utf8) {
+			Utf8 u = (Utf8) value;
+			return validate(u, u.getBytes(), u.getByteLength());
+		} else if (value instanceof byte[]) {
+			byte[] b = (byte[]) value;
+			return validate(null, b, b.length);
+		} else {
+			Utf8 u = new Utf8(value.toString());
+			return validate(u, u.getBytes(), u.getByteLength());
+		}
+	}
+
 	@Override
 	public String convertToJava(Object value) throws AvroDataTypeException {
 		if (value == null) {
@@ -120,7 +140,7 @@ public class AvroCLOB extends LogicalType implements IAvroPrimitive {
 		} else if (value instanceof String) {
 			return (String) value;
 		} else if (value instanceof Utf8) {
-			return ((Utf8) value).toString();
+			return AsciiScanner.decode((Utf8) value);
 		} else if (value instanceof CharSequence) {
 			return value.toString();
 		} else {
@@ -129,11 +149,22 @@ public class AvroCLOB extends LogicalType implements IAvroPrimitive {
 	}
 
 	private CharSequence validate(CharSequence value) throws AvroDataTypeException {
-		if (StandardCharsets.US_ASCII.newEncoder().canEncode(value)) {
+		if (AsciiScanner.indexOfNonAscii(value) == -1) {
 			return value;
 		} else {
-			throw new AvroDataTypeException("The provided value contains non-ASCII chars which is not allowed in a VARCHAR data type");
+			throw new AvroDataTypeException("The provided value contains non-ASCII chars which is not allowed in a CLOB data type");
+		}
+	}
+
+	/**
+	 * Validates the UTF-8 bytes of a Utf8 or an ASCII byte array
+	 * @param value the Utf8 or null for a byte array
+	 */
+	private Utf8 validate(Utf8 value, byte[] bytes, int length) throws AvroDataTypeException {
+		if (AsciiScanner.indexOfNonAscii(bytes, 0, length) == -1) {
+			return value != null ? value : new Utf8(Arrays.copyOf(bytes, length));
 		}
+		throw new AvroDataTypeException("The provided value contains non-ASCII chars which is not allowed in a CLOB data type");
 	}
 
 	/**
@@ -179,4 +210,18 @@ public class AvroCLOB extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		if (value instanceof Utf8) {
+			JsonOutput.writeUtf8(generator, (Utf8) value);
+		} else {
+			String b = convertToJava(value);
+			if (b == null) {
+				generator.writeNull();
+			} else {
+				generator.writeString(b);
+			}
+		}
+	}
+
 }
@@ -1,5 +1,6 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -14,6 +15,8 @@ import org.apache.avro.LogicalTypes.LogicalTypeFactory;
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
 
 /**
@@ -21,7 +24,7 @@ import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
  * Wraps the Avro LogicalTypes.date().
  *
  */
-public class AvroDate extends LogicalType implements IAvroPrimitive {
+public class AvroDate extends LogicalType implements IAvroIntPrimitive {
 	/**
 	 * Factory to create an instance of this logical type
 	 */
@@ -89,7 +92,18 @@ public class AvroDate extends LogicalType implements IAvroPrimitive {
 		if (value == null) {
 			return null;
 		} else if (value instanceof Integer) {
-			return value;
+			return (Integer) value;
+		} else {
+			return toInternalInt(value);
+		}
+	}
+
+	@Override
+	public int toInternalInt(Object value) throws AvroDataTypeException {
+		if (value == null) {
+			throw new AvroDataTypeException("Cannot convert null into a primitive int");
+		} else if (value instanceof Integer) {
+			return (Integer) value;
 		} else if (value instanceof Number) {
 			return ((Number) value).intValue();
 		} else if (value instanceof LocalDateTime) {
@@ -98,10 +112,10 @@ public class AvroDate extends LogicalType implements IAvroPrimitive {
 			return (int) ((LocalDate) value).toEpochDay();
 		} else if (value instanceof Date) {
 			Date d = (Date) value;
-			return convertToInternal(Instant.ofEpochMilli(d.getTime()));
+			return toInternalInt(Instant.ofEpochMilli(d.getTime()));
 		} else if (value instanceof ZonedDateTime) {
 			ZonedDateTime d = (ZonedDateTime) value;
-			return convertToInternal(d.toInstant());
+			return toInternalInt(d.toInstant());
 		} else if (value instanceof Instant) {
 			Instant d = (Instant) value;
 			return (int) LocalDateTime.ofEpochSecond(d.getEpochSecond(), 0, ZoneOffset.UTC).getLong(ChronoField.EPOCH_DAY);
@@ -109,6 +123,11 @@ public class AvroDate extends LogicalType implements IAvroPrimitive {
 		throw new AvroDataTypeException("Cannot convert a value of type \"" + value.getClass().getSimpleName() + "\" into a Date");
 	}
 
+	@Override
+	public int toInternalInt(int value) throws AvroDataTypeException {
+		return value;
+	}
+
 	@Override
 	public LocalDate convertToJava(Object value) throws AvroDataTypeException {
 		if (value == null) {
@@ -175,4 +194,14 @@ public class AvroDate extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		LocalDate b = convertToJava(value);
+		if (b == null) {
+			generator.writeNull();
+		} else {
+			generator.writeString(b.toString());
+		}
+	}
+
 }
@@ -1,6 +1,8 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.math.RoundingMode;
 import java.nio.ByteBuffer;
 
@@ -13,11 +15,16 @@ import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
 import org.apache.avro.generic.GenericData.Fixed;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
 
 /**
  * Based on the Avro Type.BYTES data type and wraps the LogicalTypes.decimal(precision, scale).
  *
+ * Decimals with a precision up to {@value #MAX_COMPACT_PRECISION} digits are converted via their unscaled long value, written
+ * directly as big-endian two's-complement bytes, without creating BigDecimal and BigInteger objects. Larger decimals use the Avro DecimalConversion.
+ *
  */
 public class AvroDecimal extends LogicalType implements IAvroPrimitive {
 	/**
@@ -29,8 +36,20 @@ public class AvroDecimal extends LogicalType implements IAvroPrimitive {
 	 * The name of this logical type as used in the schema
 	 */
 	public static final String NAME = "decimal";
+	/**
+	 * The largest precision for which the unscaled value fits into a long
+	 */
+	public static final int MAX_COMPACT_PRECISION = 18;
+	private static final long[] POWERS_OF_TEN = new long[MAX_COMPACT_PRECISION + 1];
+	static {
+		POWERS_OF_TEN[0] = 1L;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10L;
+		}
+	}
 	private Decimal decimal;
 	private Schema schema;
+	private boolean compact;
 
 	/**
 	 * @param precision number of digits the decimal can hold
@@ -60,27 +79,41 @@ public class AvroDecimal extends LogicalType implements IAvroPrimitive {
 
 	/**
 	 * @param schema with the decimal details
-	 * @return the corresponding AvroDecimal
+	 * @return the corresponding AvroDecimal, the shared instance in case of a bytes based decimal
 	 */
 	public static AvroDecimal create(Schema schema) {
-		return new AvroDecimal(schema);
+		if (schema.getType() == Type.BYTES) {
+			LogicalType l = schema.getLogicalType();
+			Decimal d = l instanceof Decimal ? (Decimal) l : (Decimal) LogicalTypes.fromSchema(schema);
+			return create(d.getPrecision(), d.getScale());
+		} else {
+			return new AvroDecimal(schema);
+		}
 	}
 
 	/**
 	 * @param l based on this Avro native logical type
-	 * @return the corresponding AvroDecimal
+	 * @return the corresponding shared AvroDecimal
 	 */
 	public static AvroDecimal create(Decimal l) {
-		return new AvroDecimal(l);
+		return create(l.getPrecision(), l.getScale());
 	}
 
 	/**
 	 * @param precision number of digits the decimal can hold
 	 * @param scale number of digits used for the scale
-	 * @return an AvroDecimal with the provided precision and scale
+	 * @return the shared AvroDecimal with the provided precision and scale
 	 */
 	public static AvroDecimal create(int precision, int scale) {
-		return new AvroDecimal(precision, scale);
+		int key = DatatypeCache.decimalKey(precision, scale);
+		if (key < 0) {
+			return new AvroDecimal(precision, scale);
+		}
+		AvroDecimal datatype = DatatypeCache.DECIMAL.get(key);
+		if (datatype == null) {
+			datatype = DatatypeCache.DECIMAL.putIfAbsent(key, new AvroDecimal(precision, scale));
+		}
+		return datatype;
 	}
 
 	/**
@@ -97,13 +130,14 @@ public class AvroDecimal extends LogicalType implements IAvroPrimitive {
 		if (parts.length > 2) {
 			scale = Integer.parseInt(parts[2]);
 		}
-		return new AvroDecimal(precision, scale);
+		return create(precision, scale);
 	}
 
 	private AvroDecimal(int precision, int scale) {
 		super(NAME);
 		decimal = LogicalTypes.decimal(precision, scale);
 		this.schema = decimal.addToSchema(Schema.create(Type.BYTES));
+		compact = isCompact(decimal);
 	}
 
 	/**
@@ -114,16 +148,18 @@ public class AvroDecimal extends LogicalType implements IAvroPrimitive {
 		super(NAME);
 		decimal = (Decimal) LogicalTypes.fromSchema(schema);
 		this.schema = schema;
+		compact = isCompact(decimal);
+	}
+
+	private static boolean isCompact(Decimal decimal) {
+		return decimal.getPrecision() <= MAX_COMPACT_PRECISION && decimal.getScale() >= 0 && decimal.getScale() <= decimal.getPrecision();
 	}
 
 	/**
-	 * Constructor for this static instance
-	 * @param l based on this Avro native logical type
+	 * @return true if the values of this decimal are converted via an unscaled long, the precision is {@value #MAX_COMPACT_PRECISION} or less
 	 */
-	private AvroDecimal(Decimal l) {
-		super(NAME);
-		decimal = l;
-		this.schema = l.addToSchema(Schema.create(Type.BYTES));
+	public boolean isCompact() {
+		return compact;
 	}
 
 	@Override
@@ -156,6 +192,8 @@ public class AvroDecimal extends LogicalType implements IAvroPrimitive {
 		BigDecimal v = null;
 		if (value == null) {
 			return null;
+		} else if (compact && !(value instanceof ByteBuffer || value instanceof byte[] || value instanceof Fixed)) {
+			return toBytes(toUnscaled(value));
 		} else {
 			if (value instanceof ByteBuffer || value instanceof byte[]) {
 				return value;
@@ -188,6 +226,169 @@ public class AvroDecimal extends LogicalType implements IAvroPrimitive {
 		throw new AvroDataTypeException("Cannot convert a value of type \"" + value.getClass().getSimpleName() + "\" into a Decimal");
 	}
 
+	/**
+	 * Convert the value to the unscaled long of this decimal, e.g. 12.34 of a DECIMAL(10,2) is 1234.
+	 * Values with more fractional digits than the scale are rounded half-up, same as for convertToInternal().
+	 *
+	 * @param value any compatible input for this data type, not null
+	 * @return the unscaled long value
+	 * @throws AvroDataTypeException in case the value cannot be converted, exceeds the precision or this decimal is not compact
+	 */
+	public long toUnscaled(Object value) throws AvroDataTypeException {
+		if (!compact) {
+			throw new AvroDataTypeException("The decimal " + toString() + " exceeds the precision of an unscaled long");
+		}
+		int scale = decimal.getScale();
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			long n = ((Number) value).longValue();
+			if (Math.abs(n) >= POWERS_OF_TEN[decimal.getPrecision() - scale] || n == Long.MIN_VALUE) {
+				throw new AvroDataTypeException("The value " + n + " exceeds the precision of the " + toString());
+			}
+			return n * POWERS_OF_TEN[scale];
+		} else if (value instanceof BigDecimal) {
+			BigDecimal b = (BigDecimal) value;
+			if (b.scale() != scale) {
+				b = b.setScale(scale, RoundingMode.HALF_UP);
+			}
+			if (b.precision() > decimal.getPrecision()) {
+				throw new AvroDataTypeException("The value " + b + " exceeds the precision of the " + toString());
+			}
+			return b.unscaledValue().longValue();
+		} else if (value instanceof Number || value instanceof CharSequence) {
+			// Using the string conversion way to avoid double/float representation errors as much as possible
+			return parseUnscaled(value.toString());
+		} else if (value instanceof ByteBuffer) {
+			return getUnscaled((ByteBuffer) value);
+		} else if (value == null) {
+			throw new AvroDataTypeException("Cannot convert null into an unscaled long");
+		}
+		throw new AvroDataTypeException("Cannot convert a value of type \"" + value.getClass().getSimpleName() + "\" into a Decimal");
+	}
+
+	/**
+	 * Parse a decimal number text, optionally with exponent, into the unscaled long at the scale of this decimal.
+	 */
+	private long parseUnscaled(String text) throws AvroDataTypeException {
+		int precision = decimal.getPrecision();
+		int len = text.length();
+		int start = 0;
+		boolean negative = false;
+		if (len > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+			negative = text.charAt(0) == '-';
+			start = 1;
+		}
+		int end = len;
+		int exponent = 0;
+		for (int i = start; i < len; i++) {
+			char c = text.charAt(i);
+			if (c == 'e' || c == 'E') {
+				try {
+					exponent = Integer.parseInt(text, i + 1, len, 10);
+				} catch (NumberFormatException e) {
+					throw new AvroDataTypeException("Cannot convert the string \"" + text + "\" into a Decimal");
+				}
+				end = i;
+				break;
+			}
+		}
+		int integerdigits = -1;
+		int digitcount = 0;
+		int leadingzeros = -1;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (c == '.' && integerdigits == -1) {
+				integerdigits = digitcount;
+			} else if (c >= '0' && c <= '9') {
+				if (c != '0' && leadingzeros == -1) {
+					leadingzeros = digitcount;
+				}
+				digitcount++;
+			} else {
+				throw new AvroDataTypeException("Cannot convert the string \"" + text + "\" into a Decimal");
+			}
+		}
+		if (digitcount == 0) {
+			throw new AvroDataTypeException("Cannot convert the string \"" + text + "\" into a Decimal");
+		} else if (leadingzeros == -1) {
+			// zero with any exponent
+			return 0L;
+		}
+		if (integerdigits == -1) {
+			integerdigits = digitcount;
+		}
+		/*
+		 * The number of leading digits forming the unscaled value, the digit after is the rounding digit
+		 */
+		long keep = (long) integerdigits + exponent + decimal.getScale();
+		if (keep - leadingzeros > precision) {
+			// checked upfront, else a huge exponent would scale up for a very long time
+			throw new AvroDataTypeException("The value " + text + " exceeds the precision of the " + toString());
+		}
+		long unscaled = 0;
+		long k = 0;
+		for (int i = start; i < end && k <= keep; i++) {
+			char c = text.charAt(i);
+			if (c != '.') {
+				int d = c - '0';
+				if (k < keep) {
+					if (unscaled >= POWERS_OF_TEN[precision - 1]) {
+						throw new AvroDataTypeException("The value " + text + " exceeds the precision of the " + toString());
+					}
+					unscaled = unscaled * 10 + d;
+				} else if (d >= 5) {
+					unscaled++;
+				}
+				k++;
+			}
+		}
+		for (; k < keep; k++) {
+			if (unscaled >= POWERS_OF_TEN[precision - 1]) {
+				throw new AvroDataTypeException("The value " + text + " exceeds the precision of the " + toString());
+			}
+			unscaled *= 10;
+		}
+		if (unscaled >= POWERS_OF_TEN[precision]) {
+			throw new AvroDataTypeException("The value " + text + " exceeds the precision of the " + toString());
+		}
+		return negative ? -unscaled : unscaled;
+	}
+
+	/**
+	 * Encode an unscaled long as the minimal big-endian two's-complement bytes, the same bytes Avro's DecimalConversion writes.
+	 *
+	 * @param unscaled the unscaled value, e.g. 1234 for 12.34 of a DECIMAL(10,2)
+	 * @return the Avro value of this decimal
+	 */
+	public static ByteBuffer toBytes(long unscaled) {
+		int bits = 65 - Long.numberOfLeadingZeros(unscaled ^ (unscaled >> 63));
+		int length = (bits + 7) >>> 3;
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) (unscaled >> ((length - 1 - i) << 3));
+		}
+		return ByteBuffer.wrap(bytes);
+	}
+
+	/**
+	 * Decode the unscaled long from the Avro value without changing the buffer position.
+	 *
+	 * @param value the Avro value of this decimal
+	 * @return the unscaled value
+	 * @throws AvroDataTypeException in case the value has more than 8 bytes or no bytes at all
+	 */
+	public static long getUnscaled(ByteBuffer value) throws AvroDataTypeException {
+		int length = value.remaining();
+		if (length == 0 || length > 8) {
+			throw new AvroDataTypeException("A decimal of " + length + " bytes cannot be read as unscaled long");
+		}
+		int pos = value.position();
+		long unscaled = value.get(pos);
+		for (int i = 1; i < length; i++) {
+			unscaled = (unscaled << 8) | (value.get(pos + i) & 0xFF);
+		}
+		return unscaled;
+	}
+
 	/**
 	 * Factory class to create an instance of this logical type
 	 */
@@ -213,7 +414,7 @@ public class AvroDecimal extends LogicalType implements IAvroPrimitive {
 				ByteBuffer v = (ByteBuffer) value;
 				if (v.capacity() != 0) {
 					v.position(0);
-					BigDecimal n = DECIMAL_CONVERTER.fromBytes(v, null, decimal);
+					BigDecimal n = fromBytes(v);
 					v.position(0);
 					b.append(n.toString());
 				}
@@ -241,11 +442,50 @@ public class AvroDecimal extends LogicalType implements IAvroPrimitive {
 		if (value == null) {
 			return null;
 		} else if (value instanceof ByteBuffer) {
-			return DECIMAL_CONVERTER.fromBytes((ByteBuffer) value, null, decimal);
+			return fromBytes((ByteBuffer) value);
 		}
 		throw new AvroDataTypeException("Cannot convert a value of type \"" + value.getClass().getSimpleName() + "\" into a Decimal");
 	}
 
+	/**
+	 * Convert the Avro value stored in a section of an array, e.g. directly from the binary Avro payload, without copying the bytes first.
+	 *
+	 * @param bytes the array containing the big-endian two's-complement unscaled value
+	 * @param offset the first byte of the value
+	 * @param length the number of bytes, zero bytes are read as zero
+	 * @return the decimal
+	 */
+	public BigDecimal convertToJava(byte[] bytes, int offset, int length) {
+		if (length == 0) {
+			return BigDecimal.valueOf(0L, decimal.getScale());
+		} else if (compact && length <= 8) {
+			long unscaled = bytes[offset];
+			for (int i = 1; i < length; i++) {
+				unscaled = (unscaled << 8) | (bytes[offset + i] & 0xFF);
+			}
+			return BigDecimal.valueOf(unscaled, decimal.getScale());
+		} else {
+			return new BigDecimal(new BigInteger(bytes, offset, length), decimal.getScale());
+		}
+	}
+
+	private BigDecimal fromBytes(ByteBuffer value) {
+		int length = value.remaining();
+		if (length == 0) {
+			// BigInteger does not accept zero bytes
+			return BigDecimal.valueOf(0L, decimal.getScale());
+		} else if (compact && length <= 8) {
+			int pos = value.position();
+			long unscaled = value.get(pos);
+			for (int i = 1; i < length; i++) {
+				unscaled = (unscaled << 8) | (value.get(pos + i) & 0xFF);
+			}
+			return BigDecimal.valueOf(unscaled, decimal.getScale());
+		} else {
+			return DECIMAL_CONVERTER.fromBytes(value, null, decimal);
+		}
+	}
+
 	@Override
 	public String convertToJson(Object value) throws AvroDataTypeException {
 		BigDecimal b = convertToJava(value);
@@ -256,4 +496,14 @@ public class AvroDecimal extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		BigDecimal b = convertToJava(value);
+		if (b == null) {
+			generator.writeNull();
+		} else {
+			generator.writeString(b.toString());
+		}
+	}
+
 }
@@ -1,17 +1,21 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
+
 import org.apache.avro.LogicalType;
 import org.apache.avro.LogicalTypes.LogicalTypeFactory;
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
 
 /**
  * Wrapper of the Avro Type.DOUBLE, a 64 bit IEEE 754 floating-point number.
  *
  */
-public class AvroDouble extends LogicalType implements IAvroPrimitive {
+public class AvroDouble extends LogicalType implements IAvroDoublePrimitive {
 	/**
 	 * Factory to create instances of this class
 	 */
@@ -87,18 +91,34 @@ public class AvroDouble extends LogicalType implements IAvroPrimitive {
 			return null;
 		} else if (value instanceof Double) {
 			return (Double) value;
+		} else {
+			return toInternalDouble(value);
+		}
+	}
+
+	@Override
+	public double toInternalDouble(Object value) throws AvroDataTypeException {
+		if (value == null) {
+			throw new AvroDataTypeException("Cannot convert null into a primitive double");
+		} else if (value instanceof Double) {
+			return (Double) value;
 		} else if (value instanceof String) {
 			try {
-				return Double.valueOf((String) value);
+				return Double.parseDouble((String) value);
 			} catch (NumberFormatException e) {
 				throw new AvroDataTypeException("Cannot convert the string \"" + value + "\" into a Double");
 			}
 		} else if (value instanceof Number) {
-			return Double.valueOf(value.toString()); // going via Strings to avoid representation errors
+			return Double.parseDouble(value.toString()); // going via Strings to avoid representation errors
 		}
 		throw new AvroDataTypeException("Cannot convert a value of type \"" + value.getClass().getSimpleName() + "\" into a Double");
 	}
 
+	@Override
+	public double toInternalDouble(double value) throws AvroDataTypeException {
+		return value;
+	}
+
 	@Override
 	public Double convertToJava(Object value) throws AvroDataTypeException {
 		if (value == null) {
@@ -161,4 +181,13 @@ public class AvroDouble extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		if (value == null) {
+			generator.writeNull();
+		} else {
+			generator.writeNumber(toInternalDouble(value));
+		}
+	}
+
 }
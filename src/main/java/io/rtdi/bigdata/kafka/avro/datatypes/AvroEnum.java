@@ -1,5 +1,6 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
 import java.util.Arrays;
 
 import org.apache.avro.LogicalType;
@@ -8,6 +9,8 @@ import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
 import org.apache.avro.generic.GenericData.EnumSymbol;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
 
 /**
@@ -210,4 +213,13 @@ public class AvroEnum extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		if (value == null) {
+			generator.writeNull();
+		} else {
+			generator.writeString(value.toString());
+		}
+	}
+
 }
@@ -1,5 +1,6 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Base64;
 
@@ -9,6 +10,8 @@ import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
 import org.apache.avro.generic.GenericData.Fixed;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
 
 /**
@@ -46,10 +49,15 @@ public class AvroFixed extends LogicalTypeWithLength implements IAvroPrimitive {
 	 * @param namespace of the fixed schema
 	 * @param length of this data type
 	 * @param doc description
-	 * @return a new data type with this length
+	 * @return the shared data type with this name and length
 	 */
 	public static AvroFixed create(String name, String namespace, int length, String doc) {
-		return new AvroFixed(name, namespace, length, doc);
+		DatatypeCache.FixedKey key = new DatatypeCache.FixedKey(name, namespace, length, doc);
+		AvroFixed datatype = DatatypeCache.FIXED.get(key);
+		if (datatype == null) {
+			datatype = DatatypeCache.putIfAbsent(key, new AvroFixed(name, namespace, length, doc));
+		}
+		return datatype;
 	}
 
 	/**
@@ -80,7 +88,7 @@ public class AvroFixed extends LogicalTypeWithLength implements IAvroPrimitive {
 	 * @return the corresponding schema
 	 */
 	public static Schema getSchema(String name, String namespace, int length, String doc) {
-		return create(name, namespace, length, doc).getSchema();
+		return new AvroFixed(name, namespace, length, doc).getSchema();
 	}
 
 	/**
@@ -90,7 +98,7 @@ public class AvroFixed extends LogicalTypeWithLength implements IAvroPrimitive {
 	 * @return An AvroFixed schema with name FIXEDnnnn where nnnn is the length
 	 */
 	public static Schema getSchema(int length) {
-		return create(length).getSchema();
+		return getSchema("FIXED" + length, null, length, null);
 	}
 
 	/**
@@ -215,4 +223,19 @@ public class AvroFixed extends LogicalTypeWithLength implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		if (value instanceof ByteBuffer && ((ByteBuffer) value).hasArray()) {
+			ByteBuffer b = (ByteBuffer) value;
+			generator.writeBinary(b.array(), b.arrayOffset() + b.position(), b.remaining());
+		} else {
+			byte[] b = convertToJava(value);
+			if (b == null) {
+				generator.writeNull();
+			} else {
+				generator.writeBinary(b);
+			}
+		}
+	}
+
 }
@@ -1,17 +1,21 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
+
 import org.apache.avro.LogicalType;
 import org.apache.avro.LogicalTypes.LogicalTypeFactory;
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
 
 /**
  * Wrapper of the Avro Type.FLOAT, a 32 bit IEEE 754 floating-point number.
  *
  */
-public class AvroFloat extends LogicalType implements IAvroPrimitive {
+public class AvroFloat extends LogicalType implements IAvroFloatPrimitive {
 	/**
 	 * Factory to create instances of this logical type
 	 */
@@ -90,9 +94,20 @@ public class AvroFloat extends LogicalType implements IAvroPrimitive {
 			return null;
 		} else if (value instanceof Float) {
 			return (Float) value;
+		} else {
+			return toInternalFloat(value);
+		}
+	}
+
+	@Override
+	public float toInternalFloat(Object value) throws AvroDataTypeException {
+		if (value == null) {
+			throw new AvroDataTypeException("Cannot convert null into a primitive float");
+		} else if (value instanceof Float) {
+			return (Float) value;
 		} else if (value instanceof String) {
 			try {
-				return Float.valueOf((String) value);
+				return Float.parseFloat((String) value);
 			} catch (NumberFormatException e) {
 				throw new AvroDataTypeException("Cannot convert the string \"" + value + "\" into a Float");
 			}
@@ -102,6 +117,11 @@ public class AvroFloat extends LogicalType implements IAvroPrimitive {
 		throw new AvroDataTypeException("Cannot convert a value of type \"" + value.getClass().getSimpleName() + "\" into a Float");
 	}
 
+	@Override
+	public float toInternalFloat(float value) throws AvroDataTypeException {
+		return value;
+	}
+
 	@Override
 	public Float convertToJava(Object value) throws AvroDataTypeException {
 		if (value == null) {
@@ -164,4 +184,14 @@ public class AvroFloat extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		Float b = convertToJava(value);
+		if (b == null) {
+			generator.writeNull();
+		} else {
+			generator.writeNumber(b.floatValue());
+		}
+	}
+
 }
@@ -1,17 +1,21 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
+
 import org.apache.avro.LogicalType;
 import org.apache.avro.LogicalTypes.LogicalTypeFactory;
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
 
 /**
  * Wrapper of the Avro Type.INT
  *
  */
-public class AvroInt extends LogicalType implements IAvroPrimitive {
+public class AvroInt extends LogicalType implements IAvroIntPrimitive {
 	/**
 	 * Factory to create an instance of this class when reading the schema.
 	 */
@@ -90,9 +94,20 @@ public class AvroInt extends LogicalType implements IAvroPrimitive {
 			return null;
 		} else if (value instanceof Integer) {
 			return (Integer) value;
+		} else {
+			return toInternalInt(value);
+		}
+	}
+
+	@Override
+	public int toInternalInt(Object value) throws AvroDataTypeException {
+		if (value == null) {
+			throw new AvroDataTypeException("Cannot convert null into a primitive int");
+		} else if (value instanceof Integer) {
+			return (Integer) value;
 		} else if (value instanceof String) {
 			try {
-				return Integer.valueOf((String) value);
+				return Integer.parseInt((String) value);
 			} catch (NumberFormatException e) {
 				throw new AvroDataTypeException("Cannot convert the string \"" + value + "\" into a Integer");
 			}
@@ -103,6 +118,11 @@ public class AvroInt extends LogicalType implements IAvroPrimitive {
 		throw new AvroDataTypeException("Cannot convert a value of type \"" + value.getClass().getSimpleName() + "\" into a Integer");
 	}
 
+	@Override
+	public int toInternalInt(int value) throws AvroDataTypeException {
+		return value;
+	}
+
 	@Override
 	public Integer convertToJava(Object value) throws AvroDataTypeException {
 		if (value == null) {
@@ -165,4 +185,13 @@ public class AvroInt extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		if (value == null) {
+			generator.writeNull();
+		} else {
+			generator.writeNumber(toInternalInt(value));
+		}
+	}
+
 }
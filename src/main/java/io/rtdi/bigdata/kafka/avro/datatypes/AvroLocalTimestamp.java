@@ -1,5 +1,6 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
@@ -13,13 +14,15 @@ import org.apache.avro.LogicalTypes.LogicalTypeFactory;
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
 
 /**
  * Wrapper of LogicalTypes.timestampMillis()
  *
  */
-public class AvroLocalTimestamp extends LogicalType implements IAvroPrimitive {
+public class AvroLocalTimestamp extends LogicalType implements IAvroLongPrimitive {
 	/**
 	 * Factory to create an instance of this logical type
 	 */
@@ -88,20 +91,36 @@ public class AvroLocalTimestamp extends LogicalType implements IAvroPrimitive {
 			return null;
 		} else if (value instanceof Long) {
 			return (Long) value;
+		} else {
+			return toInternalLong(value);
+		}
+	}
+
+	@Override
+	public long toInternalLong(Object value) throws AvroDataTypeException {
+		if (value == null) {
+			throw new AvroDataTypeException("Cannot convert null into a primitive long");
+		} else if (value instanceof Long) {
+			return (Long) value;
 		} else if (value instanceof Date) {
 			return ((Date) value).getTime();
 		} else if (value instanceof LocalDateTime) {
 			LocalDateTime v = (LocalDateTime) value;
-			return convertToInternal(v.toInstant(ZoneOffset.UTC));
+			return toInternalLong(v.toInstant(ZoneOffset.UTC));
 		} else if (value instanceof ZonedDateTime) {
 			ZonedDateTime v = (ZonedDateTime) value;
-			return convertToInternal(v.toInstant());
+			return toInternalLong(v.toInstant());
 		} else if (value instanceof Instant) {
 			return ((Instant) value).toEpochMilli();
 		}
 		throw new AvroDataTypeException("Cannot convert a value of type \"" + value.getClass().getSimpleName() + "\" into a LocalDateTime");
 	}
 
+	@Override
+	public long toInternalLong(long value) throws AvroDataTypeException {
+		return value;
+	}
+
 	@Override
 	public LocalDateTime convertToJava(Object value) throws AvroDataTypeException {
 		if (value == null) {
@@ -170,4 +189,14 @@ public class AvroLocalTimestamp extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		LocalDateTime b = convertToJava(value);
+		if (b == null) {
+			generator.writeNull();
+		} else {
+			generator.writeString(b.toString());
+		}
+	}
+
 }
@@ -1,17 +1,21 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
+
 import org.apache.avro.LogicalType;
 import org.apache.avro.LogicalTypes.LogicalTypeFactory;
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
 
 /**
  * Wrapper of the Avro Type.LONG
  *
  */
-public class AvroLong extends LogicalType implements IAvroPrimitive {
+public class AvroLong extends LogicalType implements IAvroLongPrimitive {
 	/**
 	 * Factory to create an instance of this class when reading the schema.
 	 */
@@ -90,9 +94,20 @@ public class AvroLong extends LogicalType implements IAvroPrimitive {
 			return null;
 		} else if (value instanceof Long) {
 			return (Long) value;
+		} else {
+			return toInternalLong(value);
+		}
+	}
+
+	@Override
+	public long toInternalLong(Object value) throws AvroDataTypeException {
+		if (value == null) {
+			throw new AvroDataTypeException("Cannot convert null into a primitive long");
+		} else if (value instanceof Long) {
+			return (Long) value;
 		} else if (value instanceof String) {
 			try {
-				return Long.valueOf((String) value);
+				return Long.parseLong((String) value);
 			} catch (NumberFormatException e) {
 				throw new AvroDataTypeException("Cannot convert the string \"" + value + "\" into a Decimal");
 			}
@@ -102,6 +117,11 @@ public class AvroLong extends LogicalType implements IAvroPrimitive {
 		throw new AvroDataTypeException("Cannot convert a value of type \"" + value.getClass().getSimpleName() + "\" into a Long");
 	}
 
+	@Override
+	public long toInternalLong(long value) throws AvroDataTypeException {
+		return value;
+	}
+
 	@Override
 	public Long convertToJava(Object value) throws AvroDataTypeException {
 		if (value == null) {
@@ -164,4 +184,13 @@ public class AvroLong extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		if (value == null) {
+			generator.writeNull();
+		} else {
+			generator.writeNumber(toInternalLong(value));
+		}
+	}
+
 }
@@ -1,5 +1,6 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -8,6 +9,7 @@ import org.apache.avro.LogicalTypes.LogicalTypeFactory;
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
@@ -176,26 +178,25 @@ public class AvroMap extends LogicalType implements IAvroPrimitive {
 
 	@Override
 	public String convertToJson(Object value) throws AvroDataTypeException, JsonProcessingException {
+		return JsonOutput.toJson(this, value);
+	}
+
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
 		Map<?, ?> b = convertToJava(value);
 		if (b == null) {
-			return "null";
+			generator.writeNull();
 		} else {
 			if (schema == null) {
 				throw new AvroDataTypeException("Cannot convert to JSON, the schema is not set for the Map datatype");
 			}
-			StringBuffer sb = new StringBuffer("{");
-			Schema mtype = schema.getValueType();
-			Schema btype = AvroUtils.getBaseSchema(mtype);
-			IAvroDatatype datatype = AvroType.getAvroDataType(btype);
+			IAvroDatatype datatype = AvroType.getAvroDataType(AvroUtils.getBaseSchema(schema.getValueType()));
+			generator.writeStartObject();
 			for (Entry<?, ?> v : b.entrySet()) {
-				if (sb.length() > 1) {
-					sb.append(',');
-				}
-				sb.append('\"').append(v.getKey().toString()).append("\":");
-				sb.append(datatype.convertToJson(v.getValue()));
+				generator.writeFieldName(v.getKey().toString());
+				datatype.writeJson(generator, v.getValue());
 			}
-			sb.append("}");
-			return sb.toString();
+			generator.writeEndObject();
 		}
 	}
 
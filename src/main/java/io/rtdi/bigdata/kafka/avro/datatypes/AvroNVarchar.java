@@ -1,11 +1,14 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
+
 import org.apache.avro.LogicalType;
 import org.apache.avro.LogicalTypes.LogicalTypeFactory;
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
 import org.apache.avro.util.Utf8;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -17,7 +20,7 @@ import io.rtdi.bigdata.kafka.avro.AvroUtils;
  * and is sorted and compared binary.
  *
  */
-public class AvroNVarchar extends LogicalTypeWithLength {
+public class AvroNVarchar extends LogicalTypeWithLength implements IAvroTextPrimitive {
 	/**
 	 * The name of the logical type as used in Avro schema definitions
 	 */
@@ -37,10 +40,14 @@ public class AvroNVarchar extends LogicalTypeWithLength {
 	/**
 	 * Create an instance of that type.
 	 * @param length of the data type
-	 * @return the instance
+	 * @return the shared instance
 	 */
 	public static AvroNVarchar create(int length) {
-		return new AvroNVarchar(length);
+		AvroNVarchar datatype = DatatypeCache.NVARCHAR.get(length);
+		if (datatype == null) {
+			datatype = DatatypeCache.NVARCHAR.putIfAbsent(length, new AvroNVarchar(length));
+		}
+		return datatype;
 	}
 
 	/**
@@ -57,7 +64,7 @@ public class AvroNVarchar extends LogicalTypeWithLength {
 	 * @return the instance
 	 */
 	public static AvroNVarchar create(Schema schema) {
-		return new AvroNVarchar(getLengthProperty(schema));
+		return create(getLengthProperty(schema));
 	}
 
 	/**
@@ -68,7 +75,7 @@ public class AvroNVarchar extends LogicalTypeWithLength {
 	public static AvroNVarchar create(String text) throws AvroDataTypeException {
 		int l = getLengthPortion(text);
 		if (l > 0) {
-			return new AvroNVarchar(l);
+			return create(l);
 		} else {
 			throw new AvroDataTypeException("The supplied data type \"" + text + "\" cannot be parsed into a length portion");
 		}
@@ -103,6 +110,8 @@ public class AvroNVarchar extends LogicalTypeWithLength {
 	public CharSequence convertToInternal(Object value) throws AvroDataTypeException {
 		if (value == null) {
 			return null;
+		} else if (value instanceof Utf8 || value instanceof byte[]) {
+			return convertToUtf8(value);
 		} else if (value instanceof CharSequence) {
 			return validate((CharSequence) value);
 		} else {
@@ -110,6 +119,12 @@ public class AvroNVarchar extends LogicalTypeWithLength {
 		}
 	}
 
+	@Override
+	public Utf8 convertToUtf8(Object value) throws AvroDataTypeException {
+		Utf8 u = Utf8Text.toUtf8(value);
+		return u == null ? null : Utf8Text.truncate(u, getLength());
+	}
+
 	@Override
 	public String convertToJava(Object value) throws AvroDataTypeException {
 		if (value == null) {
@@ -126,11 +141,7 @@ public class AvroNVarchar extends LogicalTypeWithLength {
 	}
 
 	private CharSequence validate(CharSequence value) throws AvroDataTypeException {
-		if (value.length() <= getLength()) {
-			return value;
-		} else {
-			return value.subSequence(0, getLength());
-		}
+		return Utf8Text.truncate(value, getLength());
 	}
 
 	/**
@@ -176,4 +187,18 @@ public class AvroNVarchar extends LogicalTypeWithLength {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		if (value instanceof Utf8) {
+			JsonOutput.writeUtf8(generator, (Utf8) value);
+		} else {
+			String b = convertToJava(value);
+			if (b == null) {
+				generator.writeNull();
+			} else {
+				generator.writeString(b);
+			}
+		}
+	}
+
 }
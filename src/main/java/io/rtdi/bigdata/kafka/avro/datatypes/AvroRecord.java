@@ -1,15 +1,18 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
+
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Field;
 import org.apache.avro.Schema.Type;
 import org.apache.avro.generic.GenericData.Record;
 import org.apache.avro.generic.GenericRecord;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
-import io.rtdi.bigdata.kafka.avro.AvroUtils;
+import io.rtdi.bigdata.kafka.avro.CompiledJsonWriter;
 
 /**
  * Generic Avro Record
@@ -103,24 +106,16 @@ public class AvroRecord implements IAvroDatatype {
 
 	@Override
 	public String convertToJson(Object value) throws AvroDataTypeException, JsonProcessingException {
+		return JsonOutput.toJson(this, value);
+	}
+
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
 		GenericRecord b = convertToJava(value);
 		if (b == null) {
-			return "null";
+			generator.writeNull();
 		} else {
-			StringBuffer sb = new StringBuffer("{");
-			for (Field f : b.getSchema().getFields()) {
-				Object v = b.get(f.pos());
-				IAvroDatatype datatype = AvroType.getAvroDataType(AvroUtils.getBaseSchema(f.schema()));
-				if (sb.length() > 1) {
-					sb.append(',');
-				}
-				sb.append('\"');
-				sb.append(f.name());
-				sb.append("\":");
-				sb.append(datatype.convertToJson(v));
-			}
-			sb.append("}");
-			return sb.toString();
+			CompiledJsonWriter.get(b.getSchema()).write(b, generator);
 		}
 	}
 
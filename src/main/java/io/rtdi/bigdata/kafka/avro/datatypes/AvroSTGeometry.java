@@ -1,10 +1,14 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
+
 import org.apache.avro.LogicalType;
 import org.apache.avro.Schema;
 import org.apache.avro.LogicalTypes.LogicalTypeFactory;
 import org.apache.avro.Schema.Type;
+import org.apache.avro.util.Utf8;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -112,6 +116,8 @@ public class AvroSTGeometry extends LogicalType implements IAvroPrimitive {
 	public String convertToJava(Object value) throws AvroDataTypeException {
 		if (value == null) {
 			return null;
+		} else if (value instanceof Utf8) {
+			return AsciiScanner.decode((Utf8) value);
 		} else if (value instanceof CharSequence) {
 			return value.toString();
 		} else {
@@ -162,4 +168,18 @@ public class AvroSTGeometry extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		if (value instanceof Utf8) {
+			JsonOutput.writeUtf8(generator, (Utf8) value);
+		} else {
+			String b = convertToJava(value);
+			if (b == null) {
+				generator.writeNull();
+			} else {
+				generator.writeString(b);
+			}
+		}
+	}
+
 }
@@ -1,17 +1,21 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
+
 import org.apache.avro.LogicalType;
 import org.apache.avro.Schema;
 import org.apache.avro.LogicalTypes.LogicalTypeFactory;
 import org.apache.avro.Schema.Type;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
 
 /**
  * Based on an Avro Type.INT holds 2-byte signed numbers.
  *
  */
-public class AvroShort extends LogicalType implements IAvroPrimitive {
+public class AvroShort extends LogicalType implements IAvroIntPrimitive {
 	/**
 	 * Factory to create instances of this class
 	 */
@@ -95,11 +99,20 @@ public class AvroShort extends LogicalType implements IAvroPrimitive {
 	public Integer convertToInternal(Object value) throws AvroDataTypeException {
 		if (value == null) {
 			return null;
+		} else {
+			return toInternalInt(value);
+		}
+	}
+
+	@Override
+	public int toInternalInt(Object value) throws AvroDataTypeException {
+		if (value == null) {
+			throw new AvroDataTypeException("Cannot convert null into a primitive int");
 		} else if (value instanceof Integer) {
 			return validate((Integer) value);
 		} else if (value instanceof String) {
 			try {
-				return validate(Integer.valueOf((String) value));
+				return validate(Integer.parseInt((String) value));
 			} catch (NumberFormatException e) {
 				throw new AvroDataTypeException("Cannot convert the string \"" + value + "\" into a Short");
 			}
@@ -109,7 +122,12 @@ public class AvroShort extends LogicalType implements IAvroPrimitive {
 		throw new AvroDataTypeException("Cannot convert a value of type \"" + value.getClass().getSimpleName() + "\" into an Integer");
 	}
 
-	private Integer validate(Integer value) throws AvroDataTypeException {
+	@Override
+	public int toInternalInt(int value) throws AvroDataTypeException {
+		return validate(value);
+	}
+
+	private int validate(int value) throws AvroDataTypeException {
 		if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
 			return value;
 		} else {
@@ -174,4 +192,13 @@ public class AvroShort extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		if (value == null) {
+			generator.writeNull();
+		} else {
+			generator.writeNumber(toInternalInt(value));
+		}
+	}
+
 }
@@ -1,11 +1,14 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
+
 import org.apache.avro.LogicalType;
 import org.apache.avro.Schema;
 import org.apache.avro.LogicalTypes.LogicalTypeFactory;
 import org.apache.avro.Schema.Type;
 import org.apache.avro.util.Utf8;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -16,7 +19,7 @@ import io.rtdi.bigdata.kafka.avro.AvroUtils;
  * Wrapper around the Avro Type.STRING data type
  *
  */
-public class AvroString extends LogicalType implements IAvroPrimitive {
+public class AvroString extends LogicalType implements IAvroTextPrimitive {
 	/**
 	 * Factory to create instances of this class
 	 */
@@ -101,6 +104,11 @@ public class AvroString extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public Utf8 convertToUtf8(Object value) throws AvroDataTypeException {
+		return Utf8Text.toUtf8(value);
+	}
+
 	@Override
 	public String convertToJava(Object value) throws AvroDataTypeException {
 		if (value == null) {
@@ -169,4 +177,18 @@ public class AvroString extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		if (value instanceof Utf8) {
+			JsonOutput.writeUtf8(generator, (Utf8) value);
+		} else {
+			String b = convertToJava(value);
+			if (b == null) {
+				generator.writeNull();
+			} else {
+				generator.writeString(b);
+			}
+		}
+	}
+
 }
@@ -1,5 +1,6 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -16,13 +17,15 @@ import org.apache.avro.LogicalTypes.LogicalTypeFactory;
 import org.apache.avro.LogicalTypes.TimeMillis;
 import org.apache.avro.Schema.Type;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
 
 /**
  * Wrapper of LogicalTypes.timeMillis()
  *
  */
-public class AvroTime extends LogicalType implements IAvroPrimitive {
+public class AvroTime extends LogicalType implements IAvroIntPrimitive {
 	/**
 	 * Factory to create instances of this class
 	 */
@@ -92,6 +95,17 @@ public class AvroTime extends LogicalType implements IAvroPrimitive {
 			return null;
 		} else if (value instanceof Integer) {
 			return (Integer) value;
+		} else {
+			return toInternalInt(value);
+		}
+	}
+
+	@Override
+	public int toInternalInt(Object value) throws AvroDataTypeException {
+		if (value == null) {
+			throw new AvroDataTypeException("Cannot convert null into a primitive int");
+		} else if (value instanceof Integer) {
+			return (Integer) value;
 		} else if (value instanceof Number) {
 			return ((Number) value).intValue();
 		} else if (value instanceof LocalTime) {
@@ -102,10 +116,10 @@ public class AvroTime extends LogicalType implements IAvroPrimitive {
 			return (int) t.getLong(ChronoField.MILLI_OF_DAY);
 		} else if (value instanceof Date) {
 			Date t = (Date) value;
-			return convertToInternal(t.toInstant());
+			return toInternalInt(t.toInstant());
 		} else if (value instanceof ZonedDateTime) {
 			ZonedDateTime t = (ZonedDateTime) value;
-			return convertToInternal(t.toInstant());
+			return toInternalInt(t.toInstant());
 		} else if (value instanceof Instant) {
 			Instant d = (Instant) value;
 			return (int) LocalDateTime.ofInstant(d, ZoneOffset.UTC).getLong(ChronoField.MILLI_OF_DAY);
@@ -113,6 +127,11 @@ public class AvroTime extends LogicalType implements IAvroPrimitive {
 		throw new AvroDataTypeException("Cannot convert a value of type \"" + value.getClass().getSimpleName() + "\" into a Time");
 	}
 
+	@Override
+	public int toInternalInt(int value) throws AvroDataTypeException {
+		return value;
+	}
+
 	@Override
 	public LocalTime convertToJava(Object value) throws AvroDataTypeException {
 		if (value == null) {
@@ -178,4 +197,14 @@ public class AvroTime extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		LocalTime b = convertToJava(value);
+		if (b == null) {
+			generator.writeNull();
+		} else {
+			generator.writeString(b.toString());
+		}
+	}
+
 }
@@ -1,5 +1,6 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -16,13 +17,15 @@ import org.apache.avro.LogicalTypes.TimeMicros;
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
 
 /**
  * Wrapper of LogicalTypes.timeMillis()
  *
  */
-public class AvroTimeMicros extends LogicalType implements IAvroPrimitive {
+public class AvroTimeMicros extends LogicalType implements IAvroLongPrimitive {
 	/**
 	 * Factory to create instances of this class
 	 */
@@ -92,6 +95,17 @@ public class AvroTimeMicros extends LogicalType implements IAvroPrimitive {
 			return null;
 		} else if (value instanceof Long) {
 			return (Long) value;
+		} else {
+			return toInternalLong(value);
+		}
+	}
+
+	@Override
+	public long toInternalLong(Object value) throws AvroDataTypeException {
+		if (value == null) {
+			throw new AvroDataTypeException("Cannot convert null into a primitive long");
+		} else if (value instanceof Long) {
+			return (Long) value;
 		} else if (value instanceof Number) {
 			return ((Number) value).longValue();
 		} else if (value instanceof LocalTime) {
@@ -102,17 +116,22 @@ public class AvroTimeMicros extends LogicalType implements IAvroPrimitive {
 			return t.getLong(ChronoField.MICRO_OF_DAY);
 		} else if (value instanceof Date) {
 			Date t = (Date) value;
-			return convertToInternal(t.toInstant());
+			return toInternalLong(t.toInstant());
 		} else if (value instanceof ZonedDateTime) {
 			ZonedDateTime t = (ZonedDateTime) value;
-			return convertToInternal(t.toInstant());
+			return toInternalLong(t.toInstant());
 		} else if (value instanceof Instant) {
 			Instant d = (Instant) value;
-			return (long) LocalDateTime.ofInstant(d, ZoneOffset.UTC).getLong(ChronoField.MICRO_OF_DAY);
+			return LocalDateTime.ofInstant(d, ZoneOffset.UTC).getLong(ChronoField.MICRO_OF_DAY);
 		}
 		throw new AvroDataTypeException("Cannot convert a value of type \"" + value.getClass().getSimpleName() + "\" into a TimeMicros");
 	}
 
+	@Override
+	public long toInternalLong(long value) throws AvroDataTypeException {
+		return value;
+	}
+
 	@Override
 	public LocalTime convertToJava(Object value) throws AvroDataTypeException {
 		if (value == null) {
@@ -178,4 +197,14 @@ public class AvroTimeMicros extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		LocalTime b = convertToJava(value);
+		if (b == null) {
+			generator.writeNull();
+		} else {
+			generator.writeString(b.toString());
+		}
+	}
+
 }
@@ -1,5 +1,6 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.Date;
@@ -11,13 +12,15 @@ import org.apache.avro.LogicalTypes.TimestampMicros;
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
 
 /**
  * Wrapper of LogicalTypes.timestampMillis()
  *
  */
-public class AvroTimestampMicros extends LogicalType implements IAvroPrimitive {
+public class AvroTimestampMicros extends LogicalType implements IAvroLongPrimitive {
 	/**
 	 * Factory to create an instance of this logical type
 	 */
@@ -86,11 +89,22 @@ public class AvroTimestampMicros extends LogicalType implements IAvroPrimitive {
 			return null;
 		} else if (value instanceof Long) {
 			return (Long) value;
+		} else {
+			return toInternalLong(value);
+		}
+	}
+
+	@Override
+	public long toInternalLong(Object value) throws AvroDataTypeException {
+		if (value == null) {
+			throw new AvroDataTypeException("Cannot convert null into a primitive long");
+		} else if (value instanceof Long) {
+			return (Long) value;
 		} else if (value instanceof Date) {
 			return ((Date) value).getTime() * 1000L;
 		} else if (value instanceof ZonedDateTime) {
 			ZonedDateTime v = (ZonedDateTime) value;
-			return convertToInternal(v.toInstant());
+			return toInternalLong(v.toInstant());
 		} else if (value instanceof Instant) {
 			Instant i = (Instant) value;
 			return i.getEpochSecond() * 1000000L + i.getNano()/1000;
@@ -98,6 +112,11 @@ public class AvroTimestampMicros extends LogicalType implements IAvroPrimitive {
 		throw new AvroDataTypeException("Cannot convert a value of type \"" + value.getClass().getSimpleName() + "\" into a TimestampMicros");
 	}
 
+	@Override
+	public long toInternalLong(long value) throws AvroDataTypeException {
+		return value;
+	}
+
 	@Override
 	public Instant convertToJava(Object value) throws AvroDataTypeException {
 		if (value == null) {
@@ -164,4 +183,14 @@ public class AvroTimestampMicros extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		Instant b = convertToJava(value);
+		if (b == null) {
+			generator.writeNull();
+		} else {
+			generator.writeString(b.toString());
+		}
+	}
+
 }
@@ -1,15 +1,11 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.avro.LogicalType;
 import org.apache.avro.LogicalTypes.Decimal;
 import org.apache.avro.Schema;
-import org.apache.avro.Schema.Field;
 import org.apache.avro.Schema.Type;
-import org.apache.avro.generic.GenericData;
-import org.apache.avro.generic.GenericData.Record;
 import org.apache.avro.generic.GenericRecord;
 
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
@@ -266,6 +262,7 @@ public enum AvroType {
 
 	/**
 	 * Helper method to set a field value in a GenericRecord using the AvroDataType converter.
+	 * In loops use the {@link RecordAccessor} of the schema and the field position instead.
 	 *
 	 * @param record to set the field in
 	 * @param fieldname is the Avro-encoded name
@@ -273,17 +270,7 @@ public enum AvroType {
 	 * @throws AvroDataTypeException in case the field cannot be found, it has an unsupported data type or the provided value is not compatible
 	 */
 	public static void putRecordValue(GenericRecord record, String fieldname, Object value) throws AvroDataTypeException {
-		Field f = record.getSchema().getField(fieldname);
-		if (f == null) {
-			throw new AvroDataTypeException("The field \"" + fieldname + "\" does not exist in the record \"" + record.getSchema().getName() + "\"");
-		} else {
-			IAvroDatatype dt = getAvroDataType(f.schema());
-			if (dt == null) {
-				throw new AvroDataTypeException("The field \"" + fieldname + "\" has a not supported type \"" + f.schema().getName() + "\"");
-			} else {
-				record.put(fieldname, dt.convertToInternal(value));
-			}
-		}
+		RecordAccessor.get(record.getSchema()).put(record, fieldname, value);
 	}
 
 	/**
@@ -295,19 +282,8 @@ public enum AvroType {
 	 * @throws AvroDataTypeException in case the field cannot be found or is not a record type
 	 */
 	public static GenericRecord createChildRecordFor(GenericRecord record, String fieldname) throws AvroDataTypeException {
-		Field f = record.getSchema().getField(fieldname);
-		if (f == null) {
-			throw new AvroDataTypeException("The field \"" + fieldname + "\" does not exist in the record \"" + record.getSchema().getName() + "\"");
-		} else {
-			Schema baseschema = AvroUtils.getBaseSchema(f.schema());
-			if (baseschema.getType() != Type.RECORD) {
-				throw new AvroDataTypeException("The field \"" + fieldname + "\" is of type \"" + baseschema.getName() + "\" and not a record");
-			} else {
-				Record r = new GenericData.Record(baseschema);
-				record.put(fieldname, r);
-				return r;
-			}
-		}
+		RecordAccessor accessor = RecordAccessor.get(record.getSchema());
+		return accessor.createChildRecord(record, accessor.indexOf(fieldname));
 	}
 
 	/**
@@ -319,30 +295,8 @@ public enum AvroType {
 	 * @throws AvroDataTypeException in case the field cannot be found or is not a record type
 	 */
 	public static GenericRecord addChildToArrayOfRecords(GenericRecord record, String fieldname) throws AvroDataTypeException {
-		Field f = record.getSchema().getField(fieldname);
-		if (f == null) {
-			throw new AvroDataTypeException("The field \"" + fieldname + "\" does not exist in the record \"" + record.getSchema().getName() + "\"");
-		} else {
-			Schema baseschema = AvroUtils.getBaseSchema(f.schema());
-			if (baseschema.getType() != Type.ARRAY) {
-				throw new AvroDataTypeException("The field \"" + fieldname + "\" is of type \"" + baseschema.getName() + "\" and not an array");
-			} else {
-				Schema arraytype = baseschema.getElementType();
-				if (arraytype.getType() != Type.RECORD) {
-					throw new AvroDataTypeException("The field \"" + fieldname + "\" is an array of \"" + arraytype.getName() + "\" and not an array of records");
-				} else {
-					Record r = new GenericData.Record(arraytype);
-					@SuppressWarnings("unchecked")
-					List<Record> l = (List<Record>) record.get(fieldname);
-					if (l == null) {
-						l = new ArrayList<Record>();
-						record.put(fieldname, l);
-					}
-					l.add(r);
-					return r;
-				}
-			}
-		}
+		RecordAccessor accessor = RecordAccessor.get(record.getSchema());
+		return accessor.addChildToArray(record, accessor.indexOf(fieldname));
 	}
 
 	/**
@@ -354,18 +308,7 @@ public enum AvroType {
 	 * @throws AvroDataTypeException in case the field does not exist, has no supported logical data type or the conversion failed
 	 */
 	public static Object getRecordFieldValue(GenericRecord record, String fieldname) throws AvroDataTypeException {
-		Field f = record.getSchema().getField(fieldname);
-		if (f == null) {
-			throw new AvroDataTypeException("The field \"" + fieldname + "\" does not exist in the record \"" + record.getSchema().getName() + "\"");
-		} else {
-			IAvroDatatype dt = getAvroDataType(f.schema());
-			if (dt == null) {
-				throw new AvroDataTypeException("The field \"" + fieldname + "\" has a not supported type \"" + f.schema().getName() + "\"");
-			} else {
-				Object v = record.get(fieldname);
-				return dt.convertToJava(v);
-			}
-		}
+		return RecordAccessor.get(record.getSchema()).get(record, fieldname);
 	}
 
 	/**
@@ -377,17 +320,8 @@ public enum AvroType {
 	 * @throws AvroDataTypeException in case the field does not exist, has no supported logical data type or the conversion failed
 	 */
 	public static GenericRecord getSubRecord(GenericRecord record, String fieldname) throws AvroDataTypeException {
-		Field f = record.getSchema().getField(fieldname);
-		if (f == null) {
-			throw new AvroDataTypeException("The field \"" + fieldname + "\" does not exist in the record \"" + record.getSchema().getName() + "\"");
-		} else {
-			Schema baseschema = AvroUtils.getBaseSchema(f.schema());
-			if (baseschema.getType() != Type.RECORD) {
-				throw new AvroDataTypeException("The field \"" + fieldname + "\" is of type \"" + baseschema.getName() + "\" and not a record");
-			} else {
-				return (GenericRecord) record.get(fieldname);
-			}
-		}
+		RecordAccessor accessor = RecordAccessor.get(record.getSchema());
+		return accessor.getSubRecord(record, accessor.indexOf(fieldname));
 	}
 
 	/**
@@ -399,24 +333,8 @@ public enum AvroType {
 	 * @throws AvroDataTypeException in case the field does not exist, has no supported logical data type or the conversion failed
 	 */
 	public static List<GenericRecord> getSubRecordArray(GenericRecord record, String fieldname) throws AvroDataTypeException {
-		Field f = record.getSchema().getField(fieldname);
-		if (f == null) {
-			throw new AvroDataTypeException("The field \"" + fieldname + "\" does not exist in the record \"" + record.getSchema().getName() + "\"");
-		} else {
-			Schema baseschema = AvroUtils.getBaseSchema(f.schema());
-			if (baseschema.getType() != Type.ARRAY) {
-				throw new AvroDataTypeException("The field \"" + fieldname + "\" is of type \"" + baseschema.getName() + "\" and not an array");
-			} else {
-				Schema arraytype = baseschema.getElementType();
-				if (arraytype.getType() != Type.RECORD) {
-					throw new AvroDataTypeException("The field \"" + fieldname + "\" is an array of \"" + arraytype.getName() + "\" and not an array of records");
-				} else {
-					@SuppressWarnings("unchecked")
-					List<GenericRecord> l = (List<GenericRecord>) record.get(fieldname);
-					return l;
-				}
-			}
-		}
+		RecordAccessor accessor = RecordAccessor.get(record.getSchema());
+		return accessor.getSubRecordArray(record, accessor.indexOf(fieldname));
 	}
 
 
@@ -1,5 +1,7 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
+
 import org.apache.avro.LogicalType;
 import org.apache.avro.LogicalTypes;
 import org.apache.avro.LogicalTypes.LogicalTypeFactory;
@@ -7,13 +9,15 @@ import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
 import org.apache.avro.util.Utf8;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
 
 /**
  * Wrapper for LogicalTypes.uuid()
  *
  */
-public class AvroUUID extends LogicalType implements IAvroPrimitive {
+public class AvroUUID extends LogicalType implements IAvroTextPrimitive {
 	/**
 	 * Factory for this type
 	 */
@@ -108,6 +112,11 @@ public class AvroUUID extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public Utf8 convertToUtf8(Object value) throws AvroDataTypeException {
+		return Utf8Text.toUtf8(value);
+	}
+
 	@Override
 	public String convertToJava(Object value) throws AvroDataTypeException {
 		if (value == null) {
@@ -115,7 +124,7 @@ public class AvroUUID extends LogicalType implements IAvroPrimitive {
 		} else if (value instanceof String) {
 			return (String) value;
 		} else if (value instanceof Utf8) {
-			return ((Utf8) value).toString();
+			return AsciiScanner.decode((Utf8) value);
 		} else if (value instanceof CharSequence) {
 			return value.toString();
 		} else {
@@ -166,4 +175,18 @@ public class AvroUUID extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		if (value instanceof Utf8) {
+			JsonOutput.writeUtf8(generator, (Utf8) value);
+		} else {
+			CharSequence b = convertToJava(value);
+			if (b == null) {
+				generator.writeNull();
+			} else {
+				generator.writeString(b.toString());
+			}
+		}
+	}
+
 }
@@ -1,5 +1,6 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
@@ -11,6 +12,7 @@ import org.apache.avro.generic.GenericData.Fixed;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.util.Utf8;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
@@ -185,6 +187,25 @@ public class AvroUnion implements IAvroDatatype {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		if (value == null) {
+			generator.writeNull();
+		} else {
+			Schema schema = getDatatypeSchemaFor(value);
+			if (schema != null) {
+				IAvroDatatype datatype = AvroType.getAvroDataType(schema);
+				if (datatype != null) {
+					datatype.writeJson(generator, value);
+				} else {
+					throw new AvroDataTypeException("Cannot convert a value of type \"" + schema.getType().getName() + "\" into JSON");
+				}
+			} else {
+				throw new AvroDataTypeException("Cannot convert a value of type \"" + value.getClass().getSimpleName() + "\" into JSON");
+			}
+		}
+	}
+
 	private Schema findType(Type t) {
 		for (Schema s : types) {
 			if (s.getType() == t) {
@@ -1,9 +1,14 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
+
 import org.apache.avro.LogicalType;
 import org.apache.avro.Schema;
 import org.apache.avro.LogicalTypes.LogicalTypeFactory;
 import org.apache.avro.Schema.Type;
+import org.apache.avro.util.Utf8;
+
+import com.fasterxml.jackson.core.JsonGenerator;
 
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
 
@@ -11,7 +16,7 @@ import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
  * Avro Type.STRING backed datatype for URI/URL data
  *
  */
-public class AvroUri extends LogicalType implements IAvroPrimitive {
+public class AvroUri extends LogicalType implements IAvroTextPrimitive {
 	/**
 	 * Factory for this datatype
 	 */
@@ -108,6 +113,11 @@ public class AvroUri extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public Utf8 convertToUtf8(Object value) throws AvroDataTypeException {
+		return Utf8Text.toUtf8(value);
+	}
+
 	@Override
 	public CharSequence convertToJava(Object value) throws AvroDataTypeException {
 		if (value == null) {
@@ -162,4 +172,18 @@ public class AvroUri extends LogicalType implements IAvroPrimitive {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		if (value instanceof Utf8) {
+			JsonOutput.writeUtf8(generator, (Utf8) value);
+		} else {
+			CharSequence b = convertToJava(value);
+			if (b == null) {
+				generator.writeNull();
+			} else {
+				generator.writeString(b.toString());
+			}
+		}
+	}
+
 }
@@ -1,6 +1,7 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.avro.LogicalType;
 import org.apache.avro.Schema;
@@ -8,6 +9,7 @@ import org.apache.avro.LogicalTypes.LogicalTypeFactory;
 import org.apache.avro.Schema.Type;
 import org.apache.avro.util.Utf8;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -19,7 +21,7 @@ import io.rtdi.bigdata.kafka.avro.AvroUtils;
  * and is sorted and compared binary.
  *
  */
-public class AvroVarchar extends LogicalTypeWithLength {
+public class AvroVarchar extends LogicalTypeWithLength implements IAvroTextPrimitive {
 	/**
 	 * Factory instance to be registered with the Avro library
 	 */
@@ -39,10 +41,14 @@ public class AvroVarchar extends LogicalTypeWithLength {
 	/**
 	 * Create an instance of that type.
 	 * @param length of the data type
-	 * @return the instance
+	 * @return the shared instance
 	 */
 	public static AvroVarchar create(int length) {
-		return new AvroVarchar(length);
+		AvroVarchar datatype = DatatypeCache.VARCHAR.get(length);
+		if (datatype == null) {
+			datatype = DatatypeCache.VARCHAR.putIfAbsent(length, new AvroVarchar(length));
+		}
+		return datatype;
 	}
 
 	/**
@@ -50,7 +56,7 @@ public class AvroVarchar extends LogicalTypeWithLength {
 	 * @return the instance
 	 */
 	public static AvroVarchar create(Schema schema) {
-		return new AvroVarchar(getLengthProperty(schema));
+		return create(getLengthProperty(schema));
 	}
 
 	/**
@@ -61,7 +67,7 @@ public class AvroVarchar extends LogicalTypeWithLength {
 	public static AvroVarchar create(String text) throws AvroDataTypeException {
 		int l = getLengthPortion(text);
 		if (l > 0) {
-			return new AvroVarchar(l);
+			return create(l);
 		} else {
 			throw new AvroDataTypeException("The supplied data type \"" + text + "\" cannot be parsed into a length portion");
 		}
@@ -97,6 +103,8 @@ public class AvroVarchar extends LogicalTypeWithLength {
 	public CharSequence convertToInternal(Object value) throws AvroDataTypeException {
 		if (value == null) {
 			return null;
+		} else if (value instanceof Utf8 || value instanceof byte[]) {
+			return convertToUtf8(value);
 		} else if (value instanceof CharSequence) {
 			return validate((CharSequence) value);
 		} else {
@@ -104,6 +112,22 @@ public class AvroVarchar extends LogicalTypeWithLength {
 		}
 	}
 
+	@Override
+	public Utf8 convertToUtf8(Object value) throws AvroDataTypeException {
+		if (value == null) {
+			return null;
+		} else if (value instanceof Utf8) {
+			Utf8 u = (Utf8) value;
+			return validate(u, u.getBytes(), u.getByteLength());
+		} else if (value instanceof byte[]) {
+			byte[] b = (byte[]) value;
+			return validate(null, b, b.length);
+		} else {
+			Utf8 u = new Utf8(value.toString());
+			return validate(u, u.getBytes(), u.getByteLength());
+		}
+	}
+
 	@Override
 	public void validate(Schema schema) {
 		super.validate(schema);
@@ -119,7 +143,7 @@ public class AvroVarchar extends LogicalTypeWithLength {
 		} else if (value instanceof String) {
 			return (String) value;
 		} else if (value instanceof Utf8) {
-			return ((Utf8) value).toString();
+			return AsciiScanner.decode((Utf8) value);
 		} else if (value instanceof CharSequence) {
 			return value.toString();
 		} else {
@@ -128,7 +152,7 @@ public class AvroVarchar extends LogicalTypeWithLength {
 	}
 
 	private CharSequence validate(CharSequence value) throws AvroDataTypeException {
-		if (StandardCharsets.US_ASCII.newEncoder().canEncode(value)) {
+		if (AsciiScanner.indexOfNonAscii(value) == -1) {
 			if (value.length() <= getLength()) {
 				return value;
 			} else {
@@ -139,6 +163,21 @@ public class AvroVarchar extends LogicalTypeWithLength {
 		}
 	}
 
+	/**
+	 * Validates the UTF-8 bytes of a Utf8 or an ASCII byte array
+	 * @param value the Utf8 or null for a byte array
+	 */
+	private Utf8 validate(Utf8 value, byte[] bytes, int length) throws AvroDataTypeException {
+		if (AsciiScanner.indexOfNonAscii(bytes, 0, length) == -1) {
+			if (value != null && length <= getLength()) {
+				return value;
+			} else {
+				return new Utf8(Arrays.copyOf(bytes, Math.min(length, getLength())));
+			}
+		}
+		throw new AvroDataTypeException("The provided value contains non-ASCII chars which is not allowed in a VARCHAR data type");
+	}
+
 	/**
 	 * Factory to create an instance of this logical type from the schema
 	 */
@@ -182,4 +221,18 @@ public class AvroVarchar extends LogicalTypeWithLength {
 		}
 	}
 
+	@Override
+	public void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		if (value instanceof Utf8) {
+			JsonOutput.writeUtf8(generator, (Utf8) value);
+		} else {
+			String b = convertToJava(value);
+			if (b == null) {
+				generator.writeNull();
+			} else {
+				generator.writeString(b);
+			}
+		}
+	}
+
 }
@@ -0,0 +1,152 @@
+package io.rtdi.bigdata.kafka.avro.datatypes;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Interns the parameterized data type instances, so creating e.g. a VARCHAR(10) returns the same instance every time
+ * instead of allocating a new data type and schema. Once the maximum size is reached, new instances are no longer cached.
+ *
+ * There is one cache per data type. VARCHAR, NVARCHAR and DECIMAL are keyed by their int parameters, so looking up an existing
+ * instance, e.g. for every field in getAvroDataType(), allocates nothing. FIXED is keyed by its names as well and used by the schema builders.
+ * The callers look up first and create the instance on a miss only.
+ *
+ */
+final class DatatypeCache {
+	/**
+	 * The maximum number of cached data types
+	 */
+	static final int MAX_SIZE = 10000;
+	private static final AtomicInteger count = new AtomicInteger();
+
+	static final IntKeyed<AvroVarchar> VARCHAR = new IntKeyed<>();
+	static final IntKeyed<AvroNVarchar> NVARCHAR = new IntKeyed<>();
+	/**
+	 * Keyed by {@link #decimalKey(int, int)}
+	 */
+	static final IntKeyed<AvroDecimal> DECIMAL = new IntKeyed<>();
+	static final Map<FixedKey, AvroFixed> FIXED = new ConcurrentHashMap<>();
+
+	private DatatypeCache() {
+	}
+
+	/**
+	 * @param precision of the decimal
+	 * @param scale of the decimal
+	 * @return the key of the decimal in the {@link #DECIMAL} cache, -1 for unusual parameters which are not cached
+	 */
+	static int decimalKey(int precision, int scale) {
+		if (precision < 0 || precision >= (1 << 23) || scale < 0 || scale >= 128) {
+			return -1;
+		} else {
+			return (precision << 7) | scale;
+		}
+	}
+
+	/**
+	 * @param key the name, namespace, length and doc of the fixed schema
+	 * @param datatype a new instance for this key
+	 * @return the cached instance, the provided one if none was cached yet or the cache is full
+	 */
+	static AvroFixed putIfAbsent(FixedKey key, AvroFixed datatype) {
+		if (count.get() < MAX_SIZE) {
+			AvroFixed existing = FIXED.putIfAbsent(key, datatype);
+			if (existing != null) {
+				return existing;
+			}
+			count.incrementAndGet();
+		}
+		return datatype;
+	}
+
+	/**
+	 * @return the number of cached data types
+	 */
+	static int size() {
+		return count.get();
+	}
+
+	/**
+	 * A cache keyed by an int, small keys are stored in an array, so the lookup of e.g. a VARCHAR(100) neither boxes nor hashes.
+	 *
+	 * @param <T> the data type class
+	 */
+	static final class IntKeyed<T extends IAvroDatatype> {
+		private static final int ARRAY_SIZE = 8192;
+		private final AtomicReferenceArray<T> small = new AtomicReferenceArray<>(ARRAY_SIZE);
+		private final Map<Integer, T> large = new ConcurrentHashMap<>();
+
+		/**
+		 * @param key the key
+		 * @return the cached instance or null
+		 */
+		T get(int key) {
+			if (key >= 0 && key < ARRAY_SIZE) {
+				return small.get(key);
+			} else {
+				return large.get(key);
+			}
+		}
+
+		/**
+		 * @param key the key
+		 * @param datatype a new instance for this key
+		 * @return the cached instance, the provided one if none was cached yet or the cache is full
+		 */
+		T putIfAbsent(int key, T datatype) {
+			if (count.get() < MAX_SIZE) {
+				T existing;
+				if (key >= 0 && key < ARRAY_SIZE) {
+					existing = small.compareAndExchange(key, null, datatype);
+				} else {
+					existing = large.putIfAbsent(key, datatype);
+				}
+				if (existing != null) {
+					return existing;
+				}
+				count.incrementAndGet();
+			}
+			return datatype;
+		}
+	}
+
+	/**
+	 * The key of the {@link #FIXED} cache.
+	 */
+	static final class FixedKey {
+		private final String name;
+		private final String namespace;
+		private final int length;
+		private final String doc;
+		private final int hash;
+
+		FixedKey(String name, String namespace, int length, String doc) {
+			this.name = name;
+			this.namespace = namespace;
+			this.length = length;
+			this.doc = doc;
+			this.hash = Objects.hash(name, namespace, length, doc);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			} else if (obj instanceof FixedKey) {
+				FixedKey other = (FixedKey) obj;
+				return length == other.length && Objects.equals(name, other.name) && Objects.equals(namespace, other.namespace) && Objects.equals(doc, other.doc);
+			} else {
+				return false;
+			}
+		}
+	}
+
+}
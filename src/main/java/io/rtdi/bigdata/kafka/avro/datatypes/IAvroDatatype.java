@@ -1,8 +1,11 @@
 package io.rtdi.bigdata.kafka.avro.datatypes;
 
+import java.io.IOException;
+
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 
 import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
@@ -63,4 +66,18 @@ public interface IAvroDatatype {
 	 * @throws JsonProcessingException if the conversion to JSON fails
 	 */
 	String convertToJson(Object value) throws AvroDataTypeException, JsonProcessingException;
+
+	/**
+	 * Write the value as JSON, same as {@link #convertToJson(Object)} but streaming into the generator without creating
+	 * intermediate Strings. Complete records are written with the io.rtdi.bigdata.kafka.avro.CompiledJsonWriter.
+	 * The default writes the result of {@link #convertToJson(Object)} as raw value, the built-in data types stream the value instead.
+	 *
+	 * @param generator the JSON output
+	 * @param value Java object as read from the Record
+	 * @throws AvroDataTypeException if the conversion fails
+	 * @throws IOException if writing the JSON fails
+	 */
+	default void writeJson(JsonGenerator generator, Object value) throws AvroDataTypeException, IOException {
+		generator.writeRawValue(convertToJson(value));
+	}
 }
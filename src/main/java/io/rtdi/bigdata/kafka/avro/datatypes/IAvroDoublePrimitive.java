@@ -0,0 +1,29 @@
+package io.rtdi.bigdata.kafka.avro.datatypes;
+
+import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
+
+/**
+ * A scalar data type backed by an Avro double, with conversions returning the primitive double.
+ * Loaders moving e.g. JDBC double columns use these to avoid a wrapper object per value.
+ *
+ */
+public interface IAvroDoublePrimitive extends IAvroPrimitive {
+
+	/**
+	 * Same as {@link #convertToInternal(Object)} but returning the primitive value.
+	 *
+	 * @param value any compatible input for this data type, not null
+	 * @return the value as expected by Avro
+	 * @throws AvroDataTypeException in case the input value is null or cannot be converted
+	 */
+	double toInternalDouble(Object value) throws AvroDataTypeException;
+
+	/**
+	 * Validates a value that is already in the Avro representation.
+	 *
+	 * @param value the primitive value
+	 * @return the value as expected by Avro
+	 * @throws AvroDataTypeException in case the value is out of range for this data type
+	 */
+	double toInternalDouble(double value) throws AvroDataTypeException;
+}
@@ -0,0 +1,24 @@
+package io.rtdi.bigdata.kafka.avro.datatypes;
+
+import org.apache.avro.util.Utf8;
+
+import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
+
+/**
+ * A text data type backed by an Avro string, which can convert and validate values on their UTF-8 bytes.
+ * Pipelines reading a text field and writing it into another record use {@link #convertToUtf8(Object)} to keep
+ * the value as Utf8 end to end, a String is created only by {@link #convertToJava(Object)}.
+ *
+ */
+public interface IAvroTextPrimitive extends IAvroPrimitive {
+
+	/**
+	 * Same as {@link #convertToInternal(Object)} but working on the UTF-8 bytes. A Utf8 or byte[] with UTF-8 text is
+	 * validated, e.g. for ASCII or the max length in code points, without decoding it, other values are encoded once.
+	 *
+	 * @param value a Utf8, UTF-8 encoded byte[], String or any other compatible input for this data type
+	 * @return the value as Utf8, the input itself if it is a valid Utf8 already
+	 * @throws AvroDataTypeException in case the input value cannot be converted or is not valid for this data type
+	 */
+	Utf8 convertToUtf8(Object value) throws AvroDataTypeException;
+}
@@ -0,0 +1,59 @@
+package io.rtdi.bigdata.kafka.avro.datatypes;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.apache.avro.util.Utf8;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.core.json.UTF8JsonGenerator;
+
+import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
+
+/**
+ * Helpers for the {@link IAvroDatatype#writeJson(JsonGenerator, Object)} implementations.
+ *
+ */
+final class JsonOutput {
+	private static final JsonFactory factory = JsonFactory.builder().disable(StreamWriteFeature.AUTO_CLOSE_TARGET).build();
+
+	private JsonOutput() {
+	}
+
+	/**
+	 * Writes a text value. Generators writing into an OutputStream get the UTF-8 bytes as is, no String is created.
+	 *
+	 * @param generator the JSON output
+	 * @param value the text
+	 * @throws IOException if writing fails
+	 */
+	static void writeUtf8(JsonGenerator generator, Utf8 value) throws IOException {
+		if (generator instanceof UTF8JsonGenerator) {
+			generator.writeUTF8String(value.getBytes(), 0, value.getByteLength());
+		} else {
+			generator.writeString(value.toString());
+		}
+	}
+
+	/**
+	 * @param datatype the data type of the value
+	 * @param value the value as read from the record
+	 * @return the JSON text as written by {@link IAvroDatatype#writeJson(JsonGenerator, Object)}
+	 * @throws JsonProcessingException if the conversion to JSON fails
+	 */
+	static String toJson(IAvroDatatype datatype, Object value) throws JsonProcessingException {
+		StringWriter w = new StringWriter();
+		try (JsonGenerator generator = factory.createGenerator(w)) {
+			datatype.writeJson(generator, value);
+		} catch (JsonProcessingException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new AvroDataTypeException("Cannot convert the value into JSON: " + e.getMessage());
+		}
+		return w.toString();
+	}
+
+}
@@ -0,0 +1,485 @@
+package io.rtdi.bigdata.kafka.avro.datatypes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.Schema.Type;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.util.Utf8;
+
+import io.rtdi.bigdata.kafka.avro.AvroDataTypeException;
+import io.rtdi.bigdata.kafka.avro.AvroUtils;
+import io.rtdi.bigdata.kafka.avro.BoundedCache;
+
+/**
+ * The field access of a record schema, resolved once. It holds the data type converter and the base schema of each field by position,
+ * so setting and reading values does not look up the field and data type for every value like the helpers in {@link AvroType} do.
+ *
+ * Use {@link #indexOf(String)} once to get the position of a field and the methods taking the position in loops.
+ * The accessor must be used for records of its schema only, it is immutable and thread safe.
+ * The accessors of nested records are created together with their parent and cached for the most recently used schemas.
+ *
+ */
+public class RecordAccessor {
+	private static final BoundedCache<Schema, RecordAccessor> cache = new BoundedCache<>(BoundedCache.SCHEMA_CACHE_SIZE);
+	private final Schema schema;
+	private final String[] names;
+	private final Schema[] baseschemas;
+	private final IAvroDatatype[] datatypes;
+	private final Map<String, Integer> positions;
+	private final RecordAccessor[] children;
+
+	/**
+	 * @param schema the record schema
+	 * @param created the accessors created so far for this schema tree, to stop at recursive records
+	 */
+	private RecordAccessor(Schema schema, Map<Schema, RecordAccessor> created) {
+		if (schema.getType() != Type.RECORD) {
+			throw new AvroDataTypeException("The schema \"" + schema.getName() + "\" is not a record");
+		}
+		this.schema = schema;
+		created.put(schema, this);
+		List<Field> fields = schema.getFields();
+		int count = fields.size();
+		names = new String[count];
+		baseschemas = new Schema[count];
+		datatypes = new IAvroDatatype[count];
+		children = new RecordAccessor[count];
+		positions = new HashMap<>();
+		for (Field f : fields) {
+			int pos = f.pos();
+			names[pos] = f.name();
+			baseschemas[pos] = AvroUtils.getBaseSchema(f.schema());
+			datatypes[pos] = AvroType.getAvroDataType(f.schema());
+			positions.put(f.name(), pos);
+			Schema childschema = getRecordSchema(baseschemas[pos]);
+			if (childschema != null) {
+				RecordAccessor child = cache.get(childschema);
+				if (child == null) {
+					child = created.get(childschema);
+				}
+				if (child == null) {
+					child = new RecordAccessor(childschema, created);
+				}
+				children[pos] = child;
+			}
+		}
+	}
+
+	/**
+	 * @return the record schema of a record or array of records field, else null
+	 */
+	private static Schema getRecordSchema(Schema baseschema) {
+		if (baseschema.getType() == Type.RECORD) {
+			return baseschema;
+		} else if (baseschema.getType() == Type.ARRAY && baseschema.getElementType().getType() == Type.RECORD) {
+			return baseschema.getElementType();
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * @param schema the record schema
+	 * @return the cached accessor for this schema
+	 * @throws AvroDataTypeException in case the schema is not a record
+	 */
+	public static RecordAccessor get(Schema schema) throws AvroDataTypeException {
+		RecordAccessor accessor = cache.get(schema);
+		if (accessor == null) {
+			Map<Schema, RecordAccessor> created = new IdentityHashMap<>();
+			accessor = cache.putIfAbsent(schema, new RecordAccessor(schema, created));
+			// the nested accessors are published once the entire tree is constructed
+			for (RecordAccessor child : created.values()) {
+				if (child.schema != schema) {
+					cache.putIfAbsent(child.schema, child);
+				}
+			}
+		}
+		return accessor;
+	}
+
+	/**
+	 * @return the record schema
+	 */
+	public Schema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * @param fieldname the Avro-encoded name
+	 * @return the position of the field, to be used as handle for the other methods
+	 * @throws AvroDataTypeException in case the field does not exist
+	 */
+	public int indexOf(String fieldname) throws AvroDataTypeException {
+		Integer pos = positions.get(fieldname);
+		if (pos == null) {
+			throw new AvroDataTypeException("The field \"" + fieldname + "\" does not exist in the record \"" + schema.getName() + "\"");
+		}
+		return pos;
+	}
+
+	/**
+	 * @param pos the field position
+	 * @return the data type of the field, null if the type is not supported
+	 */
+	public IAvroDatatype getDataType(int pos) {
+		return datatypes[pos];
+	}
+
+	/**
+	 * @param pos the field position
+	 * @return the schema of the field without the nullable union
+	 */
+	public Schema getBaseSchema(int pos) {
+		return baseschemas[pos];
+	}
+
+	/**
+	 * @param pos the field position
+	 * @return the Avro-encoded name of the field
+	 */
+	public String getFieldName(int pos) {
+		return names[pos];
+	}
+
+	/**
+	 * @return the number of fields
+	 */
+	public int size() {
+		return names.length;
+	}
+
+	private IAvroDatatype getSupportedDataType(int pos) throws AvroDataTypeException {
+		IAvroDatatype dt = datatypes[pos];
+		if (dt == null) {
+			throw new AvroDataTypeException("The field \"" + names[pos] + "\" has a not supported type \"" + baseschemas[pos].getName() + "\"");
+		}
+		return dt;
+	}
+
+	/**
+	 * Set a field value using the data type converter.
+	 *
+	 * @param record to set the field in
+	 * @param pos the field position
+	 * @param value a compatible value for this data type
+	 * @throws AvroDataTypeException in case it has an unsupported data type or the provided value is not compatible
+	 * @see AvroType#putRecordValue(GenericRecord, String, Object)
+	 */
+	public void put(GenericRecord record, int pos, Object value) throws AvroDataTypeException {
+		record.put(pos, getSupportedDataType(pos).convertToInternal(value));
+	}
+
+	/**
+	 * @param record to set the field in
+	 * @param fieldname is the Avro-encoded name
+	 * @param value a compatible value for this data type
+	 * @throws AvroDataTypeException in case the field cannot be found, it has an unsupported data type or the provided value is not compatible
+	 * @see #put(GenericRecord, int, Object)
+	 */
+	public void put(GenericRecord record, String fieldname, Object value) throws AvroDataTypeException {
+		put(record, indexOf(fieldname), value);
+	}
+
+	/**
+	 * Read a field value as best suited Java object.
+	 *
+	 * @param record to read the field from
+	 * @param pos the field position
+	 * @return best suited Java object
+	 * @throws AvroDataTypeException in case the field has no supported data type or the conversion failed
+	 * @see AvroType#getRecordFieldValue(GenericRecord, String)
+	 */
+	public Object get(GenericRecord record, int pos) throws AvroDataTypeException {
+		return getSupportedDataType(pos).convertToJava(record.get(pos));
+	}
+
+	/**
+	 * @param record to read the field from
+	 * @param fieldname is the Avro-encoded name
+	 * @return best suited Java object
+	 * @throws AvroDataTypeException in case the field does not exist, has no supported data type or the conversion failed
+	 * @see #get(GenericRecord, int)
+	 */
+	public Object get(GenericRecord record, String fieldname) throws AvroDataTypeException {
+		return get(record, indexOf(fieldname));
+	}
+
+	/**
+	 * @param record to read the field from
+	 * @param pos the field position
+	 * @return true if the field value is null, to be checked before calling the primitive getters on nullable fields
+	 */
+	public boolean isNull(GenericRecord record, int pos) {
+		return record.get(pos) == null;
+	}
+
+	/**
+	 * Set an int based field, e.g. an int, short, date or time, without converting a wrapper object first.
+	 * The record holds objects only, hence the value is boxed once when stored.
+	 *
+	 * @param record to set the field in
+	 * @param pos the field position
+	 * @param value the value in the Avro representation, e.g. days since 1970-01-01 for a date
+	 * @throws AvroDataTypeException in case the field is not int based or the value is out of range
+	 */
+	public void putInt(GenericRecord record, int pos, int value) throws AvroDataTypeException {
+		record.put(pos, getIntDataType(pos).toInternalInt(value));
+	}
+
+	/**
+	 * Set a long based field, e.g. a long or timestamp, without converting a wrapper object first.
+	 * The record holds objects only, hence the value is boxed once when stored.
+	 *
+	 * @param record to set the field in
+	 * @param pos the field position
+	 * @param value the value in the Avro representation, e.g. milliseconds since epoch for a timestamp
+	 * @throws AvroDataTypeException in case the field is not long based
+	 */
+	public void putLong(GenericRecord record, int pos, long value) throws AvroDataTypeException {
+		record.put(pos, getLongDataType(pos).toInternalLong(value));
+	}
+
+	/**
+	 * Set a double field without converting a wrapper object first.
+	 * The record holds objects only, hence the value is boxed once when stored.
+	 *
+	 * @param record to set the field in
+	 * @param pos the field position
+	 * @param value the value
+	 * @throws AvroDataTypeException in case the field is not a double
+	 */
+	public void putDouble(GenericRecord record, int pos, double value) throws AvroDataTypeException {
+		record.put(pos, getDoubleDataType(pos).toInternalDouble(value));
+	}
+
+	/**
+	 * Set a float field without converting a wrapper object first.
+	 * The record holds objects only, hence the value is boxed once when stored.
+	 *
+	 * @param record to set the field in
+	 * @param pos the field position
+	 * @param value the value
+	 * @throws AvroDataTypeException in case the field is not a float
+	 */
+	public void putFloat(GenericRecord record, int pos, float value) throws AvroDataTypeException {
+		record.put(pos, getFloatDataType(pos).toInternalFloat(value));
+	}
+
+	/**
+	 * @param record to read the field from
+	 * @param pos the field position
+	 * @return the value of an int based field in its Avro representation, e.g. days since 1970-01-01 for a date
+	 * @throws AvroDataTypeException in case the field is not int based or the value is null
+	 */
+	public int getInt(GenericRecord record, int pos) throws AvroDataTypeException {
+		return getIntDataType(pos).toInternalInt(record.get(pos));
+	}
+
+	/**
+	 * @param record to read the field from
+	 * @param pos the field position
+	 * @return the value of a long based field in its Avro representation, e.g. milliseconds since epoch for a timestamp
+	 * @throws AvroDataTypeException in case the field is not long based or the value is null
+	 */
+	public long getLong(GenericRecord record, int pos) throws AvroDataTypeException {
+		return getLongDataType(pos).toInternalLong(record.get(pos));
+	}
+
+	/**
+	 * @param record to read the field from
+	 * @param pos the field position
+	 * @return the value of a double field
+	 * @throws AvroDataTypeException in case the field is not a double or the value is null
+	 */
+	public double getDouble(GenericRecord record, int pos) throws AvroDataTypeException {
+		return getDoubleDataType(pos).toInternalDouble(record.get(pos));
+	}
+
+	/**
+	 * @param record to read the field from
+	 * @param pos the field position
+	 * @return the value of a float field
+	 * @throws AvroDataTypeException in case the field is not a float or the value is null
+	 */
+	public float getFloat(GenericRecord record, int pos) throws AvroDataTypeException {
+		return getFloatDataType(pos).toInternalFloat(record.get(pos));
+	}
+
+	/**
+	 * Set a text field from its UTF-8 bytes, e.g. the value of another record, without creating a String.
+	 *
+	 * @param record to set the field in
+	 * @param pos the field position
+	 * @param value a Utf8, UTF-8 encoded byte[] or any other compatible input
+	 * @throws AvroDataTypeException in case the field is not a text or the value is not valid for its data type
+	 * @see IAvroTextPrimitive#convertToUtf8(Object)
+	 */
+	public void putUtf8(GenericRecord record, int pos, Object value) throws AvroDataTypeException {
+		record.put(pos, getTextDataType(pos).convertToUtf8(value));
+	}
+
+	/**
+	 * @param record to read the field from
+	 * @param pos the field position
+	 * @return the value of a text field as Utf8, as stored in a deserialized record, or null
+	 * @throws AvroDataTypeException in case the field is not a text
+	 */
+	public Utf8 getUtf8(GenericRecord record, int pos) throws AvroDataTypeException {
+		Object value = record.get(pos);
+		if (value instanceof Utf8) {
+			return (Utf8) value;
+		} else {
+			return getTextDataType(pos).convertToUtf8(value);
+		}
+	}
+
+	private IAvroTextPrimitive getTextDataType(int pos) throws AvroDataTypeException {
+		if (datatypes[pos] instanceof IAvroTextPrimitive) {
+			return (IAvroTextPrimitive) datatypes[pos];
+		} else {
+			throw new AvroDataTypeException("The field \"" + names[pos] + "\" of type \"" + baseschemas[pos].getName() + "\" is not a text");
+		}
+	}
+
+	private IAvroIntPrimitive getIntDataType(int pos) throws AvroDataTypeException {
+		if (datatypes[pos] instanceof IAvroIntPrimitive) {
+			return (IAvroIntPrimitive) datatypes[pos];
+		} else {
+			throw new AvroDataTypeException("The field \"" + names[pos] + "\" of type \"" + baseschemas[pos].getName() + "\" is not int based");
+		}
+	}
+
+	private IAvroLongPrimitive getLongDataType(int pos) throws AvroDataTypeException {
+		if (datatypes[pos] instanceof IAvroLongPrimitive) {
+			return (IAvroLongPrimitive) datatypes[pos];
+		} else {
+			throw new AvroDataTypeException("The field \"" + names[pos] + "\" of type \"" + baseschemas[pos].getName() + "\" is not long based");
+		}
+	}
+
+	private IAvroDoublePrimitive getDoubleDataType(int pos) throws AvroDataTypeException {
+		if (datatypes[pos] instanceof IAvroDoublePrimitive) {
+			return (IAvroDoublePrimitive) datatypes[pos];
+		} else {
+			throw new AvroDataTypeException("The field \"" + names[pos] + "\" of type \"" + baseschemas[pos].getName() + "\" is not a double");
+		}
+	}
+
+	private IAvroFloatPrimitive getFloatDataType(int pos) throws AvroDataTypeException {
+		if (datatypes[pos] instanceof IAvroFloatPrimitive) {
+			return (IAvroFloatPrimitive) datatypes[pos];
+		} else {
+			throw new AvroDataTypeException("The field \"" + names[pos] + "\" of type \"" + baseschemas[pos].getName() + "\" is not a float");
+		}
+	}
+
+	/**
+	 * @param pos the field position of a record or array of records field
+	 * @return the accessor for the nested records
+	 * @throws AvroDataTypeException in case the field is neither a record nor an array of records
+	 */
+	public RecordAccessor getChildAccessor(int pos) throws AvroDataTypeException {
+		RecordAccessor child = children[pos];
+		if (child == null) {
+			throw new AvroDataTypeException("The field \"" + names[pos] + "\" is of type \"" + baseschemas[pos].getName() + "\" and neither a record nor an array of records");
+		}
+		return child;
+	}
+
+	/**
+	 * Create a GenericRecord for a field of type Record and assign it
+	 *
+	 * @param record the parent record
+	 * @param pos the field position
+	 * @return the new child record
+	 * @throws AvroDataTypeException in case the field is not a record type
+	 * @see AvroType#createChildRecordFor(GenericRecord, String)
+	 */
+	public GenericRecord createChildRecord(GenericRecord record, int pos) throws AvroDataTypeException {
+		Schema baseschema = baseschemas[pos];
+		if (baseschema.getType() != Type.RECORD) {
+			throw new AvroDataTypeException("The field \"" + names[pos] + "\" is of type \"" + baseschema.getName() + "\" and not a record");
+		} else {
+			GenericRecord r = new GenericData.Record(baseschema);
+			record.put(pos, r);
+			return r;
+		}
+	}
+
+	/**
+	 * Create a GenericRecord and add it to the array of records field
+	 *
+	 * @param record the parent record
+	 * @param pos the field position
+	 * @return the new child record
+	 * @throws AvroDataTypeException in case the field is not an array of records
+	 * @see AvroType#addChildToArrayOfRecords(GenericRecord, String)
+	 */
+	public GenericRecord addChildToArray(GenericRecord record, int pos) throws AvroDataTypeException {
+		Schema baseschema = baseschemas[pos];
+		if (baseschema.getType() != Type.ARRAY) {
+			throw new AvroDataTypeException("The field \"" + names[pos] + "\" is of type \"" + baseschema.getName() + "\" and not an array");
+		}
+		Schema arraytype = baseschema.getElementType();
+		if (arraytype.getType() != Type.RECORD) {
+			throw new AvroDataTypeException("The field \"" + names[pos] + "\" is an array of \"" + arraytype.getName() + "\" and not an array of records");
+		} else {
+			GenericRecord r = new GenericData.Record(arraytype);
+			@SuppressWarnings("unchecked")
+			List<GenericRecord> l = (List<GenericRecord>) record.get(pos);
+			if (l == null) {
+				l = new ArrayList<>();
+				record.put(pos, l);
+			}
+			l.add(r);
+			return r;
+		}
+	}
+
+	/**
+	 * @param record to read the field from
+	 * @param pos the field position
+	 * @return the record of a field of type record
+	 * @throws AvroDataTypeException in case the field is not a record type
+	 * @see AvroType#getSubRecord(GenericRecord, String)
+	 */
+	public GenericRecord getSubRecord(GenericRecord record, int pos) throws AvroDataTypeException {
+		Schema baseschema = baseschemas[pos];
+		if (baseschema.getType() != Type.RECORD) {
+			throw new AvroDataTypeException("The field \"" + names[pos] + "\" is of type \"" + baseschema.getName() + "\" and not a record");
+		} else {
+			return (GenericRecord) record.get(pos);
+		}
+	}
+
+	/**
+	 * @param record to read the field from
+	 * @param pos the field position
+	 * @return the list of records of a field of type array-of-record
+	 * @throws AvroDataTypeException in case the field is not an array of records
+	 * @see AvroType#getSubRecordArray(GenericRecord, String)
+	 */
+	public List<GenericRecord> getSubRecordArray(GenericRecord record, int pos) throws AvroDataTypeException {
+		Schema baseschema = baseschemas[pos];
+		if (baseschema.getType() != Type.ARRAY) {
+			throw new AvroDataTypeException("The field \"" + names[pos] + "\" is of type \"" + baseschema.getName() + "\" and not an array");
+		}
+		Schema arraytype = baseschema.getElementType();
+		if (arraytype.getType() != Type.RECORD) {
+			throw new AvroDataTypeException("The field \"" + names[pos] + "\" is an array of \"" + arraytype.getName() + "\" and not an array of records");
+		} else {
+			@SuppressWarnings("unchecked")
+			List<GenericRecord> l = (List<GenericRecord>) record.get(pos);
+			return l;
+		}
+	}
+
+}
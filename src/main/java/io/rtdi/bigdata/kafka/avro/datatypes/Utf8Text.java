@@ -0,0 +1,71 @@
+package io.rtdi.bigdata.kafka.avro.datatypes;
+
+import java.util.Arrays;
+
+import org.apache.avro.util.Utf8;
+
+/**
+ * Helpers for the text data types working on the UTF-8 bytes of a Utf8.
+ *
+ */
+final class Utf8Text {
+
+	private Utf8Text() {
+	}
+
+	/**
+	 * @param value a Utf8, UTF-8 encoded byte[] or any other object
+	 * @return the value as Utf8, the input itself for a Utf8, null for null
+	 */
+	static Utf8 toUtf8(Object value) {
+		if (value == null) {
+			return null;
+		} else if (value instanceof Utf8) {
+			return (Utf8) value;
+		} else if (value instanceof byte[]) {
+			byte[] b = (byte[]) value;
+			return new Utf8(Arrays.copyOf(b, b.length));
+		} else {
+			return new Utf8(value.toString());
+		}
+	}
+
+	/**
+	 * @param value the text
+	 * @param maxlength the max number of code points
+	 * @return the value itself or a copy with the first maxlength code points
+	 */
+	static Utf8 truncate(Utf8 value, int maxlength) {
+		int length = value.getByteLength();
+		if (length <= maxlength) {
+			// every code point has at least one byte
+			return value;
+		}
+		byte[] bytes = value.getBytes();
+		int count = 0;
+		for (int i = 0; i < length; i++) {
+			if ((bytes[i] & 0xC0) != 0x80) {
+				if (count == maxlength) {
+					return new Utf8(Arrays.copyOf(bytes, i));
+				}
+				count++;
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * @param value the text
+	 * @param maxlength the max number of code points
+	 * @return the value itself or the first maxlength code points
+	 */
+	static CharSequence truncate(CharSequence value, int maxlength) {
+		int length = value.length();
+		if (length <= maxlength || Character.codePointCount(value, 0, length) <= maxlength) {
+			return value;
+		} else {
+			return value.subSequence(0, Character.offsetByCodePoints(value, 0, maxlength));
+		}
+	}
+
+}
@@ -0,0 +1,339 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.avro.JsonProperties;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.Schema.Type;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroType;
+import io.rtdi.bigdata.kafka.avro.recordbuilders.ValueSchema;
+
+/**
+ * Tests for the Kafka frame deserialization
+ */
+public class AvroDeserializerTest {
+	private static Schema schema;
+	private static List<GenericRecord> records = new ArrayList<>();
+	private static List<byte[]> messages = new ArrayList<>();
+
+	/**
+	 * @throws Exception if something goes wrong
+	 */
+	@BeforeAll
+	public static void setUp() throws Exception {
+		AvroSerializerTest.setUp();
+		schema = AvroSerializerTest.getSchema();
+		for (int i = 0; i < 200; i++) {
+			GenericRecord r = AvroSerializerTest.createRecord(i, i % 3 == 0 ? null : "notes " + i);
+			records.add(r);
+			messages.add(AvroSerializer.serialize(1, r));
+		}
+	}
+
+	/**
+	 * One shared instance used by many threads at the same time
+	 */
+	@Test
+	public void testSharedDeserializer() {
+		try {
+			for (boolean compiled : new boolean[] {false, true}) {
+				SharedAvroDeserializer deserializer = new SharedAvroDeserializer(compiled);
+				ExecutorService executor = Executors.newFixedThreadPool(4);
+				try {
+					List<Future<Integer>> results = new ArrayList<>();
+					for (int t = 0; t < 8; t++) {
+						results.add(executor.submit(() -> {
+							for (int round = 0; round < 5; round++) {
+								for (int i = 0; i < messages.size(); i++) {
+									assertEquals(records.get(i), deserializer.deserialize(messages.get(i), schema));
+								}
+							}
+							return messages.size();
+						}));
+					}
+					for (Future<Integer> f : results) {
+						assertEquals(messages.size(), f.get());
+					}
+				} finally {
+					executor.shutdown();
+				}
+				assertEquals(1, deserializer.getReaderCount());
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Messages stored in sections of a larger array and in heap, direct and read-only ByteBuffers
+	 */
+	@Test
+	public void testDeserializeSlices() {
+		try {
+			SerializedBatch batch = AvroSerializer.serialize(7, records);
+			ByteBuffer direct = ByteBuffer.allocateDirect(batch.getArenaLength());
+			direct.put(0, batch.getArena(), 0, batch.getArenaLength());
+			AvroDeserializer deserializer = new AvroDeserializer();
+			for (int i = 0; i < records.size(); i++) {
+				int offset = batch.getOffset(i);
+				int length = batch.getLength(i);
+				assertEquals(7, AvroDeserializer.getSchemaId(batch.getArena(), offset, length));
+				assertEquals(records.get(i), deserializer.deserialize(batch.getArena(), offset, length, schema));
+				ByteBuffer[] buffers = new ByteBuffer[] {
+						batch.getMessage(i),
+						direct.slice(offset, length),
+						ByteBuffer.wrap(batch.getArena(), offset, length).asReadOnlyBuffer(),
+						direct.duplicate().position(offset).limit(offset + length)};
+				for (ByteBuffer buffer : buffers) {
+					int position = buffer.position();
+					assertEquals(7, AvroDeserializer.getSchemaId(buffer));
+					assertEquals(records.get(i), deserializer.deserialize(buffer, schema));
+					assertEquals(position, buffer.position());
+				}
+			}
+			assertThrows(IOException.class, () -> AvroDeserializer.getSchemaId(new byte[] {0, 0, 0}));
+			assertThrows(IOException.class, () -> deserializer.deserialize(ByteBuffer.allocateDirect(10), schema));
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Refill the same record graph for every message
+	 */
+	@Test
+	public void testDeserializeReuse() {
+		try {
+			for (boolean compiled : new boolean[] {false, true}) {
+				AvroDeserializer deserializer = new AvroDeserializer();
+				deserializer.setCompiled(compiled);
+				GenericRecord reuse = deserializer.deserialize(messages.get(0), schema);
+				Object name = reuse.get("COMPANY_NAME");
+				for (int i = 0; i < messages.size(); i++) {
+					GenericRecord r = deserializer.deserialize(reuse, messages.get(i), schema);
+					assertSame(reuse, r);
+					assertSame(name, r.get("COMPANY_NAME"));
+					assertEquals(records.get(i), r);
+				}
+				ByteBuffer direct = ByteBuffer.allocateDirect(messages.get(5).length);
+				direct.put(0, messages.get(5));
+				assertSame(reuse, deserializer.deserialize(reuse, direct, schema));
+				assertEquals(records.get(5), reuse);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Read only some columns, including a nested field inside the audit array
+	 */
+	@Test
+	public void testProjection() {
+		try {
+			GenericRecord r = AvroSerializerTest.createRecord(42, "x".repeat(10000));
+			GenericRecord audit = AvroType.createChildRecordFor(r, ValueSchema.AUDIT);
+			AvroType.putRecordValue(audit, ValueSchema.TRANSFORMRESULT, "PASS");
+			for (int i = 0; i < 3; i++) {
+				GenericRecord detail = AvroType.addChildToArrayOfRecords(audit, ValueSchema.AUDITDETAILS);
+				AvroType.putRecordValue(detail, ValueSchema.AUDITTRANSFORMATIONNAME, "step " + i);
+				AvroType.putRecordValue(detail, ValueSchema.TRANSFORMRESULT, "PASS");
+				AvroType.putRecordValue(detail, ValueSchema.AUDITTRANSFORMRESULTTEXT, "text " + i);
+			}
+			byte[] message = AvroSerializer.serialize(1, r);
+			ProjectionReader reader = ProjectionReader.get(schema, List.of(
+					"CUSTOMER_ID",
+					SchemaConstants.SCHEMA_COLUMN_CHANGE_TYPE,
+					ValueSchema.AUDIT + "." + ValueSchema.AUDITDETAILS + "." + ValueSchema.AUDITTRANSFORMATIONNAME));
+			assertSame(reader, ProjectionReader.get(schema, Set.of(
+					ValueSchema.AUDIT + "." + ValueSchema.AUDITDETAILS + "." + ValueSchema.AUDITTRANSFORMATIONNAME,
+					SchemaConstants.SCHEMA_COLUMN_CHANGE_TYPE,
+					"CUSTOMER_ID")));
+			Schema projected = reader.getProjectedSchema();
+			assertEquals(3, projected.getFields().size());
+			Schema slimaudit = AvroUtils.getBaseSchema(projected.getField(ValueSchema.AUDIT).schema());
+			assertEquals(1, slimaudit.getFields().size());
+			Schema slimdetail = AvroUtils.getBaseSchema(slimaudit.getField(ValueSchema.AUDITDETAILS).schema());
+			assertEquals(Type.ARRAY, slimdetail.getType());
+			assertEquals(1, slimdetail.getElementType().getFields().size());
+
+			AvroDeserializer deserializer = new AvroDeserializer();
+			GenericRecord slim = null;
+			for (boolean direct : new boolean[] {false, true}) {
+				if (direct) {
+					ByteBuffer buffer = ByteBuffer.allocateDirect(message.length);
+					buffer.put(0, message);
+					slim = deserializer.deserialize(slim, buffer, reader);
+				} else {
+					slim = deserializer.deserialize(message, reader);
+				}
+				assertEquals(42, slim.get("CUSTOMER_ID"));
+				assertEquals("I", slim.get(SchemaConstants.SCHEMA_COLUMN_CHANGE_TYPE).toString());
+				GenericRecord slimauditrecord = (GenericRecord) slim.get(ValueSchema.AUDIT);
+				List<?> details = (List<?>) slimauditrecord.get(ValueSchema.AUDITDETAILS);
+				assertEquals(3, details.size());
+				assertEquals("step 2", ((GenericRecord) details.get(2)).get(ValueSchema.AUDITTRANSFORMATIONNAME).toString());
+			}
+			/*
+			 * The records without audit information, e.g. null values of the nested record
+			 */
+			for (int i = 0; i < messages.size(); i++) {
+				slim = deserializer.deserialize(messages.get(i), reader);
+				assertEquals(records.get(i).get("CUSTOMER_ID"), slim.get("CUSTOMER_ID"));
+				assertEquals(null, slim.get(ValueSchema.AUDIT));
+			}
+			assertThrows(AvroDataTypeException.class, () -> ProjectionReader.get(schema, List.of("NOT_EXISTING")));
+			assertThrows(AvroDataTypeException.class, () -> ProjectionReader.get(schema, List.of("CUSTOMER_ID.X")));
+
+			/*
+			 * The same record used by multiple fields, projected differently, results in distinct names
+			 */
+			Schema shared = new Schema.Parser().parse("{\"type\":\"record\",\"name\":\"order\",\"namespace\":\"test\",\"fields\":["
+					+ "{\"name\":\"billto\",\"type\":{\"type\":\"record\",\"name\":\"address\",\"fields\":["
+					+ "{\"name\":\"city\",\"type\":\"string\"},{\"name\":\"zip\",\"type\":\"int\"}]}},"
+					+ "{\"name\":\"shipto\",\"type\":\"address\"},{\"name\":\"returnto\",\"type\":\"address\"},"
+					+ "{\"name\":\"soldto\",\"type\":\"address\"}]}");
+			GenericRecord order = new GenericData.Record(shared);
+			for (Field f : shared.getFields()) {
+				GenericRecord address = new GenericData.Record(f.schema());
+				address.put("city", f.name());
+				address.put("zip", f.pos());
+				order.put(f.pos(), address);
+			}
+			ProjectionReader orderreader = ProjectionReader.get(shared, List.of("billto.city", "shipto.zip", "returnto", "soldto.city"));
+			Schema slimorder = orderreader.getProjectedSchema();
+			assertEquals(slimorder, new Schema.Parser().parse(slimorder.toString()));
+			assertEquals("test.address_projection", slimorder.getField("billto").schema().getFullName());
+			assertEquals("test.address_projection2", slimorder.getField("shipto").schema().getFullName());
+			assertSame(shared.getField("returnto").schema(), slimorder.getField("returnto").schema());
+			assertSame(slimorder.getField("billto").schema(), slimorder.getField("soldto").schema());
+			GenericRecord slimrecord = deserializer.deserialize(AvroSerializer.serialize(1, order), orderreader);
+			assertEquals("billto", ((GenericRecord) slimrecord.get("billto")).get("city").toString());
+			assertEquals(1, ((GenericRecord) slimrecord.get("shipto")).get("zip"));
+			assertEquals("returnto", ((GenericRecord) slimrecord.get("returnto")).get("city").toString());
+			assertEquals(2, ((GenericRecord) slimrecord.get("returnto")).get("zip"));
+			assertEquals("soldto", ((GenericRecord) slimrecord.get("soldto")).get("city").toString());
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Fields are decoded on access in any order
+	 */
+	@Test
+	public void testLazyRecord() {
+		try {
+			for (int i = 0; i < messages.size(); i++) {
+				LazyGenericRecord lazy = new LazyGenericRecord(schema, messages.get(i));
+				GenericRecord expected = records.get(i);
+				assertEquals(expected.get("CUSTOMER_ID"), lazy.get("CUSTOMER_ID"));
+				assertEquals(expected.get("NOTES") == null ? null : expected.get("NOTES").toString(), lazy.get("NOTES") == null ? null : lazy.get("NOTES").toString());
+				assertEquals("I", lazy.get(SchemaConstants.SCHEMA_COLUMN_CHANGE_TYPE).toString());
+				assertSame(lazy.get("CUSTOMER_ID"), lazy.get("CUSTOMER_ID"));
+				assertEquals(expected, lazy.toRecord());
+				assertEquals(lazy, expected);
+				assertEquals(1, lazy.getSchemaId());
+				assertSame(messages.get(i), lazy.getData());
+				assertEquals(false, lazy.isModified());
+			}
+			SerializedBatch batch = AvroSerializer.serialize(3, records);
+			LazyGenericRecord lazy = new LazyGenericRecord(schema, batch.getArena(), batch.getOffset(10), batch.getLength(10));
+			assertEquals(lazy, records.get(10));
+			lazy.put("CUSTOMER_ID", 5);
+			assertEquals(5, lazy.get("CUSTOMER_ID"));
+			assertEquals(true, lazy.isModified());
+			assertThrows(IOException.class, () -> new LazyGenericRecord(schema, new byte[] {1, 0, 0, 0, 0, 0}));
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Messages of two producer schema versions read into one reader schema, the writer schema is resolved once per schema id
+	 */
+	@Test
+	public void testSchemaEvolution() {
+		try {
+			List<Field> fields = new ArrayList<>();
+			for (Field f : schema.getFields()) {
+				if (!f.name().equals("NOTES")) {
+					fields.add(new Field(f, f.schema()));
+				}
+			}
+			fields.add(new Field("REGION", Schema.createUnion(Schema.create(Schema.Type.NULL), Schema.create(Schema.Type.STRING)), null, JsonProperties.NULL_VALUE));
+			Schema readerschema = Schema.createRecord(schema.getName(), schema.getDoc(), schema.getNamespace(), false, fields);
+			AtomicInteger lookups = new AtomicInteger();
+			SchemaResolver resolver = id -> {
+				lookups.incrementAndGet();
+				return id == 1 ? schema : id == 2 ? readerschema : null;
+			};
+			GenericRecord v2 = createVersion2Record(readerschema);
+			byte[] v2message = AvroSerializer.serialize(2, v2);
+
+			AvroDeserializer deserializer = new AvroDeserializer();
+			for (int i = 0; i < messages.size(); i++) {
+				GenericRecord r = deserializer.deserialize(messages.get(i), resolver, readerschema);
+				assertSame(readerschema, r.getSchema());
+				assertEquals(records.get(i).get("CUSTOMER_ID"), r.get("CUSTOMER_ID"));
+				assertEquals(null, r.get("REGION"));
+				assertEquals("EMEA", deserializer.deserialize(v2message, resolver, readerschema).get("REGION").toString());
+			}
+			assertEquals(2, lookups.get());
+			assertEquals(2, deserializer.getResolutionCacheCount());
+
+			/*
+			 * A cache of one reader evicts the other schema version each time
+			 */
+			lookups.set(0);
+			SharedAvroDeserializer shared = new SharedAvroDeserializer(true, 1);
+			for (int i = 0; i < 10; i++) {
+				assertEquals(records.get(i), shared.deserialize(null, ByteBuffer.wrap(messages.get(i)), resolver, schema));
+				assertEquals(42, shared.deserialize(v2message, resolver, readerschema).get("CUSTOMER_ID"));
+			}
+			assertEquals(20, lookups.get());
+			assertEquals(1, shared.getResolutionCacheCount());
+			assertThrows(IOException.class, () -> deserializer.deserialize(AvroSerializer.serialize(3, records.get(0)), resolver, readerschema));
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	private static GenericRecord createVersion2Record(Schema readerschema) throws Exception {
+		GenericRecord r = new GenericData.Record(readerschema);
+		GenericRecord source = AvroSerializerTest.createRecord(42, null);
+		for (Field f : readerschema.getFields()) {
+			if (schema.getField(f.name()) != null) {
+				r.put(f.name(), source.get(f.name()));
+			}
+		}
+		r.put("REGION", "EMEA");
+		return r;
+	}
+
+}
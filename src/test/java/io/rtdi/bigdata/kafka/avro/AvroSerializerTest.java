@@ -0,0 +1,221 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroCLOB;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroDecimal;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroInt;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroNVarchar;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroType;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroVarchar;
+import io.rtdi.bigdata.kafka.avro.datatypes.LogicalDataTypesRegistry;
+import io.rtdi.bigdata.kafka.avro.recordbuilders.SchemaBuilder;
+import io.rtdi.bigdata.kafka.avro.recordbuilders.ValueSchema;
+
+/**
+ * Tests for the Kafka frame serialization
+ */
+public class AvroSerializerTest {
+	private static Schema schema;
+
+	/**
+	 * @throws Exception if something goes wrong
+	 */
+	@BeforeAll
+	public static void setUp() throws Exception {
+		LogicalDataTypesRegistry.registerAll();
+		ValueSchema value = new ValueSchema("CUSTOMER", null);
+		value.add("CUSTOMER_ID", AvroInt.getSchema(), null, false);
+		value.add("COMPANY_NAME", AvroNVarchar.getSchema(30), null, true);
+		value.add("REVENUE", AvroDecimal.getSchema(18, 2), null, true);
+		value.add("NOTES", AvroCLOB.getSchema(), null, true);
+		value.build();
+		schema = value.getSchema();
+	}
+
+	static GenericRecord createRecord(int id, String notes) {
+		GenericRecord r = new GenericData.Record(schema);
+		AvroType.putRecordValue(r, SchemaConstants.SCHEMA_COLUMN_CHANGE_TYPE, RowType.INSERT.getIdentifer());
+		AvroType.putRecordValue(r, SchemaConstants.SCHEMA_COLUMN_TRUNCATE, new java.util.HashMap<String, String>());
+		AvroType.putRecordValue(r, SchemaConstants.SCHEMA_COLUMN_CHANGE_TIME, Instant.ofEpochMilli(1700000000000L + id));
+		AvroType.putRecordValue(r, "CUSTOMER_ID", id);
+		AvroType.putRecordValue(r, "COMPANY_NAME", "Company " + id);
+		AvroType.putRecordValue(r, "REVENUE", BigDecimal.valueOf(id * 100 + 25, 2));
+		AvroType.putRecordValue(r, "NOTES", notes);
+		return r;
+	}
+
+	static Schema getSchema() {
+		return schema;
+	}
+
+	private static byte[] serializeLegacy(int schemaid, GenericRecord data) throws IOException {
+		try (ByteArrayOutputStream out = new ByteArrayOutputStream(); ) {
+			out.write(AvroUtils.MAGIC_BYTE);
+			out.write(ByteBuffer.allocate(Integer.BYTES).putInt(schemaid).array());
+			BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(out, null);
+			new GenericDatumWriter<GenericRecord>(data.getSchema()).write(data, encoder);
+			encoder.flush();
+			return out.toByteArray();
+		}
+	}
+
+	/**
+	 * The static and the instance methods must produce the same frame as a plain Avro writer
+	 */
+	@Test
+	public void testSerialize() {
+		try {
+			AvroSerializer serializer = new AvroSerializer();
+			for (int i = 0; i < 10; i++) {
+				GenericRecord r = createRecord(i, "x".repeat(i * 1000));
+				byte[] expected = serializeLegacy(0x01020304 + i, r);
+				assertArrayEquals(expected, AvroSerializer.serialize(0x01020304 + i, r));
+				assertArrayEquals(expected, serializer.encode(0x01020304 + i, r));
+				AvroDeserializer deserializer = new AvroDeserializer();
+				assertEquals(0x01020304 + i, AvroDeserializer.getSchemaId(expected));
+				assertEquals(r, deserializer.deserialize(expected, schema));
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Write into heap and direct ByteBuffers, including the overflow case
+	 */
+	@Test
+	public void testSerializeIntoByteBuffer() {
+		try {
+			GenericRecord r = createRecord(7, "some notes");
+			byte[] expected = serializeLegacy(42, r);
+			for (ByteBuffer target : new ByteBuffer[] {ByteBuffer.allocate(1000), ByteBuffer.allocateDirect(1000)}) {
+				target.position(10);
+				int written = AvroSerializer.serialize(42, r, target);
+				assertEquals(expected.length, written);
+				assertEquals(10 + expected.length, target.position());
+				byte[] actual = new byte[written];
+				target.get(10, actual);
+				assertArrayEquals(expected, actual);
+			}
+			ByteBuffer small = ByteBuffer.allocateDirect(20);
+			small.position(3);
+			int required = AvroSerializer.serialize(42, r, small);
+			assertEquals(-expected.length, required);
+			assertEquals(3, small.position());
+			ByteBuffer tiny = ByteBuffer.allocate(2);
+			assertEquals(-expected.length, AvroSerializer.serialize(42, r, tiny));
+			assertEquals(0, tiny.position());
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * A batch must contain the same frames as the single record serialization
+	 */
+	@Test
+	public void testSerializeBatch() {
+		try {
+			List<GenericRecord> records = new ArrayList<>();
+			int[] ids = new int[500];
+			for (int i = 0; i < 500; i++) {
+				records.add(createRecord(i, i % 10 == 0 ? "y".repeat(i) : null));
+				ids[i] = i % 3;
+			}
+			for (int round = 0; round < 2; round++) {
+				SerializedBatch batch = AvroSerializer.serialize(ids, records);
+				assertEquals(500, batch.size());
+				for (int i = 0; i < 500; i++) {
+					assertArrayEquals(serializeLegacy(ids[i], records.get(i)), batch.toByteArray(i));
+					assertEquals(batch.getLength(i), batch.getMessage(i).remaining());
+				}
+				assertEquals(batch.getOffset(499) + batch.getLength(499), batch.getArenaLength());
+			}
+			SerializedBatch same = new AvroSerializer().encode(5, records);
+			assertEquals(5, AvroDeserializer.getSchemaId(same.toByteArray(100)));
+			assertEquals(0, AvroSerializer.serialize(1, new ArrayList<GenericRecord>()).size());
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * The computed size must match the encoded size and be within the schema's bounds
+	 */
+	@Test
+	public void testSizeEstimate() {
+		try {
+			String[] notes = new String[] {null, "", "plain", "\u00e4\u00f6\u00fc \u20ac", "emoji \ud83d\ude00", "unpaired \ud83d x", "x".repeat(200)};
+			for (int i = 0; i < notes.length; i++) {
+				GenericRecord r = createRecord(i * 100000, null);
+				r.put("COMPANY_NAME", notes[i]);
+				assertEquals(AvroSerializer.serialize(1, r).length, AvroSizeEstimate.getFrameSize(r));
+			}
+			AvroSizeEstimate unbounded = AvroSizeEstimate.getEstimate(schema);
+			assertFalse(unbounded.isBounded());
+			assertTrue(unbounded.getMinimum() <= unbounded.getTypical());
+
+			SchemaBuilder value = new SchemaBuilder("BOUNDED", null);
+			value.add("ID", AvroInt.getSchema(), null, false);
+			value.add("CODE", AvroVarchar.getSchema(10), null, true);
+			value.add("NAME", AvroNVarchar.getSchema(5), null, true);
+			value.add("AMOUNT", AvroDecimal.getSchema(18, 2), null, true);
+			value.build();
+			AvroSizeEstimate bounded = AvroSizeEstimate.getEstimate(value.getSchema());
+			assertTrue(bounded.isBounded());
+			GenericRecord r = new GenericData.Record(value.getSchema());
+			AvroType.putRecordValue(r, "ID", Integer.MIN_VALUE);
+			AvroType.putRecordValue(r, "CODE", "ABCDEFGHIJ");
+			AvroType.putRecordValue(r, "NAME", "\u20ac\u20ac\u20ac\u20ac\u20ac");
+			AvroType.putRecordValue(r, "AMOUNT", new BigDecimal("-9999999999999999.99"));
+			long size = AvroSizeEstimate.getSize(r);
+			assertTrue(size <= bounded.getMaximum(), "Size " + size + " exceeds the estimate " + bounded);
+			assertTrue(size >= bounded.getMinimum());
+			assertEquals(AvroSerializer.serialize(1, r).length, AvroSizeEstimate.getFrameSize(r));
+			// the NVARCHAR length is in code points, 5 chars outside the BMP take 4 bytes each
+			AvroType.putRecordValue(r, "NAME", "\ud83d\ude00".repeat(5));
+			size = AvroSizeEstimate.getSize(r);
+			assertTrue(size <= bounded.getMaximum(), "Size " + size + " exceeds the estimate " + bounded);
+
+			// a union is one index plus the value of one branch, the largest is a long of 10 bytes
+			Schema union = Schema.createUnion(Schema.create(Schema.Type.NULL), Schema.create(Schema.Type.INT), Schema.create(Schema.Type.LONG));
+			assertEquals(11, AvroSizeEstimate.getEstimate(union).getMaximum());
+
+			AvroSerializer limited = new AvroSerializer(100);
+			limited.encode(1, createRecord(1, "small"));
+			MessageTooLargeException e = assertThrows(MessageTooLargeException.class, () -> limited.encode(1, createRecord(1, "x".repeat(100))));
+			assertEquals(100, e.getMaxSize());
+			assertEquals(AvroSizeEstimate.getFrameSize(createRecord(1, "x".repeat(100))), e.getSize());
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+}
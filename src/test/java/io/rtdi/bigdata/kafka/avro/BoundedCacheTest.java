@@ -0,0 +1,82 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The cache must stay within its size and keep the entries in use
+ */
+public class BoundedCacheTest {
+
+	/**
+	 * Entries read all the time survive the eviction of the entries added once only
+	 */
+	@Test
+	public void testEviction() {
+		BoundedCache<Integer, String> cache = new BoundedCache<>(100);
+		for (int i = 0; i < 1000; i++) {
+			assertEquals("v" + i, cache.putIfAbsent(i, "v" + i));
+			// the first ten keys are read all the time and must survive
+			for (int k = 0; k < 10 && k <= i; k++) {
+				assertEquals("v" + k, cache.get(k));
+			}
+			assertTrue(cache.size() <= 100);
+		}
+		assertEquals(900, cache.getEvictions());
+		assertEquals("v0", cache.putIfAbsent(0, "other"));
+		cache.put(0, "other");
+		assertEquals("other", cache.get(0));
+		assertFalse(cache.remove(0, "v0"));
+		assertTrue(cache.remove(0, "other"));
+		assertNull(cache.get(0));
+	}
+
+	/**
+	 * Many threads reading and adding at once never get a wrong value and the size stays within the maximum
+	 */
+	@Test
+	public void testConcurrent() {
+		try {
+			BoundedCache<Integer, Integer> cache = new BoundedCache<>(50);
+			List<Thread> threads = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				int offset = t;
+				threads.add(new Thread(() -> {
+					for (int i = 0; i < 20000; i++) {
+						int key = (i * 7 + offset) % 200;
+						Integer value = cache.get(key);
+						if (value == null) {
+							cache.putIfAbsent(key, key);
+						} else if (value != key) {
+							throw new IllegalStateException("Wrong value " + value + " for the key " + key);
+						}
+					}
+				}));
+			}
+			Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+			for (Thread thread : threads) {
+				thread.setUncaughtExceptionHandler((th, e) -> errors.add(e));
+				thread.start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			assertTrue(errors.isEmpty(), errors.toString());
+			assertTrue(cache.size() <= 50);
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+}
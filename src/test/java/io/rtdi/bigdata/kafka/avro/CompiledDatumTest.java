@@ -0,0 +1,441 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.AvroTypeException;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.util.Utf8;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.rtdi.bigdata.kafka.avro.datatypes.AsciiScanner;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroCLOB;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroDate;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroDecimal;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroRecord;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroTimestampMicros;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroType;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroVarchar;
+import io.rtdi.bigdata.kafka.avro.recordbuilders.ValueSchema;
+
+/**
+ * The compiled writers and readers must behave exactly like the generic ones
+ */
+public class CompiledDatumTest {
+	private static final String SCHEMA = """
+			{"type": "record", "name": "ALLTYPES", "fields": [
+				{"name": "B", "type": "boolean"},
+				{"name": "I", "type": "int"},
+				{"name": "L", "type": "long"},
+				{"name": "F", "type": "float"},
+				{"name": "D", "type": "double"},
+				{"name": "S", "type": "string"},
+				{"name": "JS", "type": {"type": "string", "avro.java.string": "String"}},
+				{"name": "BY", "type": "bytes"},
+				{"name": "FX", "type": {"type": "fixed", "name": "FOUR", "size": 4}},
+				{"name": "E", "type": {"type": "enum", "name": "COLOR", "symbols": ["RED", "GREEN", "BLUE"]}},
+				{"name": "A", "type": {"type": "array", "items": "long"}},
+				{"name": "M", "type": {"type": "map", "values": ["null", "string"]}},
+				{"name": "N", "type": ["null", "string"]},
+				{"name": "U", "type": ["null", "int", "string", "COLOR"]},
+				{"name": "LIST", "type": ["null", {"type": "record", "name": "NODE", "fields": [
+					{"name": "VALUE", "type": "int"},
+					{"name": "NEXT", "type": ["null", "NODE"]}
+				]}]},
+				{"name": "NODES", "type": {"type": "array", "items": "NODE"}}
+			]}
+			""";
+
+	private static GenericRecord createRecord(Schema schema, int i) {
+		Schema nodeschema = schema.getField("NODES").schema().getElementType();
+		GenericRecord r = new GenericData.Record(schema);
+		r.put("B", i % 2 == 0);
+		r.put("I", -i * 1000);
+		r.put("L", (long) i * Integer.MAX_VALUE);
+		r.put("F", i * 1.5f);
+		r.put("D", i * -2.25d);
+		r.put("S", i % 2 == 0 ? "text " + i : new Utf8("utf8 ä " + i));
+		r.put("JS", "java " + i);
+		r.put("BY", ByteBuffer.wrap(new byte[] {1, 2, (byte) i}));
+		r.put("FX", new GenericData.Fixed(schema.getField("FX").schema(), new byte[] {4, 3, 2, (byte) i}));
+		r.put("E", new GenericData.EnumSymbol(schema.getField("E").schema(), "GREEN"));
+		r.put("A", i % 3 == 0 ? List.of() : Arrays.asList(1L, -2L, (long) i));
+		Map<String, Object> m = new HashMap<>();
+		if (i % 3 != 0) {
+			m.put("k1", "v" + i);
+			m.put("k2", null);
+		}
+		r.put("M", m);
+		r.put("N", i % 2 == 0 ? null : "set");
+		Schema colorschema = schema.getField("E").schema();
+		Object[] unionvalues = new Object[] {null, i, "s" + i, new GenericData.EnumSymbol(colorschema, "BLUE")};
+		r.put("U", unionvalues[i % 4]);
+		GenericRecord tail = new GenericData.Record(nodeschema);
+		tail.put("VALUE", 2);
+		GenericRecord head = new GenericData.Record(nodeschema);
+		head.put("VALUE", 1);
+		head.put("NEXT", i % 2 == 0 ? tail : null);
+		r.put("LIST", i % 5 == 0 ? null : head);
+		r.put("NODES", List.of(tail, head));
+		return r;
+	}
+
+	private static byte[] write(DatumWriter<GenericRecord> writer, GenericRecord r) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+		writer.write(r, encoder);
+		encoder.flush();
+		return out.toByteArray();
+	}
+
+	/**
+	 * Same bytes written, same records read, including reuse
+	 */
+	@Test
+	public void testAllTypes() {
+		try {
+			Schema schema = new Schema.Parser().parse(SCHEMA);
+			CompiledDatumWriter writer = CompiledDatumWriter.get(schema);
+			assertSame(writer, CompiledDatumWriter.get(new Schema.Parser().parse(SCHEMA)));
+			CompiledDatumReader reader = CompiledDatumReader.get(schema);
+			GenericDatumWriter<GenericRecord> genericwriter = new GenericDatumWriter<>(schema);
+			GenericDatumReader<GenericRecord> genericreader = new GenericDatumReader<>(schema);
+			GenericRecord reuse = null;
+			for (int i = 0; i < 20; i++) {
+				GenericRecord r = createRecord(schema, i);
+				byte[] expected = write(genericwriter, r);
+				assertArrayEquals(expected, write(writer, r));
+				GenericRecord expectedrecord = genericreader.read(null, DecoderFactory.get().binaryDecoder(expected, null));
+				GenericRecord actual = reader.read(null, DecoderFactory.get().binaryDecoder(expected, null));
+				assertEquals(expectedrecord, actual);
+				assertEquals(String.class, actual.get("JS").getClass());
+				assertEquals(Utf8.class, actual.get("S").getClass());
+				GenericRecord reused = reader.read(reuse, DecoderFactory.get().binaryDecoder(expected, null));
+				if (reuse != null) {
+					assertSame(reuse, reused);
+				}
+				assertEquals(expectedrecord, reused);
+				reuse = reused;
+			}
+			GenericRecord invalid = createRecord(schema, 1);
+			invalid.put("N", 5);
+			assertThrows(RuntimeException.class, () -> write(writer, invalid));
+			invalid.put("N", null);
+			invalid.put("I", null);
+			assertThrows(NullPointerException.class, () -> write(writer, invalid));
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Text of ASCII data types is read directly from the array into the String, non-ASCII text is still decoded as UTF-8
+	 */
+	@Test
+	public void testAsciiText() {
+		try {
+			Schema varchar = AvroVarchar.getSchema(20);
+			varchar.addProp(GenericData.STRING_PROP, GenericData.StringType.String.name());
+			Schema clob = AvroCLOB.getSchema();
+			clob.addProp(GenericData.STRING_PROP, GenericData.StringType.String.name());
+			Schema schema = Schema.createRecord("ASCIITEXT", null, null, false,
+					List.of(new Schema.Field("V", varchar), new Schema.Field("C", clob)));
+			CompiledDatumReader reader = CompiledDatumReader.get(schema);
+			GenericDatumWriter<GenericRecord> genericwriter = new GenericDatumWriter<>(schema);
+			String[] values = {"", "abc", "0123456789abcdefg", "\u00e4", "abcdefgh\u00e4", "\u20ac1"};
+			for (String value : values) {
+				GenericRecord r = new GenericData.Record(schema);
+				r.put("V", value);
+				r.put("C", new Utf8(value + value));
+				byte[] data = write(genericwriter, r);
+				GenericRecord actual = reader.read(null, new ByteArrayDecoder().configure(data, 0, data.length));
+				assertEquals(value, actual.get("V"));
+				assertEquals(value + value, actual.get("C"));
+				assertEquals(actual, reader.read(null, DecoderFactory.get().binaryDecoder(data, null)));
+			}
+			assertEquals("abc", AsciiScanner.decode(new Utf8("abc")));
+			assertEquals("\u00e4bc", AsciiScanner.decode(new Utf8("\u00e4bc")));
+			assertEquals("abc", AvroVarchar.create(10).convertToJava(new Utf8("abc")));
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Records written as JSON into a stream, a String and via the data type must be the same
+	 */
+	@Test
+	public void testJson() {
+		try {
+			Schema schema = new Schema.Parser().parse(SCHEMA);
+			CompiledJsonWriter writer = CompiledJsonWriter.get(schema);
+			assertSame(writer, CompiledJsonWriter.get(schema));
+			ObjectMapper om = new ObjectMapper();
+			for (int i = 0; i < 10; i++) {
+				GenericRecord r = createRecord(schema, i);
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				writer.write(r, out);
+				String json = writer.toJson(r);
+				assertEquals(json, out.toString(StandardCharsets.UTF_8));
+				assertEquals(json, AvroRecord.create().convertToJson(r));
+				JsonNode node = om.readTree(json);
+				assertEquals(-i * 1000, node.get("I").asInt());
+				assertEquals((long) i * Integer.MAX_VALUE, node.get("L").asLong());
+				assertEquals(i * -2.25d, node.get("D").asDouble());
+				assertEquals(r.get("S").toString(), node.get("S").asText());
+				assertEquals(Base64.getEncoder().encodeToString(new byte[] {1, 2, (byte) i}), node.get("BY").asText());
+				assertEquals("GREEN", node.get("E").asText());
+				assertEquals(((List<?>) r.get("A")).size(), node.get("A").size());
+				assertEquals(i % 5 == 0, node.get("LIST").isNull());
+				JsonNode next = node.get("NODES").get(1).get("NEXT");
+				if (i % 2 == 0) {
+					assertEquals(2, next.get("VALUE").asInt());
+				} else {
+					assertTrue(next.isNull());
+				}
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * The transcoder must write the same JSON from the binary message as the JSON writer from the record
+	 */
+	@Test
+	public void testJsonTranscoder() {
+		try {
+			JsonFactory factory = new JsonFactory();
+			Schema schema = new Schema.Parser().parse(SCHEMA);
+			AvroJsonTranscoder transcoder = AvroJsonTranscoder.get(schema);
+			assertSame(transcoder, AvroJsonTranscoder.get(schema, false));
+			for (int i = 0; i < 10; i++) {
+				GenericRecord r = createRecord(schema, i);
+				byte[] data = AvroSerializer.serialize(i, r);
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				try (JsonGenerator generator = factory.createGenerator(out)) {
+					transcoder.transcode(data, generator);
+				}
+				assertEquals(CompiledJsonWriter.get(schema).toJson(r), out.toString(StandardCharsets.UTF_8));
+			}
+
+			AvroSerializerTest.setUp();
+			ValueSchema value = new ValueSchema("ORDERS", null);
+			value.add("ORDER DATE", AvroDate.getSchema(), null, true);
+			value.add("CREATED", AvroTimestampMicros.getSchema(), null, false);
+			value.add("AMOUNT", AvroDecimal.getSchema(30, 4), null, false);
+			value.add("CODE", AvroVarchar.getSchema(10), null, false);
+			value.build();
+			Schema orderschema = value.getSchema();
+			GenericRecord r = new GenericData.Record(orderschema);
+			AvroType.putRecordValue(r, SchemaConstants.SCHEMA_COLUMN_CHANGE_TYPE, RowType.UPDATE.getIdentifer());
+			AvroType.putRecordValue(r, SchemaConstants.SCHEMA_COLUMN_TRUNCATE, Map.of("k", "v"));
+			AvroType.putRecordValue(r, SchemaConstants.SCHEMA_COLUMN_CHANGE_TIME, Instant.ofEpochMilli(1700000000000L));
+			AvroType.putRecordValue(r, AvroNameEncoder.encodeName("ORDER DATE"), LocalDate.of(2024, 2, 29));
+			AvroType.putRecordValue(r, "CREATED", Instant.ofEpochSecond(1700000000L, 123456000L));
+			AvroType.putRecordValue(r, "AMOUNT", new BigDecimal("-12345678901234567890.1234"));
+			AvroType.putRecordValue(r, "CODE", "ABC");
+			Map<Integer, Schema> schemas = Map.of(1, AvroSerializerTest.getSchema(), 2, orderschema);
+			GenericRecord[] records = {AvroSerializerTest.createRecord(5, "notes \"5\"\n"), AvroSerializerTest.createRecord(6, null), r};
+			for (GenericRecord record : records) {
+				byte[] data = AvroSerializer.serialize(record.getSchema() == orderschema ? 2 : 1, record);
+				StringWriter w = new StringWriter();
+				try (JsonGenerator generator = factory.createGenerator(w)) {
+					AvroJsonTranscoder.transcode(data, 0, data.length, schemas::get, false, generator);
+				}
+				assertEquals(CompiledJsonWriter.get(record.getSchema()).toJson(record), w.toString());
+			}
+			byte[] data = AvroSerializer.serialize(2, r);
+			StringWriter w = new StringWriter();
+			try (JsonGenerator generator = factory.createGenerator(w)) {
+				AvroJsonTranscoder.get(orderschema, true).transcode(data, generator);
+			}
+			JsonNode node = new ObjectMapper().readTree(w.toString());
+			assertEquals("2024-02-29", node.get("ORDER DATE").asText());
+			assertEquals("2023-11-14T22:13:20.123456Z", node.get("CREATED").asText());
+			assertEquals("-12345678901234567890.1234", node.get("AMOUNT").asText());
+			/*
+			 * A decimal without any bytes is zero
+			 */
+			r.put("AMOUNT", ByteBuffer.allocate(0));
+			data = AvroSerializer.serialize(2, r);
+			w = new StringWriter();
+			try (JsonGenerator generator = factory.createGenerator(w)) {
+				AvroJsonTranscoder.get(orderschema, true).transcode(data, generator);
+			}
+			node = new ObjectMapper().readTree(w.toString());
+			assertEquals(0, new BigDecimal(node.get("AMOUNT").asText()).signum());
+			assertEquals(new BigDecimal("0.0000"), AvroType.getRecordFieldValue(r, "AMOUNT"));
+			assertThrows(IOException.class, () -> transcoder.transcode(new byte[] {1, 0, 0, 0, 1}, factory.createGenerator(new StringWriter())));
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * JSON written from a record must be encoded into the same Avro message as the record itself, in any key order
+	 */
+	@Test
+	public void testJsonEncoder() {
+		try {
+			ObjectMapper om = new ObjectMapper();
+			Schema schema = new Schema.Parser().parse(SCHEMA);
+			JsonAvroEncoder encoder = JsonAvroEncoder.get(schema);
+			assertSame(encoder, JsonAvroEncoder.get(schema));
+			for (int i = 0; i < 20; i++) {
+				GenericRecord r = createRecord(schema, i);
+				if (i % 4 == 3) {
+					// an enum symbol in JSON is a string, hence it is written into the string branch of the union
+					r.put("U", "BLUE");
+				}
+				byte[] expected = AvroSerializer.serialize(i, r);
+				String json = CompiledJsonWriter.get(schema).toJson(r);
+				assertArrayEquals(expected, encoder.encode(i, json));
+				ObjectNode node = (ObjectNode) om.readTree(json);
+				ObjectNode reversed = om.createObjectNode();
+				List<String> names = new ArrayList<>();
+				node.fieldNames().forEachRemaining(names::add);
+				Collections.reverse(names);
+				for (String name : names) {
+					reversed.set(name, node.get(name));
+				}
+				reversed.put("UNKNOWN", "ignored");
+				assertArrayEquals(expected, encoder.encode(i, om.writeValueAsBytes(reversed)));
+			}
+
+			AvroSerializerTest.setUp();
+			Schema customer = AvroSerializerTest.getSchema();
+			for (int i = 0; i < 5; i++) {
+				GenericRecord r = AvroSerializerTest.createRecord(i, i % 2 == 0 ? null : "notes " + i);
+				assertArrayEquals(AvroSerializer.serialize(1, r), JsonAvroEncoder.get(customer).encode(1, CompiledJsonWriter.get(customer).toJson(r)));
+			}
+			GenericRecord r = AvroSerializerTest.createRecord(7, null);
+			String lenient = "{\"REVENUE\": 7.25, \"CUSTOMER_ID\": \"7\", \"COMPANY_NAME\": \"Company 7\", "
+					+ "\"__change_time\": \"" + Instant.ofEpochMilli(1700000000007L) + "\", \"__change_type\": \"I\", \"__truncate\": {}}";
+			assertArrayEquals(AvroSerializer.serialize(1, r), JsonAvroEncoder.get(customer).encode(1, lenient));
+			assertThrows(IOException.class, () -> JsonAvroEncoder.get(customer).encode(1, "{\"COMPANY_NAME\": \"Company 7\"}"));
+			assertThrows(IOException.class, () -> JsonAvroEncoder.get(customer).encode(1, "{\"CUSTOMER_ID\": 1, \"CUSTOMER_ID\": 2}"));
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Upgraded messages must be identical to the serialized record as read by Avro with the reader schema
+	 */
+	@Test
+	public void testSchemaUpgrade() {
+		try {
+			Schema writer = new Schema.Parser().parse(SCHEMA);
+			String fields = """
+					{"name": "B", "type": "boolean"},
+					{"name": "I", "type": "long"},
+					{"name": "L", "type": "double"},
+					{"name": "F", "type": "double"},
+					{"name": "D", "type": "double"},
+					{"name": "S", "type": "string"},
+					{"name": "JS2", "type": "string", "aliases": ["JS"]},
+					{"name": "BY", "type": "bytes"},
+					{"name": "FX", "type": {"type": "fixed", "name": "FOUR", "size": 4}},
+					{"name": "E", "type": {"type": "enum", "name": "COLOR", "symbols": ["BLUE", "YELLOW", "GREEN", "RED"]}},
+					{"name": "A", "type": {"type": "array", "items": "double"}},
+					{"name": "M", "type": {"type": "map", "values": ["null", "string"]}},
+					{"name": "U", "type": ["null", "long", "string", "COLOR"]},
+					{"name": "ADDED", "type": "string", "default": "new"},
+					{"name": "LIST", "type": ["null", {"type": "record", "name": "NODE", "fields": [
+						{"name": "VALUE", "type": "int"},
+						{"name": "NEXT", "type": ["null", "NODE"]}
+					]}]},
+					{"name": "NODES", "type": {"type": "array", "items": "NODE"}},
+					{"name": "LAST", "type": ["null", "int"], "default": null}
+					""";
+			Schema reader = new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"ALLTYPES\", \"fields\": [" + fields + "]}");
+			List<Schema.Field> readerfields = new ArrayList<>();
+			for (Schema.Field f : reader.getFields()) {
+				readerfields.add(new Schema.Field(f, f.schema()));
+			}
+			// same changes, fields in reverse order
+			Collections.reverse(readerfields);
+			Schema reordered = Schema.createRecord("ALLTYPES", null, null, false, readerfields);
+			for (Schema target : List.of(writer, reader, reordered)) {
+				SchemaUpgradeTranscoder transcoder = SchemaUpgradeTranscoder.get(writer, target);
+				assertSame(transcoder, SchemaUpgradeTranscoder.get(writer, target));
+				GenericDatumReader<GenericRecord> datumreader = new GenericDatumReader<>(writer, target);
+				for (int i = 0; i < 20; i++) {
+					byte[] data = AvroSerializer.serialize(i, createRecord(writer, i));
+					GenericRecord upgraded = datumreader.read(null, DecoderFactory.get().binaryDecoder(data, 5, data.length - 5, null));
+					assertArrayEquals(AvroSerializer.serialize(100 + i, upgraded), transcoder.transcode(data, 100 + i));
+				}
+			}
+			Schema incompatible = new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"ALLTYPES\", \"fields\": [{\"name\": \"MISSING\", \"type\": \"int\"}]}");
+			assertThrows(AvroTypeException.class, () -> SchemaUpgradeTranscoder.get(writer, incompatible));
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * The serializer and deserializer using the compiled engine must be a drop-in replacement
+	 */
+	@Test
+	public void testSerializer() {
+		try {
+			AvroSerializerTest.setUp();
+			AvroSerializer serializer = new AvroSerializer();
+			AvroSerializer compiled = new AvroSerializer();
+			compiled.setCompiled(true);
+			AvroDeserializer deserializer = new AvroDeserializer();
+			deserializer.setCompiled(true);
+			for (int i = 0; i < 10; i++) {
+				GenericRecord r = AvroSerializerTest.createRecord(i, i % 2 == 0 ? null : "notes " + i);
+				byte[] expected = serializer.encode(i, r);
+				assertArrayEquals(expected, compiled.encode(i, r));
+				assertEquals(r, deserializer.deserialize(expected, AvroSerializerTest.getSchema()));
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,101 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroType;
+
+/**
+ * The RowType read from the raw frame must match the change type of the record
+ */
+public class FrameRouterTest {
+
+	/**
+	 * @throws Exception if something goes wrong
+	 */
+	@BeforeAll
+	public static void setUp() throws Exception {
+		AvroSerializerTest.setUp();
+	}
+
+	/**
+	 * Messages of a batch and of a payload list are routed by their RowType, deletes to one sink, before images dropped
+	 */
+	@Test
+	public void testRoute() {
+		try {
+			Schema schema = AvroSerializerTest.getSchema();
+			assertTrue(FrameRouter.isRoutable(schema));
+			assertFalse(FrameRouter.isRoutable(Schema.create(Schema.Type.STRING)));
+			RowType[] types = RowType.values();
+			List<GenericRecord> records = new ArrayList<>();
+			List<byte[]> payloads = new ArrayList<>();
+			int[] schemaids = new int[30];
+			for (int i = 0; i < schemaids.length; i++) {
+				GenericRecord r = AvroSerializerTest.createRecord(i, null);
+				AvroType.putRecordValue(r, SchemaConstants.SCHEMA_COLUMN_CHANGE_TYPE, types[i % types.length].getIdentifer());
+				records.add(r);
+				schemaids[i] = i % 3;
+				payloads.add(AvroSerializer.serialize(schemaids[i], r));
+			}
+			// deletes to sink 0, before images dropped, everything else to sink 1
+			FrameRouter router = new FrameRouter(2, (schemaid, rowtype) -> {
+				switch (rowtype) {
+				case DELETE:
+				case EXTERMINATE:
+				case TRUNCATE:
+					return 0;
+				case BEFORE:
+					return -1;
+				default:
+					return 1;
+				}
+			});
+			SerializedBatch batch = AvroSerializer.serialize(schemaids, records);
+			RoutedBatch routed = router.route(batch, null);
+			assertSame(routed, router.route(payloads, routed));
+			for (RoutedBatch result : new RoutedBatch[] {router.route(batch, null), routed}) {
+				assertEquals(records.size(), result.size());
+				int expecteddeletes = 0;
+				int dropped = 0;
+				for (int i = 0; i < result.size(); i++) {
+					RowType rowtype = types[i % types.length];
+					assertEquals(schemaids[i], result.getSchemaId(i));
+					assertEquals(rowtype, result.getRowType(i));
+					assertEquals(rowtype, FrameRouter.getRowType(batch.getArena(), batch.getOffset(i), batch.getLength(i)));
+					if (rowtype == RowType.DELETE || rowtype == RowType.EXTERMINATE || rowtype == RowType.TRUNCATE) {
+						assertEquals(i, result.getIndexes(0)[expecteddeletes++]);
+					} else if (rowtype == RowType.BEFORE) {
+						dropped++;
+					}
+				}
+				assertEquals(expecteddeletes, result.getCount(0));
+				assertEquals(result.size() - expecteddeletes - dropped, result.getCount(1));
+			}
+			AvroType.putRecordValue(records.get(0), SchemaConstants.SCHEMA_COLUMN_CHANGE_TYPE, "?");
+			byte[] unknown = AvroSerializer.serialize(1, records.get(0));
+			assertNull(FrameRouter.getRowType(unknown, 0, unknown.length));
+			assertThrows(IOException.class, () -> FrameRouter.getRowType(new byte[] {1, 0, 0, 0, 1, 2, 'I'}, 0, 7));
+			assertThrows(IOException.class, () -> FrameRouter.getRowType(new byte[] {0, 0, 0, 0, 1, 2}, 0, 6));
+			assertEquals(RowType.ARCHIVE, RowType.getByIdentifier('P'));
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,116 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.jupiter.api.Test;
+
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroInt;
+import io.rtdi.bigdata.kafka.avro.datatypes.AvroVarchar;
+import io.rtdi.bigdata.kafka.avro.datatypes.LogicalDataTypesRegistry;
+import io.rtdi.bigdata.kafka.avro.recordbuilders.ValueSchema;
+
+/**
+ * Tests for sharing identical schemas
+ */
+public class SchemaInternerTest {
+
+	/**
+	 * Two tables share the audit structure, the same schema parsed twice is one instance
+	 */
+	@Test
+	public void testIntern() {
+		try {
+			LogicalDataTypesRegistry.registerAll();
+			ValueSchema v1 = new ValueSchema("CUSTOMER", null);
+			v1.add("CUSTOMER_ID", AvroInt.getSchema(), null, false);
+			v1.build();
+			ValueSchema v2 = new ValueSchema("MATERIAL", null);
+			v2.add("MATERIAL_ID", AvroVarchar.getSchema(10), null, false);
+			v2.build();
+			Schema customer = v1.getSchema();
+			Schema material = v2.getSchema();
+
+			SchemaInterner interner = new SchemaInterner();
+			Schema c1 = interner.intern(new Schema.Parser().parse(customer.toString()));
+			Schema c2 = interner.intern(new Schema.Parser().parse(customer.toString()));
+			assertSame(c1, c2);
+			assertEquals(customer, c1);
+			assertTrue(interner.getEstimatedBytesSaved() >= customer.toString().length());
+
+			Schema m = interner.intern(material);
+			assertEquals(material, m);
+			assertSame(c1.getField(ValueSchema.AUDIT).schema(), m.getField(ValueSchema.AUDIT).schema());
+			assertSame(c1.getField(SchemaConstants.SCHEMA_COLUMN_EXTENSION).schema(), m.getField(SchemaConstants.SCHEMA_COLUMN_EXTENSION).schema());
+			assertNotNull(c1.getField(SchemaConstants.SCHEMA_COLUMN_CHANGE_TYPE).schema().getLogicalType());
+			assertEquals(customer.getField("CUSTOMER_ID").schema().getLogicalType(), c1.getField("CUSTOMER_ID").schema().getLogicalType());
+
+			/*
+			 * Same structure but a different logical type is not mixed up
+			 */
+			Schema plainint = Schema.create(Schema.Type.INT);
+			assertNotSame(interner.intern(AvroInt.getSchema()), interner.intern(plainint));
+			assertTrue(interner.getHits() > 0 && interner.getMisses() > 0 && interner.size() > 0);
+
+			/*
+			 * Same structure but different column descriptions, which equals() ignores, is not mixed up
+			 */
+			ValueSchema d1 = new ValueSchema("CUSTOMER", null);
+			d1.add("CUSTOMER_ID", AvroInt.getSchema(), "The customer number", false);
+			d1.build();
+			ValueSchema d2 = new ValueSchema("CUSTOMER", null);
+			d2.add("CUSTOMER_ID", AvroInt.getSchema(), "The id of the customer", false);
+			d2.build();
+			Schema doc1 = interner.intern(d1.getSchema());
+			Schema doc2 = interner.intern(d2.getSchema());
+			assertEquals(doc1, doc2);
+			assertNotSame(doc1, doc2);
+			assertEquals("The customer number", doc1.getField("CUSTOMER_ID").doc());
+			assertEquals("The id of the customer", doc2.getField("CUSTOMER_ID").doc());
+			assertSame(doc1, interner.intern(new Schema.Parser().parse(d1.getSchema().toString())));
+
+			/*
+			 * The interned schema works for serialization of records of the original schema
+			 */
+			AvroSerializerTest.setUp();
+			Schema schema = AvroSerializerTest.getSchema();
+			Schema shared = interner.intern(new Schema.Parser().parse(schema.toString()));
+			GenericRecord r = AvroSerializerTest.createRecord(3, "text");
+			assertEquals(r, new AvroDeserializer().deserialize(AvroSerializer.serialize(1, r), shared, schema));
+
+			/*
+			 * Threads interning the same new schema at once all get one instance
+			 */
+			String json = customer.toString().replace("CUSTOMER", "SUPPLIER");
+			Schema[] results = new Schema[8];
+			Thread[] threads = new Thread[results.length];
+			for (int i = 0; i < threads.length; i++) {
+				int index = i;
+				threads[i] = new Thread(() -> results[index] = interner.intern(new Schema.Parser().parse(json)));
+				threads[i].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			for (Schema result : results) {
+				assertSame(results[0], result);
+			}
+
+			Schema recursive = new Schema.Parser().parse("{\"type\":\"record\",\"name\":\"node\",\"fields\":["
+					+ "{\"name\":\"value\",\"type\":\"int\"},{\"name\":\"next\",\"type\":[\"null\",\"node\"]}]}");
+			Schema r1 = interner.intern(recursive);
+			assertSame(recursive, r1);
+			assertSame(r1, interner.intern(new Schema.Parser().parse(recursive.toString())));
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+}
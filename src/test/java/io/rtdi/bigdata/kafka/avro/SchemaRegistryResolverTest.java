@@ -0,0 +1,174 @@
+package io.rtdi.bigdata.kafka.avro;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.avro.Schema;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the registry client against an embedded http server acting as schema registry
+ */
+public class SchemaRegistryResolverTest {
+	private static HttpServer server;
+	private static Schema schema;
+
+	/**
+	 * @throws Exception if something goes wrong
+	 */
+	@BeforeAll
+	public static void setUp() throws Exception {
+		AvroSerializerTest.setUp();
+		schema = AvroSerializerTest.getSchema();
+		String body = new ObjectMapper().writeValueAsString(Map.of("schema", schema.toString()));
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.setExecutor(Executors.newFixedThreadPool(4));
+		server.createContext("/schemas/ids/", exchange -> {
+			String id = exchange.getRequestURI().getPath().substring("/schemas/ids/".length());
+			try {
+				// slow registry, so concurrent lookups overlap
+				Thread.sleep(200);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			byte[] response;
+			if (id.equals("1") || id.equals("2")) {
+				response = body.getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(200, response.length);
+			} else {
+				response = "{\"error_code\":40403,\"message\":\"Schema not found\"}".getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(404, response.length);
+			}
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(response);
+			}
+		});
+		server.start();
+	}
+
+	/**
+	 * Stop the registry stub
+	 */
+	@AfterAll
+	public static void tearDown() {
+		server.stop(0);
+	}
+
+	private static URI getURI() {
+		return URI.create("http://localhost:" + server.getAddress().getPort());
+	}
+
+	/**
+	 * Many threads asking for the same schema id at once cause a single request
+	 */
+	@Test
+	public void testCoalescing() {
+		try {
+			SchemaRegistryResolver resolver = new SchemaRegistryResolver(getURI());
+			ExecutorService executor = Executors.newFixedThreadPool(8);
+			try {
+				List<Future<Schema>> results = new ArrayList<>();
+				for (int t = 0; t < 8; t++) {
+					results.add(executor.submit(() -> resolver.getSchema(1)));
+				}
+				Schema first = results.get(0).get();
+				assertEquals(schema, first);
+				for (Future<Schema> f : results) {
+					assertSame(first, f.get());
+				}
+			} finally {
+				executor.shutdown();
+			}
+			assertEquals(1, resolver.getRequestCount());
+			assertSame(resolver.getSchema(1), resolver.getSchema(1));
+			assertEquals(1, resolver.getRequestCount());
+
+			AvroDeserializer deserializer = new AvroDeserializer();
+			byte[] message = AvroSerializer.serialize(1, AvroSerializerTest.createRecord(7, null));
+			assertEquals(7, deserializer.deserialize(message, resolver, schema).get("CUSTOMER_ID"));
+			assertEquals(1, resolver.getRequestCount());
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Unknown schema ids are remembered for the negative TTL
+	 */
+	@Test
+	public void testNotFound() {
+		try {
+			SchemaRegistryResolver resolver = new SchemaRegistryResolver(getURI());
+			resolver.setNegativeTTL(Duration.ofMillis(500));
+			assertThrows(SchemaRegistryResolver.SchemaNotFoundException.class, () -> resolver.getSchema(99));
+			assertThrows(SchemaRegistryResolver.SchemaNotFoundException.class, () -> resolver.getSchema(99));
+			assertEquals(1, resolver.getRequestCount());
+			Thread.sleep(600);
+			assertThrows(SchemaRegistryResolver.SchemaNotFoundException.class, () -> resolver.getSchema(99));
+			assertEquals(2, resolver.getRequestCount());
+			// the new 404 is remembered again
+			assertThrows(SchemaRegistryResolver.SchemaNotFoundException.class, () -> resolver.getSchema(99));
+			assertEquals(2, resolver.getRequestCount());
+			Thread.sleep(600);
+			assertThrows(SchemaRegistryResolver.SchemaNotFoundException.class, () -> resolver.getSchema(99));
+			assertThrows(SchemaRegistryResolver.SchemaNotFoundException.class, () -> resolver.getSchema(99));
+			assertEquals(3, resolver.getRequestCount());
+
+			SchemaRegistryResolver unreachable = new SchemaRegistryResolver(URI.create("http://localhost:1"));
+			assertThrows(IOException.class, () -> unreachable.getSchema(1));
+
+			// the request cannot even be created, every call must fail instead of waiting for the first one forever
+			SchemaRegistryResolver invalid = new SchemaRegistryResolver(URI.create("ftp://localhost:1"));
+			assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+				assertThrows(IOException.class, () -> invalid.getSchema(1));
+				assertThrows(IOException.class, () -> invalid.getSchema(1));
+			});
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Prefetching loads all schemas in parallel
+	 */
+	@Test
+	public void testPrefetch() {
+		try {
+			SchemaRegistryResolver resolver = new SchemaRegistryResolver(getURI());
+			assertEquals(2, resolver.prefetch(List.of(1, 2, 98)));
+			assertEquals(3, resolver.getRequestCount());
+			assertEquals(2, resolver.prefetch(List.of(1, 2, 98)));
+			assertEquals(schema, resolver.getSchema(2));
+			assertThrows(SchemaRegistryResolver.SchemaNotFoundException.class, () -> resolver.getSchema(98));
+			assertEquals(3, resolver.getRequestCount());
+			assertEquals(2, resolver.getCacheCount());
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+}
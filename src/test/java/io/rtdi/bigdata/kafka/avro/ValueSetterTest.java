@@ -1,14 +1,21 @@
 package io.rtdi.bigdata.kafka.avro;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalTime;
@@ -19,6 +26,7 @@ import java.util.List;
 
 import org.apache.avro.Conversion;
 import org.apache.avro.Conversions;
+import org.apache.avro.LogicalTypes;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericDatumReader;
@@ -35,6 +43,7 @@ import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import io.rtdi.bigdata.kafka.avro.datatypes.AsciiScanner;
 import io.rtdi.bigdata.kafka.avro.datatypes.AvroAnyPrimitive;
 import io.rtdi.bigdata.kafka.avro.datatypes.AvroArray;
 import io.rtdi.bigdata.kafka.avro.datatypes.AvroBoolean;
@@ -67,6 +76,7 @@ import io.rtdi.bigdata.kafka.avro.datatypes.AvroUUID;
 import io.rtdi.bigdata.kafka.avro.datatypes.AvroUri;
 import io.rtdi.bigdata.kafka.avro.datatypes.AvroVarchar;
 import io.rtdi.bigdata.kafka.avro.datatypes.LogicalDataTypesRegistry;
+import io.rtdi.bigdata.kafka.avro.datatypes.RecordAccessor;
 import io.rtdi.bigdata.kafka.avro.recordbuilders.AvroRecordArray;
 import io.rtdi.bigdata.kafka.avro.recordbuilders.AvroRecordField;
 import io.rtdi.bigdata.kafka.avro.recordbuilders.SchemaBuilder;
@@ -174,6 +184,242 @@ public class ValueSetterTest {
 		}
 	}
 
+	/**
+	 * Set and read values via the field positions of the compiled accessor
+	 */
+	@Test
+	public void testRecordAccessor() {
+		try {
+			LogicalDataTypesRegistry.registerAll();
+			Schema schema = buildAllDataTypesSchema();
+			GenericRecord expected = createNewRecordAvroWay(schema);
+			RecordAccessor accessor = RecordAccessor.get(schema);
+			assertSame(accessor, RecordAccessor.get(schema));
+			int numberspos = accessor.indexOf(NUMBERS);
+			RecordAccessor numbersaccessor = accessor.getChildAccessor(numberspos);
+			int intpos = numbersaccessor.indexOf(COL_INT);
+			int decimalpos = numbersaccessor.indexOf(COL_DECIMAL);
+			GenericRecord r = new GenericData.Record(schema);
+			GenericRecord numbers = accessor.createChildRecord(r, numberspos);
+			numbersaccessor.put(numbers, intpos, 1);
+			numbersaccessor.put(numbers, decimalpos, 1.0);
+			assertEquals(1, numbersaccessor.get(numbers, intpos));
+			assertEquals(AvroType.getRecordFieldValue(numbers, COL_DECIMAL), numbersaccessor.get(numbers, decimalpos));
+			assertEquals(((GenericRecord) expected.get(NUMBERS)).get(COL_DECIMAL), numbers.get(COL_DECIMAL));
+			assertEquals(AvroType.AVRODECIMAL, numbersaccessor.getDataType(decimalpos).getAvroType());
+
+			int otherpos = accessor.indexOf(OTHER);
+			RecordAccessor otheraccessor = accessor.getChildAccessor(otherpos);
+			GenericRecord other = accessor.addChildToArray(r, otherpos);
+			otheraccessor.put(other, COL_URI, "urn:none");
+			assertEquals("urn:none", otheraccessor.get(accessor.getSubRecordArray(r, otherpos).get(0), COL_URI).toString());
+			assertThrows(AvroDataTypeException.class, () -> accessor.indexOf("NOT_EXISTING"));
+			assertThrows(AvroDataTypeException.class, () -> accessor.createChildRecord(r, otherpos));
+			assertSame(numbersaccessor, RecordAccessor.get(accessor.getBaseSchema(numberspos)));
+
+			Schema recursive = new Schema.Parser().parse("{\"type\":\"record\",\"name\":\"node\",\"fields\":["
+					+ "{\"name\":\"value\",\"type\":\"int\"},{\"name\":\"next\",\"type\":[\"null\",\"node\"]}]}");
+			RecordAccessor nodeaccessor = RecordAccessor.get(recursive);
+			assertSame(nodeaccessor, nodeaccessor.getChildAccessor(nodeaccessor.indexOf("next")));
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Set and read numeric and temporal values as primitives
+	 */
+	@Test
+	public void testPrimitiveAccess() {
+		try {
+			LogicalDataTypesRegistry.registerAll();
+			Schema schema = buildAllDataTypesSchema();
+			GenericRecord expected = createNewRecordViaLogicalDataTypes(schema);
+			RecordAccessor accessor = RecordAccessor.get(schema);
+			GenericRecord r = new GenericData.Record(schema);
+			RecordAccessor numbersaccessor = accessor.getChildAccessor(accessor.indexOf(NUMBERS));
+			GenericRecord numbers = accessor.createChildRecord(r, accessor.indexOf(NUMBERS));
+			numbersaccessor.putInt(numbers, numbersaccessor.indexOf(COL_INT), 1);
+			numbersaccessor.putInt(numbers, numbersaccessor.indexOf(COL_SHORT), 1);
+			numbersaccessor.putLong(numbers, numbersaccessor.indexOf(COL_LONG), 1L);
+			numbersaccessor.putDouble(numbers, numbersaccessor.indexOf(COL_DOUBLE), 1.0);
+			numbersaccessor.putFloat(numbers, numbersaccessor.indexOf(COL_FLOAT), 2.0f);
+			GenericRecord expectednumbers = (GenericRecord) expected.get(NUMBERS);
+			for (String col : new String[] {COL_INT, COL_SHORT, COL_LONG, COL_DOUBLE, COL_FLOAT}) {
+				assertEquals(expectednumbers.get(col), numbers.get(col), col);
+			}
+			assertEquals(1, numbersaccessor.getInt(numbers, numbersaccessor.indexOf(COL_INT)));
+			assertEquals(1.0, numbersaccessor.getDouble(numbers, numbersaccessor.indexOf(COL_DOUBLE)));
+			assertEquals(2.0f, numbersaccessor.getFloat(numbers, numbersaccessor.indexOf(COL_FLOAT)));
+			assertEquals(1.5f, AvroFloat.create().toInternalFloat("1.5"));
+			assertThrows(AvroDataTypeException.class, () -> numbersaccessor.getFloat(numbers, numbersaccessor.indexOf(COL_DOUBLE)));
+			assertThrows(AvroDataTypeException.class, () -> numbersaccessor.putInt(numbers, numbersaccessor.indexOf(COL_SHORT), 100000));
+			assertThrows(AvroDataTypeException.class, () -> numbersaccessor.putInt(numbers, numbersaccessor.indexOf(COL_LONG), 1));
+			assertThrows(AvroDataTypeException.class, () -> numbersaccessor.getInt(numbers, numbersaccessor.indexOf(COL_BYTE)));
+
+			RecordAccessor dateaccessor = accessor.getChildAccessor(accessor.indexOf(DATE));
+			GenericRecord date = accessor.createChildRecord(r, accessor.indexOf(DATE));
+			int datepos = dateaccessor.indexOf(COL_DATE);
+			int timestamppos = dateaccessor.indexOf(COL_TIMESTAMP);
+			dateaccessor.putInt(date, datepos, (int) nowlocaldate.toEpochDay());
+			dateaccessor.putLong(date, timestamppos, AvroTimestamp.create().toInternalLong(nowinstant));
+			assertEquals(nowlocaldate, dateaccessor.get(date, datepos));
+			assertEquals(nowinstant.toEpochMilli(), dateaccessor.getLong(date, timestamppos));
+			assertEquals(((GenericRecord) expected.get(DATE)).get(COL_TIMESTAMP), date.get(COL_TIMESTAMP));
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * The unscaled long conversion of small decimals creates the same bytes as Avro's DecimalConversion
+	 */
+	@Test
+	public void testCompactDecimal() {
+		try {
+			AvroDecimal d = AvroDecimal.create(18, 2);
+			assertTrue(d.isCompact());
+			Object[] values = new Object[] {0, 1, -1, 127, 128, -128, -129, 1.005, -2.5, 0.004, 2.5E-3, 1.0E10, 123456789012345.67, "-0.5", "12.345",
+					new BigDecimal("9999999999999999.99"), new BigDecimal("-9999999999999999.994"), 9999999999999999L, Long.valueOf(-42)};
+			for (Object value : values) {
+				BigDecimal expected;
+				if (value instanceof BigDecimal) {
+					expected = (BigDecimal) value;
+				} else {
+					expected = new BigDecimal(value.toString());
+				}
+				expected = expected.setScale(2, RoundingMode.HALF_UP);
+				ByteBuffer bytes = (ByteBuffer) d.convertToInternal(value);
+				assertEquals(decimalconversion.toBytes(expected, null, LogicalTypes.decimal(18, 2)), bytes, value.toString());
+				assertEquals(expected, d.convertToJava(bytes), value.toString());
+				assertEquals(expected.unscaledValue().longValue(), d.toUnscaled(value), value.toString());
+			}
+			assertEquals(Long.MIN_VALUE, AvroDecimal.getUnscaled(AvroDecimal.toBytes(Long.MIN_VALUE)));
+			assertEquals(Long.MAX_VALUE, AvroDecimal.getUnscaled(AvroDecimal.toBytes(Long.MAX_VALUE)));
+			assertThrows(AvroDataTypeException.class, () -> d.convertToInternal(10000000000000000L));
+			assertThrows(AvroDataTypeException.class, () -> d.convertToInternal("99999999999999999.995"));
+			assertThrows(AvroDataTypeException.class, () -> d.convertToInternal("1.2.3"));
+			assertThrows(AvroDataTypeException.class, () -> d.convertToInternal(Double.NaN));
+			// huge exponents must neither loop nor take long
+			assertEquals(0L, d.toUnscaled("0E2147483647"));
+			assertEquals(0L, d.toUnscaled("0e900000000"));
+			assertEquals(0L, d.toUnscaled("-000.000e-2147483648"));
+			assertEquals(1200L, d.toUnscaled("0001.2e1"));
+			assertThrows(AvroDataTypeException.class, () -> d.toUnscaled("1E2147483647"));
+			assertThrows(AvroDataTypeException.class, () -> d.convertToInternal("0.01e900000000"));
+			assertEquals(0L, d.toUnscaled("1e-2147483648"));
+
+			AvroDecimal large = AvroDecimal.create(28, 7);
+			assertFalse(large.isCompact());
+			BigDecimal l = new BigDecimal("123456789012345678901.1234567");
+			assertEquals(l, large.convertToJava(large.convertToInternal(l)));
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * The ASCII check finds a non-ASCII char at any position of Strings, Utf8 and byte arrays
+	 */
+	@Test
+	public void testAsciiScanner() {
+		try {
+			for (int length = 1; length < 40; length++) {
+				for (int pos = 0; pos < length; pos++) {
+					StringBuilder b = new StringBuilder();
+					for (int i = 0; i < length; i++) {
+						b.append(i == pos ? '\u00e4' : (char) ('a' + i % 26));
+					}
+					String text = b.toString();
+					assertEquals(pos, AsciiScanner.indexOfNonAscii(text));
+					assertEquals(pos, AsciiScanner.indexOfNonAscii(new Utf8(text)));
+					assertEquals(-1, AsciiScanner.indexOfNonAscii(text.substring(0, pos)));
+					assertTrue(AsciiScanner.isAscii(new Utf8(text.substring(0, pos))));
+				}
+			}
+			assertEquals(1, AsciiScanner.indexOfNonAscii(new Object[] {"abc", new Utf8("\u00e4"), null}, 0, 3));
+			assertEquals(-1, AsciiScanner.indexOfNonAscii(new Object[] {"abc", new Utf8("xyz"), null, "a".getBytes()}, 0, 4));
+
+			AvroVarchar varchar = AvroVarchar.create(5);
+			Utf8 u = new Utf8("abc");
+			assertSame(u, varchar.convertToInternal(u));
+			assertEquals(new Utf8("abcde"), varchar.convertToInternal(new Utf8("abcdefgh")));
+			assertEquals("abcde", varchar.convertToInternal("abcdefgh").toString());
+			assertEquals(new Utf8("ab"), varchar.convertToInternal("ab".getBytes()));
+			assertThrows(AvroDataTypeException.class, () -> varchar.convertToInternal(new Utf8("abcdef\u00e4")));
+			assertThrows(AvroDataTypeException.class, () -> AvroCLOB.create().convertToInternal("\u00e4"));
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Text values are passed through as Utf8, length and ASCII checks work on the bytes
+	 */
+	@Test
+	public void testUtf8Text() {
+		try {
+			LogicalDataTypesRegistry.registerAll();
+			Schema schema = buildAllDataTypesSchema();
+			GenericRecord source = deserialize(schema, serialize(createNewRecordViaLogicalDataTypes(schema)));
+			RecordAccessor accessor = RecordAccessor.get(schema);
+			int textpos = accessor.indexOf(TEXT);
+			RecordAccessor textaccessor = accessor.getChildAccessor(textpos);
+			GenericRecord sourcetext = accessor.getSubRecord(source, textpos);
+			GenericRecord target = new GenericData.Record(schema);
+			GenericRecord targettext = accessor.createChildRecord(target, textpos);
+			for (String col : new String[] {COL_STRING, COL_VARCHAR, COL_NVARCHAR, COL_CLOB, COL_NCLOB}) {
+				int pos = textaccessor.indexOf(col);
+				Utf8 value = textaccessor.getUtf8(sourcetext, pos);
+				textaccessor.putUtf8(targettext, pos, value);
+				assertSame(value, targettext.get(pos), col);
+			}
+			RecordAccessor numbersaccessor = accessor.getChildAccessor(accessor.indexOf(NUMBERS));
+			GenericRecord numbers = accessor.getSubRecord(source, accessor.indexOf(NUMBERS));
+			assertThrows(AvroDataTypeException.class, () -> numbersaccessor.getUtf8(numbers, numbersaccessor.indexOf(COL_INT)));
+
+			AvroNVarchar nvarchar = AvroNVarchar.create(3);
+			assertEquals(new Utf8("\u00e4\u00f6\uD83D\uDE00"), nvarchar.convertToUtf8(new Utf8("\u00e4\u00f6\uD83D\uDE00x")));
+			assertEquals("\u00e4\u00f6\uD83D\uDE00", nvarchar.convertToInternal("\u00e4\u00f6\uD83D\uDE00x"));
+			Utf8 fits = new Utf8("\u00e4\u00f6\u00fc");
+			assertSame(fits, nvarchar.convertToUtf8(fits));
+			assertEquals(new Utf8("abc"), AvroVarchar.create(3).convertToUtf8("abcd"));
+			assertEquals(new Utf8("\u00e4"), AvroString.create().convertToUtf8("\u00e4".getBytes(StandardCharsets.UTF_8)));
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Parameterized data types are shared instances, their schemas are not
+	 */
+	@Test
+	public void testDatatypeInterning() {
+		try {
+			LogicalDataTypesRegistry.registerAll();
+			assertSame(AvroVarchar.create(10), AvroVarchar.create(10));
+			assertSame(AvroVarchar.create(10), AvroVarchar.create("VARCHAR(10)"));
+			assertSame(AvroNVarchar.create(20), AvroNVarchar.create(AvroNVarchar.getSchema(20)));
+			assertSame(AvroDecimal.create(18, 4), AvroDecimal.create(AvroDecimal.getSchema(18, 4)));
+			assertSame(AvroFixed.create(16), AvroFixed.create("FIXED16", null, 16, null));
+			assertNotSame(AvroVarchar.create(10), AvroVarchar.create(11));
+			assertSame(AvroVarchar.create(100000), AvroVarchar.create(100000));
+			assertNotSame(AvroVarchar.create(10), AvroNVarchar.create(10));
+			assertNotSame(AvroDecimal.create(18, 4), AvroDecimal.create(18, 5));
+			assertNotSame(AvroVarchar.getSchema(10), AvroVarchar.getSchema(10));
+			assertNotSame(AvroFixed.getSchema(16), AvroFixed.getSchema(16));
+			assertEquals(AvroVarchar.create(10), new Schema.Parser().parse(AvroVarchar.getSchema(10).toString()).getLogicalType());
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
 	private static GenericRecord deserialize(Schema schema, byte[] bytes) throws IOException {
 		GenericRecord recordin;
 		try (ByteArrayInputStream in = new ByteArrayInputStream(bytes); ) {